@@ -0,0 +1,28 @@
+/**
+ * The com.example.ml.benchmark package contains programs measuring the performance of the machine learning components.
+ */
+package com.example.ml.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/**
+ * Entry point of the benchmark jar. Accepts the usual JMH command line options and always enables
+ * the GC profiler, so every result also reports the allocation rate (gc.alloc.rate.norm = bytes per operation).
+ *
+ * Usage: mvn -P jmh package && java -jar target/benchmarks.jar [JMH options] [benchmark regexp]
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * The com.example.ml.benchmark package contains programs measuring the performance of the machine learning components.
+ */
+package com.example.ml.benchmark;
+
+import com.example.ml.classifier.naivebayes.GaussianNaiveBayes;
+import com.example.ml.data.matrix.SparseMatrix;
+import com.example.ml.feature.extraction.tfidf.TfIdf;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * Measures GaussianNaiveBayes training and prediction on TF-IDF features of synthetic corpora:
+ * batch fit and predict on sparse data, fit and predict on a bounded number of dense rows
+ * (dense rows grow with the vocabulary size), and the latency distribution of scoring a single message.
+ * The forks run with the jdk.incubator.vector module, so dense prediction uses the SIMD scoring kernel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "--add-modules=jdk.incubator.vector"})
+public class GaussianNaiveBayesBenchmark {
+    // Number of rows used by the dense benchmarks
+    private static final int NUM_DENSE_ROWS = 500;
+
+    @Param({"1000", "10000"})
+    public int num_documents;
+
+    @Param({"5000", "50000"})
+    public int vocabulary_size;
+
+    private SparseMatrix train;
+    private int[] train_labels;
+    private SparseMatrix test;
+    private double[][] dense_train;
+    private int[] dense_train_labels;
+    private double[][] dense_test;
+    private GaussianNaiveBayes fitted;
+    // Next test row scored by the single-message benchmark
+    private int next_row = 0;
+
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SyntheticCorpus train_corpus = new SyntheticCorpus(num_documents, vocabulary_size, 200, 1);
+        SyntheticCorpus test_corpus = new SyntheticCorpus(num_documents, vocabulary_size, 200, 2);
+        TfIdf transformer = new TfIdf();
+        transformer.fit(train_corpus.documents);
+        train = transformer.transform_sparse();
+        train_labels = train_corpus.labels;
+        test = transformer.fit_transform_testdata_sparse(test_corpus.documents);
+
+        int dense_rows = Math.min(NUM_DENSE_ROWS, num_documents);
+        dense_train = train.slice_rows(0, dense_rows).to_dense();
+        dense_train_labels = Arrays.copyOf(train_labels, dense_rows);
+        dense_test = test.slice_rows(0, dense_rows).to_dense();
+
+        fitted = new GaussianNaiveBayes();
+        fitted.fit(train, train_labels);
+    }
+
+
+    @Benchmark
+    public GaussianNaiveBayes fit_sparse() {
+        GaussianNaiveBayes model = new GaussianNaiveBayes();
+        model.fit(train, train_labels);
+        return model;
+    }
+
+
+    @Benchmark
+    public GaussianNaiveBayes fit_dense() {
+        GaussianNaiveBayes model = new GaussianNaiveBayes();
+        model.fit(dense_train, dense_train_labels);
+        return model;
+    }
+
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public int[] predict_sparse() {
+        return fitted.predict(test);
+    }
+
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public int[] predict_dense() {
+        return fitted.predict(dense_test);
+    }
+
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public double score_single_message() {
+        int row = next_row;
+        next_row = row + 1 == test.rows() ? 0 : row + 1;
+        return fitted.margin(test.get_indices(), test.get_values(), test.row_start(row), test.row_end(row));
+    }
+}
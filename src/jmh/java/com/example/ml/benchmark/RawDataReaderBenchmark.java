@@ -0,0 +1,71 @@
+/**
+ * The com.example.ml.benchmark package contains programs measuring the performance of the machine learning components.
+ */
+package com.example.ml.benchmark;
+
+import com.example.ml.data.reader.RawDataReader;
+import com.example.ml.data.reader.StreamingRawDataReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * Measures reading a directory of labeled message files with RawDataReader.load and with StreamingRawDataReader.
+ * The files are generated into a temporary directory before the trial and deleted afterwards.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class RawDataReaderBenchmark {
+
+    @Param({"1000", "10000"})
+    public int num_documents;
+
+    private Path directory;
+
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        SyntheticCorpus corpus = new SyntheticCorpus(num_documents, 20000, 200, 3);
+        directory = Files.createTempDirectory("raw-data-benchmark");
+        for (int d = 0; d < num_documents; d++) {
+            String name = String.format("%06d.%s.txt", d, corpus.labels[d] == 1 ? "spam" : "ham");
+            Files.writeString(directory.resolve(name), corpus.documents.get(d), StandardCharsets.UTF_8);
+        }
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tear_down() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+
+    @Benchmark
+    public RawDataReader load() throws IOException {
+        RawDataReader reader = new RawDataReader();
+        reader.load(directory.toString(), StandardCharsets.UTF_8);
+        return reader;
+    }
+
+
+    @Benchmark
+    public long stream() throws IOException {
+        AtomicLong characters = new AtomicLong();
+        new StreamingRawDataReader(StandardCharsets.UTF_8, 4, 64)
+                .read(directory.toString(), document -> characters.addAndGet(document.get_content().length()));
+        return characters.get();
+    }
+}
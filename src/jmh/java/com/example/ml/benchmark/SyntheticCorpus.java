@@ -0,0 +1,52 @@
+/**
+ * The com.example.ml.benchmark package contains programs measuring the performance of the machine learning components.
+ */
+package com.example.ml.benchmark;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+
+/**
+ * The SyntheticCorpus class generates reproducible labeled corpora of a chosen size for the benchmarks.
+ * Word ranks follow a log-uniform distribution (close to Zipf's law), so a few words are very frequent and most
+ * are rare, as in real mail. Spam documents draw part of their words from a shifted range of the vocabulary,
+ * so the classes can be told apart.
+ */
+class SyntheticCorpus {
+    // Generated documents
+    final ArrayList<String> documents;
+    // Labels of the documents, 0 = ham, 1 = spam
+    final int[] labels;
+
+
+    /**
+     * Generates a corpus.
+     *
+     * @param num_documents      The number of documents.
+     * @param vocabulary_size    The number of distinct words that can occur.
+     * @param words_per_document The average number of words per document.
+     * @param seed               The random seed.
+     */
+    SyntheticCorpus(int num_documents, int vocabulary_size, int words_per_document, long seed) {
+        Random random = new Random(seed);
+        documents = new ArrayList<>(num_documents);
+        labels = new int[num_documents];
+        StringBuilder document = new StringBuilder();
+        for (int d = 0; d < num_documents; d++) {
+            labels[d] = random.nextDouble() < 0.4 ? 1 : 0;
+            document.setLength(0);
+            document.append("Subject: ");
+            int length = words_per_document / 2 + random.nextInt(words_per_document + 1);
+            for (int w = 0; w < length; w++) {
+                int rank = (int) Math.pow(vocabulary_size, random.nextDouble()) - 1;
+                if (labels[d] == 1 && random.nextBoolean()) {
+                    rank = (rank + vocabulary_size / 2) % vocabulary_size;
+                }
+                document.append('w').append(Integer.toString(rank, 36));
+                document.append(random.nextInt(8) == 0 ? " , " : " ");
+            }
+            documents.add(document.toString());
+        }
+    }
+}
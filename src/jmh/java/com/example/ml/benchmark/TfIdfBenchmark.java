@@ -0,0 +1,68 @@
+/**
+ * The com.example.ml.benchmark package contains programs measuring the performance of the machine learning components.
+ */
+package com.example.ml.benchmark;
+
+import com.example.ml.data.matrix.SparseMatrix;
+import com.example.ml.feature.extraction.tfidf.TfIdf;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * Measures TfIdf.fit on the training corpus and the transformation of test documents,
+ * for several corpus and vocabulary sizes. The dense transformation uses a fixed number of
+ * test documents, because its output grows with the vocabulary size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class TfIdfBenchmark {
+    // Number of test documents transformed into dense rows
+    private static final int NUM_DENSE_DOCUMENTS = 200;
+
+    @Param({"1000", "10000"})
+    public int num_documents;
+
+    @Param({"5000", "50000"})
+    public int vocabulary_size;
+
+    private ArrayList<String> train;
+    private ArrayList<String> test;
+    private ArrayList<String> dense_test;
+    private TfIdf fitted;
+
+
+    @Setup(Level.Trial)
+    public void setup() {
+        train = new SyntheticCorpus(num_documents, vocabulary_size, 200, 1).documents;
+        test = new SyntheticCorpus(num_documents, vocabulary_size, 200, 2).documents;
+        dense_test = new ArrayList<>(test.subList(0, Math.min(NUM_DENSE_DOCUMENTS, test.size())));
+        fitted = new TfIdf();
+        fitted.fit(train);
+    }
+
+
+    @Benchmark
+    public TfIdf fit() {
+        TfIdf transformer = new TfIdf();
+        transformer.fit(train);
+        return transformer;
+    }
+
+
+    @Benchmark
+    public double[][] fit_transform_testdata() {
+        return fitted.fit_transform_testdata(dense_test);
+    }
+
+
+    @Benchmark
+    public SparseMatrix fit_transform_testdata_sparse() {
+        return fitted.fit_transform_testdata_sparse(test);
+    }
+}
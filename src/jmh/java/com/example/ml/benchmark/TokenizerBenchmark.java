@@ -0,0 +1,78 @@
+/**
+ * The com.example.ml.benchmark package contains programs measuring the performance of the machine learning components.
+ */
+package com.example.ml.benchmark;
+
+import com.example.ml.feature.extraction.text.TermDictionary;
+import com.example.ml.feature.extraction.text.Tokenizer;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ * Compares tokenization with String.split("\\W+") against the scanning Tokenizer, with and without vocabulary lookup.
+ * Each operation tokenizes all documents of the corpus.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class TokenizerBenchmark {
+    // Number of documents tokenized per operation
+    private static final int NUM_DOCUMENTS = 1000;
+
+    @Param({"100", "1000"})
+    public int words_per_document;
+
+    @Param({"5000", "50000"})
+    public int vocabulary_size;
+
+    private ArrayList<String> documents;
+    private TermDictionary vocabulary;
+    private final Tokenizer tokenizer = new Tokenizer();
+
+
+    @Setup(Level.Trial)
+    public void setup() {
+        documents = new SyntheticCorpus(NUM_DOCUMENTS, vocabulary_size, words_per_document, 42).documents;
+        vocabulary = new TermDictionary();
+        for (String document : documents) {
+            Tokenizer.tokenize(document, vocabulary::add);
+        }
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_DOCUMENTS)
+    public void split_regex(Blackhole blackhole) {
+        for (String document : documents) {
+            blackhole.consume(document.split("\\W+"));
+        }
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_DOCUMENTS)
+    public int tokenize(Blackhole blackhole) {
+        int count = 0;
+        for (String document : documents) {
+            count += Tokenizer.tokenize(document, (text, start, end) -> blackhole.consume(end - start));
+        }
+        return count;
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_DOCUMENTS)
+    public int encode() {
+        int count = 0;
+        for (String document : documents) {
+            count += tokenizer.encode(document, vocabulary);
+        }
+        return count;
+    }
+}
@@ -1,30 +1,30 @@
 package com.example.ml;
 
 import java.io.IOException;
-import java.util.*;
-import com.example.ml.data.reader.RawDataReader;
-import com.example.ml.data.saver.Saver;
 import com.example.ml.feature.extraction.tfidf.TfIdf;
 import com.example.ml.classifier.naivebayes.GaussianNaiveBayes;
-import com.example.ml.evaluation.metrics.Evaluator;
+import com.example.ml.model.ModelFile;
+import com.example.ml.pipeline.LoggingMetricsSink;
+import com.example.ml.pipeline.Pipeline;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 
 /**
  *
  * The Main class serves as the entry point for the program and demonstrates the usage of machine learning components for text classification.
  * It loads the training and testing data, applies the TF-IDF feature extraction, trains a Gaussian Naive Bayes classifier, and evaluates its performance.
  * The steps performed in the main method are as follows:
- * Initialize the TF-IDF transformer, raw data reader, and Gaussian Naive Bayes model.
- * Load the training data using the raw data reader and fit the TF-IDF transformer on it.
- * Transform the training data using the fitted transformer to obtain the TF-IDF features.
- * Get the training labels from the raw data reader.
- * Clear unnecessary data from memory using the clear method of the raw data reader and setting variables to null.
- * Train the Gaussian Naive Bayes model on the transformed training data and labels.
- * Load the testing data using the raw data reader and apply the fitted transformer to transform the testing data.
- * Get the testing labels from the raw data reader.
- * Clear unnecessary data from memory using the clear method of the raw data reader and setting variables to null.
- * Predict the labels for the testing data using the trained model.
- * Evaluate the performance of the model by comparing the predicted labels with the true labels using the Evaluator class.
+ * Initialize the TF-IDF transformer and Gaussian Naive Bayes model and compose them into a Pipeline.
+ * Load the training data, fit the TF-IDF transformer on it and train the Gaussian Naive Bayes model on the
+ * transformed training data and labels (Pipeline.fit).
+ * Load the testing data, transform it with the fitted transformer, predict its labels with the trained model and
+ * evaluate the performance by comparing the predicted labels with the true labels (Pipeline.evaluate).
+ * The time, throughput and memory of every stage are logged by a LoggingMetricsSink.
+ * If a model file path is given as the first argument and the file exists, the model is loaded from it instead of being trained;
+ * if the file does not exist, the trained model is saved to it.
  * This class serves as an example of how to use the different components together to build a text classification pipeline.
  * Developers can modify and extend this class to suit their specific needs for text classification tasks.
  */
@@ -33,36 +33,38 @@ public class Main {
     public static void main(String[] args) throws IOException {
 
         TfIdf transformer = new TfIdf();
-        RawDataReader reader = new RawDataReader();
         GaussianNaiveBayes model = new GaussianNaiveBayes();
+        Path model_path = args.length > 0 ? Paths.get(args[0]) : null;
 
         URL TrainUrl = Main.class.getResource("/data/enron/hamnspam_train");
         URL TestUrl = Main.class.getResource("/data/enron/hamnspam_test");
 
-        reader.load(TrainUrl.getFile());
-        transformer.fit(reader.get_data());
-        double[][] train_data = transformer.transform();
-        int[] train_labels = reader.get_labels().stream().mapToInt(i -> i).toArray();
-        reader.clear();  // To free up heap space
+        boolean load = model_path != null && Files.exists(model_path);
+        if (load) {
+            ModelFile.Model loaded = ModelFile.load(model_path);
+            transformer = loaded.get_extractor();
+            model = loaded.get_classifier();
+            System.out.println("Model loaded from " + model_path);
+        }
 
-        System.out.println("Training model...");
-        model.fit(train_data, train_labels);
-        System.out.println("Model trained");
+        Pipeline pipeline = new Pipeline(transformer, model);
+        try (LoggingMetricsSink sink = LoggingMetricsSink.start(Duration.ofSeconds(10))) {
+            pipeline.add_sink(sink);
 
-        // Free up the space
-        train_labels = null;
-        train_data = null;
-        transformer.data = null;
+            if (!load) {
+                System.out.println("Training model...");
+                pipeline.fit(TrainUrl.getFile());
+                System.out.println("Model trained");
 
-        reader.load(TestUrl.getFile());
-        double[][] test_data = transformer.fit_transform_testdata(reader.get_data());
-        int[] test_labels = reader.get_labels().stream().mapToInt(i -> i).toArray();
-        reader.clear();  // To free heap space
+                if (model_path != null) {
+                    ModelFile.save(model_path, transformer, model);
+                    System.out.println("Model saved to " + model_path);
+                }
+            }
 
-        int[] predictions = model.predict(test_data);
-
-        Evaluator.evaluate(test_labels,predictions);
+            pipeline.evaluate(TestUrl.getFile());
+        }
 
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,124 @@
+/**
+ * The com.example.ml.benchmark package contains programs measuring the performance of the machine learning components.
+ */
+package com.example.ml.benchmark;
+
+import com.example.ml.classifier.naivebayes.GaussianNaiveBayes;
+import com.example.ml.data.matrix.SparseMatrix;
+import com.example.ml.data.reader.RawDataReader;
+import com.example.ml.feature.extraction.tfidf.TfIdf;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+
+
+/**
+ * The ParallelThroughput class compares the throughput of serial and parallel GaussianNaiveBayes
+ * training and prediction on the Enron train/test sets, and checks that both modes give the same results.
+ *
+ * Usage: ParallelThroughput [num_threads] [repetitions]
+ * The number of threads defaults to the number of available processors and the repetitions to 5.
+ * The reported throughput is the best of all repetitions, in samples per second.
+ */
+public class ParallelThroughput {
+
+    public static void main(String[] args) throws IOException {
+        int num_threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        TfIdf transformer = new TfIdf();
+        RawDataReader reader = new RawDataReader();
+        URL TrainUrl = ParallelThroughput.class.getResource("/data/enron/hamnspam_train");
+        URL TestUrl = ParallelThroughput.class.getResource("/data/enron/hamnspam_test");
+
+        reader.load(TrainUrl.getFile());
+        transformer.fit(reader.get_data());
+        int[] train_labels = reader.get_labels().stream().mapToInt(i -> i).toArray();
+        SparseMatrix train_sparse = transformer.transform_sparse();
+        double[][] train_dense = transformer.transform();
+        reader.load(TestUrl.getFile());
+        SparseMatrix test_sparse = transformer.fit_transform_testdata_sparse(reader.get_data());
+        double[][] test_dense = test_sparse.to_dense();
+        reader.clear();
+
+        System.out.println("Train samples: " + train_sparse.rows() + ", test samples: " + test_sparse.rows()
+                + ", features: " + train_sparse.cols() + ", threads: " + num_threads
+                + ", available processors: " + Runtime.getRuntime().availableProcessors());
+        if (Runtime.getRuntime().availableProcessors() < 2) {
+            System.out.println("Only one processor is available: the speedups below do not measure parallel scaling");
+        }
+
+        GaussianNaiveBayes serial = new GaussianNaiveBayes();
+        try (GaussianNaiveBayes parallel = new GaussianNaiveBayes(num_threads)) {
+            compare(serial, parallel, repetitions, train_dense, train_sparse, train_labels, test_dense, test_sparse);
+        }
+    }
+
+
+    /**
+     * Measures and prints the serial and parallel throughput of fitting and predicting dense and sparse data.
+     *
+     * @param serial       The classifier working in serial mode.
+     * @param parallel     The classifier working in parallel.
+     * @param repetitions  The number of runs of every operation.
+     * @param train_dense  The training samples as a dense matrix.
+     * @param train_sparse The training samples as a sparse matrix.
+     * @param train_labels The labels of the training samples.
+     * @param test_dense   The test samples as a dense matrix.
+     * @param test_sparse  The test samples as a sparse matrix.
+     */
+    private static void compare(GaussianNaiveBayes serial, GaussianNaiveBayes parallel, int repetitions,
+                                double[][] train_dense, SparseMatrix train_sparse, int[] train_labels,
+                                double[][] test_dense, SparseMatrix test_sparse) {
+        report("fit (dense)", train_dense.length,
+                time(repetitions, () -> serial.fit(train_dense, train_labels)),
+                time(repetitions, () -> parallel.fit(train_dense, train_labels)));
+        int[][] predictions = new int[2][];
+        report("predict (dense)", test_dense.length,
+                time(repetitions, () -> predictions[0] = serial.predict(test_dense)),
+                time(repetitions, () -> predictions[1] = parallel.predict(test_dense)));
+        System.out.println("  identical predictions: " + Arrays.equals(predictions[0], predictions[1]));
+
+        report("fit (sparse)", train_sparse.rows(),
+                time(repetitions, () -> serial.fit(train_sparse, train_labels)),
+                time(repetitions, () -> parallel.fit(train_sparse, train_labels)));
+        report("predict (sparse)", test_sparse.rows(),
+                time(repetitions, () -> predictions[0] = serial.predict(test_sparse)),
+                time(repetitions, () -> predictions[1] = parallel.predict(test_sparse)));
+        System.out.println("  identical predictions: " + Arrays.equals(predictions[0], predictions[1]));
+    }
+
+
+    /**
+     * Runs a task several times and returns the shortest running time.
+     *
+     * @param repetitions The number of runs.
+     * @param task        The measured task.
+     * @return The shortest running time in nanoseconds.
+     */
+    private static long time(int repetitions, Runnable task) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < repetitions; i++) {
+            long start = System.nanoTime();
+            task.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+
+    /**
+     * Prints the serial and parallel throughput of an operation and the resulting speedup.
+     *
+     * @param operation     The name of the operation.
+     * @param samples       The number of samples processed by one run.
+     * @param serial_time   The serial running time in nanoseconds.
+     * @param parallel_time The parallel running time in nanoseconds.
+     */
+    private static void report(String operation, int samples, long serial_time, long parallel_time) {
+        double serial_throughput = samples / (serial_time / 1e9);
+        double parallel_throughput = samples / (parallel_time / 1e9);
+        System.out.printf("%-18s serial %12.1f samples/s   parallel %12.1f samples/s   speedup %.2fx%n",
+                operation, serial_throughput, parallel_throughput, parallel_throughput / serial_throughput);
+    }
+}
@@ -5,16 +5,25 @@
  */
 package com.example.ml.classifier;
 
+import com.example.ml.data.matrix.SparseMatrix;
+
 
 /**
  * The Classifier interface represents a machine learning classifier.
  * Classes implementing this interface are responsible for fitting the classifier model
  * on the training data and making predictions on new data.
  *
- * Implementing classes must provide implementations for the `fit` and `predict` methods.
+ * Implementing classes must provide implementations for the `fit` and `predict` methods,
+ * both for dense feature matrices and for sparse (CSR) feature matrices.
+ * The `decision_function` methods return the score behind each prediction (higher favours spam),
+ * for example for ROC curves or for choosing a decision threshold.
  */
 public interface Classifier {
     public void fit(double[][] X, int[] y);
     public int[] predict(double[][] X);
+    public void fit(SparseMatrix X, int[] y);
+    public int[] predict(SparseMatrix X);
+    public double[] decision_function(double[][] X);
+    public double[] decision_function(SparseMatrix X);
 
 }
@@ -0,0 +1,216 @@
+/**
+ * The "com.example.ml.classifier.naivebayes" package contains implementations of the Naive Bayes classifier.
+ * This package provides classes and utilities for training and using Naive Bayes classifiers,
+ * which are probabilistic models based on the Bayes' theorem and the assumption of feature independence.
+ *
+ * Implementations of the Naive Bayes classifier, such as Gaussian Naive Bayes
+ * can be found within this package or in its sub-packages.
+ */
+package com.example.ml.classifier.naivebayes;
+
+import java.util.Arrays;
+
+
+/**
+ * The EarlyExitKernel class predicts the label of a dense TF-IDF sample without always summing the terms of all
+ * features. The term of feature i, relative to a zero value, is a quadratic c_i(x) = a_i * x^2 + b_i * x, so the
+ * margin is
+ *
+ *   margin(x) = zero_margin + sum_i c_i(x_i)
+ *
+ * where zero_margin is the margin of the all-zero sample. The features are visited one by one in an order chosen when
+ * the model is fitted: by decreasing expected absolute term p_ham * |E_ham[c_i]| + p_spam * |E_spam[c_i]| under the
+ * fitted Gaussians, so the features carrying most of the margin come first.
+ *
+ * The remaining terms are bounded without reading the remaining entries of the sample. The samples must be rows
+ * x_i = t_i * w_i of term frequencies t_i >= 0 with sum_i t_i <= 1 and finite feature scales w_i, which is what
+ * TfIdf produces with its IDF vector as scales (an IDF is zero or negative for terms found in almost every training
+ * document). With A_i = a_i * w_i^2, B_i = b_i * w_i and the frequency budget T = 1 - sum of t_i over the visited
+ * features, the terms c_i(x_i) = A_i * t_i^2 + B_i * t_i of the remaining features satisfy
+ *
+ *   sum c_i(x_i) <= max(A_i, 0) * T^2 + max(B_i, 0) * T
+ *   sum c_i(x_i) >= -max(-A_i, 0) * T^2 - max(-B_i, 0) * T
+ *
+ * with the maxima over the remaining features, precomputed per position in the visiting order. Every CHECK_INTERVAL
+ * visited features, the partial margin is compared with these bounds (plus a relative slack covering floating-point
+ * rounding); as soon as it is farther from zero, the sign of the margin, and so the label, is known. A sample whose
+ * label is not decided when all features are visited, which has a visited value that is not a positive frequency
+ * times the scale, or whose visited frequencies already sum to more than 1, is scored by the full kernel, so the
+ * labels of TF-IDF rows are identical to the ones of full scoring. Values of features not visited yet are never read,
+ * so a row breaking the form only there cannot be detected and must not be passed.
+ *
+ * The kernel is immutable and can be used from several threads.
+ */
+final class EarlyExitKernel {
+    // Number of features visited between two checks of the bounds
+    static final int CHECK_INTERVAL = 16;
+    // Relative slack of the bounds, far above the rounding error of summing the margin in any order
+    private static final double SLACK = 1e-9;
+
+    // Features in the order they are visited
+    private final int[] order;
+    // Coefficients a_i and b_i of the terms, in visiting order
+    private final double[] a;
+    private final double[] b;
+    // Inverses 1 / w_i of the feature scales (0 for a zero scale), in visiting order
+    private final double[] inverse_scales;
+    // Magnitudes |ham_scale| + |spam_scale| and 2 * (|ham_mean * ham_scale| + |spam_mean * spam_scale|) of the parts
+    // of the terms, in visiting order; they bound the rounding error of the full kernel
+    private final double[] p;
+    private final double[] q;
+    // Margin of the all-zero sample
+    private final double zero_margin;
+    // Sum of the absolute values of the parts of zero_margin
+    private final double zero_magnitude;
+    // For every position k in the visiting order, maxima of max(A_i, 0), max(-A_i, 0), max(B_i, 0), max(-B_i, 0),
+    // p_i * w_i^2 and q_i * |w_i| over the features visited from position k on (all zero at position num_features)
+    private final double[] max_positive_a;
+    private final double[] max_negative_a;
+    private final double[] max_positive_b;
+    private final double[] max_negative_b;
+    private final double[] max_p;
+    private final double[] max_q;
+
+
+    /**
+     * Precomputes the coefficients, the visiting order and the bounds of a fitted model.
+     *
+     * @param ham_means        The means of each feature (ham emails).
+     * @param ham_variances    The variances of each feature (ham emails).
+     * @param spam_means       The means of each feature (spam emails).
+     * @param spam_variances   The variances of each feature (spam emails).
+     * @param ham_probability  The prior ham probability.
+     * @param spam_probability The prior spam probability.
+     * @param feature_scales   The scale w_i of every feature, such that x_i / w_i >= 0 and sum_i x_i / w_i <= 1.
+     */
+    EarlyExitKernel(double[] ham_means, double[] ham_variances, double[] spam_means, double[] spam_variances,
+                    double ham_probability, double spam_probability, double[] feature_scales) {
+        int num_features = ham_means.length;
+        if (feature_scales.length != num_features) {
+            throw new IllegalArgumentException("The model has " + num_features + " features but "
+                    + feature_scales.length + " feature scales were given");
+        }
+        double[] expected_terms = new double[num_features];
+        double zero_margin = Math.log(spam_probability) - Math.log(ham_probability);
+        double zero_magnitude = Math.abs(zero_margin);
+        for (int i = 0; i < num_features; i++) {
+            if (!Double.isFinite(feature_scales[i])) {
+                throw new IllegalArgumentException("Feature scale " + i + " must be finite, got "
+                        + feature_scales[i]);
+            }
+            double ham_scale = 1 / (2 * ham_variances[i]);
+            double spam_scale = -1 / (2 * spam_variances[i]);
+            double normalizer = 0.5 * (Math.log(ham_variances[i]) - Math.log(spam_variances[i]));
+            double ham_zero = ham_means[i] * ham_means[i] * ham_scale;
+            double spam_zero = spam_means[i] * spam_means[i] * spam_scale;
+            zero_margin += normalizer + ham_zero + spam_zero;
+            zero_magnitude += Math.abs(normalizer) + Math.abs(ham_zero) + Math.abs(spam_zero);
+            // E[a * x^2 + b * x] = a * (variance + mean^2) + b * mean under each class
+            double a_i = ham_scale + spam_scale;
+            double b_i = -2 * (ham_means[i] * ham_scale + spam_means[i] * spam_scale);
+            double ham_term = a_i * (ham_variances[i] + ham_means[i] * ham_means[i]) + b_i * ham_means[i];
+            double spam_term = a_i * (spam_variances[i] + spam_means[i] * spam_means[i]) + b_i * spam_means[i];
+            expected_terms[i] = ham_probability * Math.abs(ham_term) + spam_probability * Math.abs(spam_term);
+        }
+        this.zero_margin = zero_margin;
+        this.zero_magnitude = zero_magnitude;
+
+        // Visit the features by decreasing expected absolute term, ties by position
+        Integer[] features = new Integer[num_features];
+        for (int i = 0; i < num_features; i++) {
+            features[i] = i;
+        }
+        Arrays.sort(features, (x, y) -> Double.compare(expected_terms[y], expected_terms[x]));
+        order = new int[num_features];
+        a = new double[num_features];
+        b = new double[num_features];
+        inverse_scales = new double[num_features];
+        p = new double[num_features];
+        q = new double[num_features];
+        for (int k = 0; k < num_features; k++) {
+            int i = features[k];
+            double ham_scale = 1 / (2 * ham_variances[i]);
+            double spam_scale = -1 / (2 * spam_variances[i]);
+            order[k] = i;
+            a[k] = ham_scale + spam_scale;
+            b[k] = -2 * (ham_means[i] * ham_scale + spam_means[i] * spam_scale);
+            inverse_scales[k] = feature_scales[i] == 0 ? 0 : 1 / feature_scales[i];
+            p[k] = Math.abs(ham_scale) + Math.abs(spam_scale);
+            q[k] = 2 * (Math.abs(ham_means[i] * ham_scale) + Math.abs(spam_means[i] * spam_scale));
+        }
+
+        max_positive_a = new double[num_features + 1];
+        max_negative_a = new double[num_features + 1];
+        max_positive_b = new double[num_features + 1];
+        max_negative_b = new double[num_features + 1];
+        max_p = new double[num_features + 1];
+        max_q = new double[num_features + 1];
+        for (int k = num_features - 1; k >= 0; k--) {
+            double scale = feature_scales[order[k]];
+            double square = scale * scale;
+            max_positive_a[k] = Math.max(max_positive_a[k + 1], Math.max(a[k] * square, 0));
+            max_negative_a[k] = Math.max(max_negative_a[k + 1], Math.max(-a[k] * square, 0));
+            max_positive_b[k] = Math.max(max_positive_b[k + 1], Math.max(b[k] * scale, 0));
+            max_negative_b[k] = Math.max(max_negative_b[k + 1], Math.max(-b[k] * scale, 0));
+            max_p[k] = Math.max(max_p[k + 1], p[k] * square);
+            max_q[k] = Math.max(max_q[k + 1], q[k] * Math.abs(scale));
+        }
+    }
+
+
+    /**
+     * Predicts the label of a dense sample, visiting features until the label is decided.
+     *
+     * @param x         The sample with one value per feature, x_i = t_i * w_i with t_i >= 0 and sum_i t_i <= 1.
+     * @param full      The kernel scoring samples whose label is not decided early.
+     * @param evaluated A one-element array to which the number of visited features is added
+     *                  (plus the number of features if the full kernel was needed).
+     * @return The label, 0 = ham, 1 = spam, identical to the sign test of the full margin.
+     */
+    int predict(double[] x, ScoringKernel full, long[] evaluated) {
+        double margin = zero_margin;
+        double magnitude = zero_magnitude;
+        double budget = 1;
+        int num_features = order.length;
+        int k = 0;
+        while (true) {
+            // Rounding of the running budget is covered by a small absolute slack
+            double t = Math.max(budget, 0) + SLACK;
+            double upper = t * (max_positive_a[k] * t + max_positive_b[k]);
+            double lower = t * (max_negative_a[k] * t + max_negative_b[k]);
+            double slack = SLACK * (magnitude + t * (max_p[k] * t + max_q[k]));
+            if (margin - lower >= slack) {
+                evaluated[0] += k;
+                return 1;
+            }
+            if (margin + upper < -slack) {
+                evaluated[0] += k;
+                return 0;
+            }
+            if (k == num_features) {
+                break;
+            }
+            int end = Math.min(num_features, k + CHECK_INTERVAL);
+            for (; k < end; k++) {
+                double value = x[order[k]];
+                if (value != 0) {
+                    double frequency = value * inverse_scales[k];
+                    if (!(frequency > 0)) {
+                        evaluated[0] += k + 1L + num_features;
+                        return full.margin(x) < 0 ? 0 : 1;
+                    }
+                    double abs_value = Math.abs(value);
+                    margin += (a[k] * value + b[k]) * value;
+                    magnitude += (p[k] * abs_value + q[k]) * abs_value;
+                    budget -= frequency;
+                    if (budget < -SLACK) {
+                        evaluated[0] += k + 1L + num_features;
+                        return full.margin(x) < 0 ? 0 : 1;
+                    }
+                }
+            }
+        }
+        evaluated[0] += 2L * num_features;
+        return full.margin(x) < 0 ? 0 : 1;
+    }
+}
@@ -9,7 +9,16 @@
 package com.example.ml.classifier.naivebayes;
 
 import com.example.ml.classifier.Classifier;
+import com.example.ml.data.matrix.OffHeapSparseMatrix;
+import com.example.ml.data.matrix.SparseMatrix;
+import com.example.ml.parallel.WorkerPool;
 import java.lang.Math;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
 
 
 /**
@@ -20,10 +29,40 @@ import java.lang.Math;
  *
  * This class implements the Classifier interface and provides the fit and predict methods
  * required for training the classifier and making predictions.
+ *
+ * When created with a thread count or a ForkJoinPool, dense fitting is split into blocks of features
+ * and prediction into blocks of samples, which are processed in parallel. Every feature and every sample
+ * is computed exactly as in serial mode, so the parallel results are bit-identical to the serial ones.
+ * The threads created for a thread count end when the classifier is closed; the model can still be saved
+ * or scored serially afterwards.
+ * Sparse fitting is split into fixed blocks of samples whose statistics are merged in block order;
+ * its result is deterministic and equal to the serial result within floating-point tolerance.
+ *
+ * Dense samples are scored with a ScoringKernel precompiled from the fitted parameters, which evaluates both
+ * classes in one pass without logarithms or divisions; it uses SIMD instructions when the program runs with
+ * --add-modules jdk.incubator.vector.
+ *
+ * In early-exit mode (see set_early_exit), predict on dense TF-IDF samples visits the features in an order fixed at
+ * fit time and stops as soon as the remaining features cannot change the sign of the margin, with labels identical to
+ * full scoring; the average number of features visited per sample is reported by get_average_features_evaluated.
+ *
+ * Fitting replaces the parameters field by field, so a classifier must not be fitted while another thread predicts
+ * with it. To score while training, take an immutable ModelSnapshot of the fitted model (see com.example.ml.serving).
  */
-public class GaussianNaiveBayes implements Classifier {
+public class GaussianNaiveBayes implements Classifier, AutoCloseable {
+    // Number of samples per block when sparse data is fitted in parallel
+    private static final int SPARSE_FIT_BLOCK_SIZE = 1024;
+    // Minimum number of features per block when dense data is fitted in parallel
+    private static final int MIN_COLUMN_BLOCK_SIZE = 64;
+    // Minimum number of samples per block when predicting in parallel
+    private static final int MIN_ROW_BLOCK_SIZE = 16;
+    // Number of samples per block copied to the heap when off-heap data is fitted or scored
+    private static final int OFF_HEAP_BLOCK_SIZE = 4096;
+
     // Small constant added to every computed variance to avoid division by zero
     private double var_smoothing = 1e-9;
+    // Pool used for parallel fitting and prediction
+    private final WorkerPool pool;
     // Vector of variances for each feature (ham emails)
     private double[] ham_variances;
     // Vector of means for each feature (ham emails)
@@ -36,12 +75,203 @@ public class GaussianNaiveBayes implements Classifier {
     private double ham_probability;
     // Prior spam probability computed from the train data
     private double spam_probability;
+    // Log probability of the all-zero feature vector under the ham class (including the prior)
+    private double ham_zero_log_prob;
+    // Log probability of the all-zero feature vector under the spam class (including the prior)
+    private double spam_zero_log_prob;
+    // Sufficient statistics (count, means, M2) of the ham samples seen so far
+    private GaussianStatistics ham_statistics;
+    // Sufficient statistics (count, means, M2) of the spam samples seen so far
+    private GaussianStatistics spam_statistics;
+    // Parameters precompiled for scoring dense samples
+    private ScoringKernel kernel;
+    // Feature scales of early-exit prediction (the IDF vector of the samples), null if the mode is off
+    private double[] early_exit_scales = null;
+    // Parameters precompiled for early-exit prediction, null if the mode is off or the model is not fitted
+    private EarlyExitKernel early_exit_kernel;
+    // Number of dense samples predicted in early-exit mode
+    private final LongAdder early_exit_samples = new LongAdder();
+    // Number of features visited by early-exit prediction
+    private final LongAdder early_exit_features = new LongAdder();
+
+
+    /**
+     * Functional interface for work done on the block [from, to) of rows or columns.
+     */
+    private interface BlockTask {
+        void run(int from, int to);
+    }
+
+
+    /**
+     * Functional interface for work done on a block of rows of off-heap data copied to the heap.
+     */
+    private interface RowBlockTask {
+        void run(int first_row, SparseMatrix block);
+    }
+
+
+    /**
+     * Creates a classifier which fits and predicts in serial mode.
+     */
+    public GaussianNaiveBayes() {
+        this.pool = WorkerPool.of(null);
+    }
+
+
+    /**
+     * Creates a classifier which fits and predicts using the given number of threads, on a pool of its own
+     * which is shut down by close.
+     *
+     * @param num_threads The number of threads, 1 means serial mode.
+     */
+    public GaussianNaiveBayes(int num_threads) {
+        this.pool = WorkerPool.of_threads(num_threads);
+    }
+
+
+    /**
+     * Creates a classifier which fits and predicts in parallel on the given pool.
+     * The pool belongs to the caller and is not shut down by close.
+     *
+     * @param pool The pool running the parallel work, or null for serial mode.
+     */
+    public GaussianNaiveBayes(ForkJoinPool pool) {
+        this.pool = WorkerPool.of(pool);
+    }
+
+
+    /**
+     * Shuts down the pool created by the GaussianNaiveBayes(int num_threads) constructor, so its threads end.
+     * A pool given by the caller is left running. The fitted parameters stay usable for serial methods such as
+     * margin, but the classifier must not fit or predict in parallel after it is closed.
+     */
+    @Override
+    public void close() {
+        pool.close();
+    }
+
+
+    /**
+     * Creates a fitted serial classifier from its parameters, for example loaded from a model file.
+     * The classifier can predict immediately; its sufficient statistics are not known,
+     * so a later partial_fit or merge starts from empty statistics.
+     *
+     * @param means     The means of each feature, indexed by [label][feature] (0 = ham, 1 = spam).
+     * @param variances The smoothed variances of each feature, indexed by [label][feature].
+     * @param priors    The prior probabilities of the classes, indexed by label.
+     * @return The classifier.
+     */
+    public static GaussianNaiveBayes from_parameters(double[][] means, double[][] variances, double[] priors) {
+        GaussianNaiveBayes model = new GaussianNaiveBayes();
+        model.ham_means = means[0];
+        model.spam_means = means[1];
+        model.ham_variances = variances[0];
+        model.spam_variances = variances[1];
+        model.ham_probability = priors[0];
+        model.spam_probability = priors[1];
+        model.compute_zero_log_probs();
+        model.compile_kernel();
+        return model;
+    }
+
+
+    /**
+     * Sets the constant added to every variance computed by fit, partial_fit and merge (default 1e-9).
+     * It takes effect the next time the parameters are computed.
+     *
+     * @param var_smoothing The non-negative smoothing constant.
+     */
+    public void set_var_smoothing(double var_smoothing) {
+        if (!(var_smoothing >= 0)) {
+            throw new IllegalArgumentException("var_smoothing must be non-negative: " + var_smoothing);
+        }
+        this.var_smoothing = var_smoothing;
+    }
+
+
+    /**
+     * Switches early-exit prediction of dense samples on or off (default off). The samples must be rows of TfIdf
+     * with its IDF vector as feature scales: term frequencies times scales, x_i = t_i * w_i with t_i >= 0 and
+     * sum_i t_i <= 1, which bounds the terms of the features not visited yet. For such samples the labels are
+     * identical to full scoring; a sample whose visited values break the form is scored in full. The visiting order of the features and the bounds of their terms are
+     * computed when the model is fitted, or immediately if it is fitted already. Only predict(double[][]) is affected:
+     * decision_function and the sparse methods always compute complete margins.
+     *
+     * @param feature_scales The finite scale w_i of every feature, usually TfIdf.get_idf_vector(),
+     *                       or null to switch early exit off.
+     * @throws IllegalArgumentException If the model is fitted and the scales do not match its features (fitting
+     *                                  a model with another number of features throws it too).
+     */
+    public void set_early_exit(double[] feature_scales) {
+        double[] scales = feature_scales == null ? null : feature_scales.clone();
+        if (kernel != null) {
+            early_exit_kernel = compile_early_exit_kernel(scales);
+        }
+        early_exit_scales = scales;
+    }
+
+
+    /**
+     * Returns the average number of features visited per dense sample predicted in early-exit mode since the last
+     * reset of the statistics. Samples whose label was not decided early count the visited features plus all features
+     * once more for the full scoring.
+     *
+     * @return The average number of features evaluated, 0 if no sample was predicted in early-exit mode.
+     */
+    public double get_average_features_evaluated() {
+        long samples = early_exit_samples.sum();
+        return samples == 0 ? 0 : (double) early_exit_features.sum() / samples;
+    }
+
+
+    /**
+     * Resets the counts of samples and features of early-exit prediction.
+     */
+    public void reset_early_exit_statistics() {
+        early_exit_samples.reset();
+        early_exit_features.reset();
+    }
+
+
+    /**
+     * Returns the means of each feature for a class.
+     *
+     * @param label The class label, 0 = ham, 1 = spam.
+     * @return The means (not a copy).
+     */
+    public double[] get_means(int label) {
+        return label == 0 ? ham_means : spam_means;
+    }
+
+
+    /**
+     * Returns the smoothed variances of each feature for a class.
+     *
+     * @param label The class label, 0 = ham, 1 = spam.
+     * @return The variances (not a copy).
+     */
+    public double[] get_variances(int label) {
+        return label == 0 ? ham_variances : spam_variances;
+    }
+
+
+    /**
+     * Returns the prior probability of a class.
+     *
+     * @param label The class label, 0 = ham, 1 = spam.
+     * @return The prior probability.
+     */
+    public double get_prior(int label) {
+        return label == 0 ? ham_probability : spam_probability;
+    }
 
 
     /**
      * Fits the Gaussian Naive Bayes classifier by estimating the mean and variance parameters for each feature in the training data.
      * The method computes the mean and variance for each feature separately for spam and ham classes.
      * It calculates the class probabilities based on the number of spam and ham instances in the training data.
+     * Any previously seen data is discarded.
      *
      * @param X The input training data matrix with shape [num_samples, num_features].
      * @param y The target labels array indicating the class of each training sample.
@@ -51,28 +281,49 @@ public class GaussianNaiveBayes implements Classifier {
     public void fit(double[][] X, int[] y) {
 
         int num_columns = X[0].length;
-        int num_rows = X.length;
-        double spam_sum;
-        double ham_sum;
         int spam_count = 0;
         int ham_count = 0;
+        for (int label : y) {
+            if (label == 0) { // Ham
+                ham_count += 1;
+            } else { // Spam
+                spam_count += 1;
+            }
+        }
 
-        ham_variances = new double[num_columns];
-        ham_means = new double[num_columns];
-        spam_variances = new double[num_columns];
-        spam_means = new double[num_columns];
+        reset(num_columns);
+        ham_statistics.count = ham_count;
+        spam_statistics.count = spam_count;
+        for_each_block(num_columns, MIN_COLUMN_BLOCK_SIZE, (from, to) -> fit_columns(X, y, from, to));
+        update_parameters();
+    }
 
-        for (int j = 0; j < num_columns; j++) {
+
+    /**
+     * Computes the means and sums of squared deviations of the features [from, to) for both classes
+     * with two passes over the rows. The class counts must already be set in the statistics.
+     *
+     * @param X    The input training data matrix with shape [num_samples, num_features].
+     * @param y    The target labels array indicating the class of each training sample.
+     * @param from The first feature of the block (inclusive).
+     * @param to   The last feature of the block (exclusive).
+     */
+    private void fit_columns(double[][] X, int[] y, int from, int to) {
+        int num_rows = X.length;
+        long spam_count = spam_statistics.count;
+        long ham_count = ham_statistics.count;
+        double[] ham_means = ham_statistics.means;
+        double[] spam_means = spam_statistics.means;
+        double spam_sum;
+        double ham_sum;
+
+        for (int j = from; j < to; j++) {
             spam_sum = 0;
             ham_sum = 0;
-            spam_count = 0;
-            ham_count = 0;
             for (int i = 0; i < num_rows; i++) {
                 if (y[i] == 0) { // Ham
-                    ham_count += 1;
                     ham_sum += X[i][j];
                 } else { // Spam
-                    spam_count += 1;
                     spam_sum += X[i][j];
                 }
             }
@@ -81,7 +332,7 @@ public class GaussianNaiveBayes implements Classifier {
         }
 
 
-        for (int j = 0; j < num_columns; j++) {
+        for (int j = from; j < to; j++) {
             spam_sum = 0;
             ham_sum = 0;
             for (int i = 0; i < num_rows; i++) {
@@ -91,12 +342,211 @@ public class GaussianNaiveBayes implements Classifier {
                     spam_sum += Math.pow((X[i][j] - spam_means[j]),2);
                 }
             }
-            spam_variances[j] = (spam_sum/spam_count) + var_smoothing;
-            ham_variances[j] = (ham_sum/ham_count) + var_smoothing;
+            spam_statistics.m2[j] = spam_sum;
+            ham_statistics.m2[j] = ham_sum;
+        }
+    }
+
+
+    /**
+     * Fits the Gaussian Naive Bayes classifier on sparse training data.
+     * Produces the same parameters as fit(double[][], int[]) within floating-point tolerance, but only visits
+     * the non-zero entries: the zero entries of column j contribute (count - nnz_j) * mean_j^2 to its squared deviations.
+     * Any previously seen data is discarded.
+     *
+     * @param X The input training data as a sparse matrix with shape [num_samples, num_features].
+     * @param y The target labels array indicating the class of each training sample.
+     *          The labels are binary, where 0 represents the ham class and 1 represents the spam class.
+     */
+    @Override
+    public void fit(SparseMatrix X, int[] y) {
+        reset(X.cols());
+        partial_fit(X, y);
+    }
+
+
+    /**
+     * Incrementally fits the classifier on a batch of training data in a single pass.
+     * The per-class sufficient statistics (count, means and sums of squared deviations) are updated
+     * sample by sample with Welford's algorithm, so the model after several calls is the same
+     * (within floating-point tolerance) as the model fitted on all batches at once.
+     * The first call determines the number of features.
+     *
+     * @param X The input training data matrix with shape [num_samples, num_features].
+     * @param y The target labels array indicating the class of each training sample.
+     *          The labels are binary, where 0 represents the ham class and 1 represents the spam class.
+     */
+    public void partial_fit(double[][] X, int[] y) {
+        if (X.length == 0) {
+            return;
+        }
+        ensure_initialized(X[0].length);
+        for (int i = 0; i < X.length; i++) {
+            if (y[i] == 0) { // Ham
+                ham_statistics.add(X[i]);
+            } else { // Spam
+                spam_statistics.add(X[i]);
+            }
+        }
+        update_parameters();
+    }
+
+
+    /**
+     * Incrementally fits the classifier on a batch of sparse training data.
+     * The statistics of the batch are computed from its non-zero entries and merged into the
+     * per-class sufficient statistics with Chan's parallel formula.
+     * The first call determines the number of features.
+     *
+     * @param X The input training data as a sparse matrix with shape [num_samples, num_features].
+     * @param y The target labels array indicating the class of each training sample.
+     *          The labels are binary, where 0 represents the ham class and 1 represents the spam class.
+     */
+    public void partial_fit(SparseMatrix X, int[] y) {
+        ensure_initialized(X.cols());
+        if (pool.is_serial()) {
+            ham_statistics.merge(GaussianStatistics.of(X, y, 0));
+            spam_statistics.merge(GaussianStatistics.of(X, y, 1));
+        } else {
+            // Statistics of fixed blocks of rows are computed in parallel and merged in block order
+            int num_blocks = (X.rows() + SPARSE_FIT_BLOCK_SIZE - 1) / SPARSE_FIT_BLOCK_SIZE;
+            GaussianStatistics[] ham_blocks = new GaussianStatistics[num_blocks];
+            GaussianStatistics[] spam_blocks = new GaussianStatistics[num_blocks];
+            run_blocks(X.rows(), SPARSE_FIT_BLOCK_SIZE, (from, to) -> {
+                SparseMatrix block = X.slice_rows(from, to);
+                int[] block_y = Arrays.copyOfRange(y, from, to);
+                ham_blocks[from / SPARSE_FIT_BLOCK_SIZE] = GaussianStatistics.of(block, block_y, 0);
+                spam_blocks[from / SPARSE_FIT_BLOCK_SIZE] = GaussianStatistics.of(block, block_y, 1);
+            });
+            for (int b = 0; b < num_blocks; b++) {
+                ham_statistics.merge(ham_blocks[b]);
+                spam_statistics.merge(spam_blocks[b]);
+            }
+        }
+        update_parameters();
+    }
+
+
+    /**
+     * Fits the classifier on sparse training data stored off the heap. The data is read in blocks of rows
+     * copied to the heap, so the heap only holds a few blocks and the statistics, whatever the size of the data.
+     * The result equals fit(SparseMatrix, int[]) on the same data within floating-point tolerance.
+     * Any previously seen data is discarded.
+     *
+     * @param X The input training data with shape [num_samples, num_features].
+     * @param y The target labels array indicating the class of each training sample.
+     *          The labels are binary, where 0 represents the ham class and 1 represents the spam class.
+     */
+    public void fit(OffHeapSparseMatrix X, int[] y) {
+        reset(X.cols());
+        partial_fit(X, y);
+    }
+
+
+    /**
+     * Incrementally fits the classifier on sparse training data stored off the heap.
+     * The statistics of blocks of rows are computed (in parallel mode by several threads at a time)
+     * and merged in block order into the per-class sufficient statistics.
+     * The first call determines the number of features.
+     *
+     * @param X The input training data with shape [num_samples, num_features].
+     * @param y The target labels array indicating the class of each training sample.
+     *          The labels are binary, where 0 represents the ham class and 1 represents the spam class.
+     */
+    public void partial_fit(OffHeapSparseMatrix X, int[] y) {
+        if (X.rows() != y.length) {
+            throw new IllegalArgumentException("X has " + X.rows() + " rows but y has " + y.length + " labels");
+        }
+        ensure_initialized(X.cols());
+        int num_blocks = (X.rows() + OFF_HEAP_BLOCK_SIZE - 1) / OFF_HEAP_BLOCK_SIZE;
+        // Only one block per thread is on the heap at a time
+        int wave = pool.parallelism();
+        for (int first = 0; first < num_blocks; first += wave) {
+            int count = Math.min(wave, num_blocks - first);
+            GaussianStatistics[] ham_blocks = new GaussianStatistics[count];
+            GaussianStatistics[] spam_blocks = new GaussianStatistics[count];
+            int first_block = first;
+            for_each_row_block(X, first, count, (first_row, block) -> {
+                int[] block_y = Arrays.copyOfRange(y, first_row, first_row + block.rows());
+                int b = first_row / OFF_HEAP_BLOCK_SIZE - first_block;
+                ham_blocks[b] = GaussianStatistics.of(block, block_y, 0);
+                spam_blocks[b] = GaussianStatistics.of(block, block_y, 1);
+            });
+            for (int b = 0; b < count; b++) {
+                ham_statistics.merge(ham_blocks[b]);
+                spam_statistics.merge(spam_blocks[b]);
+            }
+        }
+        update_parameters();
+    }
+
+
+    /**
+     * Merges the sufficient statistics of another classifier into this one.
+     * Classifiers fitted on different shards of the data (for example by different threads or machines)
+     * can be merged into the same model a single fit on all the data would give, within floating-point tolerance.
+     *
+     * @param other The classifier to merge, it is not modified. It must have been fitted on the same number of features.
+     */
+    public void merge(GaussianNaiveBayes other) {
+        if (other.ham_statistics == null) {
+            return;
+        }
+        ensure_initialized(other.ham_statistics.means.length);
+        ham_statistics.merge(other.ham_statistics);
+        spam_statistics.merge(other.spam_statistics);
+        update_parameters();
+    }
+
+
+    /**
+     * Discards all seen data and creates empty statistics for the given number of features.
+     *
+     * @param num_features The number of features.
+     */
+    private void reset(int num_features) {
+        ham_statistics = new GaussianStatistics(num_features);
+        spam_statistics = new GaussianStatistics(num_features);
+    }
+
+
+    /**
+     * Creates empty statistics on the first incremental fit and checks the number of features on later ones.
+     *
+     * @param num_features The number of features of the new data.
+     */
+    private void ensure_initialized(int num_features) {
+        if (ham_statistics == null) {
+            reset(num_features);
+        } else if (ham_statistics.means.length != num_features) {
+            throw new IllegalArgumentException("Expected " + ham_statistics.means.length
+                    + " features but got " + num_features);
+        }
+    }
+
+
+    /**
+     * Derives the model parameters (means, smoothed variances, priors and zero-vector log probabilities)
+     * from the current sufficient statistics.
+     */
+    private void update_parameters() {
+        long ham_count = ham_statistics.count;
+        long spam_count = spam_statistics.count;
+        int num_columns = ham_statistics.means.length;
+
+        ham_means = ham_statistics.means;
+        spam_means = spam_statistics.means;
+        ham_variances = new double[num_columns];
+        spam_variances = new double[num_columns];
+        for (int j = 0; j < num_columns; j++) {
+            spam_variances[j] = spam_count == 0 ? var_smoothing : (spam_statistics.m2[j]/spam_count) + var_smoothing;
+            ham_variances[j] = ham_count == 0 ? var_smoothing : (ham_statistics.m2[j]/ham_count) + var_smoothing;
         }
 
         ham_probability = ham_count/(double)(spam_count+ham_count);
         spam_probability = 1.0 - ham_probability;
+        compute_zero_log_probs();
+        compile_kernel();
     }
 
 
@@ -111,17 +561,108 @@ public class GaussianNaiveBayes implements Classifier {
     @Override
     public int[] predict(double[][] X) {
         int[] prediction = new int[X.length];
-        double ham_log_prob = Math.log(ham_probability);
-        double spam_log_prob = Math.log(spam_probability);
-        int r = 0;
+        for_each_block(X.length, MIN_ROW_BLOCK_SIZE, (from, to) -> predict_rows(X, prediction, from, to));
+        return prediction;
+    }
 
-        for (double[] x: X) {
-            ham_log_prob = Math.log(ham_probability);
-            spam_log_prob = Math.log(spam_probability);
 
-            for (int i = 0; i < x.length; i++) {
-                ham_log_prob += log_gaussianDistribution(x[i], ham_means[i], ham_variances[i]);;
-                spam_log_prob += log_gaussianDistribution(x[i], spam_means[i], spam_variances[i]);
+    /**
+     * Predicts the class labels of the rows [from, to) of dense test data.
+     *
+     * @param X          The input test data matrix with shape [num_samples, num_features].
+     * @param prediction The array receiving the predicted labels.
+     * @param from       The first row of the block (inclusive).
+     * @param to         The last row of the block (exclusive).
+     */
+    private void predict_rows(double[][] X, int[] prediction, int from, int to) {
+        ScoringKernel kernel = this.kernel;
+        EarlyExitKernel early_exit_kernel = this.early_exit_kernel;
+        if (early_exit_kernel != null) {
+            long[] evaluated = new long[1];
+            for (int r = from; r < to; r++) {
+                prediction[r] = early_exit_kernel.predict(X[r], kernel, evaluated);
+            }
+            early_exit_samples.add(to - from);
+            early_exit_features.add(evaluated[0]);
+            return;
+        }
+        for (int r = from; r < to; r++) {
+            if (kernel.margin(X[r]) < 0) {
+                prediction[r] = 0;
+            } else {
+                prediction[r] = 1;
+            }
+        }
+    }
+
+
+    /**
+     * Computes the log-probability margin log P(spam | x) - log P(ham | x) (up to the shared evidence term)
+     * of every sample of dense test data.
+     *
+     * @param X The input test data matrix with shape [num_samples, num_features].
+     * @return An array with the margin of every sample.
+     */
+    @Override
+    public double[] decision_function(double[][] X) {
+        double[] margins = new double[X.length];
+        ScoringKernel kernel = this.kernel;
+        for_each_block(X.length, MIN_ROW_BLOCK_SIZE, (from, to) -> {
+            for (int r = from; r < to; r++) {
+                margins[r] = kernel.margin(X[r]);
+            }
+        });
+        return margins;
+    }
+
+
+    /**
+     * Returns whether dense samples are scored with SIMD instructions, which requires the jdk.incubator.vector module.
+     *
+     * @return True if the vectorized scoring kernel is used.
+     */
+    public boolean is_vectorized() {
+        return kernel != null && kernel.is_vectorized();
+    }
+
+
+    /**
+     * Predicts the class labels for sparse test data using the fitted Gaussian Naive Bayes classifier.
+     * The log probability of each class starts from the precomputed log probability of the all-zero vector
+     * and is corrected only for the non-zero features of the sample, so the cost depends on the number of
+     * non-zero features instead of the vocabulary size. The result matches predict(double[][]) within floating-point tolerance.
+     *
+     * @param X The input test data as a sparse matrix with shape [num_samples, num_features].
+     * @return An array of predicted class labels for the test data, where 0 represents the ham class and 1 represents the spam class.
+     */
+    @Override
+    public int[] predict(SparseMatrix X) {
+        int[] prediction = new int[X.rows()];
+        for_each_block(X.rows(), MIN_ROW_BLOCK_SIZE, (from, to) -> predict_rows(X, prediction, from, to));
+        return prediction;
+    }
+
+
+    /**
+     * Predicts the class labels of the rows [from, to) of sparse test data.
+     *
+     * @param X          The input test data as a sparse matrix with shape [num_samples, num_features].
+     * @param prediction The array receiving the predicted labels.
+     * @param from       The first row of the block (inclusive).
+     * @param to         The last row of the block (exclusive).
+     */
+    private void predict_rows(SparseMatrix X, int[] prediction, int from, int to) {
+        int[] indices = X.get_indices();
+        double[] values = X.get_values();
+
+        for (int r = from; r < to; r++) {
+            double ham_log_prob = ham_zero_log_prob;
+            double spam_log_prob = spam_zero_log_prob;
+
+            for (int k = X.row_start(r); k < X.row_end(r); k++) {
+                int i = indices[k];
+                ham_log_prob += log_gaussianCorrection(values[k], ham_means[i], ham_variances[i]);
+                spam_log_prob += log_gaussianCorrection(values[k], spam_means[i], spam_variances[i]);
             }
 
             if (ham_log_prob > spam_log_prob) {
@@ -129,13 +670,200 @@ public class GaussianNaiveBayes implements Classifier {
             } else {
                 prediction[r] = 1;
             }
-            r++;
+        }
+    }
+
+
+    /**
+     * Computes the log-probability margin log P(spam | x) - log P(ham | x) (up to the shared evidence term)
+     * of every sample of sparse test data. A sample is predicted as spam when its margin is not negative,
+     * and the absolute value of the margin measures the confidence of the prediction.
+     *
+     * @param X The input test data as a sparse matrix with shape [num_samples, num_features].
+     * @return An array with the margin of every sample.
+     */
+    @Override
+    public double[] decision_function(SparseMatrix X) {
+        double[] margins = new double[X.rows()];
+        for_each_block(X.rows(), MIN_ROW_BLOCK_SIZE, (from, to) -> {
+            for (int r = from; r < to; r++) {
+                margins[r] = margin(X.get_indices(), X.get_values(), X.row_start(r), X.row_end(r));
+            }
+        });
+        return margins;
+    }
+
 
+    /**
+     * Computes the log-probability margin (spam minus ham) of a single sparse sample given by its non-zero entries.
+     *
+     * @param indices The array holding the feature indices of the non-zero entries.
+     * @param values  The array holding the values of the non-zero entries.
+     * @param from    The position of the first entry of the sample (inclusive).
+     * @param to      The position of the last entry of the sample (exclusive).
+     * @return The margin of the sample.
+     */
+    public double margin(int[] indices, double[] values, int from, int to) {
+        double ham_log_prob = ham_zero_log_prob;
+        double spam_log_prob = spam_zero_log_prob;
+        for (int k = from; k < to; k++) {
+            int i = indices[k];
+            ham_log_prob += log_gaussianCorrection(values[k], ham_means[i], ham_variances[i]);
+            spam_log_prob += log_gaussianCorrection(values[k], spam_means[i], spam_variances[i]);
+        }
+        return spam_log_prob - ham_log_prob;
+    }
+
+
+    /**
+     * Predicts the class labels of sparse test data stored off the heap, reading it in blocks of rows.
+     *
+     * @param X The input test data with shape [num_samples, num_features].
+     * @return An array of predicted class labels for the test data, where 0 represents the ham class and 1 represents the spam class.
+     */
+    public int[] predict(OffHeapSparseMatrix X) {
+        double[] margins = decision_function(X);
+        int[] prediction = new int[margins.length];
+        for (int r = 0; r < margins.length; r++) {
+            prediction[r] = margins[r] < 0 ? 0 : 1;
         }
         return prediction;
     }
 
 
+    /**
+     * Computes the log-probability margin (spam minus ham) of every sample of sparse test data stored off the heap,
+     * reading it in blocks of rows.
+     *
+     * @param X The input test data with shape [num_samples, num_features].
+     * @return An array with the margin of every sample.
+     */
+    public double[] decision_function(OffHeapSparseMatrix X) {
+        double[] margins = new double[X.rows()];
+        int num_blocks = (X.rows() + OFF_HEAP_BLOCK_SIZE - 1) / OFF_HEAP_BLOCK_SIZE;
+        for_each_row_block(X, 0, num_blocks, (first_row, block) -> {
+            for (int r = 0; r < block.rows(); r++) {
+                margins[first_row + r] = margin(block.get_indices(), block.get_values(), block.row_start(r), block.row_end(r));
+            }
+        });
+        return margins;
+    }
+
+
+    /**
+     * Copies the blocks [first_block, first_block + num_blocks) of OFF_HEAP_BLOCK_SIZE rows of off-heap data
+     * to the heap one at a time and runs a task on each of them; in parallel mode the blocks are processed
+     * on the pool, one block per task.
+     *
+     * @param X           The off-heap data.
+     * @param first_block The first block.
+     * @param num_blocks  The number of blocks.
+     * @param task        The task run on every block.
+     */
+    private void for_each_row_block(OffHeapSparseMatrix X, int first_block, int num_blocks, RowBlockTask task) {
+        BlockTask blocks = (from, to) -> {
+            for (int b = first_block + from; b < first_block + to; b++) {
+                int first_row = b * OFF_HEAP_BLOCK_SIZE;
+                task.run(first_row, X.slice_rows(first_row, Math.min(X.rows(), first_row + OFF_HEAP_BLOCK_SIZE)));
+            }
+        };
+        if (pool.is_serial()) {
+            blocks.run(0, num_blocks);
+        } else {
+            run_blocks(num_blocks, 1, blocks);
+        }
+    }
+
+
+    /**
+     * Runs a task over [0, size) split into blocks. In serial mode the whole range is a single block, in parallel mode
+     * the range is split into about four blocks per thread (but not smaller than min_block_size).
+     *
+     * @param size           The size of the range.
+     * @param min_block_size The minimum number of elements per block.
+     * @param task           The task run on every block.
+     */
+    private void for_each_block(int size, int min_block_size, BlockTask task) {
+        if (pool.is_serial()) {
+            task.run(0, size);
+            return;
+        }
+        int block_size = Math.max(min_block_size, (size + 4 * pool.parallelism() - 1) / (4 * pool.parallelism()));
+        run_blocks(size, block_size, task);
+    }
+
+
+    /**
+     * Runs a task on the pool over the blocks [0, block_size), [block_size, 2 * block_size), ... of [0, size)
+     * and waits until all blocks are finished.
+     *
+     * @param size       The size of the range.
+     * @param block_size The number of elements per block.
+     * @param task       The task run on every block.
+     */
+    private void run_blocks(int size, int block_size, BlockTask task) {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int from = 0; from < size; from += block_size) {
+            int block_from = from;
+            int block_to = Math.min(size, from + block_size);
+            tasks.add(pool.submit(() -> task.run(block_from, block_to)));
+        }
+        for (ForkJoinTask<?> block : tasks) {
+            block.join();
+        }
+    }
+
+
+    /**
+     * Precomputes, for each class, the log prior plus the sum of the log densities of a zero value over all features.
+     * This is the log probability of the all-zero feature vector used as the starting point of sparse prediction.
+     */
+    private void compute_zero_log_probs() {
+        ham_zero_log_prob = Math.log(ham_probability);
+        spam_zero_log_prob = Math.log(spam_probability);
+        for (int i = 0; i < ham_means.length; i++) {
+            ham_zero_log_prob += log_gaussianDistribution(0, ham_means[i], ham_variances[i]);
+            spam_zero_log_prob += log_gaussianDistribution(0, spam_means[i], spam_variances[i]);
+        }
+    }
+
+
+    /**
+     * Precompiles the current parameters into the kernels used for scoring dense samples.
+     */
+    private void compile_kernel() {
+        kernel = ScoringKernel.create(ham_means, ham_variances, spam_means, spam_variances,
+                ham_probability, spam_probability);
+        early_exit_kernel = compile_early_exit_kernel(early_exit_scales);
+    }
+
+
+    /**
+     * Precompiles the current parameters into the kernel used for early-exit prediction.
+     *
+     * @param feature_scales The feature scales of the samples, or null if early exit is off.
+     * @return The kernel, null if early exit is off.
+     */
+    private EarlyExitKernel compile_early_exit_kernel(double[] feature_scales) {
+        return feature_scales == null ? null : new EarlyExitKernel(ham_means, ham_variances, spam_means,
+                spam_variances, ham_probability, spam_probability, feature_scales);
+    }
+
+
+    /**
+     * Calculates the difference between the logarithm of the Gaussian density at x and at zero,
+     * i.e. log N(x; mean, variance) - log N(0; mean, variance) = x * (2 * mean - x) / (2 * variance).
+     *
+     * @param x        The value for which to calculate the correction.
+     * @param mean     The mean of the Gaussian distribution.
+     * @param variance The variance of the Gaussian distribution.
+     * @return The log density correction for a non-zero value.
+     */
+    private static double log_gaussianCorrection(double x, double mean, double variance) {
+        return x * (2 * mean - x) / (2 * variance);
+    }
+
+
     /**
      * Calculates the logarithm of the Gaussian distribution probability density function for a given value,
      * mean, and variance.
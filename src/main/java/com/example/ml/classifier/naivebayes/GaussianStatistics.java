@@ -0,0 +1,219 @@
+/**
+ * The "com.example.ml.classifier.naivebayes" package contains implementations of the Naive Bayes classifier.
+ * This package provides classes and utilities for training and using Naive Bayes classifiers,
+ * which are probabilistic models based on the Bayes' theorem and the assumption of feature independence.
+ *
+ * Implementations of the Naive Bayes classifier, such as Gaussian Naive Bayes
+ * can be found within this package or in its sub-packages.
+ */
+package com.example.ml.classifier.naivebayes;
+
+import com.example.ml.data.matrix.SparseMatrix;
+import java.util.Arrays;
+
+
+/**
+ * The GaussianStatistics class holds the sufficient statistics of the features of one class:
+ * the number of samples, the mean of every feature and the sum of squared deviations from the mean (M2).
+ * Samples are added one at a time with Welford's update, and statistics computed on different
+ * batches, shards or threads are combined with Chan's parallel formula, giving the same
+ * means and variances as a single pass over all the samples (within floating-point tolerance).
+ * Statistics of a subset can also be removed again with subtract, which is how cross-validation
+ * derives the statistics of every training fold from the statistics of the whole data set.
+ */
+public class GaussianStatistics {
+    // Number of samples seen
+    long count;
+    // Mean of every feature
+    final double[] means;
+    // Sum of squared deviations from the mean of every feature
+    final double[] m2;
+
+
+    /**
+     * Creates empty statistics for the given number of features.
+     *
+     * @param num_features The number of features.
+     */
+    public GaussianStatistics(int num_features) {
+        means = new double[num_features];
+        m2 = new double[num_features];
+    }
+
+
+    /**
+     * Adds a single sample using Welford's online update.
+     *
+     * @param x The feature vector of the sample.
+     */
+    public void add(double[] x) {
+        count++;
+        for (int j = 0; j < means.length; j++) {
+            double delta = x[j] - means[j];
+            means[j] += delta / count;
+            m2[j] += delta * (x[j] - means[j]);
+        }
+    }
+
+
+    /**
+     * Merges other statistics into these statistics using Chan's parallel formula.
+     *
+     * @param other The statistics to merge, they are not modified.
+     */
+    public void merge(GaussianStatistics other) {
+        if (other.means.length != means.length) {
+            throw new IllegalArgumentException("Cannot merge statistics of " + other.means.length
+                    + " features into statistics of " + means.length + " features");
+        }
+        if (other.count == 0) {
+            return;
+        }
+        if (count == 0) {
+            count = other.count;
+            System.arraycopy(other.means, 0, means, 0, means.length);
+            System.arraycopy(other.m2, 0, m2, 0, m2.length);
+            return;
+        }
+        double total = count + other.count;
+        double weight = other.count / total;
+        double cross = count * (double) other.count / total;
+        for (int j = 0; j < means.length; j++) {
+            double delta = other.means[j] - means[j];
+            means[j] += delta * weight;
+            m2[j] += other.m2[j] + delta * delta * cross;
+        }
+        count += other.count;
+    }
+
+
+    /**
+     * Removes from these statistics the statistics of a subset of their samples, inverting Chan's formula:
+     * the remaining n_a = n - n_b samples have mean (n * mean - n_b * mean_b) / n_a and
+     * M2_a = M2 - M2_b - (mean_b - mean_a)^2 * n_a * n_b / n. Rounding can make M2_a slightly negative,
+     * in which case it is set to zero.
+     *
+     * @param other The statistics of the removed samples, they are not modified.
+     */
+    public void subtract(GaussianStatistics other) {
+        if (other.means.length != means.length) {
+            throw new IllegalArgumentException("Cannot subtract statistics of " + other.means.length
+                    + " features from statistics of " + means.length + " features");
+        }
+        if (other.count > count) {
+            throw new IllegalArgumentException("Cannot subtract statistics of " + other.count
+                    + " samples from statistics of " + count + " samples");
+        }
+        if (other.count == 0) {
+            return;
+        }
+        long remaining = count - other.count;
+        if (remaining == 0) {
+            count = 0;
+            Arrays.fill(means, 0);
+            Arrays.fill(m2, 0);
+            return;
+        }
+        double cross = remaining * (double) other.count / count;
+        for (int j = 0; j < means.length; j++) {
+            double mean = (count * means[j] - other.count * other.means[j]) / remaining;
+            double delta = other.means[j] - mean;
+            means[j] = mean;
+            m2[j] = Math.max(0, m2[j] - other.m2[j] - delta * delta * cross);
+        }
+        count = remaining;
+    }
+
+
+    /**
+     * Returns a copy of these statistics.
+     *
+     * @return The copy.
+     */
+    public GaussianStatistics copy() {
+        GaussianStatistics copy = new GaussianStatistics(means.length);
+        copy.merge(this);
+        return copy;
+    }
+
+
+    /**
+     * Returns the number of samples.
+     *
+     * @return The number of samples.
+     */
+    public long get_count() {
+        return count;
+    }
+
+
+    /**
+     * Returns the mean of every feature.
+     *
+     * @return The means (not a copy).
+     */
+    public double[] get_means() {
+        return means;
+    }
+
+
+    /**
+     * Returns the sum of squared deviations from the mean of every feature.
+     *
+     * @return The sums of squared deviations (not a copy).
+     */
+    public double[] get_m2() {
+        return m2;
+    }
+
+
+    /**
+     * Computes the statistics of the rows of a sparse matrix that belong to one class, visiting only the non-zero entries.
+     * The zero entries of feature j contribute (count - nnz_j) * mean_j^2 to its sum of squared deviations.
+     *
+     * @param X     The sparse data matrix.
+     * @param y     The labels of the rows of X.
+     * @param label The label of the class whose rows are used.
+     * @return The statistics of the selected rows.
+     */
+    public static GaussianStatistics of(SparseMatrix X, int[] y, int label) {
+        GaussianStatistics statistics = new GaussianStatistics(X.cols());
+        int[] indices = X.get_indices();
+        double[] values = X.get_values();
+        // Number of non-zero entries for each feature
+        int[] nnz = new int[X.cols()];
+
+        // Sum the non-zero values (stored in the means array until divided by the count)
+        for (int i = 0; i < X.rows(); i++) {
+            if (y[i] != label) {
+                continue;
+            }
+            statistics.count++;
+            for (int k = X.row_start(i); k < X.row_end(i); k++) {
+                statistics.means[indices[k]] += values[k];
+                nnz[indices[k]]++;
+            }
+        }
+        if (statistics.count == 0) {
+            return statistics;
+        }
+        for (int j = 0; j < nnz.length; j++) {
+            statistics.means[j] = statistics.means[j] / statistics.count;
+        }
+
+        // Sum squared deviations of the non-zero values, then add the contribution of the zero values
+        for (int i = 0; i < X.rows(); i++) {
+            if (y[i] != label) {
+                continue;
+            }
+            for (int k = X.row_start(i); k < X.row_end(i); k++) {
+                double deviation = values[k] - statistics.means[indices[k]];
+                statistics.m2[indices[k]] += deviation * deviation;
+            }
+        }
+        for (int j = 0; j < nnz.length; j++) {
+            statistics.m2[j] += (statistics.count - nnz[j]) * statistics.means[j] * statistics.means[j];
+        }
+        return statistics;
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * The "com.example.ml.classifier.naivebayes" package contains implementations of the Naive Bayes classifier.
+ * This package provides classes and utilities for training and using Naive Bayes classifiers,
+ * which are probabilistic models based on the Bayes' theorem and the assumption of feature independence.
+ *
+ * Implementations of the Naive Bayes classifier, such as Gaussian Naive Bayes
+ * can be found within this package or in its sub-packages.
+ */
+package com.example.ml.classifier.naivebayes;
+
+
+/**
+ * The ScoringKernel class holds the parameters of a fitted Gaussian Naive Bayes model precompiled for scoring
+ * dense samples. The log density of a class is
+ * -0.5 * log(2 * pi * variance) - (x - mean)^2 / (2 * variance) summed over the features; everything except x
+ * is fixed after fitting, so the logarithms and the priors are summed into a single bias and the divisions are
+ * replaced by precomputed scales. Both classes are evaluated in one pass over contiguous arrays:
+ *
+ *   margin(x) = bias + sum_i (x_i - ham_mean_i)^2 * ham_scale_i + (x_i - spam_mean_i)^2 * spam_scale_i
+ *
+ * with ham_scale = 1 / (2 * ham_variance) and spam_scale = -1 / (2 * spam_variance); the margin is
+ * log P(spam | x) - log P(ham | x) up to the shared evidence term.
+ *
+ * This class evaluates the sum with scalar code. If the jdk.incubator.vector module is available at run time
+ * (java --add-modules jdk.incubator.vector), create() returns a VectorScoringKernel, which evaluates it with SIMD
+ * instructions.
+ */
+class ScoringKernel {
+    // Name of the SIMD implementation, loaded only if its module is available
+    private static final String VECTOR_KERNEL = "com.example.ml.classifier.naivebayes.VectorScoringKernel";
+
+    // Log prior ratio plus the sum of the log normalizer differences of all features
+    protected final double bias;
+    // Means of each feature (ham emails)
+    protected final double[] ham_means;
+    // Means of each feature (spam emails)
+    protected final double[] spam_means;
+    // 1 / (2 * variance) of each feature (ham emails)
+    protected final double[] ham_scales;
+    // -1 / (2 * variance) of each feature (spam emails)
+    protected final double[] spam_scales;
+
+
+    /**
+     * Precompiles the parameters of a fitted model.
+     *
+     * @param ham_means        The means of each feature (ham emails).
+     * @param ham_variances    The variances of each feature (ham emails).
+     * @param spam_means       The means of each feature (spam emails).
+     * @param spam_variances   The variances of each feature (spam emails).
+     * @param ham_probability  The prior ham probability.
+     * @param spam_probability The prior spam probability.
+     */
+    protected ScoringKernel(double[] ham_means, double[] ham_variances, double[] spam_means, double[] spam_variances,
+                            double ham_probability, double spam_probability) {
+        int num_features = ham_means.length;
+        this.ham_means = ham_means.clone();
+        this.spam_means = spam_means.clone();
+        this.ham_scales = new double[num_features];
+        this.spam_scales = new double[num_features];
+        double bias = Math.log(spam_probability) - Math.log(ham_probability);
+        for (int i = 0; i < num_features; i++) {
+            ham_scales[i] = 1 / (2 * ham_variances[i]);
+            spam_scales[i] = -1 / (2 * spam_variances[i]);
+            bias += 0.5 * (Math.log(ham_variances[i]) - Math.log(spam_variances[i]));
+        }
+        this.bias = bias;
+    }
+
+
+    /**
+     * Creates the fastest kernel available: the SIMD kernel if the jdk.incubator.vector module
+     * is present at run time, otherwise the scalar kernel.
+     *
+     * @param ham_means        The means of each feature (ham emails).
+     * @param ham_variances    The variances of each feature (ham emails).
+     * @param spam_means       The means of each feature (spam emails).
+     * @param spam_variances   The variances of each feature (spam emails).
+     * @param ham_probability  The prior ham probability.
+     * @param spam_probability The prior spam probability.
+     * @return The kernel.
+     */
+    static ScoringKernel create(double[] ham_means, double[] ham_variances, double[] spam_means,
+                                double[] spam_variances, double ham_probability, double spam_probability) {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (ScoringKernel) Class.forName(VECTOR_KERNEL)
+                        .getDeclaredConstructor(double[].class, double[].class, double[].class, double[].class,
+                                double.class, double.class)
+                        .newInstance(ham_means, ham_variances, spam_means, spam_variances,
+                                ham_probability, spam_probability);
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Fall back to the scalar kernel
+            }
+        }
+        return new ScoringKernel(ham_means, ham_variances, spam_means, spam_variances,
+                ham_probability, spam_probability);
+    }
+
+
+    /**
+     * Computes the margin log P(spam | x) - log P(ham | x) (up to the shared evidence term) of a dense sample.
+     *
+     * @param x The sample with one value per feature.
+     * @return The margin, not negative when the sample is predicted as spam.
+     */
+    double margin(double[] x) {
+        return bias + sum(x, 0);
+    }
+
+
+    /**
+     * Sums the per-feature terms of the margin from a given feature to the end.
+     *
+     * @param x    The sample with one value per feature.
+     * @param from The first feature (inclusive).
+     * @return The sum of the terms of the features [from, x.length).
+     */
+    protected final double sum(double[] x, int from) {
+        double sum = 0;
+        for (int i = from; i < x.length; i++) {
+            double ham_difference = x[i] - ham_means[i];
+            double spam_difference = x[i] - spam_means[i];
+            sum += ham_difference * ham_difference * ham_scales[i] + spam_difference * spam_difference * spam_scales[i];
+        }
+        return sum;
+    }
+
+
+    /**
+     * Returns whether this kernel uses SIMD instructions.
+     *
+     * @return False for the scalar kernel.
+     */
+    boolean is_vectorized() {
+        return false;
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * The "com.example.ml.classifier.naivebayes" package contains implementations of the Naive Bayes classifier.
+ * This package provides classes and utilities for training and using Naive Bayes classifiers,
+ * which are probabilistic models based on the Bayes' theorem and the assumption of feature independence.
+ *
+ * Implementations of the Naive Bayes classifier, such as Gaussian Naive Bayes
+ * can be found within this package or in its sub-packages.
+ */
+package com.example.ml.classifier.naivebayes;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+
+/**
+ * The VectorScoringKernel class evaluates the margin of ScoringKernel with the Vector API, processing as many
+ * features per instruction as the preferred vector shape of the CPU holds (for example 4 doubles with AVX2).
+ * Both classes are accumulated in the same vector with fused multiply-adds; the remaining features that do not fill
+ * a whole vector are summed with scalar code.
+ *
+ * It is only loaded through ScoringKernel.create when the jdk.incubator.vector module is present, so the classifier
+ * works without the module. The lanes are summed in a different order than in the scalar kernel, so the margins
+ * agree with it within floating-point tolerance.
+ */
+final class VectorScoringKernel extends ScoringKernel {
+    // Preferred vector shape of the CPU
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+
+    /**
+     * Precompiles the parameters of a fitted model.
+     *
+     * @param ham_means        The means of each feature (ham emails).
+     * @param ham_variances    The variances of each feature (ham emails).
+     * @param spam_means       The means of each feature (spam emails).
+     * @param spam_variances   The variances of each feature (spam emails).
+     * @param ham_probability  The prior ham probability.
+     * @param spam_probability The prior spam probability.
+     */
+    VectorScoringKernel(double[] ham_means, double[] ham_variances, double[] spam_means, double[] spam_variances,
+                        double ham_probability, double spam_probability) {
+        super(ham_means, ham_variances, spam_means, spam_variances, ham_probability, spam_probability);
+    }
+
+
+    /**
+     * Computes the margin log P(spam | x) - log P(ham | x) (up to the shared evidence term) of a dense sample.
+     *
+     * @param x The sample with one value per feature.
+     * @return The margin, not negative when the sample is predicted as spam.
+     */
+    @Override
+    double margin(double[] x) {
+        DoubleVector accumulator = DoubleVector.zero(SPECIES);
+        int bound = SPECIES.loopBound(x.length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector values = DoubleVector.fromArray(SPECIES, x, i);
+            DoubleVector ham_difference = values.sub(DoubleVector.fromArray(SPECIES, ham_means, i));
+            DoubleVector spam_difference = values.sub(DoubleVector.fromArray(SPECIES, spam_means, i));
+            accumulator = ham_difference.mul(ham_difference)
+                    .fma(DoubleVector.fromArray(SPECIES, ham_scales, i), accumulator);
+            accumulator = spam_difference.mul(spam_difference)
+                    .fma(DoubleVector.fromArray(SPECIES, spam_scales, i), accumulator);
+        }
+        return bias + accumulator.reduceLanes(VectorOperators.ADD) + sum(x, i);
+    }
+
+
+    /**
+     * Returns whether this kernel uses SIMD instructions.
+     *
+     * @return True.
+     */
+    @Override
+    boolean is_vectorized() {
+        return true;
+    }
+}
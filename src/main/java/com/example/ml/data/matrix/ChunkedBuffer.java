@@ -0,0 +1,206 @@
+/**
+ * Provides matrix types used to hold feature vectors between the feature extraction and classification stages.
+ */
+package com.example.ml.data.matrix;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+
+/**
+ * The ChunkedBuffer class is a growable array of ints, longs or doubles outside the Java heap. A single ByteBuffer
+ * holds at most 2 GB, so the array is split into chunks of CHUNK_SIZE bytes; all chunks but the last one are full,
+ * and the last one doubles in size until it is full. The chunks are either direct buffers or regions of a file
+ * mapped into memory, in which case the operating system pages them in and out and the array can be much larger
+ * than the heap and than the physical memory. Values are stored in little-endian order.
+ *
+ * The chunks are ByteBuffers rather than MemorySegments: at the Java version this project targets (19), the
+ * java.lang.foreign API is a preview API (JEP 424), usable only with --enable-preview at compile and run time.
+ */
+class ChunkedBuffer {
+    // Number of bits of the offset inside a chunk
+    private static final int CHUNK_BITS = 26;
+    // Size of a full chunk in bytes (64 MB)
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    // Size of the first chunk in bytes
+    private static final int MIN_CHUNK_SIZE = 4096;
+
+    // Mapped file, null for direct memory
+    private final FileChannel channel;
+    // Mode of the mapped chunks
+    private final FileChannel.MapMode mode;
+    // Chunks holding the bytes [c * CHUNK_SIZE, c * CHUNK_SIZE + chunks[c].capacity())
+    private ByteBuffer[] chunks = new ByteBuffer[0];
+    // Total capacity of the chunks in bytes
+    private long capacity = 0;
+
+
+    /**
+     * Creates an empty buffer in direct memory or in a file opened for reading and writing.
+     *
+     * @param channel The file, or null for direct memory.
+     */
+    ChunkedBuffer(FileChannel channel) {
+        this.channel = channel;
+        this.mode = FileChannel.MapMode.READ_WRITE;
+    }
+
+
+    /**
+     * Maps the first bytes of an existing file for reading.
+     *
+     * @param channel The file.
+     * @param size    The number of bytes to map.
+     * @throws IOException If the file cannot be mapped.
+     */
+    ChunkedBuffer(FileChannel channel, long size) throws IOException {
+        this.channel = channel;
+        this.mode = FileChannel.MapMode.READ_ONLY;
+        int num_chunks = (int) ((size + CHUNK_SIZE - 1) >>> CHUNK_BITS);
+        chunks = new ByteBuffer[num_chunks];
+        for (int c = 0; c < num_chunks; c++) {
+            long start = (long) c << CHUNK_BITS;
+            chunks[c] = channel.map(mode, start, Math.min(CHUNK_SIZE, size - start)).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        capacity = size;
+    }
+
+
+    /**
+     * Grows the buffer so that it holds at least the given number of bytes.
+     *
+     * @param bytes The required capacity in bytes.
+     */
+    void ensure_capacity(long bytes) {
+        while (capacity < bytes) {
+            int last = chunks.length - 1;
+            if (last >= 0 && chunks[last].capacity() < CHUNK_SIZE) {
+                // Enlarge the last chunk
+                long needed = bytes - ((long) last << CHUNK_BITS);
+                int size = (int) Math.min(CHUNK_SIZE, Math.max(2L * chunks[last].capacity(), needed));
+                capacity += size - chunks[last].capacity();
+                chunks[last] = allocate(last, size, chunks[last]);
+            } else {
+                int size = (int) Math.min(CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, bytes - capacity));
+                chunks = Arrays.copyOf(chunks, last + 2);
+                chunks[last + 1] = allocate(last + 1, size, null);
+                capacity += size;
+            }
+        }
+    }
+
+
+    /**
+     * Returns the int at an index of the buffer viewed as an int array.
+     *
+     * @param index The index.
+     * @return The value.
+     */
+    int get_int(long index) {
+        long position = index << 2;
+        return chunks[(int) (position >>> CHUNK_BITS)].getInt((int) position & (CHUNK_SIZE - 1));
+    }
+
+
+    /**
+     * Sets the int at an index of the buffer viewed as an int array.
+     *
+     * @param index The index.
+     * @param value The value.
+     */
+    void put_int(long index, int value) {
+        long position = index << 2;
+        chunks[(int) (position >>> CHUNK_BITS)].putInt((int) position & (CHUNK_SIZE - 1), value);
+    }
+
+
+    /**
+     * Returns the long at an index of the buffer viewed as a long array.
+     *
+     * @param index The index.
+     * @return The value.
+     */
+    long get_long(long index) {
+        long position = index << 3;
+        return chunks[(int) (position >>> CHUNK_BITS)].getLong((int) position & (CHUNK_SIZE - 1));
+    }
+
+
+    /**
+     * Sets the long at an index of the buffer viewed as a long array.
+     *
+     * @param index The index.
+     * @param value The value.
+     */
+    void put_long(long index, long value) {
+        long position = index << 3;
+        chunks[(int) (position >>> CHUNK_BITS)].putLong((int) position & (CHUNK_SIZE - 1), value);
+    }
+
+
+    /**
+     * Returns the double at an index of the buffer viewed as a double array.
+     *
+     * @param index The index.
+     * @return The value.
+     */
+    double get_double(long index) {
+        long position = index << 3;
+        return chunks[(int) (position >>> CHUNK_BITS)].getDouble((int) position & (CHUNK_SIZE - 1));
+    }
+
+
+    /**
+     * Sets the double at an index of the buffer viewed as a double array.
+     *
+     * @param index The index.
+     * @param value The value.
+     */
+    void put_double(long index, double value) {
+        long position = index << 3;
+        chunks[(int) (position >>> CHUNK_BITS)].putDouble((int) position & (CHUNK_SIZE - 1), value);
+    }
+
+
+    /**
+     * Writes the modified chunks of a mapped buffer to the file. Does nothing for direct memory.
+     */
+    void force() {
+        for (ByteBuffer chunk : chunks) {
+            if (chunk instanceof MappedByteBuffer) {
+                ((MappedByteBuffer) chunk).force();
+            }
+        }
+    }
+
+
+    /**
+     * Allocates or maps a chunk, keeping the contents of the chunk it replaces.
+     *
+     * @param index    The index of the chunk.
+     * @param size     The size of the chunk in bytes.
+     * @param previous The smaller chunk at the same index, or null.
+     * @return The chunk.
+     */
+    private ByteBuffer allocate(int index, int size, ByteBuffer previous) {
+        if (channel != null) {
+            // Mapping a larger region of the file keeps the bytes written through the previous mapping
+            try {
+                return channel.map(mode, (long) index << CHUNK_BITS, size).order(ByteOrder.LITTLE_ENDIAN);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        ByteBuffer chunk = ByteBuffer.allocateDirect(size).order(ByteOrder.LITTLE_ENDIAN);
+        if (previous != null) {
+            chunk.put(previous.duplicate().clear());
+            chunk.clear();
+        }
+        return chunk;
+    }
+}
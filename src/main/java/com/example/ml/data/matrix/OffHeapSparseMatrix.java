@@ -0,0 +1,332 @@
+/**
+ * Provides matrix types used to hold feature vectors between the feature extraction and classification stages.
+ */
+package com.example.ml.data.matrix;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * The OffHeapSparseMatrix class is an immutable CSR matrix, like SparseMatrix, whose arrays live outside the Java
+ * heap: in direct memory, or in files of a directory mapped into memory. Its size is not limited by -Xmx and the
+ * garbage collector never scans or copies it, so a feature matrix several times larger than the heap can be built
+ * and used for training and scoring (see GaussianNaiveBayes.fit(OffHeapSparseMatrix, int[])). Direct memory is
+ * limited by -XX:MaxDirectMemorySize, which defaults to the maximum heap size; matrices larger than that must be
+ * backed by files, which are paged in and out by the operating system.
+ *
+ * The number of stored values is a long, so a matrix may hold more than 2^31 non-zero entries. Consumers read it
+ * in blocks of rows copied to small on-heap SparseMatrix objects with slice_rows.
+ *
+ * A file-backed matrix is written by a Builder into a directory and can be opened again later with open.
+ * The files are indptr.bin (long row pointers), indices.bin (int column indices), values.bin (double values)
+ * and header.bin (shape and number of values), all little-endian.
+ */
+public class OffHeapSparseMatrix {
+    // Magic number at the start of the header file
+    private static final int MAGIC = 0x4F485350;
+    // Current version of the format
+    private static final int VERSION = 1;
+    // Size of the header in bytes
+    private static final int HEADER_SIZE = 32;
+
+    // Row pointers, row r occupies positions indptr[r] (inclusive) to indptr[r + 1] (exclusive)
+    private final ChunkedBuffer indptr;
+    // Column index of every stored value
+    private final ChunkedBuffer indices;
+    // Stored (non-zero) values
+    private final ChunkedBuffer values;
+    // Number of rows (samples)
+    private final int num_rows;
+    // Number of columns (features)
+    private final int num_columns;
+    // Number of stored values
+    private final long nnz;
+
+
+    /**
+     * Creates a matrix over filled buffers.
+     *
+     * @param indptr      The row pointers, num_rows + 1 longs.
+     * @param indices     The column indices, nnz ints.
+     * @param values      The values, nnz doubles.
+     * @param num_rows    The number of rows.
+     * @param num_columns The number of columns.
+     * @param nnz         The number of stored values.
+     */
+    private OffHeapSparseMatrix(ChunkedBuffer indptr, ChunkedBuffer indices, ChunkedBuffer values,
+                                int num_rows, int num_columns, long nnz) {
+        this.indptr = indptr;
+        this.indices = indices;
+        this.values = values;
+        this.num_rows = num_rows;
+        this.num_columns = num_columns;
+        this.nnz = nnz;
+    }
+
+
+    /**
+     * Opens a matrix written by a file-backed Builder by mapping its files read-only.
+     *
+     * @param directory The directory of the matrix.
+     * @return The matrix.
+     * @throws IOException If the files cannot be read or do not hold a valid matrix.
+     */
+    public static OffHeapSparseMatrix open(Path directory) throws IOException {
+        ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(directory.resolve("header.bin"))).order(ByteOrder.LITTLE_ENDIAN);
+        if (header.capacity() != HEADER_SIZE || header.getInt(0) != MAGIC) {
+            throw new IOException("Not an off-heap matrix: " + directory);
+        }
+        if (header.getInt(4) != VERSION) {
+            throw new IOException("Unsupported off-heap matrix version " + header.getInt(4) + ": " + directory);
+        }
+        int num_rows = header.getInt(8);
+        int num_columns = header.getInt(12);
+        long nnz = header.getLong(16);
+        ChunkedBuffer indptr = map(directory.resolve("indptr.bin"), 8L * (num_rows + 1));
+        ChunkedBuffer indices = map(directory.resolve("indices.bin"), 4L * nnz);
+        ChunkedBuffer values = map(directory.resolve("values.bin"), 8L * nnz);
+        if (indptr.get_long(num_rows) != nnz) {
+            throw new IOException("Truncated or corrupted off-heap matrix: " + directory);
+        }
+        return new OffHeapSparseMatrix(indptr, indices, values, num_rows, num_columns, nnz);
+    }
+
+
+    /**
+     * Returns the number of rows (samples).
+     *
+     * @return The number of rows.
+     */
+    public int rows() {
+        return num_rows;
+    }
+
+
+    /**
+     * Returns the number of columns (features).
+     *
+     * @return The number of columns.
+     */
+    public int cols() {
+        return num_columns;
+    }
+
+
+    /**
+     * Returns the number of stored (non-zero) values.
+     *
+     * @return The number of stored values.
+     */
+    public long nnz() {
+        return nnz;
+    }
+
+
+    /**
+     * Returns the position of the first stored value of a row.
+     *
+     * @param row The row index.
+     * @return The start position (inclusive).
+     */
+    public long row_start(int row) {
+        return indptr.get_long(row);
+    }
+
+
+    /**
+     * Returns the position after the last stored value of a row.
+     *
+     * @param row The row index.
+     * @return The end position (exclusive).
+     */
+    public long row_end(int row) {
+        return indptr.get_long(row + 1);
+    }
+
+
+    /**
+     * Returns the column index of a stored value.
+     *
+     * @param position The position of the value, between row_start and row_end of its row.
+     * @return The column index.
+     */
+    public int get_index(long position) {
+        return indices.get_int(position);
+    }
+
+
+    /**
+     * Returns a stored value.
+     *
+     * @param position The position of the value, between row_start and row_end of its row.
+     * @return The value.
+     */
+    public double get_value(long position) {
+        return values.get_double(position);
+    }
+
+
+    /**
+     * Copies a block of consecutive rows to an on-heap sparse matrix. The block must hold fewer than 2^31 values.
+     *
+     * @param from The first row of the block (inclusive).
+     * @param to   The last row of the block (exclusive).
+     * @return A sparse matrix containing the selected rows.
+     */
+    public SparseMatrix slice_rows(int from, int to) {
+        if (from < 0 || to > num_rows || from > to) {
+            throw new IndexOutOfBoundsException("Invalid row range [" + from + ", " + to + ")");
+        }
+        long start = row_start(from);
+        long size = row_start(to) - start;
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("The rows [" + from + ", " + to + ") hold too many values: " + size);
+        }
+        int[] block_indptr = new int[to - from + 1];
+        for (int r = from; r <= to; r++) {
+            block_indptr[r - from] = (int) (row_start(r) - start);
+        }
+        int[] block_indices = new int[(int) size];
+        double[] block_values = new double[(int) size];
+        for (int k = 0; k < size; k++) {
+            block_indices[k] = indices.get_int(start + k);
+            block_values[k] = values.get_double(start + k);
+        }
+        return new SparseMatrix(block_indptr, block_indices, block_values, num_columns);
+    }
+
+
+    /**
+     * Maps the first bytes of a file read-only.
+     *
+     * @param path The file.
+     * @param size The number of bytes.
+     * @return The mapped buffer.
+     * @throws IOException If the file cannot be mapped or is too short.
+     */
+    private static ChunkedBuffer map(Path path, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < size) {
+                throw new IOException("Truncated or corrupted off-heap matrix file: " + path);
+            }
+            return new ChunkedBuffer(channel, size);
+        }
+    }
+
+
+    /**
+     * The Builder class builds an off-heap matrix row by row, in direct memory or in the files of a directory.
+     */
+    public static class Builder implements RowBuilder {
+        // Number of columns of the built matrix
+        private final int num_columns;
+        // Directory of the files, null for direct memory
+        private final Path directory;
+        // Open files of the indptr, indices and values arrays, null for direct memory
+        private final FileChannel[] channels;
+        // Arrays of the matrix being built
+        private final ChunkedBuffer indptr;
+        private final ChunkedBuffer indices;
+        private final ChunkedBuffer values;
+        // Number of rows and stored values added so far
+        private int num_rows = 0;
+        private long size = 0;
+
+
+        /**
+         * Creates a builder of a matrix in direct memory.
+         *
+         * @param num_columns Number of columns of the built matrix.
+         */
+        public Builder(int num_columns) {
+            this.num_columns = num_columns;
+            this.directory = null;
+            this.channels = null;
+            indptr = new ChunkedBuffer(null);
+            indices = new ChunkedBuffer(null);
+            values = new ChunkedBuffer(null);
+            indptr.ensure_capacity(8);
+            indptr.put_long(0, 0);
+        }
+
+
+        /**
+         * Creates a builder of a matrix stored in the files of a directory, replacing a matrix already stored there.
+         *
+         * @param num_columns Number of columns of the built matrix.
+         * @param directory   The directory, created if it does not exist.
+         * @throws IOException If the files cannot be created.
+         */
+        public Builder(int num_columns, Path directory) throws IOException {
+            this.num_columns = num_columns;
+            this.directory = directory;
+            Files.createDirectories(directory);
+            Files.deleteIfExists(directory.resolve("header.bin"));
+            channels = new FileChannel[3];
+            String[] names = {"indptr.bin", "indices.bin", "values.bin"};
+            for (int i = 0; i < 3; i++) {
+                channels[i] = FileChannel.open(directory.resolve(names[i]), StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            indptr = new ChunkedBuffer(channels[0]);
+            indices = new ChunkedBuffer(channels[1]);
+            values = new ChunkedBuffer(channels[2]);
+            indptr.ensure_capacity(8);
+            indptr.put_long(0, 0);
+        }
+
+
+        /**
+         * Appends a row given by its non-zero entries. Column indices must be sorted in ascending order.
+         *
+         * @param columns    The column indices of the non-zero entries.
+         * @param row_values The values of the non-zero entries.
+         * @param length     The number of entries to take from columns and row_values.
+         */
+        @Override
+        public void add_row(int[] columns, double[] row_values, int length) {
+            if (num_rows == Integer.MAX_VALUE - 1) {
+                throw new IllegalStateException("Too many rows");
+            }
+            indices.ensure_capacity(4 * (size + length));
+            values.ensure_capacity(8 * (size + length));
+            for (int k = 0; k < length; k++) {
+                indices.put_int(size + k, columns[k]);
+                values.put_double(size + k, row_values[k]);
+            }
+            size += length;
+            num_rows++;
+            indptr.ensure_capacity(8L * (num_rows + 1));
+            indptr.put_long(num_rows, size);
+        }
+
+
+        /**
+         * Builds the matrix. For a file-backed matrix the files are flushed and the header is written, after which
+         * the matrix can be opened again with OffHeapSparseMatrix.open. The builder must not be used afterwards.
+         *
+         * @return The built matrix.
+         * @throws IOException If the files cannot be written.
+         */
+        public OffHeapSparseMatrix build() throws IOException {
+            if (channels != null) {
+                indptr.force();
+                indices.force();
+                values.force();
+                for (FileChannel channel : channels) {
+                    channel.close();
+                }
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, num_rows).putInt(12, num_columns).putLong(16, size);
+                Files.write(directory.resolve("header.bin"), header.array());
+            }
+            return new OffHeapSparseMatrix(indptr, indices, values, num_rows, num_columns, size);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+/**
+ * Provides matrix types used to hold feature vectors between the feature extraction and classification stages.
+ */
+package com.example.ml.data.matrix;
+
+
+/**
+ * The RowBuilder interface receives the rows of a sparse matrix one after another, for example from a feature
+ * extractor, so that the same extractor can fill an on-heap SparseMatrix or an OffHeapSparseMatrix.
+ */
+public interface RowBuilder {
+    void add_row(int[] columns, double[] row_values, int length);
+}
@@ -0,0 +1,335 @@
+/**
+ * Provides matrix types used to hold feature vectors between the feature extraction and classification stages.
+ */
+package com.example.ml.data.matrix;
+
+import java.util.Arrays;
+
+
+/**
+ * The SparseMatrix class is an immutable matrix stored in Compressed Sparse Row (CSR) format.
+ * Only the non-zero entries are kept: for row r the column indices are indices[indptr[r]..indptr[r+1])
+ * and the corresponding values are values[indptr[r]..indptr[r+1]). Column indices inside a row are sorted.
+ *
+ * A TF-IDF row typically holds a few hundred non-zero terms out of a vocabulary of tens of thousands,
+ * so this format needs a small fraction of the memory of the equivalent double[][] matrix.
+ */
+public class SparseMatrix {
+    // Row pointers, row r occupies positions indptr[r] (inclusive) to indptr[r + 1] (exclusive)
+    private final int[] indptr;
+    // Column index of every stored value
+    private final int[] indices;
+    // Stored (non-zero) values
+    private final double[] values;
+    // Number of columns (features)
+    private final int num_columns;
+
+
+    /**
+     * Functional interface used to visit the non-zero entries of a row.
+     */
+    public interface NonZeroConsumer {
+        void accept(int column, double value);
+    }
+
+
+    /**
+     * Creates a sparse matrix from its CSR arrays. The arrays are used directly, not copied.
+     *
+     * @param indptr      Row pointers of length num_rows + 1.
+     * @param indices     Column index of every stored value.
+     * @param values      Stored values.
+     * @param num_columns Number of columns of the matrix.
+     */
+    public SparseMatrix(int[] indptr, int[] indices, double[] values, int num_columns) {
+        if (indptr.length == 0) {
+            throw new IllegalArgumentException("indptr must contain at least one element");
+        }
+        if (indices.length != values.length) {
+            throw new IllegalArgumentException("indices and values must have the same length");
+        }
+        this.indptr = indptr;
+        this.indices = indices;
+        this.values = values;
+        this.num_columns = num_columns;
+    }
+
+
+    /**
+     * Creates a sparse matrix holding the non-zero entries of a dense matrix.
+     *
+     * @param X The dense matrix with shape [num_rows, num_columns].
+     * @return The sparse representation of X.
+     */
+    public static SparseMatrix from_dense(double[][] X) {
+        Builder builder = new Builder(X.length == 0 ? 0 : X[0].length);
+        for (double[] row : X) {
+            builder.add_dense_row(row);
+        }
+        return builder.build();
+    }
+
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return The number of rows.
+     */
+    public int rows() {
+        return indptr.length - 1;
+    }
+
+
+    /**
+     * Returns the number of columns.
+     *
+     * @return The number of columns.
+     */
+    public int cols() {
+        return num_columns;
+    }
+
+
+    /**
+     * Returns the number of stored (non-zero) values.
+     *
+     * @return The number of stored values.
+     */
+    public int nnz() {
+        return indptr[indptr.length - 1] - indptr[0];
+    }
+
+
+    /**
+     * Returns the position of the first stored value of a row in get_indices() and get_values().
+     *
+     * @param row The row index.
+     * @return The position of the first stored value of the row.
+     */
+    public int row_start(int row) {
+        return indptr[row];
+    }
+
+
+    /**
+     * Returns the position after the last stored value of a row in get_indices() and get_values().
+     *
+     * @param row The row index.
+     * @return The position after the last stored value of the row.
+     */
+    public int row_end(int row) {
+        return indptr[row + 1];
+    }
+
+
+    /**
+     * Returns the array of column indices. Only positions between row_start and row_end of some row are meaningful.
+     *
+     * @return The column indices array (not a copy).
+     */
+    public int[] get_indices() {
+        return indices;
+    }
+
+
+    /**
+     * Returns the array of stored values. Only positions between row_start and row_end of some row are meaningful.
+     *
+     * @return The values array (not a copy).
+     */
+    public double[] get_values() {
+        return values;
+    }
+
+
+    /**
+     * Visits every non-zero entry of a row in ascending column order.
+     *
+     * @param row      The row index.
+     * @param consumer The consumer receiving (column, value) pairs.
+     */
+    public void for_each_nonzero(int row, NonZeroConsumer consumer) {
+        for (int k = indptr[row]; k < indptr[row + 1]; k++) {
+            consumer.accept(indices[k], values[k]);
+        }
+    }
+
+
+    /**
+     * Returns a view of the rows [from, to). The column indices and values are shared with this matrix.
+     *
+     * @param from The first row of the slice (inclusive).
+     * @param to   The last row of the slice (exclusive).
+     * @return A sparse matrix containing the selected rows.
+     */
+    public SparseMatrix slice_rows(int from, int to) {
+        if (from < 0 || to > rows() || from > to) {
+            throw new IndexOutOfBoundsException("Invalid row range [" + from + ", " + to + ")");
+        }
+        return new SparseMatrix(Arrays.copyOfRange(indptr, from, to + 1), indices, values, num_columns);
+    }
+
+
+    /**
+     * Returns a new matrix keeping only some columns, renumbered by a mapping. The mapping must keep the order
+     * of the kept columns (new_index[a] < new_index[b] for kept columns a < b), so the rows stay sorted.
+     *
+     * @param new_index   The new index of every column of this matrix, or -1 for dropped columns.
+     * @param num_columns The number of columns of the new matrix.
+     * @return A sparse matrix with the kept columns.
+     */
+    public SparseMatrix select_columns(int[] new_index, int num_columns) {
+        if (new_index.length != this.num_columns) {
+            throw new IllegalArgumentException("The mapping has " + new_index.length
+                    + " entries but the matrix has " + this.num_columns + " columns");
+        }
+        int[] new_indptr = new int[indptr.length];
+        int size = 0;
+        for (int k = indptr[0]; k < indptr[indptr.length - 1]; k++) {
+            if (new_index[indices[k]] >= 0) {
+                size++;
+            }
+        }
+        int[] new_indices = new int[size];
+        double[] new_values = new double[size];
+        size = 0;
+        for (int r = 0; r < rows(); r++) {
+            for (int k = indptr[r]; k < indptr[r + 1]; k++) {
+                int column = new_index[indices[k]];
+                if (column >= 0) {
+                    new_indices[size] = column;
+                    new_values[size] = values[k];
+                    size++;
+                }
+            }
+            new_indptr[r + 1] = size;
+        }
+        return new SparseMatrix(new_indptr, new_indices, new_values, num_columns);
+    }
+
+
+    /**
+     * Returns a dense copy of a single row.
+     *
+     * @param row The row index.
+     * @return The row as a dense double array.
+     */
+    public double[] row_to_dense(int row) {
+        double[] dense = new double[num_columns];
+        for (int k = indptr[row]; k < indptr[row + 1]; k++) {
+            dense[indices[k]] = values[k];
+        }
+        return dense;
+    }
+
+
+    /**
+     * Returns a dense copy of the whole matrix.
+     *
+     * @return The matrix as a dense double[][] array.
+     */
+    public double[][] to_dense() {
+        double[][] dense = new double[rows()][];
+        for (int i = 0; i < dense.length; i++) {
+            dense[i] = row_to_dense(i);
+        }
+        return dense;
+    }
+
+
+    /**
+     * The Builder class assembles a SparseMatrix row by row.
+     */
+    public static class Builder implements RowBuilder {
+        // Number of columns of the built matrix
+        private final int num_columns;
+        // Growable CSR arrays of the rows added so far
+        private int[] indptr = new int[16];
+        private int[] indices = new int[64];
+        private double[] values = new double[64];
+        // Number of rows and stored values added so far
+        private int num_rows = 0;
+        private int size = 0;
+
+
+        /**
+         * Creates a builder for a matrix with the given number of columns.
+         *
+         * @param num_columns Number of columns of the built matrix.
+         */
+        public Builder(int num_columns) {
+            this.num_columns = num_columns;
+        }
+
+
+        /**
+         * Appends a row given by its non-zero entries. Column indices must be sorted in ascending order.
+         *
+         * @param columns The column indices of the non-zero entries.
+         * @param row_values The values of the non-zero entries.
+         * @param length  The number of entries to take from columns and row_values.
+         */
+        @Override
+        public void add_row(int[] columns, double[] row_values, int length) {
+            ensure_capacity(size + length);
+            System.arraycopy(columns, 0, indices, size, length);
+            System.arraycopy(row_values, 0, values, size, length);
+            size += length;
+            end_row();
+        }
+
+
+        /**
+         * Appends a dense row, keeping only its non-zero entries.
+         *
+         * @param row The dense row.
+         */
+        public void add_dense_row(double[] row) {
+            for (int j = 0; j < row.length; j++) {
+                if (row[j] != 0) {
+                    ensure_capacity(size + 1);
+                    indices[size] = j;
+                    values[size] = row[j];
+                    size++;
+                }
+            }
+            end_row();
+        }
+
+
+        /**
+         * Builds the matrix. The builder must not be used afterwards.
+         *
+         * @return The built sparse matrix.
+         */
+        public SparseMatrix build() {
+            return new SparseMatrix(Arrays.copyOf(indptr, num_rows + 1), Arrays.copyOf(indices, size),
+                    Arrays.copyOf(values, size), num_columns);
+        }
+
+
+        /**
+         * Closes the current row by recording its end position in the row pointers.
+         */
+        private void end_row() {
+            if (num_rows + 2 > indptr.length) {
+                indptr = Arrays.copyOf(indptr, indptr.length * 2);
+            }
+            indptr[++num_rows] = size;
+        }
+
+
+        /**
+         * Grows the index and value arrays so they can hold at least the given number of entries.
+         *
+         * @param capacity The required capacity.
+         */
+        private void ensure_capacity(int capacity) {
+            if (capacity > indices.length) {
+                int new_capacity = Math.max(capacity, indices.length * 2);
+                indices = Arrays.copyOf(indices, new_capacity);
+                values = Arrays.copyOf(values, new_capacity);
+            }
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/**
+ * Provides classes for reading machine learning data.
+ * This package includes various readers for different data formats and sources.
+ */
+package com.example.ml.data.reader;
+
+import com.example.ml.data.matrix.SparseMatrix;
+import com.example.ml.data.saver.BinarySaver;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * Reads data written by BinarySaver by memory-mapping the file, and provides methods to access the data and labels.
+ * Values are copied from the mapped file into arrays in bulk, without any text parsing; files larger than 2 GB
+ * are mapped in several windows.
+ */
+public class BinaryDataReader {
+    // Largest window of the file mapped at once, a multiple of 8 bytes
+    private static final long WINDOW_SIZE = 1L << 30;
+
+    // Dense data, set when the file has the dense layout or get_data() was called
+    double[][] data;
+    // Sparse data, set when the file has the sparse layout
+    SparseMatrix sparse_data;
+    int[] labels;
+
+
+    /**
+     * Loads data from the specified binary file.
+     *
+     * @param filePath The path to the binary file.
+     * @throws IOException If an I/O error occurs while reading the file, or the file is not a valid dataset file.
+     */
+    public void load(String filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            if (channel.size() < BinarySaver.HEADER_SIZE) {
+                throw new IOException("Not a binary dataset file: " + filePath);
+            }
+            MappedByteBuffer header = map(channel, 0, BinarySaver.HEADER_SIZE);
+            if (header.getInt(0) != BinarySaver.MAGIC) {
+                throw new IOException("Not a binary dataset file: " + filePath);
+            }
+            if (header.getInt(4) != BinarySaver.VERSION || header.getInt(8) != BinarySaver.DTYPE_FLOAT64) {
+                throw new IOException("Unsupported binary dataset version or data type: " + filePath);
+            }
+            int layout = header.getInt(12);
+            int rows = header.getInt(16);
+            int cols = header.getInt(20);
+            long nnz = header.getLong(24);
+            if (rows < 0 || cols < 0 || nnz < 0 || nnz > Integer.MAX_VALUE
+                    || (layout == BinarySaver.LAYOUT_DENSE && nnz != (long) rows * cols)) {
+                throw new IOException("Corrupted binary dataset header: " + filePath);
+            }
+            if (layout != BinarySaver.LAYOUT_DENSE && layout != BinarySaver.LAYOUT_SPARSE) {
+                throw new IOException("Unknown layout " + layout + ": " + filePath);
+            }
+            if (channel.size() != expected_size(layout, rows, nnz)) {
+                throw new IOException("Truncated or corrupted binary dataset file: " + filePath);
+            }
+
+            long position = BinarySaver.HEADER_SIZE;
+            labels = new int[rows];
+            position = padded(read_ints(channel, position, labels));
+
+            data = null;
+            sparse_data = null;
+            if (layout == BinarySaver.LAYOUT_DENSE) {
+                data = new double[rows][cols];
+                read_rows(channel, position, data, cols);
+            } else if (layout == BinarySaver.LAYOUT_SPARSE) {
+                int[] indptr = new int[rows + 1];
+                int[] indices = new int[Math.toIntExact(nnz)];
+                double[] values = new double[indices.length];
+                position = read_ints(channel, position, indptr);
+                position = padded(read_ints(channel, position, indices));
+                read_doubles(channel, position, values);
+                if (!is_valid_csr(indptr, indices, cols)) {
+                    throw new IOException("Corrupted sparse data: " + filePath);
+                }
+                sparse_data = new SparseMatrix(indptr, indices, values, cols);
+            }
+        }
+    }
+
+
+    /**
+     * Returns the data as a dense matrix; sparse data is converted on the first call.
+     *
+     * @return The dense data.
+     */
+    public double[][] get_data() {
+        if (data == null && sparse_data != null) {
+            data = sparse_data.to_dense();
+        }
+        return data;
+    }
+
+
+    /**
+     * Returns the data as a sparse matrix; dense data is converted on the first call.
+     *
+     * @return The sparse data.
+     */
+    public SparseMatrix get_sparse_data() {
+        if (sparse_data == null && data != null) {
+            sparse_data = SparseMatrix.from_dense(data);
+        }
+        return sparse_data;
+    }
+
+
+    /**
+     * Returns the labels corresponding to the data.
+     *
+     * @return The labels.
+     */
+    public int[] get_labels() {
+        return labels;
+    }
+
+
+    /**
+     * Clears the data and labels to free space.
+     */
+    public void clear() {
+        data = null;
+        sparse_data = null;
+        labels = null;
+    }
+
+
+    /**
+     * Maps a read-only little-endian window of a file.
+     *
+     * @param channel  The file channel.
+     * @param position The start of the window in bytes.
+     * @param size     The size of the window in bytes.
+     * @return The mapped window.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static MappedByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+
+    /**
+     * Copies ints from the file into an array, mapping as many windows as needed.
+     *
+     * @param channel  The file channel.
+     * @param position The byte position of the first int.
+     * @param values   The array receiving the values.
+     * @return The byte position after the last int.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static long read_ints(FileChannel channel, long position, int[] values) throws IOException {
+        int i = 0;
+        while (i < values.length) {
+            int count = (int) Math.min(values.length - i, WINDOW_SIZE / 4);
+            map(channel, position, 4L * count).asIntBuffer().get(values, i, count);
+            position += 4L * count;
+            i += count;
+        }
+        return position;
+    }
+
+
+    /**
+     * Copies doubles from the file into an array, mapping as many windows as needed.
+     *
+     * @param channel  The file channel.
+     * @param position The byte position of the first double.
+     * @param values   The array receiving the values.
+     * @return The byte position after the last double.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static long read_doubles(FileChannel channel, long position, double[] values) throws IOException {
+        int i = 0;
+        while (i < values.length) {
+            int count = (int) Math.min(values.length - i, WINDOW_SIZE / 8);
+            map(channel, position, 8L * count).asDoubleBuffer().get(values, i, count);
+            position += 8L * count;
+            i += count;
+        }
+        return position;
+    }
+
+
+    /**
+     * Copies dense rows from the file, mapping one window for as many whole rows as fit into it.
+     *
+     * @param channel  The file channel.
+     * @param position The byte position of the first value of the first row.
+     * @param rows     The arrays receiving the rows.
+     * @param cols     The number of values per row.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static void read_rows(FileChannel channel, long position, double[][] rows, int cols) throws IOException {
+        if (cols == 0) {
+            return;
+        }
+        int rows_per_window = (int) Math.max(1, WINDOW_SIZE / (8L * cols));
+        for (int first = 0; first < rows.length; first += rows_per_window) {
+            int last = Math.min(rows.length, first + rows_per_window);
+            DoubleBuffer window = map(channel, position, 8L * cols * (last - first)).asDoubleBuffer();
+            for (int i = first; i < last; i++) {
+                window.get(rows[i]);
+            }
+            position += 8L * cols * (last - first);
+        }
+    }
+
+
+    /**
+     * Returns the size in bytes of a file written by BinarySaver with the given header.
+     *
+     * @param layout The layout of the data, LAYOUT_DENSE or LAYOUT_SPARSE.
+     * @param rows   The number of rows.
+     * @param nnz    The number of stored values.
+     * @return The size of the file in bytes.
+     */
+    private static long expected_size(int layout, int rows, long nnz) {
+        long size = padded(BinarySaver.HEADER_SIZE + 4L * rows);
+        if (layout == BinarySaver.LAYOUT_SPARSE) {
+            size = padded(size + 4L * (rows + 1L) + 4L * nnz);
+        }
+        return size + 8L * nnz;
+    }
+
+
+    /**
+     * Checks that sparse data read from a file forms a valid CSR matrix: the row pointers start at 0,
+     * never decrease and end at the number of values, and every column index lies in [0, cols).
+     *
+     * @param indptr  The row pointers.
+     * @param indices The column indices.
+     * @param cols    The number of columns.
+     * @return True if the data is valid.
+     */
+    private static boolean is_valid_csr(int[] indptr, int[] indices, int cols) {
+        if (indptr[0] != 0 || indptr[indptr.length - 1] != indices.length) {
+            return false;
+        }
+        for (int i = 1; i < indptr.length; i++) {
+            if (indptr[i] < indptr[i - 1]) {
+                return false;
+            }
+        }
+        for (int index : indices) {
+            if (index < 0 || index >= cols) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Rounds a byte position up to the next multiple of 8.
+     *
+     * @param position The position.
+     * @return The padded position.
+     */
+    private static long padded(long position) {
+        return (position + 7) & ~7L;
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Provides classes for reading machine learning data.
+ * This package includes various readers for different data formats and sources.
+ */
+package com.example.ml.data.reader;
+
+
+/**
+ * A single document together with its label (0 = ham, 1 = spam) and the file it was read from.
+ */
+public class LabeledDocument {
+    // Label of the document, 0 = ham, 1 = spam
+    private final int label;
+    // Content of the document
+    private final String content;
+    // Name of the file the document was read from
+    private final String name;
+
+
+    /**
+     * Creates a labeled document.
+     *
+     * @param label   The label, 0 = ham, 1 = spam.
+     * @param content The content of the document.
+     * @param name    The name of the file the document was read from.
+     */
+    public LabeledDocument(int label, String content, String name) {
+        this.label = label;
+        this.content = content;
+        this.name = name;
+    }
+
+
+    /**
+     * Returns the label of the document.
+     *
+     * @return The label, 0 = ham, 1 = spam.
+     */
+    public int get_label() {
+        return label;
+    }
+
+
+    /**
+     * Returns the content of the document.
+     *
+     * @return The content.
+     */
+    public String get_content() {
+        return content;
+    }
+
+
+    /**
+     * Returns the name of the file the document was read from.
+     *
+     * @return The file name.
+     */
+    public String get_name() {
+        return name;
+    }
+
+
+    /**
+     * Returns the label encoded in a file name: 0 for "*.ham.txt", 1 for "*.spam.txt" and -1 for any other file.
+     *
+     * @param file_name The file name.
+     * @return The label or -1.
+     */
+    public static int label_of(String file_name) {
+        if (file_name.endsWith(".ham.txt")) {
+            return 0; // 0 = ham
+        } else if (file_name.endsWith(".spam.txt")) {
+            return 1; // 1 = spam
+        }
+        return -1;
+    }
+}
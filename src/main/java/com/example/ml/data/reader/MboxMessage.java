@@ -0,0 +1,48 @@
+/**
+ * Provides classes for reading machine learning data.
+ * This package includes various readers for different data formats and sources.
+ */
+package com.example.ml.data.reader;
+
+
+/**
+ * A single message of a mailbox file together with its position in the file.
+ */
+public class MboxMessage {
+    // Offset of the "From " separator line of the message in the file (0 for a first message without separator)
+    private final long offset;
+    // Content of the message, without the separator line
+    private final String content;
+
+
+    /**
+     * Creates a message.
+     *
+     * @param offset  The offset of the message in the mailbox file.
+     * @param content The content of the message.
+     */
+    public MboxMessage(long offset, String content) {
+        this.offset = offset;
+        this.content = content;
+    }
+
+
+    /**
+     * Returns the offset of the message in the mailbox file, which identifies the message.
+     *
+     * @return The offset in bytes.
+     */
+    public long get_offset() {
+        return offset;
+    }
+
+
+    /**
+     * Returns the content of the message: its headers and body without the "From " separator line.
+     *
+     * @return The content.
+     */
+    public String get_content() {
+        return content;
+    }
+}
@@ -0,0 +1,236 @@
+/**
+ * Provides classes for reading machine learning data.
+ * This package includes various readers for different data formats and sources.
+ */
+package com.example.ml.data.reader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+
+/**
+ * Reads the messages of a mailbox file in mbox format, where every message starts with a "From " line at the beginning
+ * of the file or after a line break.
+ *
+ * The file is memory-mapped in windows of a fixed size, which move forward through the file as the messages are read,
+ * so the file is never copied as a whole and files of any size can be read. Only the bytes of the current message are
+ * copied, to decode it into a String. Messages are returned in file order through the iterator interface.
+ * Quoted ">From " lines inside the messages are left as they are; the tokenizer ignores the quote character.
+ *
+ * A message longer than the window size is mapped on its own; messages must be shorter than 2 GB.
+ */
+public class MboxReader implements Iterator<MboxMessage>, AutoCloseable {
+    // Default size of the mapped windows
+    private static final int DEFAULT_WINDOW_SIZE = 1 << 28;
+    // Bytes of the separator at the start of a line
+    private static final byte[] SEPARATOR = {'F', 'r', 'o', 'm', ' '};
+
+    // Channel of the mailbox file
+    private final FileChannel channel;
+    // Size of the mailbox file
+    private final long file_size;
+    // Charset used to decode the messages
+    private final Charset charset;
+    // Size of the mapped windows
+    private final int window_size;
+    // Currently mapped window of the file
+    private MappedByteBuffer window;
+    // Offset of the window in the file
+    private long window_start = 0;
+    // Offset of the next message in the file
+    private long position = 0;
+
+
+    /**
+     * Opens a mailbox file.
+     *
+     * @param file    The mailbox file.
+     * @param charset The charset used to decode the messages.
+     * @throws IOException If the file cannot be opened.
+     */
+    public MboxReader(Path file, Charset charset) throws IOException {
+        this(file, charset, DEFAULT_WINDOW_SIZE);
+    }
+
+
+    /**
+     * Opens a mailbox file.
+     *
+     * @param file        The mailbox file.
+     * @param charset     The charset used to decode the messages.
+     * @param window_size The size of the mapped windows in bytes.
+     * @throws IOException If the file cannot be opened.
+     */
+    public MboxReader(Path file, Charset charset, int window_size) throws IOException {
+        if (window_size < SEPARATOR.length + 1) {
+            throw new IllegalArgumentException("The window size is too small: " + window_size);
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.file_size = channel.size();
+        this.charset = charset;
+        this.window_size = window_size;
+        map(0, 0);
+    }
+
+
+    /**
+     * Returns whether the file contains another message.
+     *
+     * @return True if there is another message.
+     */
+    @Override
+    public boolean hasNext() {
+        return position < file_size;
+    }
+
+
+    /**
+     * Reads the next message. I/O errors are thrown as UncheckedIOException.
+     *
+     * @return The message.
+     */
+    @Override
+    public MboxMessage next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            long offset = position;
+            long content_start = offset;
+            if (is_separator(offset)) {
+                content_start = line_end(offset);
+            }
+            long end = next_separator(content_start);
+            position = end;
+            return new MboxMessage(offset, new String(copy(content_start, end), charset));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    /**
+     * Closes the file. The mapped window is released when it is garbage collected.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+
+    /**
+     * Returns whether a "From " separator starts at an offset of the file.
+     *
+     * @param offset The offset, which must be at the start of a line.
+     * @return True if the separator starts there.
+     * @throws IOException If an I/O error occurs.
+     */
+    private boolean is_separator(long offset) throws IOException {
+        if (offset + SEPARATOR.length > file_size) {
+            return false;
+        }
+        for (int i = 0; i < SEPARATOR.length; i++) {
+            if (byte_at(offset + i) != SEPARATOR[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Returns the offset following the line break that ends the line containing an offset, or the file size.
+     *
+     * @param offset The offset.
+     * @return The offset of the start of the next line.
+     * @throws IOException If an I/O error occurs.
+     */
+    private long line_end(long offset) throws IOException {
+        while (offset < file_size) {
+            if (byte_at(offset++) == '\n') {
+                return offset;
+            }
+        }
+        return file_size;
+    }
+
+
+    /**
+     * Finds the next "From " separator at the start of a line at or after an offset.
+     *
+     * @param offset The offset where the search starts, at the start of a line.
+     * @return The offset of the separator, or the file size if there is none.
+     * @throws IOException If an I/O error occurs.
+     */
+    private long next_separator(long offset) throws IOException {
+        while (offset < file_size) {
+            if (is_separator(offset)) {
+                return offset;
+            }
+            offset = line_end(offset);
+        }
+        return file_size;
+    }
+
+
+    /**
+     * Returns a byte of the file, moving the window forward when the byte is not mapped.
+     *
+     * @param offset The offset of the byte.
+     * @return The byte.
+     * @throws IOException If an I/O error occurs.
+     */
+    private byte byte_at(long offset) throws IOException {
+        long relative = offset - window_start;
+        if (relative < 0 || relative >= window.limit()) {
+            map(offset, window_size);
+            relative = 0;
+        }
+        return window.get((int) relative);
+    }
+
+
+    /**
+     * Copies the bytes [start, end) of the file into a new array.
+     *
+     * @param start The first offset (inclusive).
+     * @param end   The last offset (exclusive).
+     * @return The bytes.
+     * @throws IOException If an I/O error occurs or the range is longer than 2 GB.
+     */
+    private byte[] copy(long start, long end) throws IOException {
+        if (end - start > Integer.MAX_VALUE - 8) {
+            throw new IOException("Message at offset " + start + " is too large: " + (end - start) + " bytes");
+        }
+        int length = (int) (end - start);
+        if (start < window_start || end > window_start + window.limit()) {
+            map(start, Math.max(window_size, length));
+        }
+        byte[] bytes = new byte[length];
+        window.get((int) (start - window_start), bytes);
+        return bytes;
+    }
+
+
+    /**
+     * Maps a window of the file.
+     *
+     * @param offset The offset of the window.
+     * @param size   The requested size of the window; it is cut at the end of the file.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void map(long offset, int size) throws IOException {
+        window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(size, file_size - offset));
+        window_start = offset;
+    }
+}
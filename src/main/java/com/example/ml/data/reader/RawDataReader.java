@@ -4,11 +4,8 @@
  */
 package com.example.ml.data.reader;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 
 
@@ -20,37 +17,44 @@ public class RawDataReader {
     ArrayList<String> RawData;
     // List of corresponding labels
     ArrayList<Integer> labels;
+    // Number of bytes of the files read by the last load
+    private long bytes_read = 0;
+    // Number of heap bytes allocated by the reading threads of the last load
+    private long allocated_bytes = 0;
 
 
     /**
      * Loads the raw data files from the specified directory path and populates the RawData and labels lists.
+     * The files are decoded with the platform default charset.
      *
      * @param file_path The path to the directory containing the raw data files.
      * @throws IOException If an I/O error occurs while reading the files.
      */
     public void load(String file_path) throws IOException {
-        String directoryPath = file_path;
+        load(file_path, Charset.defaultCharset());
+    }
 
-        File directory = new File(directoryPath);
-        File[] files = directory.listFiles();
+
+    /**
+     * Loads the raw data files from the specified directory path and populates the RawData and labels lists.
+     * The files are read concurrently by a StreamingRawDataReader and kept in directory listing order.
+     *
+     * @param file_path The path to the directory containing the raw data files.
+     * @param charset   The charset used to decode the files.
+     * @throws IOException If an I/O error occurs while reading the files.
+     */
+    public void load(String file_path, Charset charset) throws IOException {
+        int num_threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        StreamingRawDataReader reader = new StreamingRawDataReader(charset, num_threads, 4 * num_threads);
 
         RawData = new ArrayList<>();
         labels = new ArrayList<>();
-        for (File file : files) {
-            if (file.isFile() && file.getName().endsWith(".txt")) {
-                Path filePath = Paths.get(file.getAbsolutePath());
-                String content = new String(Files.readAllBytes(filePath));
-
-                if (file.getName().endsWith(".ham.txt")) {
-                    labels.add(0); // 0 = ham
-                    RawData.add(content);
-                } else if(file.getName().endsWith(".spam.txt")) {
-                    labels.add(1); // 1 = spam
-                    RawData.add(content);
-                }
-            }
-        }
-
+        reader.read(file_path, document -> {
+            labels.add(document.get_label());
+            RawData.add(document.get_content());
+        });
+        bytes_read = reader.get_bytes_read();
+        allocated_bytes = reader.get_allocated_bytes();
     }
 
 
@@ -74,6 +78,27 @@ public class RawDataReader {
     }
 
 
+    /**
+     * Returns the number of bytes of the files read by the last load.
+     *
+     * @return The number of bytes read.
+     */
+    public long get_bytes_read() {
+        return bytes_read;
+    }
+
+
+    /**
+     * Returns the number of heap bytes allocated by the threads which listed and read the files of the last load
+     * (not by the calling thread, which only collects the documents).
+     *
+     * @return The number of bytes allocated, or -1 if the JVM does not measure allocations.
+     */
+    public long get_allocated_bytes() {
+        return allocated_bytes;
+    }
+
+
     /**
      * Clears the raw data and labels lists to free space.
      */
@@ -0,0 +1,364 @@
+/**
+ * Provides classes for reading machine learning data.
+ * This package includes various readers for different data formats and sources.
+ */
+package com.example.ml.data.reader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+
+/**
+ * A reader streaming labeled documents ("*.ham.txt" and "*.spam.txt" files) from a directory.
+ *
+ * The directory is listed lazily with a DirectoryStream and the files are read concurrently by a pool of threads,
+ * while at most max_in_flight files are being read or waiting to be consumed, so memory use does not depend on the
+ * number of files. The documents are decoded with an explicit charset and delivered in directory listing order,
+ * through an iterator, a stream or a callback, so processing can start while the remaining files are still being read.
+ *
+ * Reading is done on platform threads: virtual threads are only a preview feature at the Java version this project targets.
+ */
+public class StreamingRawDataReader {
+    // Marks the end of the directory listing in the queue of pending reads
+    private static final Future<LabeledDocument> END = CompletableFuture.completedFuture(null);
+
+    // Charset used to decode the files
+    private final Charset charset;
+    // Number of threads reading files
+    private final int num_threads;
+    // Maximum number of files read or waiting to be consumed at any time
+    private final int max_in_flight;
+    // Total number of bytes of all files read by this reader
+    private final AtomicLong bytes_read = new AtomicLong();
+    // Total number of heap bytes allocated by the listing and reading threads which have terminated
+    private final AtomicLong allocated_bytes = new AtomicLong();
+
+
+    /**
+     * Creates a reader.
+     *
+     * @param charset       The charset used to decode the files.
+     * @param num_threads   The number of threads reading files.
+     * @param max_in_flight The maximum number of files read or waiting to be consumed at any time.
+     */
+    public StreamingRawDataReader(Charset charset, int num_threads, int max_in_flight) {
+        if (num_threads < 1 || max_in_flight < 1) {
+            throw new IllegalArgumentException("num_threads and max_in_flight must be positive");
+        }
+        this.charset = charset;
+        this.num_threads = num_threads;
+        this.max_in_flight = max_in_flight;
+    }
+
+
+    /**
+     * Reads all labeled documents of a directory and passes them to a callback in directory listing order.
+     * The callback runs on the calling thread.
+     *
+     * @param directory_path The path to the directory containing the raw data files.
+     * @param callback       The callback receiving the documents.
+     * @throws IOException If an I/O error occurs while listing or reading the files.
+     */
+    public void read(String directory_path, Consumer<LabeledDocument> callback) throws IOException {
+        try (DocumentIterator documents = iterator(directory_path)) {
+            while (documents.hasNext()) {
+                callback.accept(documents.next());
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+
+    /**
+     * Returns a sequential stream of the labeled documents of a directory. The stream should be closed
+     * (for example with try-with-resources) if it is not consumed completely.
+     *
+     * @param directory_path The path to the directory containing the raw data files.
+     * @return The stream of documents.
+     */
+    public Stream<LabeledDocument> stream(String directory_path) {
+        DocumentIterator documents = iterator(directory_path);
+        Spliterator<LabeledDocument> spliterator = Spliterators.spliteratorUnknownSize(documents,
+                Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(documents::close);
+    }
+
+
+    /**
+     * Starts reading the labeled documents of a directory and returns an iterator over them.
+     * The iterator should be closed if it is not consumed completely.
+     * I/O errors are thrown from hasNext and next as UncheckedIOException.
+     *
+     * @param directory_path The path to the directory containing the raw data files.
+     * @return The iterator of documents.
+     */
+    public DocumentIterator iterator(String directory_path) {
+        return new DocumentIterator(Paths.get(directory_path));
+    }
+
+
+    /**
+     * Returns the total number of bytes of all files read by this reader so far.
+     *
+     * @return The number of bytes read.
+     */
+    public long get_bytes_read() {
+        return bytes_read.get();
+    }
+
+
+    /**
+     * Returns the number of heap bytes allocated by the threads this reader created to list directories and read
+     * files, counted when the threads terminate: once an iterator is closed (or read to its end) its threads are
+     * included. Allocations of the threads consuming the documents are not included.
+     *
+     * @return The number of bytes allocated, or -1 if the JVM does not measure allocations.
+     */
+    public long get_allocated_bytes() {
+        return current_thread_allocated_bytes() < 0 ? -1 : allocated_bytes.get();
+    }
+
+
+    /**
+     * Returns the number of heap bytes allocated so far by the current thread.
+     *
+     * @return The number of bytes, or -1 if the JVM does not measure allocations.
+     */
+    private static long current_thread_allocated_bytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+        if (!allocation.isThreadAllocatedMemorySupported() || !allocation.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        return allocation.getCurrentThreadAllocatedBytes();
+    }
+
+
+    /**
+     * Creates a daemon thread which adds the bytes it allocated to allocated_bytes when it terminates.
+     *
+     * @param task The task run by the thread.
+     * @param name The name of the thread.
+     * @return The thread, not started.
+     */
+    private Thread counted_thread(Runnable task, String name) {
+        Thread thread = new Thread(() -> {
+            try {
+                task.run();
+            } finally {
+                allocated_bytes.addAndGet(Math.max(0, current_thread_allocated_bytes()));
+            }
+        }, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+
+    /**
+     * Iterator over the documents of a directory. A background thread lists the directory and submits the files to the
+     * reading pool, blocking while max_in_flight reads are pending, and the iterator waits for the reads in listing order.
+     */
+    public class DocumentIterator implements Iterator<LabeledDocument>, AutoCloseable {
+        // Pending reads in listing order, ended by END
+        private final BlockingQueue<Future<LabeledDocument>> pending = new ArrayBlockingQueue<>(max_in_flight);
+        // Threads created for the reading pool
+        private final List<Thread> reader_threads = new CopyOnWriteArrayList<>();
+        // Pool reading the files
+        private final ExecutorService readers = Executors.newFixedThreadPool(num_threads, runnable -> {
+            Thread thread = counted_thread(runnable, "raw-data-reader");
+            reader_threads.add(thread);
+            return thread;
+        });
+        // Thread listing the directory
+        private final Thread lister;
+        // Next document, null if not fetched yet
+        private LabeledDocument next;
+        // Whether the end of the listing has been reached
+        private boolean finished = false;
+
+
+        /**
+         * Starts listing and reading a directory.
+         *
+         * @param directory The directory.
+         */
+        private DocumentIterator(Path directory) {
+            lister = counted_thread(() -> list(directory), "raw-data-lister");
+            lister.start();
+        }
+
+
+        /**
+         * Lists the directory and submits every labeled file to the reading pool.
+         *
+         * @param directory The directory.
+         */
+        private void list(Path directory) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.txt")) {
+                for (Path file : files) {
+                    int label = LabeledDocument.label_of(file.getFileName().toString());
+                    if (label < 0) {
+                        continue;
+                    }
+                    pending.put(readers.submit(() -> read_file(file, label)));
+                }
+            } catch (IOException e) {
+                put_last(CompletableFuture.failedFuture(e));
+                return;
+            } catch (InterruptedException | RejectedExecutionException e) {
+                // Closed while listing
+                return;
+            }
+            put_last(END);
+        }
+
+
+        /**
+         * Puts the last element into the queue of pending reads.
+         *
+         * @param last The last element.
+         */
+        private void put_last(Future<LabeledDocument> last) {
+            try {
+                pending.put(last);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+
+        /**
+         * Reads and decodes a single file.
+         *
+         * @param file  The file.
+         * @param label The label of the file.
+         * @return The document.
+         * @throws IOException If an I/O error occurs while reading the file.
+         */
+        private LabeledDocument read_file(Path file, int label) throws IOException {
+            byte[] bytes = Files.readAllBytes(file);
+            bytes_read.addAndGet(bytes.length);
+            return new LabeledDocument(label, new String(bytes, charset), file.getFileName().toString());
+        }
+
+
+        /**
+         * Checks whether there is another document, waiting for it to be read if necessary.
+         *
+         * @return True if there is another document.
+         */
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            if (finished) {
+                return false;
+            }
+            try {
+                next = pending.take().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new IllegalStateException("Interrupted while reading documents", e);
+            } catch (ExecutionException e) {
+                close();
+                Throwable cause = e.getCause();
+                throw cause instanceof IOException ? new UncheckedIOException((IOException) cause)
+                        : new IllegalStateException("Error while reading documents", cause);
+            }
+            if (next == null) {
+                close();
+                return false;
+            }
+            return true;
+        }
+
+
+        /**
+         * Returns the next document.
+         *
+         * @return The next document.
+         */
+        @Override
+        public LabeledDocument next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            LabeledDocument document = next;
+            next = null;
+            return document;
+        }
+
+
+        /**
+         * Stops listing and reading and waits for the listing and reading threads to terminate, so their allocations
+         * are included in get_allocated_bytes. Documents not consumed yet are dropped.
+         */
+        @Override
+        public void close() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            lister.interrupt();
+            readers.shutdownNow();
+            pending.clear();
+            boolean interrupted = join(lister);
+            for (Thread thread : reader_threads) {
+                interrupted |= join(thread);
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+
+        /**
+         * Waits for a thread to terminate, also when the waiting thread is interrupted.
+         *
+         * @param thread The thread.
+         * @return True if the waiting thread was interrupted.
+         */
+        private boolean join(Thread thread) {
+            boolean interrupted = false;
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            return interrupted;
+        }
+    }
+}
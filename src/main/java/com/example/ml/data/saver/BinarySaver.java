@@ -0,0 +1,250 @@
+/**
+ * Provides classes for saving machine learning data.
+ * This package includes various savers for different data formats and types.
+ */
+package com.example.ml.data.saver;
+
+import com.example.ml.data.matrix.SparseMatrix;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * A class for saving data matrices and their labels in a binary, little-endian format that can be memory-mapped.
+ *
+ * Layout:
+ *   header   64 bytes: magic "SPDS", version, dtype (1 = float64), layout (0 = dense, 1 = sparse CSR),
+ *            rows (int), cols (int), nnz (long, number of stored values), reserved
+ *   labels   int[rows], padded to a multiple of 8 bytes
+ *   dense:   double[rows * cols] in row-major order
+ *   sparse:  int[rows + 1] row pointers (starting at 0), int[nnz] column indices, padded to a multiple of 8 bytes,
+ *            double[nnz] values
+ *
+ * Data is written through a FileChannel in blocks, without converting any value to text.
+ * BinaryDataReader reads the format back; Saver.saveToTXT remains available as a text export.
+ */
+public class BinarySaver {
+    // "SPDS" read as a little-endian int
+    public static final int MAGIC = 0x53445053;
+    // Current version of the format
+    public static final int VERSION = 1;
+    // Size of the header in bytes
+    public static final int HEADER_SIZE = 64;
+    // Data type code of 64-bit floating point values
+    public static final int DTYPE_FLOAT64 = 1;
+    // Layout code of dense row-major data
+    public static final int LAYOUT_DENSE = 0;
+    // Layout code of sparse CSR data
+    public static final int LAYOUT_SPARSE = 1;
+    // Size of the write buffer in bytes
+    private static final int BUFFER_SIZE = 1 << 20;
+
+
+    /**
+     * Saves a dense data array and corresponding labels to a binary file.
+     *
+     * @param arr    The data array to be saved.
+     * @param labels The labels corresponding to the data.
+     * @param path   The path of the file to save the data.
+     * @throws IOException If an I/O error occurs while writing the file.
+     */
+    public static void save(double[][] arr, int[] labels, String path) throws IOException {
+        int rows = arr.length;
+        int cols = rows == 0 ? 0 : arr[0].length;
+        try (BlockWriter writer = new BlockWriter(path)) {
+            writer.header(LAYOUT_DENSE, rows, cols, (long) rows * cols);
+            writer.ints(labels, labels.length);
+            writer.pad();
+            for (double[] row : arr) {
+                writer.doubles(row, 0, cols);
+            }
+        }
+    }
+
+
+    /**
+     * Saves a sparse data matrix and corresponding labels to a binary file, storing only the non-zero values.
+     *
+     * @param matrix The data matrix to be saved.
+     * @param labels The labels corresponding to the data.
+     * @param path   The path of the file to save the data.
+     * @throws IOException If an I/O error occurs while writing the file.
+     */
+    public static void save(SparseMatrix matrix, int[] labels, String path) throws IOException {
+        int rows = matrix.rows();
+        int first = matrix.row_start(0);
+        try (BlockWriter writer = new BlockWriter(path)) {
+            writer.header(LAYOUT_SPARSE, rows, matrix.cols(), matrix.nnz());
+            writer.ints(labels, labels.length);
+            writer.pad();
+            int[] indptr = new int[rows + 1];
+            for (int i = 0; i <= rows; i++) {
+                indptr[i] = matrix.row_start(i) - first;
+            }
+            writer.ints(indptr, rows + 1);
+            int[] indices = matrix.get_indices();
+            for (int k = 0; k < matrix.nnz(); k++) {
+                writer.int_value(indices[first + k]);
+            }
+            writer.pad();
+            writer.doubles(matrix.get_values(), first, matrix.nnz());
+        }
+    }
+
+
+    /**
+     * The BlockWriter class writes little-endian primitives to a file through a reusable direct buffer.
+     */
+    private static class BlockWriter implements AutoCloseable {
+        // Channel of the written file
+        private final FileChannel channel;
+        // Buffer collecting the written bytes
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        // Number of bytes written so far (including the buffered ones)
+        private long written = 0;
+
+
+        /**
+         * Opens a file for writing, replacing its content.
+         *
+         * @param path The path of the file.
+         * @throws IOException If the file cannot be opened.
+         */
+        BlockWriter(String path) throws IOException {
+            channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+
+        /**
+         * Writes the header.
+         *
+         * @param layout The layout code.
+         * @param rows   The number of rows.
+         * @param cols   The number of columns.
+         * @param nnz    The number of stored values.
+         * @throws IOException If an I/O error occurs.
+         */
+        void header(int layout, int rows, int cols, long nnz) throws IOException {
+            int_value(MAGIC);
+            int_value(VERSION);
+            int_value(DTYPE_FLOAT64);
+            int_value(layout);
+            int_value(rows);
+            int_value(cols);
+            ensure(8);
+            buffer.putLong(nnz);
+            written += 8;
+            while (written < HEADER_SIZE) {
+                int_value(0);
+            }
+        }
+
+
+        /**
+         * Writes a single int.
+         *
+         * @param value The value.
+         * @throws IOException If an I/O error occurs.
+         */
+        void int_value(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+            written += 4;
+        }
+
+
+        /**
+         * Writes the first length values of an int array.
+         *
+         * @param values The values.
+         * @param length The number of values.
+         * @throws IOException If an I/O error occurs.
+         */
+        void ints(int[] values, int length) throws IOException {
+            for (int i = 0; i < length; i++) {
+                int_value(values[i]);
+            }
+        }
+
+
+        /**
+         * Writes length values of a double array starting at offset.
+         *
+         * @param values The values.
+         * @param offset The index of the first value.
+         * @param length The number of values.
+         * @throws IOException If an I/O error occurs.
+         */
+        void doubles(double[] values, int offset, int length) throws IOException {
+            int i = offset;
+            int end = offset + length;
+            while (i < end) {
+                ensure(8);
+                int count = Math.min(end - i, buffer.remaining() / 8);
+                buffer.asDoubleBuffer().put(values, i, count);
+                buffer.position(buffer.position() + 8 * count);
+                written += 8L * count;
+                i += count;
+            }
+        }
+
+
+        /**
+         * Writes zero bytes up to the next multiple of 8 bytes.
+         *
+         * @throws IOException If an I/O error occurs.
+         */
+        void pad() throws IOException {
+            if (written % 8 != 0) {
+                int_value(0);
+            }
+        }
+
+
+        /**
+         * Flushes the buffer if it has less than the given number of free bytes.
+         *
+         * @param bytes The number of bytes about to be written.
+         * @throws IOException If an I/O error occurs.
+         */
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+
+        /**
+         * Writes the buffered bytes to the channel.
+         *
+         * @throws IOException If an I/O error occurs.
+         */
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+
+        /**
+         * Flushes the buffer and closes the file.
+         *
+         * @throws IOException If an I/O error occurs.
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
@@ -4,12 +4,14 @@
  */
 package com.example.ml.data.saver;
 
+import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 
 
 /**
  * A class for saving data to a text file.
+ * The text format is meant for exporting data; BinarySaver writes a much more compact and faster binary format.
  */
 public class Saver {
 
@@ -24,8 +26,7 @@ public class Saver {
         int rows = arr.length;
         int cols = arr[0].length;
 
-        try {
-            FileWriter writer = new FileWriter(path);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(path))) {
 
             for (int i = 0; i < rows; i++) {
                 for (int j = 0; j < cols; j++) {
@@ -35,7 +36,6 @@ public class Saver {
                 writer.write(String.valueOf(targets[i]));
                 writer.write("\n");
             }
-            writer.close();
         } catch (IOException e) {
             System.err.println("Error writing to file: " + e.getMessage());
         }
@@ -9,25 +9,51 @@ package com.example.ml.evaluation.metrics;
 public class Evaluator {
 
     /**
-     * Evaluates the performance of a classification model based on the true labels and predicted labels.
+     * Evaluates the performance of a classification model based on the true labels and predicted labels
+     * and prints the metrics.
      *
      * @param true_y      The true labels.
      * @param prediction_y The predicted labels.
      */
     public static void evaluate(int[] true_y, int[] prediction_y ) {
+        Metrics metrics = compute(true_y, prediction_y);
+
+        System.out.println("------------------------------------------");
+        System.out.print("Accuracy: ");
+        System.out.println(metrics.get_accuracy());
+        System.out.print("Precision: ");
+        System.out.println(metrics.get_precision());
+        System.out.print("Recall: ");
+        System.out.println(metrics.get_recall());
+        System.out.print("F1-score: ");
+        System.out.println(metrics.get_f1());
+        System.out.println("------------------------------------------");
+
+    }
+
+
+    /**
+     * Computes the metrics of a classification model based on the true labels and predicted labels.
+     *
+     * @param true_y       The true labels.
+     * @param prediction_y The predicted labels.
+     * @return The confusion matrix and the metrics derived from it.
+     */
+    public static Metrics compute(int[] true_y, int[] prediction_y) {
+        if (true_y.length != prediction_y.length) {
+            throw new IllegalArgumentException("Got " + true_y.length + " labels but "
+                    + prediction_y.length + " predictions");
+        }
         // # of TruePositives
-        int TP = 0;
+        long TP = 0;
         // # of FalsePositives
-        int FP = 0;
+        long FP = 0;
         // # of TrueNegatives
-        int TN = 0;
+        long TN = 0;
         // # of FalseNegatives
-        int FN = 0;
-        // # of all predictions
-        int total = true_y.length;
-
+        long FN = 0;
 
-        for (int i = 0; i < total; i++) {
+        for (int i = 0; i < true_y.length; i++) {
             if (prediction_y[i] == 0 && true_y[i] == 0) {
                 TN++;
             } else if (prediction_y[i] == 0 && true_y[i] == 1) {
@@ -38,22 +64,6 @@ public class Evaluator {
                 TP++;
             }
         }
-
-        double accuracy = (TP + TN)/(double)total;
-        double precision  = (double)TP / (TP+FP);
-        double recall = (double)TP/ (TP+FN);
-        double F1score = (2*precision*recall)/(precision+recall);
-
-        System.out.println("------------------------------------------");
-        System.out.print("Accuracy: ");
-        System.out.println(accuracy);
-        System.out.print("Precision: ");
-        System.out.println(precision);
-        System.out.print("Recall: ");
-        System.out.println(recall);
-        System.out.print("F1-score: ");
-        System.out.println(F1score);
-        System.out.println("------------------------------------------");
-
+        return new Metrics(TP, FP, TN, FN);
     }
 }
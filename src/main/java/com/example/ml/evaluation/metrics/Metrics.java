@@ -0,0 +1,163 @@
+/**
+ * The com.example.ml.evaluation.metrics package provides a collection of evaluation metrics for assessing the performance of machine learning models.
+ */
+package com.example.ml.evaluation.metrics;
+
+/**
+ * The Metrics class holds the confusion matrix of a binary classification (1 = spam is the positive class)
+ * and the metrics derived from it. Instances are immutable; the metrics of several evaluations,
+ * for example of the folds of a cross-validation, are pooled with add.
+ */
+public class Metrics {
+    // # of TruePositives
+    private final long true_positives;
+    // # of FalsePositives
+    private final long false_positives;
+    // # of TrueNegatives
+    private final long true_negatives;
+    // # of FalseNegatives
+    private final long false_negatives;
+
+
+    /**
+     * Creates the metrics of a confusion matrix.
+     *
+     * @param true_positives  The number of spam samples predicted as spam.
+     * @param false_positives The number of ham samples predicted as spam.
+     * @param true_negatives  The number of ham samples predicted as ham.
+     * @param false_negatives The number of spam samples predicted as ham.
+     */
+    public Metrics(long true_positives, long false_positives, long true_negatives, long false_negatives) {
+        this.true_positives = true_positives;
+        this.false_positives = false_positives;
+        this.true_negatives = true_negatives;
+        this.false_negatives = false_negatives;
+    }
+
+
+    /**
+     * Returns the metrics of the union of the samples of these and other metrics.
+     *
+     * @param other The other metrics.
+     * @return The pooled metrics.
+     */
+    public Metrics add(Metrics other) {
+        return new Metrics(true_positives + other.true_positives, false_positives + other.false_positives,
+                true_negatives + other.true_negatives, false_negatives + other.false_negatives);
+    }
+
+
+    /**
+     * Returns the number of spam samples predicted as spam.
+     *
+     * @return The number of true positives.
+     */
+    public long get_true_positives() {
+        return true_positives;
+    }
+
+
+    /**
+     * Returns the number of ham samples predicted as spam.
+     *
+     * @return The number of false positives.
+     */
+    public long get_false_positives() {
+        return false_positives;
+    }
+
+
+    /**
+     * Returns the number of ham samples predicted as ham.
+     *
+     * @return The number of true negatives.
+     */
+    public long get_true_negatives() {
+        return true_negatives;
+    }
+
+
+    /**
+     * Returns the number of spam samples predicted as ham.
+     *
+     * @return The number of false negatives.
+     */
+    public long get_false_negatives() {
+        return false_negatives;
+    }
+
+
+    /**
+     * Returns the number of evaluated samples.
+     *
+     * @return The number of samples.
+     */
+    public long get_total() {
+        return true_positives + false_positives + true_negatives + false_negatives;
+    }
+
+
+    /**
+     * Returns the fraction of correct predictions.
+     *
+     * @return The accuracy.
+     */
+    public double get_accuracy() {
+        return (true_positives + true_negatives) / (double) get_total();
+    }
+
+
+    /**
+     * Returns the fraction of samples predicted as spam which are spam.
+     *
+     * @return The precision, NaN if no sample is predicted as spam.
+     */
+    public double get_precision() {
+        return (double) true_positives / (true_positives + false_positives);
+    }
+
+
+    /**
+     * Returns the fraction of spam samples predicted as spam.
+     *
+     * @return The recall, NaN if there are no spam samples.
+     */
+    public double get_recall() {
+        return (double) true_positives / (true_positives + false_negatives);
+    }
+
+
+    /**
+     * Returns the fraction of ham samples predicted as spam.
+     *
+     * @return The false positive rate, NaN if there are no ham samples.
+     */
+    public double get_false_positive_rate() {
+        return (double) false_positives / (false_positives + true_negatives);
+    }
+
+
+    /**
+     * Returns the harmonic mean of precision and recall.
+     *
+     * @return The F1-score.
+     */
+    public double get_f1() {
+        double precision = get_precision();
+        double recall = get_recall();
+        return (2 * precision * recall) / (precision + recall);
+    }
+
+
+    /**
+     * Returns the metrics as a single line.
+     *
+     * @return A text representation of the metrics.
+     */
+    @Override
+    public String toString() {
+        return "accuracy=" + get_accuracy() + ", precision=" + get_precision() + ", recall=" + get_recall()
+                + ", f1=" + get_f1() + " (tp=" + true_positives + ", fp=" + false_positives
+                + ", tn=" + true_negatives + ", fn=" + false_negatives + ")";
+    }
+}
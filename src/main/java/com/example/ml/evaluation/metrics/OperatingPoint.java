@@ -0,0 +1,59 @@
+/**
+ * The com.example.ml.evaluation.metrics package provides a collection of evaluation metrics for assessing the performance of machine learning models.
+ */
+package com.example.ml.evaluation.metrics;
+
+/**
+ * The OperatingPoint class is one point of a threshold sweep: a decision threshold on the score
+ * and the metrics of predicting spam for every sample whose score is at least the threshold.
+ * A list of operating points is both a ROC curve (false positive rate, recall) and a precision-recall curve.
+ */
+public class OperatingPoint {
+    // Decision threshold on the score
+    private final double threshold;
+    // Metrics of the predictions at the threshold
+    private final Metrics metrics;
+
+
+    /**
+     * Creates an operating point.
+     *
+     * @param threshold The decision threshold on the score.
+     * @param metrics   The metrics of the predictions at the threshold.
+     */
+    public OperatingPoint(double threshold, Metrics metrics) {
+        this.threshold = threshold;
+        this.metrics = metrics;
+    }
+
+
+    /**
+     * Returns the decision threshold on the score.
+     *
+     * @return The threshold.
+     */
+    public double get_threshold() {
+        return threshold;
+    }
+
+
+    /**
+     * Returns the metrics of the predictions at the threshold.
+     *
+     * @return The metrics.
+     */
+    public Metrics get_metrics() {
+        return metrics;
+    }
+
+
+    /**
+     * Returns the threshold and its metrics as a single line.
+     *
+     * @return A text representation of the operating point.
+     */
+    @Override
+    public String toString() {
+        return "threshold=" + threshold + ": " + metrics;
+    }
+}
@@ -0,0 +1,321 @@
+/**
+ * The com.example.ml.evaluation.metrics package provides a collection of evaluation metrics for assessing the performance of machine learning models.
+ */
+package com.example.ml.evaluation.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * The StreamingEvaluator class accumulates (label, score) pairs, for example the log-probability margins returned
+ * by Classifier.decision_function, one at a time or in batches and from any number of threads, in constant memory.
+ *
+ * It keeps the exact confusion matrix at a fixed decision threshold (spam when score >= threshold) and, per class,
+ * a fixed-size histogram of the scores. The histograms give approximate ROC and precision-recall curves,
+ * the area under the ROC curve and the average precision: scores falling into the same bin are treated as ties.
+ * The bins are equally wide in sign(s) * log(1 + |s|), so margins near zero are resolved finely and large margins
+ * to a relative precision of about log(1 + max_abs_score) / (num_bins / 2); scores beyond +-max_abs_score fall
+ * into the outermost bins. Zero is always a bin edge, so the curves contain the default threshold exactly.
+ *
+ * Counts are kept in stripes of atomic counters and a thread always updates the same stripe, so threads adding
+ * pairs concurrently rarely touch the same counters. Reading the metrics sums the stripes and may run concurrently
+ * with adding; it then sees some of the pairs being added.
+ */
+public class StreamingEvaluator {
+    // Default number of histogram bins
+    private static final int DEFAULT_NUM_BINS = 4096;
+    // Default largest absolute score resolved by the histogram
+    private static final double DEFAULT_MAX_ABS_SCORE = 1e12;
+
+    // Decision threshold of the exact confusion matrix
+    private final double threshold;
+    // Number of histogram bins, even; bins [0, num_bins / 2) hold negative scores
+    private final int num_bins;
+    // Width of a bin in sign(s) * log(1 + |s|)
+    private final double bin_width;
+    // Counters of every stripe: the histogram of class c in [c * num_bins, (c + 1) * num_bins),
+    // then the confusion matrix cell (label, predicted) at 2 * num_bins + 2 * label + predicted
+    private final AtomicLongArray[] stripes;
+
+
+    /**
+     * Creates an evaluator with the threshold 0 (the decision of the classifier for log-probability margins),
+     * 4096 bins and scores resolved up to an absolute value of 1e12 (margins of long messages reach 1e9).
+     */
+    public StreamingEvaluator() {
+        this(0, DEFAULT_NUM_BINS, DEFAULT_MAX_ABS_SCORE);
+    }
+
+
+    /**
+     * Creates an evaluator.
+     *
+     * @param threshold     The decision threshold of the exact confusion matrix.
+     * @param num_bins      The number of histogram bins per class, even and at least 2.
+     * @param max_abs_score The largest absolute score resolved by the histogram.
+     */
+    public StreamingEvaluator(double threshold, int num_bins, double max_abs_score) {
+        if (num_bins < 2 || num_bins % 2 != 0) {
+            throw new IllegalArgumentException("num_bins must be even and at least 2, got " + num_bins);
+        }
+        if (!(max_abs_score > 0) || Double.isInfinite(max_abs_score)) {
+            throw new IllegalArgumentException("max_abs_score must be positive and finite, got " + max_abs_score);
+        }
+        this.threshold = threshold;
+        this.num_bins = num_bins;
+        this.bin_width = Math.log1p(max_abs_score) / (num_bins / 2);
+        int num_stripes = Integer.highestOneBit(Math.min(64, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+        stripes = new AtomicLongArray[num_stripes];
+        for (int i = 0; i < num_stripes; i++) {
+            stripes[i] = new AtomicLongArray(2 * num_bins + 4);
+        }
+    }
+
+
+    /**
+     * Adds one sample.
+     *
+     * @param label The true label, 0 = ham, 1 = spam.
+     * @param score The score of the sample; higher scores favour spam.
+     */
+    public void add(int label, double score) {
+        add(stripe(), label, score);
+    }
+
+
+    /**
+     * Adds a batch of samples.
+     *
+     * @param labels The true labels, 0 = ham, 1 = spam.
+     * @param scores The scores of the samples; higher scores favour spam.
+     */
+    public void add(int[] labels, double[] scores) {
+        if (labels.length != scores.length) {
+            throw new IllegalArgumentException("Got " + labels.length + " labels but " + scores.length + " scores");
+        }
+        AtomicLongArray stripe = stripe();
+        for (int i = 0; i < labels.length; i++) {
+            add(stripe, labels[i], scores[i]);
+        }
+    }
+
+
+    /**
+     * Returns the number of added samples.
+     *
+     * @return The count.
+     */
+    public long get_count() {
+        long[] counts = snapshot();
+        long count = 0;
+        for (int i = 2 * num_bins; i < counts.length; i++) {
+            count += counts[i];
+        }
+        return count;
+    }
+
+
+    /**
+     * Returns the exact metrics at the decision threshold of the evaluator.
+     *
+     * @return The metrics.
+     */
+    public Metrics get_metrics() {
+        long[] counts = snapshot();
+        int cells = 2 * num_bins;
+        return new Metrics(counts[cells + 3], counts[cells + 1], counts[cells], counts[cells + 2]);
+    }
+
+
+    /**
+     * Returns the decision threshold of the exact metrics.
+     *
+     * @return The threshold.
+     */
+    public double get_threshold() {
+        return threshold;
+    }
+
+
+    /**
+     * Sweeps the threshold over the bin edges, from above all scores (nothing predicted as spam) to below all scores
+     * (everything predicted as spam). Only thresholds which change the predictions are included.
+     *
+     * @return The operating points ordered by decreasing threshold, that is by increasing recall.
+     */
+    public List<OperatingPoint> get_curve() {
+        long[] counts = snapshot();
+        long positives = 0;
+        long negatives = 0;
+        for (int b = 0; b < num_bins; b++) {
+            negatives += counts[b];
+            positives += counts[num_bins + b];
+        }
+        List<OperatingPoint> curve = new ArrayList<>();
+        curve.add(new OperatingPoint(Double.POSITIVE_INFINITY, new Metrics(0, 0, negatives, positives)));
+        long true_positives = 0;
+        long false_positives = 0;
+        for (int b = num_bins - 1; b >= 0; b--) {
+            if (counts[b] == 0 && counts[num_bins + b] == 0) {
+                continue;
+            }
+            false_positives += counts[b];
+            true_positives += counts[num_bins + b];
+            curve.add(new OperatingPoint(lower_edge(b), new Metrics(true_positives, false_positives,
+                    negatives - false_positives, positives - true_positives)));
+        }
+        return curve;
+    }
+
+
+    /**
+     * Returns the area under the ROC curve: the probability that a random spam sample scores higher than a random
+     * ham sample, counting samples in the same bin as half.
+     *
+     * @return The ROC-AUC, NaN if either class has no samples.
+     */
+    public double get_roc_auc() {
+        long[] counts = snapshot();
+        double area = 0;
+        long negatives_below = 0;
+        long positives = 0;
+        for (int b = 0; b < num_bins; b++) {
+            long bin_negatives = counts[b];
+            long bin_positives = counts[num_bins + b];
+            area += bin_positives * (negatives_below + bin_negatives / 2.0);
+            negatives_below += bin_negatives;
+            positives += bin_positives;
+        }
+        return area / ((double) positives * negatives_below);
+    }
+
+
+    /**
+     * Returns the average precision, the area under the precision-recall curve: the sum over the operating points
+     * of the precision times the increase of recall.
+     *
+     * @return The average precision, NaN if there are no spam samples.
+     */
+    public double get_average_precision() {
+        double area = 0;
+        double previous_recall = 0;
+        List<OperatingPoint> curve = get_curve();
+        for (OperatingPoint point : curve.subList(1, curve.size())) {
+            Metrics metrics = point.get_metrics();
+            area += (metrics.get_recall() - previous_recall) * metrics.get_precision();
+            previous_recall = metrics.get_recall();
+        }
+        return curve.size() == 1 ? Double.NaN : area;
+    }
+
+
+    /**
+     * Returns the operating point of the sweep with the largest F1-score.
+     *
+     * @return The best operating point, null if no spam sample was predicted correctly at any threshold.
+     */
+    public OperatingPoint get_best_f1() {
+        OperatingPoint best = null;
+        for (OperatingPoint point : get_curve()) {
+            double f1 = point.get_metrics().get_f1();
+            if (f1 > 0 && (best == null || f1 > best.get_metrics().get_f1())) {
+                best = point;
+            }
+        }
+        return best;
+    }
+
+
+    /**
+     * Removes all added samples. Samples added concurrently with the reset may be partially kept.
+     */
+    public void reset() {
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < stripe.length(); i++) {
+                stripe.set(i, 0);
+            }
+        }
+    }
+
+
+    /**
+     * Adds one sample to a stripe.
+     *
+     * @param stripe The stripe of the current thread.
+     * @param label  The true label.
+     * @param score  The score.
+     */
+    private void add(AtomicLongArray stripe, int label, double score) {
+        if (label != 0 && label != 1) {
+            throw new IllegalArgumentException("Labels must be 0 or 1, got " + label);
+        }
+        if (Double.isNaN(score)) {
+            throw new IllegalArgumentException("The score must not be NaN");
+        }
+        stripe.incrementAndGet(label * num_bins + bin_of(score));
+        stripe.incrementAndGet(2 * num_bins + 2 * label + (score >= threshold ? 1 : 0));
+    }
+
+
+    /**
+     * Returns the stripe of the current thread.
+     *
+     * @return The stripe.
+     */
+    private AtomicLongArray stripe() {
+        int hash = System.identityHashCode(Thread.currentThread()) * 0x9e3779b9;
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+
+    /**
+     * Returns the sum of the counters of all stripes.
+     *
+     * @return The counters.
+     */
+    private long[] snapshot() {
+        long[] counts = new long[2 * num_bins + 4];
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += stripe.get(i);
+            }
+        }
+        return counts;
+    }
+
+
+    /**
+     * Returns the histogram bin of a score. Non-negative scores fall into the upper half of the bins
+     * and negative scores into the lower half.
+     *
+     * @param score The score.
+     * @return The bin.
+     */
+    private int bin_of(double score) {
+        int half = num_bins / 2;
+        if (score >= 0) {
+            return half + (int) Math.min(half - 1, Math.log1p(score) / bin_width);
+        }
+        return half - 1 - (int) Math.min(half - 1, Math.log1p(-score) / bin_width);
+    }
+
+
+    /**
+     * Returns the smallest score of a bin; every score of the bin is at least this value.
+     *
+     * @param bin The bin.
+     * @return The lower edge of the bin, negative infinity for the lowest bin.
+     */
+    private double lower_edge(int bin) {
+        int half = num_bins / 2;
+        if (bin == 0) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        if (bin >= half) {
+            return Math.expm1((bin - half) * bin_width);
+        }
+        return -Math.expm1((half - bin) * bin_width);
+    }
+}
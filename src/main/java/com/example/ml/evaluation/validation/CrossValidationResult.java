@@ -0,0 +1,107 @@
+/**
+ * The com.example.ml.evaluation.validation package estimates how well a model generalizes by cross-validation,
+ * and compares parameter settings by their cross-validated metrics.
+ */
+package com.example.ml.evaluation.validation;
+
+import com.example.ml.evaluation.metrics.Metrics;
+
+
+/**
+ * The CrossValidationResult class holds the metrics of every fold of a cross-validation of one grid point.
+ */
+public class CrossValidationResult {
+    // Evaluated parameter setting
+    private final GridPoint point;
+    // Metrics of the held-out samples of every fold
+    private final Metrics[] folds;
+
+
+    /**
+     * Creates a result.
+     *
+     * @param point The evaluated parameter setting.
+     * @param folds The metrics of every fold.
+     */
+    public CrossValidationResult(GridPoint point, Metrics[] folds) {
+        this.point = point;
+        this.folds = folds;
+    }
+
+
+    /**
+     * Returns the evaluated parameter setting.
+     *
+     * @return The grid point.
+     */
+    public GridPoint get_point() {
+        return point;
+    }
+
+
+    /**
+     * Returns the metrics of the held-out samples of every fold.
+     *
+     * @return The metrics by fold (not a copy).
+     */
+    public Metrics[] get_fold_metrics() {
+        return folds;
+    }
+
+
+    /**
+     * Returns the metrics of all held-out samples together, computed from the summed confusion matrices.
+     *
+     * @return The pooled metrics.
+     */
+    public Metrics get_pooled_metrics() {
+        Metrics pooled = new Metrics(0, 0, 0, 0);
+        for (Metrics fold : folds) {
+            pooled = pooled.add(fold);
+        }
+        return pooled;
+    }
+
+
+    /**
+     * Returns the mean of the F1-scores of the folds.
+     *
+     * @return The mean F1-score.
+     */
+    public double get_mean_f1() {
+        double sum = 0;
+        for (Metrics fold : folds) {
+            sum += fold.get_f1();
+        }
+        return sum / folds.length;
+    }
+
+
+    /**
+     * Returns the sample standard deviation of the F1-scores of the folds.
+     *
+     * @return The standard deviation, 0 for a single fold.
+     */
+    public double get_std_f1() {
+        if (folds.length < 2) {
+            return 0;
+        }
+        double mean = get_mean_f1();
+        double sum = 0;
+        for (Metrics fold : folds) {
+            sum += (fold.get_f1() - mean) * (fold.get_f1() - mean);
+        }
+        return Math.sqrt(sum / (folds.length - 1));
+    }
+
+
+    /**
+     * Returns the grid point and its cross-validated metrics as a single line.
+     *
+     * @return A text representation of the result.
+     */
+    @Override
+    public String toString() {
+        return point + ": f1=" + get_mean_f1() + " +- " + get_std_f1() + ", " + get_pooled_metrics();
+    }
+}
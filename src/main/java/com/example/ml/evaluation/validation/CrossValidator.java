@@ -0,0 +1,485 @@
+/**
+ * The com.example.ml.evaluation.validation package estimates how well a model generalizes by cross-validation,
+ * and compares parameter settings by their cross-validated metrics.
+ */
+package com.example.ml.evaluation.validation;
+
+import com.example.ml.classifier.naivebayes.GaussianNaiveBayes;
+import com.example.ml.classifier.naivebayes.GaussianStatistics;
+import com.example.ml.data.matrix.SparseMatrix;
+import com.example.ml.evaluation.metrics.Evaluator;
+import com.example.ml.evaluation.metrics.Metrics;
+import com.example.ml.feature.extraction.text.TokenizedCorpus;
+import com.example.ml.feature.extraction.tfidf.TfIdf;
+import com.example.ml.parallel.WorkerPool;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+
+/**
+ * The CrossValidator class evaluates TfIdf + GaussianNaiveBayes models by stratified k-fold cross-validation
+ * for every point of a parameter grid, without tokenizing a document or fitting a model more than once.
+ *
+ * The documents are tokenized once into a TokenizedCorpus over the full dictionary. For every fold it keeps
+ * the term frequency (count / document length) rows of its documents and their sufficient statistics:
+ * the document count and total count of every term and the per-class count, means and M2 of the term frequencies.
+ * A TF-IDF feature is its term frequency times a constant IDF, so its mean is IDF * mean and its M2 is IDF^2 * M2;
+ * the statistics of the training part of fold f are therefore the statistics of all folds minus those of fold f,
+ * and any vocabulary and IDF derived from them give the same model as fitting TfIdf and GaussianNaiveBayes on
+ * the training documents (up to floating-point rounding). The first occurrence of every term is also kept, so that
+ * ties of max_features are broken in the order of first occurrence in the training documents, exactly as by TfIdf.
+ *
+ * The statistics of the folds are computed in parallel, and then every (grid point, fold) pair is evaluated
+ * as an independent task. The results are deterministic for a given seed and do not depend on the number of threads.
+ * Close the cross-validator when the search is over if it was given a thread count, so that its workers end.
+ */
+public class CrossValidator implements AutoCloseable {
+    // Number of folds
+    private final int num_folds;
+    // Seed of the random assignment of documents to folds
+    private final long seed;
+    // Pool used for parallel work
+    private final WorkerPool pool;
+
+
+    /**
+     * Functional interface for work done on one task of a list of tasks.
+     */
+    private interface IndexedTask {
+        void run(int index);
+    }
+
+
+    /**
+     * Creates a cross-validator which works in serial mode.
+     *
+     * @param num_folds The number of folds, at least 2.
+     * @param seed      The seed of the assignment of documents to folds.
+     */
+    public CrossValidator(int num_folds, long seed) {
+        this(num_folds, seed, WorkerPool.of(null));
+    }
+
+
+    /**
+     * Creates a cross-validator which uses the given number of threads, on a pool of its own
+     * which is shut down by close.
+     *
+     * @param num_folds   The number of folds, at least 2.
+     * @param seed        The seed of the assignment of documents to folds.
+     * @param num_threads The number of threads, 1 means serial mode.
+     */
+    public CrossValidator(int num_folds, long seed, int num_threads) {
+        this(num_folds, seed, WorkerPool.of_threads(num_threads));
+    }
+
+
+    /**
+     * Creates a cross-validator which works in parallel on the given pool.
+     * The pool belongs to the caller and is not shut down by close.
+     *
+     * @param num_folds The number of folds, at least 2.
+     * @param seed      The seed of the assignment of documents to folds.
+     * @param pool      The pool running the parallel work, or null for serial mode.
+     */
+    public CrossValidator(int num_folds, long seed, ForkJoinPool pool) {
+        this(num_folds, seed, WorkerPool.of(pool));
+    }
+
+
+    /**
+     * Creates a cross-validator.
+     *
+     * @param num_folds The number of folds, at least 2.
+     * @param seed      The seed of the assignment of documents to folds.
+     * @param pool      The pool running the parallel work, closed if the number of folds is invalid.
+     */
+    private CrossValidator(int num_folds, long seed, WorkerPool pool) {
+        if (num_folds < 2) {
+            pool.close();
+            throw new IllegalArgumentException("num_folds must be at least 2: " + num_folds);
+        }
+        this.num_folds = num_folds;
+        this.seed = seed;
+        this.pool = pool;
+    }
+
+
+    /**
+     * Shuts down the pool created by the CrossValidator(num_folds, seed, num_threads) constructor, so its threads
+     * end. A pool given by the caller is left running. The cross-validator must not run again after it is closed.
+     */
+    @Override
+    public void close() {
+        pool.close();
+    }
+
+
+    /**
+     * Cross-validates every grid point on the documents.
+     *
+     * @param documents The documents.
+     * @param labels    The binary labels of the documents, 0 = ham, 1 = spam.
+     * @param grid      The parameter settings to evaluate.
+     * @return The result of every grid point, in the order of the grid.
+     */
+    public List<CrossValidationResult> run(List<String> documents, int[] labels, List<GridPoint> grid) {
+        if (documents.size() != labels.length) {
+            throw new IllegalArgumentException("Got " + documents.size() + " documents but " + labels.length + " labels");
+        }
+        if (documents.size() < num_folds) {
+            throw new IllegalArgumentException("Cannot split " + documents.size() + " documents into " + num_folds + " folds");
+        }
+        TokenizedCorpus corpus = new TokenizedCorpus(documents);
+        int[][] fold_documents = assign_folds(labels);
+
+        // Statistics of every fold, and of the training documents of every fold
+        FoldStatistics[] folds = new FoldStatistics[num_folds];
+        run_tasks(num_folds, f -> folds[f] = new FoldStatistics(corpus, fold_documents[f], labels));
+        FoldStatistics total = new FoldStatistics(corpus.get_dictionary().size());
+        for (FoldStatistics fold : folds) {
+            total.merge(fold);
+        }
+        FoldStatistics[] training = new FoldStatistics[num_folds];
+        run_tasks(num_folds, f -> {
+            training[f] = total.copy();
+            training[f].subtract(folds[f]);
+            training[f].order = training_order(corpus, folds, f);
+        });
+
+        // Evaluate every (grid point, fold) pair
+        Metrics[][] metrics = new Metrics[grid.size()][num_folds];
+        run_tasks(grid.size() * num_folds, task -> {
+            int p = task / num_folds;
+            int f = task % num_folds;
+            metrics[p][f] = evaluate(grid.get(p), training[f], folds[f]);
+        });
+        List<CrossValidationResult> results = new ArrayList<>();
+        for (int p = 0; p < grid.size(); p++) {
+            results.add(new CrossValidationResult(grid.get(p), metrics[p]));
+        }
+        return results;
+    }
+
+
+    /**
+     * Assigns the documents to folds so that every fold has about the same number of documents of each class:
+     * the documents of each class are shuffled and dealt to the folds in turn.
+     *
+     * @param labels The labels of the documents.
+     * @return The documents of every fold in ascending order.
+     */
+    private int[][] assign_folds(int[] labels) {
+        Random random = new Random(seed);
+        int[] fold_of = new int[labels.length];
+        int[] fold_sizes = new int[num_folds];
+        int next = 0;
+        for (int label = 0; label < 2; label++) {
+            int[] members = new int[labels.length];
+            int size = 0;
+            for (int d = 0; d < labels.length; d++) {
+                if (labels[d] == label) {
+                    members[size++] = d;
+                }
+            }
+            // Fisher-Yates shuffle of the documents of the class
+            for (int i = size - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = members[i];
+                members[i] = members[j];
+                members[j] = swap;
+            }
+            for (int i = 0; i < size; i++) {
+                fold_of[members[i]] = next;
+                fold_sizes[next]++;
+                next = (next + 1) % num_folds;
+            }
+        }
+
+        int[][] folds = new int[num_folds][];
+        for (int f = 0; f < num_folds; f++) {
+            folds[f] = new int[fold_sizes[f]];
+        }
+        int[] position = new int[num_folds];
+        for (int d = 0; d < labels.length; d++) {
+            folds[fold_of[d]][position[fold_of[d]]++] = d;
+        }
+        return folds;
+    }
+
+
+    /**
+     * Orders the terms of the training documents of a fold by their first occurrence in these documents,
+     * which is the order in which TfIdf.fit numbers them. The first occurrence of a term in the training documents
+     * is its earliest first occurrence in the other folds.
+     *
+     * @param corpus The tokenized documents.
+     * @param folds  The statistics of all folds.
+     * @param fold   The held-out fold.
+     * @return The terms occurring in the training documents, in order of first occurrence.
+     */
+    private static int[] training_order(TokenizedCorpus corpus, FoldStatistics[] folds, int fold) {
+        int num_terms = corpus.get_dictionary().size();
+        int[] first_positions = new int[num_terms];
+        Arrays.fill(first_positions, Integer.MAX_VALUE);
+        for (int f = 0; f < folds.length; f++) {
+            if (f != fold) {
+                for (int term = 0; term < num_terms; term++) {
+                    first_positions[term] = Math.min(first_positions[term], folds[f].first_positions[term]);
+                }
+            }
+        }
+        // Positions in the corpus identify the terms, so sorting them orders the terms
+        int[] positions = new int[num_terms];
+        int size = 0;
+        for (int term = 0; term < num_terms; term++) {
+            if (first_positions[term] != Integer.MAX_VALUE) {
+                positions[size++] = first_positions[term];
+            }
+        }
+        Arrays.sort(positions, 0, size);
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = corpus.get_terms()[positions[i]];
+        }
+        return order;
+    }
+
+
+    /**
+     * Builds the model of a grid point from the statistics of the training documents of a fold
+     * and evaluates it on the held-out documents of the fold.
+     *
+     * @param point    The parameter setting.
+     * @param training The statistics of the training documents.
+     * @param held_out The statistics and term frequency rows of the held-out documents.
+     * @return The metrics of the held-out documents.
+     */
+    private static Metrics evaluate(GridPoint point, FoldStatistics training, FoldStatistics held_out) {
+        // Vocabulary and IDF vector as TfIdf.fit would compute them from the training documents
+        int[] order = training.order;
+        int[] doc_counts = new int[order.length];
+        int[] counts = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            doc_counts[i] = training.doc_counts[order[i]];
+            counts[i] = training.counts[order[i]];
+        }
+        boolean[] selected = TfIdf.select_terms(doc_counts, counts, training.num_documents,
+                point.get_min_df(), point.get_max_df(), point.get_max_features());
+        boolean[] kept = new boolean[training.counts.length];
+        for (int i = 0; i < order.length; i++) {
+            kept[order[i]] = selected[i];
+        }
+        // The kept terms are numbered in dictionary order, so that select_columns keeps the rows sorted
+        int[] new_index = new int[kept.length];
+        double[] idf = new double[kept.length];
+        int num_kept = 0;
+        for (int term = 0; term < kept.length; term++) {
+            if (kept[term]) {
+                idf[num_kept] = TfIdf.idf(training.num_documents, training.doc_counts[term]);
+                new_index[term] = num_kept++;
+            } else {
+                new_index[term] = -1;
+            }
+        }
+
+        // Means and variances of the TF-IDF features as GaussianNaiveBayes.fit would compute them
+        double[][] means = new double[2][num_kept];
+        double[][] variances = new double[2][num_kept];
+        for (int label = 0; label < 2; label++) {
+            GaussianStatistics statistics = training.statistics[label];
+            long count = statistics.get_count();
+            double[] tf_means = statistics.get_means();
+            double[] tf_m2 = statistics.get_m2();
+            for (int term = 0; term < kept.length; term++) {
+                int j = new_index[term];
+                if (j < 0) {
+                    continue;
+                }
+                means[label][j] = idf[j] * tf_means[term];
+                variances[label][j] = count == 0 ? point.get_var_smoothing()
+                        : idf[j] * idf[j] * tf_m2[term] / count + point.get_var_smoothing();
+            }
+        }
+        long ham_count = training.statistics[0].get_count();
+        long spam_count = training.statistics[1].get_count();
+        double ham_probability = ham_count / (double) (spam_count + ham_count);
+        GaussianNaiveBayes model = GaussianNaiveBayes.from_parameters(means, variances,
+                new double[]{ham_probability, 1.0 - ham_probability});
+
+        // TF-IDF rows of the held-out documents
+        SparseMatrix X = held_out.term_frequencies.select_columns(new_index, num_kept);
+        int[] indices = X.get_indices();
+        double[] values = X.get_values();
+        for (int k = 0; k < X.nnz(); k++) {
+            values[k] *= idf[indices[k]];
+        }
+        return Evaluator.compute(held_out.labels, model.predict(X));
+    }
+
+
+    /**
+     * Runs the tasks 0, 1, ..., count - 1, on the pool in parallel mode, and waits until all of them are finished.
+     *
+     * @param count The number of tasks.
+     * @param task  The task run for every index.
+     */
+    private void run_tasks(int count, IndexedTask task) {
+        if (pool.is_serial()) {
+            for (int i = 0; i < count; i++) {
+                task.run(i);
+            }
+            return;
+        }
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            tasks.add(pool.submit(() -> task.run(index)));
+        }
+        for (ForkJoinTask<?> submitted : tasks) {
+            submitted.join();
+        }
+    }
+
+
+    /**
+     * The FoldStatistics class holds the sufficient statistics of a set of documents over the full dictionary:
+     * the number of documents, the document count and total count of every term, and the per-class statistics
+     * of the term frequencies. The statistics of a fold also keep its term frequency rows and labels.
+     */
+    private static class FoldStatistics {
+        // Number of documents
+        int num_documents;
+        // Number of documents containing each term
+        final int[] doc_counts;
+        // Number of occurrences of each term
+        final int[] counts;
+        // Position in the corpus of the first occurrence of each term, Integer.MAX_VALUE if it does not occur
+        final int[] first_positions;
+        // Terms occurring in the documents in order of first occurrence, only set for the training statistics
+        int[] order;
+        // Statistics of the term frequencies of the ham (0) and spam (1) documents
+        final GaussianStatistics[] statistics;
+        // Term frequency rows of the documents of a fold, null for derived statistics
+        SparseMatrix term_frequencies;
+        // Labels of the documents of a fold, null for derived statistics
+        int[] labels;
+
+
+        /**
+         * Creates empty statistics.
+         *
+         * @param num_terms The number of terms of the dictionary.
+         */
+        FoldStatistics(int num_terms) {
+            doc_counts = new int[num_terms];
+            counts = new int[num_terms];
+            first_positions = new int[num_terms];
+            Arrays.fill(first_positions, Integer.MAX_VALUE);
+            statistics = new GaussianStatistics[]{new GaussianStatistics(num_terms), new GaussianStatistics(num_terms)};
+        }
+
+
+        /**
+         * Computes the statistics and the term frequency rows of the documents of a fold.
+         *
+         * @param corpus    The tokenized documents.
+         * @param documents The documents of the fold.
+         * @param labels    The labels of all documents.
+         */
+        FoldStatistics(TokenizedCorpus corpus, int[] documents, int[] labels) {
+            int num_terms = corpus.get_dictionary().size();
+            doc_counts = new int[num_terms];
+            counts = new int[num_terms];
+            first_positions = new int[num_terms];
+            Arrays.fill(first_positions, Integer.MAX_VALUE);
+            num_documents = documents.length;
+            this.labels = new int[documents.length];
+
+            int[] terms = corpus.get_terms();
+            int[] term_counts = corpus.get_counts();
+            SparseMatrix.Builder builder = new SparseMatrix.Builder(num_terms);
+            // (term, count) pairs of the current document, packed so that sorting orders them by term
+            long[] pairs = new long[64];
+            int[] columns = new int[64];
+            double[] values = new double[64];
+            for (int i = 0; i < documents.length; i++) {
+                int d = documents[i];
+                this.labels[i] = labels[d];
+                int length = corpus.document_end(d) - corpus.document_start(d);
+                if (length > pairs.length) {
+                    pairs = new long[length];
+                    columns = new int[length];
+                    values = new double[length];
+                }
+                for (int k = 0; k < length; k++) {
+                    int p = corpus.document_start(d) + k;
+                    pairs[k] = ((long) terms[p] << 32) | term_counts[p];
+                    doc_counts[terms[p]]++;
+                    counts[terms[p]] += term_counts[p];
+                    first_positions[terms[p]] = Math.min(first_positions[terms[p]], p);
+                }
+                Arrays.sort(pairs, 0, length);
+                for (int k = 0; k < length; k++) {
+                    columns[k] = (int) (pairs[k] >>> 32);
+                    values[k] = (double) (int) pairs[k] / corpus.get_length(d);
+                }
+                builder.add_row(columns, values, length);
+            }
+            term_frequencies = builder.build();
+            statistics = new GaussianStatistics[]{
+                    GaussianStatistics.of(term_frequencies, this.labels, 0),
+                    GaussianStatistics.of(term_frequencies, this.labels, 1)};
+        }
+
+
+        /**
+         * Adds the statistics of other documents.
+         *
+         * @param other The statistics to add, they are not modified.
+         */
+        void merge(FoldStatistics other) {
+            num_documents += other.num_documents;
+            for (int term = 0; term < counts.length; term++) {
+                doc_counts[term] += other.doc_counts[term];
+                counts[term] += other.counts[term];
+                first_positions[term] = Math.min(first_positions[term], other.first_positions[term]);
+            }
+            statistics[0].merge(other.statistics[0]);
+            statistics[1].merge(other.statistics[1]);
+        }
+
+
+        /**
+         * Removes the statistics of a subset of the documents. The first positions, which cannot be subtracted,
+         * are left unchanged.
+         *
+         * @param other The statistics to remove, they are not modified.
+         */
+        void subtract(FoldStatistics other) {
+            num_documents -= other.num_documents;
+            for (int term = 0; term < counts.length; term++) {
+                doc_counts[term] -= other.doc_counts[term];
+                counts[term] -= other.counts[term];
+            }
+            statistics[0].subtract(other.statistics[0]);
+            statistics[1].subtract(other.statistics[1]);
+        }
+
+
+        /**
+         * Returns a copy of the statistics without the term frequency rows and labels.
+         *
+         * @return The copy.
+         */
+        FoldStatistics copy() {
+            FoldStatistics copy = new FoldStatistics(counts.length);
+            copy.merge(this);
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * The com.example.ml.evaluation.validation package estimates how well a model generalizes by cross-validation,
+ * and compares parameter settings by their cross-validated metrics.
+ */
+package com.example.ml.evaluation.validation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * The GridPoint class is one setting of the parameters tuned by cross-validation: the vocabulary thresholds
+ * of TfIdf (min_df, max_df, max_features) and the variance smoothing of GaussianNaiveBayes.
+ */
+public class GridPoint {
+    // Minimum number of training documents containing a term
+    private final int min_df;
+    // Maximum fraction of training documents containing a term
+    private final double max_df;
+    // Maximum number of terms in the vocabulary
+    private final int max_features;
+    // Constant added to every variance
+    private final double var_smoothing;
+
+
+    /**
+     * Creates a parameter setting. The values are checked as by TfIdf.set_min_df, set_max_df, set_max_features
+     * and GaussianNaiveBayes.set_var_smoothing.
+     *
+     * @param min_df        The minimum number of training documents containing a term.
+     * @param max_df        The maximum fraction of training documents containing a term.
+     * @param max_features  The maximum number of terms in the vocabulary.
+     * @param var_smoothing The constant added to every variance.
+     */
+    public GridPoint(int min_df, double max_df, int max_features, double var_smoothing) {
+        if (min_df < 1) {
+            throw new IllegalArgumentException("min_df must be at least 1, got " + min_df);
+        }
+        if (!(max_df > 0 && max_df <= 1)) {
+            throw new IllegalArgumentException("max_df must be in (0, 1], got " + max_df);
+        }
+        if (max_features < 1) {
+            throw new IllegalArgumentException("max_features must be positive, got " + max_features);
+        }
+        if (!(var_smoothing >= 0)) {
+            throw new IllegalArgumentException("var_smoothing must be non-negative: " + var_smoothing);
+        }
+        this.min_df = min_df;
+        this.max_df = max_df;
+        this.max_features = max_features;
+        this.var_smoothing = var_smoothing;
+    }
+
+
+    /**
+     * Creates all combinations of the given parameter values, varying var_smoothing fastest.
+     *
+     * @param min_dfs        The values of min_df.
+     * @param max_dfs        The values of max_df.
+     * @param max_features   The values of max_features.
+     * @param var_smoothings The values of var_smoothing.
+     * @return The grid points.
+     */
+    public static List<GridPoint> grid(int[] min_dfs, double[] max_dfs, int[] max_features, double[] var_smoothings) {
+        List<GridPoint> grid = new ArrayList<>();
+        for (int min_df : min_dfs) {
+            for (double max_df : max_dfs) {
+                for (int features : max_features) {
+                    for (double var_smoothing : var_smoothings) {
+                        grid.add(new GridPoint(min_df, max_df, features, var_smoothing));
+                    }
+                }
+            }
+        }
+        return grid;
+    }
+
+
+    /**
+     * Returns the minimum number of training documents containing a term.
+     *
+     * @return The minimum document count.
+     */
+    public int get_min_df() {
+        return min_df;
+    }
+
+
+    /**
+     * Returns the maximum fraction of training documents containing a term.
+     *
+     * @return The maximum document frequency.
+     */
+    public double get_max_df() {
+        return max_df;
+    }
+
+
+    /**
+     * Returns the maximum number of terms in the vocabulary.
+     *
+     * @return The maximum vocabulary size.
+     */
+    public int get_max_features() {
+        return max_features;
+    }
+
+
+    /**
+     * Returns the constant added to every variance.
+     *
+     * @return The variance smoothing.
+     */
+    public double get_var_smoothing() {
+        return var_smoothing;
+    }
+
+
+    /**
+     * Returns the parameter values as a single line.
+     *
+     * @return A text representation of the grid point.
+     */
+    @Override
+    public String toString() {
+        return "min_df=" + min_df + ", max_df=" + max_df
+                + ", max_features=" + (max_features == Integer.MAX_VALUE ? "all" : String.valueOf(max_features))
+                + ", var_smoothing=" + var_smoothing;
+    }
+}
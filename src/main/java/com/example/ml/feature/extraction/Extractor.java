@@ -3,6 +3,7 @@
  * Various feature extraction methods such as TF-IDF, word embeddings(not yet but might include), etc., can be found within this package.
  */
 package com.example.ml.feature.extraction;
+import com.example.ml.data.matrix.SparseMatrix;
 import java.util.ArrayList;
 
 
@@ -10,8 +11,12 @@ import java.util.ArrayList;
  * The Extractor interface represents a feature extraction method in machine learning.
  * Classes implementing this interface are responsible for fitting the feature extraction model
  * on the input data and transforming the data based on the fitted model.
+ * The transformed data is available both as a dense matrix and as a sparse (CSR) matrix,
+ * and new documents can be transformed with the fitted model into a sparse matrix.
  */
 public interface Extractor {
     void fit(ArrayList<String> X);
     double[][] transform();
+    SparseMatrix transform_sparse();
+    SparseMatrix transform_sparse(ArrayList<String> X);
 }
\ No newline at end of file
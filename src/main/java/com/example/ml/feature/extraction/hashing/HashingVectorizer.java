@@ -0,0 +1,296 @@
+/**
+ * This package contains classes related to feature hashing ("hashing trick") feature extraction.
+ * Terms are mapped to feature indices by a hash function instead of a vocabulary fitted on the data.
+ */
+package com.example.ml.feature.extraction.hashing;
+
+import com.example.ml.data.matrix.SparseMatrix;
+import com.example.ml.feature.extraction.Extractor;
+import com.example.ml.feature.extraction.text.MurmurHash3;
+import com.example.ml.feature.extraction.text.Tokenizer;
+import com.example.ml.feature.extraction.tfidf.TfIdf;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+
+/**
+ * The HashingVectorizer class implements feature extraction with the hashing trick.
+ * Every term is hashed with MurmurHash3 into one of a fixed number of buckets, so no vocabulary has to be fitted
+ * or stored, memory use does not grow with the corpus, and a document can be vectorized before any training happens.
+ *
+ * Feature values are term frequencies (number of occurrences divided by the number of terms of the document,
+ * as in TfIdf). With alternate_sign, one bit of the hash decides whether an occurrence adds +1 or -1,
+ * so colliding terms tend to cancel out instead of accumulating. With use_idf, the values are multiplied
+ * by the inverse document frequency of the bucket, learned in a streaming way by fit and partial_fit.
+ *
+ * This class implements the Extractor interface. Instances are not thread-safe.
+ */
+public class HashingVectorizer implements Extractor {
+    // Seed of the hash function
+    private static final int SEED = 0x5f3759df;
+
+    // Number of buckets (features)
+    private final int n_features;
+    // Whether the sign of a term occurrence is taken from its hash
+    private final boolean alternate_sign;
+    // Whether feature values are weighted by the inverse document frequency
+    private final boolean use_idf;
+    // Number of documents containing each bucket, only used with use_idf
+    private final int[] document_frequency;
+    // Number of documents seen by fit and partial_fit
+    private long documents_count = 0;
+    // Cached IDF vector, null when it has to be recomputed
+    private double[] idf_vector;
+    // Place to save the feature vectors of the fitted documents
+    private SparseMatrix sparse_data;
+    // Keys (bucket * 2 + sign bit) of the term occurrences of the current document
+    private int[] keys = new int[256];
+    // Number of valid entries in "keys"
+    private int num_keys;
+    // Distinct buckets and signed counts of the current document
+    private int[] columns = new int[64];
+    private double[] values = new double[64];
+    // Consumer hashing the terms of the current document, created once per instance
+    private final Tokenizer.TokenConsumer collector = this::collect;
+
+
+    /**
+     * Creates a vectorizer with 2^20 buckets, alternating signs and no IDF weighting.
+     */
+    public HashingVectorizer() {
+        this(1 << 20, true, false);
+    }
+
+
+    /**
+     * Creates a vectorizer.
+     *
+     * @param n_features     The number of buckets (features), between 1 and 2^30.
+     * @param alternate_sign Whether the sign of a term occurrence is taken from its hash.
+     * @param use_idf        Whether feature values are weighted by the inverse document frequency learned by fit and partial_fit.
+     */
+    public HashingVectorizer(int n_features, boolean alternate_sign, boolean use_idf) {
+        if (n_features < 1 || n_features > (1 << 30)) {
+            throw new IllegalArgumentException("n_features must be between 1 and 2^30: " + n_features);
+        }
+        this.n_features = n_features;
+        this.alternate_sign = alternate_sign;
+        this.use_idf = use_idf;
+        this.document_frequency = use_idf ? new int[n_features] : null;
+    }
+
+
+    /**
+     * Fits the vectorizer on the provided list of documents, forgetting previously learned document frequencies,
+     * and stores the feature vectors of the documents. Every document is tokenized only once.
+     *
+     * @param X An ArrayList of strings representing the input documents.
+     */
+    @Override
+    public void fit(ArrayList<String> X) {
+        if (use_idf) {
+            Arrays.fill(document_frequency, 0);
+        }
+        documents_count = 0;
+
+        // Build term frequency rows while counting document frequencies, then apply the IDF weights
+        SparseMatrix.Builder builder = new SparseMatrix.Builder(n_features);
+        for (String document : X) {
+            add_row(document, true, builder);
+            documents_count++;
+        }
+        idf_vector = null;
+        sparse_data = weighted(builder.build());
+    }
+
+
+    /**
+     * Updates the document frequencies with a batch of documents without storing their feature vectors.
+     * Documents can be fed in any number of batches; the IDF weights always reflect all documents seen so far.
+     * Does nothing useful unless the vectorizer was created with use_idf.
+     *
+     * @param X An ArrayList of strings representing the input documents.
+     */
+    public void partial_fit(ArrayList<String> X) {
+        if (!use_idf) {
+            return;
+        }
+        for (String document : X) {
+            encode(document, true);
+            documents_count++;
+        }
+        idf_vector = null;
+    }
+
+
+    /**
+     * Returns the feature vectors of the documents given to fit as a dense matrix.
+     * Note that the matrix has n_features columns, which may be very large.
+     *
+     * @return A double array representing the transformed data.
+     */
+    @Override
+    public double[][] transform() {
+        return sparse_data == null ? null : sparse_data.to_dense();
+    }
+
+
+    /**
+     * Returns the feature vectors of the documents given to fit as a sparse matrix.
+     *
+     * @return A sparse matrix representing the transformed data.
+     */
+    @Override
+    public SparseMatrix transform_sparse() {
+        return sparse_data;
+    }
+
+
+    /**
+     * Transforms documents into a sparse matrix. Does not update the document frequencies.
+     *
+     * @param X An ArrayList of strings representing the input documents.
+     * @return A sparse matrix representing the transformed documents.
+     */
+    @Override
+    public SparseMatrix transform_sparse(ArrayList<String> X) {
+        SparseMatrix.Builder builder = new SparseMatrix.Builder(n_features);
+        for (String document : X) {
+            add_row(document, false, builder);
+        }
+        return weighted(builder.build());
+    }
+
+
+    /**
+     * Transforms a single document into a sparse matrix with one row. Does not update the document frequencies.
+     *
+     * @param document The input document.
+     * @return A sparse matrix with the feature vector of the document as its only row.
+     */
+    public SparseMatrix transform_document(CharSequence document) {
+        SparseMatrix.Builder builder = new SparseMatrix.Builder(n_features);
+        add_row(document, false, builder);
+        return weighted(builder.build());
+    }
+
+
+    /**
+     * Returns the number of features (buckets).
+     *
+     * @return The number of features.
+     */
+    public int get_n_features() {
+        return n_features;
+    }
+
+
+    /**
+     * Returns the IDF vector computed from the document frequencies seen so far.
+     * Returns null if the vectorizer does not use IDF weighting or has not seen any document yet.
+     *
+     * @return The IDF vector or null.
+     */
+    public double[] get_idf_vector() {
+        if (!use_idf || documents_count == 0) {
+            return null;
+        }
+        if (idf_vector == null) {
+            idf_vector = new double[n_features];
+            for (int i = 0; i < n_features; i++) {
+                idf_vector[i] = TfIdf.idf(documents_count, document_frequency[i]);
+            }
+        }
+        return idf_vector;
+    }
+
+
+    /**
+     * Multiplies the values of a freshly built term frequency matrix by the IDF weights, if any.
+     *
+     * @param tf The term frequency matrix, its values are modified in place.
+     * @return The same matrix.
+     */
+    private SparseMatrix weighted(SparseMatrix tf) {
+        double[] idf = get_idf_vector();
+        if (idf != null) {
+            int[] indices = tf.get_indices();
+            double[] tf_values = tf.get_values();
+            for (int k = 0; k < tf_values.length; k++) {
+                tf_values[k] *= idf[indices[k]];
+            }
+        }
+        return tf;
+    }
+
+
+    /**
+     * Computes the term frequency row of a document and appends it to a builder.
+     *
+     * @param document          The input document.
+     * @param count_frequencies Whether the document frequencies are updated.
+     * @param builder           The builder receiving the row.
+     */
+    private void add_row(CharSequence document, boolean count_frequencies, SparseMatrix.Builder builder) {
+        int term_count = encode(document, count_frequencies);
+        int num_columns = 0;
+        for (int k = 0; k < num_keys; ) {
+            int bucket = keys[k] >>> 1;
+            double count = 0;
+            for (; k < num_keys && (keys[k] >>> 1) == bucket; k++) {
+                count += (keys[k] & 1) == 0 ? 1 : -1;
+            }
+            if (count != 0) {
+                if (num_columns == columns.length) {
+                    columns = Arrays.copyOf(columns, 2 * num_columns);
+                    values = Arrays.copyOf(values, 2 * num_columns);
+                }
+                columns[num_columns] = bucket;
+                values[num_columns] = count / term_count;
+                num_columns++;
+            }
+        }
+        builder.add_row(columns, values, num_columns);
+    }
+
+
+    /**
+     * Hashes the terms of a document into the sorted key buffer and optionally counts the document
+     * in the document frequency of every bucket it touches.
+     *
+     * @param document          The input document.
+     * @param count_frequencies Whether the document frequencies are updated.
+     * @return The number of terms of the document.
+     */
+    private int encode(CharSequence document, boolean count_frequencies) {
+        num_keys = 0;
+        int term_count = Tokenizer.tokenize(document, collector);
+        Arrays.sort(keys, 0, num_keys);
+        if (count_frequencies && use_idf) {
+            for (int k = 0; k < num_keys; k++) {
+                if (k == 0 || (keys[k] >>> 1) != (keys[k - 1] >>> 1)) {
+                    document_frequency[keys[k] >>> 1]++;
+                }
+            }
+        }
+        return term_count;
+    }
+
+
+    /**
+     * Hashes one term occurrence into the key buffer.
+     *
+     * @param text  The text containing the term.
+     * @param start The start of the term (inclusive).
+     * @param end   The end of the term (exclusive).
+     */
+    private void collect(CharSequence text, int start, int end) {
+        int hash = MurmurHash3.hash(text, start, end, SEED);
+        int bucket = Integer.remainderUnsigned(hash, n_features);
+        int negative = alternate_sign ? hash >>> 31 : 0;
+        if (num_keys == keys.length) {
+            keys = Arrays.copyOf(keys, 2 * num_keys);
+        }
+        keys[num_keys++] = (bucket << 1) | negative;
+    }
+}
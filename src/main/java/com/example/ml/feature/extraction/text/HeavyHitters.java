@@ -0,0 +1,333 @@
+/**
+ * This package contains the text processing building blocks shared by the feature extraction methods:
+ * tokenization of documents and lookup of terms without creating String objects.
+ */
+package com.example.ml.feature.extraction.text;
+
+import java.util.Arrays;
+
+
+/**
+ * The HeavyHitters class finds the most frequent terms of a stream in fixed memory, however many distinct
+ * terms the stream contains.
+ *
+ * Every occurrence updates a count-min sketch (depth rows of width counters, conservative update), whose estimate
+ * never underestimates the true count. The capacity terms with the largest estimates are kept in a min-heap
+ * together with a small open-addressing table for finding them; a term enters the heap when its estimate exceeds
+ * the smallest estimate in the heap, which is then evicted. Memory is depth * width ints plus a few arrays of
+ * the capacity, and a String is only created when a term enters the heap.
+ */
+public class HeavyHitters implements Tokenizer.TokenConsumer {
+    // Seed of the hash function
+    private static final int SEED = 0x2545f491;
+    // Counters of the sketch, row r occupies [r * width, (r + 1) * width)
+    private final int[] sketch;
+    // Number of rows of the sketch
+    private final int depth;
+    // Width of a row minus one, the width is a power of two
+    private final int width_mask;
+    // Monitored terms by entry
+    private final String[] terms;
+    // Hash codes of the monitored terms by entry
+    private final int[] hashes;
+    // Estimated counts of the monitored terms by entry
+    private final int[] estimates;
+    // Min-heap of entries ordered by estimate
+    private final int[] heap;
+    // Position of every entry in the heap
+    private final int[] heap_position;
+    // Open-addressing table of entries, -1 marks an empty slot. Its length is a power of two.
+    private final int[] table;
+    // Number of monitored terms
+    private int size = 0;
+
+
+    /**
+     * Creates an empty summary.
+     *
+     * @param capacity The number of most frequent terms to keep.
+     * @param width    The number of counters in a row of the sketch, rounded up to a power of two.
+     *                 The overestimate of a count is at most about 2.7 * (number of occurrences) / width.
+     * @param depth    The number of rows of the sketch; the error bound holds with probability 1 - exp(-depth).
+     */
+    public HeavyHitters(int capacity, int width, int depth) {
+        if (capacity < 1 || width < 1 || depth < 1) {
+            throw new IllegalArgumentException("Capacity, width and depth must be positive");
+        }
+        int row = Integer.highestOneBit(width - 1) << 1;
+        this.width_mask = Math.max(row, 1) - 1;
+        this.depth = depth;
+        this.sketch = new int[depth * (width_mask + 1)];
+        this.terms = new String[capacity];
+        this.hashes = new int[capacity];
+        this.estimates = new int[capacity];
+        this.heap = new int[capacity];
+        this.heap_position = new int[capacity];
+        this.table = new int[Integer.highestOneBit(2 * capacity - 1) << 1];
+        Arrays.fill(table, -1);
+    }
+
+
+    /**
+     * Counts one occurrence of a term.
+     *
+     * @param text  The text containing the term.
+     * @param start The start of the term (inclusive).
+     * @param end   The end of the term (exclusive).
+     */
+    @Override
+    public void accept(CharSequence text, int start, int end) {
+        int hash = MurmurHash3.hash(text, start, end, SEED);
+        int estimate = update_sketch(hash);
+
+        int slot = find(hash, text, start, end);
+        int entry = table[slot];
+        if (entry != -1) {
+            estimates[entry] = estimate;
+            sift_down(heap_position[entry]);
+            return;
+        }
+        boolean evicted = size == terms.length;
+        if (!evicted) {
+            entry = size++;
+            place(entry, entry);
+        } else if (estimate > estimates[heap[0]]) {
+            // Replace the least frequent monitored term
+            entry = heap[0];
+            remove_from_table(entry);
+            slot = find(hash, text, start, end);
+        } else {
+            return;
+        }
+        terms[entry] = text.subSequence(start, end).toString();
+        hashes[entry] = hash;
+        estimates[entry] = estimate;
+        table[slot] = entry;
+        if (evicted) {
+            sift_down(0);
+        } else {
+            sift_up(heap_position[entry]);
+        }
+    }
+
+
+    /**
+     * Returns the monitored terms ordered by decreasing estimated count, ties in alphabetical order.
+     *
+     * @return The most frequent terms, at most capacity of them.
+     */
+    public String[] top() {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> estimates[a] != estimates[b]
+                ? Integer.compare(estimates[b], estimates[a]) : terms[a].compareTo(terms[b]));
+        String[] result = new String[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = terms[order[i]];
+        }
+        return result;
+    }
+
+
+    /**
+     * Returns the estimated count of a term; it is never smaller than the true count.
+     *
+     * @param term The term.
+     * @return The estimated number of occurrences.
+     */
+    public int estimate(String term) {
+        int hash = MurmurHash3.hash(term, 0, term.length(), SEED);
+        int second = second_hash(hash);
+        int estimate = Integer.MAX_VALUE;
+        for (int r = 0; r < depth; r++) {
+            estimate = Math.min(estimate, sketch[counter(r, hash, second)]);
+        }
+        return estimate;
+    }
+
+
+    /**
+     * Returns the number of monitored terms.
+     *
+     * @return The number of monitored terms.
+     */
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * Adds one occurrence to the sketch with the conservative update: only the counters equal to the current
+     * minimum are incremented, which keeps the estimates as small as possible while never underestimating.
+     *
+     * @param hash The hash code of the term.
+     * @return The new estimated count of the term.
+     */
+    private int update_sketch(int hash) {
+        int second = second_hash(hash);
+        int minimum = Integer.MAX_VALUE;
+        for (int r = 0; r < depth; r++) {
+            minimum = Math.min(minimum, sketch[counter(r, hash, second)]);
+        }
+        for (int r = 0; r < depth; r++) {
+            int c = counter(r, hash, second);
+            if (sketch[c] == minimum) {
+                sketch[c]++;
+            }
+        }
+        return minimum + 1;
+    }
+
+
+    /**
+     * Derives a second, odd hash code used to choose the counters of the rows (double hashing).
+     *
+     * @param hash The hash code of the term.
+     * @return The second hash code.
+     */
+    private static int second_hash(int hash) {
+        return Integer.rotateLeft(hash * 0x9e3779b9, 16) | 1;
+    }
+
+
+    /**
+     * Returns the position of the counter of a term in a row of the sketch.
+     *
+     * @param row    The row.
+     * @param hash   The hash code of the term.
+     * @param second The second hash code of the term.
+     * @return The position in the sketch array.
+     */
+    private int counter(int row, int hash, int second) {
+        return row * (width_mask + 1) + ((hash + row * second) & width_mask);
+    }
+
+
+    /**
+     * Finds the slot of a term in the table, or the empty slot where it would be inserted.
+     *
+     * @param hash  The hash code of the term.
+     * @param text  The text containing the term.
+     * @param start The start of the term (inclusive).
+     * @param end   The end of the term (exclusive).
+     * @return The slot.
+     */
+    private int find(int hash, CharSequence text, int start, int end) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != -1) {
+            int entry = table[slot];
+            if (hashes[entry] == hash && matches(terms[entry], text, start, end)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+
+    /**
+     * Removes an entry from the table, shifting back the following entries of its probe sequence
+     * so that no tombstones are needed.
+     *
+     * @param entry The entry.
+     */
+    private void remove_from_table(int entry) {
+        int mask = table.length - 1;
+        int slot = hashes[entry] & mask;
+        while (table[slot] != entry) {
+            slot = (slot + 1) & mask;
+        }
+        int next = (slot + 1) & mask;
+        while (table[next] != -1) {
+            int home = hashes[table[next]] & mask;
+            // Move the entry back if its home slot is not between the hole and its current slot
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                table[slot] = table[next];
+                slot = next;
+            }
+            next = (next + 1) & mask;
+        }
+        table[slot] = -1;
+    }
+
+
+    /**
+     * Moves a heap element towards the root while it is smaller than its parent.
+     *
+     * @param position The position of the element.
+     */
+    private void sift_up(int position) {
+        int entry = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (estimates[heap[parent]] <= estimates[entry]) {
+                break;
+            }
+            place(heap[parent], position);
+            position = parent;
+        }
+        place(entry, position);
+    }
+
+
+    /**
+     * Moves a heap element towards the leaves while it is larger than one of its children.
+     *
+     * @param position The position of the element.
+     */
+    private void sift_down(int position) {
+        int entry = heap[position];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && estimates[heap[child + 1]] < estimates[heap[child]]) {
+                child++;
+            }
+            if (estimates[heap[child]] >= estimates[entry]) {
+                break;
+            }
+            place(heap[child], position);
+            position = child;
+        }
+        place(entry, position);
+    }
+
+
+    /**
+     * Stores an entry at a position of the heap.
+     *
+     * @param entry    The entry.
+     * @param position The position.
+     */
+    private void place(int entry, int position) {
+        heap[position] = entry;
+        heap_position[entry] = position;
+    }
+
+
+    /**
+     * Compares a stored term with a range of characters.
+     *
+     * @param term  The stored term.
+     * @param text  The text containing the compared range.
+     * @param start The start of the range (inclusive).
+     * @param end   The end of the range (exclusive).
+     * @return True if the term equals the range.
+     */
+    private static boolean matches(String term, CharSequence text, int start, int end) {
+        if (term.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < term.length(); i++) {
+            if (term.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * This package contains the text processing building blocks shared by the feature extraction methods:
+ * tokenization of documents and lookup of terms without creating String objects.
+ */
+package com.example.ml.feature.extraction.text;
+
+
+/**
+ * The MurmurHash3 class computes the 32-bit MurmurHash3 (x86_32 variant) of a range of characters.
+ * It is a fast non-cryptographic hash with good avalanche behaviour, suited for hashing terms into buckets.
+ * Characters are hashed as their UTF-16 code units, two characters per 32-bit block.
+ */
+public class MurmurHash3 {
+    private static final int C1 = 0xcc9e2d51;
+    private static final int C2 = 0x1b873593;
+
+
+    /**
+     * Computes the hash of the characters [start, end) of a CharSequence.
+     *
+     * @param text  The text containing the hashed characters.
+     * @param start The start of the range (inclusive).
+     * @param end   The end of the range (exclusive).
+     * @param seed  The seed of the hash function.
+     * @return The 32-bit hash.
+     */
+    public static int hash(CharSequence text, int start, int end, int seed) {
+        int h = seed;
+        int i = start;
+        for (; i + 1 < end; i += 2) {
+            int k = text.charAt(i) | (text.charAt(i + 1) << 16);
+            h ^= mix_k(k);
+            h = Integer.rotateLeft(h, 13);
+            h = h * 5 + 0xe6546b64;
+        }
+        if (i < end) {
+            h ^= mix_k(text.charAt(i));
+        }
+        return fmix(h ^ (2 * (end - start)));
+    }
+
+
+    /**
+     * Scrambles a 32-bit block before it is combined into the hash.
+     *
+     * @param k The block.
+     * @return The scrambled block.
+     */
+    private static int mix_k(int k) {
+        k *= C1;
+        k = Integer.rotateLeft(k, 15);
+        return k * C2;
+    }
+
+
+    /**
+     * Final avalanche step of the hash.
+     *
+     * @param h The intermediate hash.
+     * @return The final hash.
+     */
+    private static int fmix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * This package contains the text processing building blocks shared by the feature extraction methods:
+ * tokenization of documents and lookup of terms without creating String objects.
+ */
+package com.example.ml.feature.extraction.text;
+
+import java.util.Arrays;
+
+
+/**
+ * The SimHash class computes the 64-bit SimHash fingerprint of a document from its terms.
+ * Every term occurrence is hashed to 64 bits and votes +1 or -1 on every bit position according to its hash;
+ * the fingerprint has the bits whose total vote is positive. Documents sharing most of their terms get fingerprints
+ * differing in few bits, so the Hamming distance of two fingerprints estimates how different the documents are,
+ * and near-duplicate documents (for example the messages of a spam campaign) can be found by comparing fingerprints.
+ *
+ * The fingerprint is computed in one tokenization pass without creating String objects. The 64 per-bit counts of
+ * ones are kept bit-sliced (bit i of planes[k] is bit k of the count of bit position i), so adding the hash of a term
+ * costs a few word operations instead of 64 counter updates.
+ * A SimHash object is a TokenConsumer and can be reused for several documents with reset; it is not thread-safe.
+ */
+public class SimHash implements Tokenizer.TokenConsumer {
+    // Seed of the hash of a term
+    private static final int SEED = 0x2f0b3c61;
+
+    // Bit-sliced counts of the term hashes having a one at every bit position
+    private final long[] planes = new long[32];
+    // Number of term occurrences added
+    private int num_terms = 0;
+
+
+    /**
+     * Computes the fingerprint of a document.
+     *
+     * @param document The document.
+     * @return The 64-bit fingerprint.
+     */
+    public static long fingerprint(CharSequence document) {
+        SimHash simhash = new SimHash();
+        Tokenizer.tokenize(document, simhash);
+        return simhash.get_fingerprint();
+    }
+
+
+    /**
+     * Returns the number of bits in which two fingerprints differ.
+     *
+     * @param a The first fingerprint.
+     * @param b The second fingerprint.
+     * @return The Hamming distance, between 0 and 64.
+     */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+
+    /**
+     * Adds the votes of one term occurrence: increments the counts of the bit positions where its hash has a one,
+     * rippling the carries through the bit planes. Called by the tokenizer.
+     *
+     * @param text  The text containing the term.
+     * @param start The start of the term (inclusive).
+     * @param end   The end of the term (exclusive).
+     */
+    @Override
+    public void accept(CharSequence text, int start, int end) {
+        long carry = mix64(MurmurHash3.hash(text, start, end, SEED));
+        for (int k = 0; carry != 0; k++) {
+            long next = planes[k] & carry;
+            planes[k] ^= carry;
+            carry = next;
+        }
+        num_terms++;
+    }
+
+
+    /**
+     * Returns the fingerprint of the terms added since the creation or the last reset.
+     *
+     * @return The 64-bit fingerprint.
+     */
+    public long get_fingerprint() {
+        long fingerprint = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            long ones = 0;
+            for (int k = 0; k < planes.length; k++) {
+                ones |= ((planes[k] >>> bit) & 1) << k;
+            }
+            // More ones than zeros at this position
+            if (2 * ones > num_terms) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint;
+    }
+
+
+    /**
+     * Spreads a 32-bit hash over 64 bits (the finalizer of SplitMix64).
+     *
+     * @param hash The 32-bit hash.
+     * @return The 64-bit hash.
+     */
+    private static long mix64(int hash) {
+        long z = hash * 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+
+    /**
+     * Forgets all added terms, so that the next document can be fingerprinted.
+     */
+    public void reset() {
+        Arrays.fill(planes, 0);
+        num_terms = 0;
+    }
+}
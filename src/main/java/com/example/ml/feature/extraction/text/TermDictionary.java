@@ -0,0 +1,277 @@
+/**
+ * This package contains the text processing building blocks shared by the feature extraction methods:
+ * tokenization of documents and lookup of terms without creating String objects.
+ */
+package com.example.ml.feature.extraction.text;
+
+import java.util.Arrays;
+
+
+/**
+ * The TermDictionary class assigns consecutive indices 0, 1, 2, ... to terms in the order they are added
+ * and keeps the total count and the document count of every term.
+ *
+ * It is an open-addressing hash table of primitive arrays: the characters of all terms are stored one after
+ * another in a single char arena, and the hash code, total count, document count and the last document
+ * that counted the term are parallel int arrays indexed by the term index. Lookups take a range of characters
+ * of any CharSequence, so neither looking up nor adding a term creates an object, and a term costs its characters
+ * plus a few ints instead of a String, a boxed Integer and a map entry.
+ */
+public class TermDictionary implements TermLookup {
+    // Characters of all terms, term i occupies [offsets[i], offsets[i + 1])
+    private char[] arena = new char[1024];
+    // Start of every term in the arena, offsets[size] is the end of the last term
+    private int[] offsets = new int[65];
+    // Hash codes of the terms by index
+    private int[] hashes = new int[64];
+    // Number of occurrences of each term
+    private int[] counts = new int[64];
+    // Number of documents containing each term
+    private int[] doc_counts = new int[64];
+    // 1 + the last document that counted each term, 0 if no document did
+    private int[] last_document = new int[64];
+    // Open-addressing table of term indices, -1 marks an empty slot. Its length is a power of two.
+    private int[] table = new int[128];
+    // Number of terms
+    private int size = 0;
+
+
+    /**
+     * Creates an empty dictionary.
+     */
+    public TermDictionary() {
+        Arrays.fill(table, -1);
+    }
+
+
+    /**
+     * Returns the index of a term, adding the term if it is not in the dictionary yet.
+     * Adding a term does not change its counts.
+     *
+     * @param text  The text containing the term.
+     * @param start The start of the term (inclusive).
+     * @param end   The end of the term (exclusive).
+     * @return The index of the term.
+     */
+    public int add(CharSequence text, int start, int end) {
+        int hash = hash(text, start, end);
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != -1) {
+            int index = table[slot];
+            if (hashes[index] == hash && matches(index, text, start, end)) {
+                return index;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (size == hashes.length) {
+            int capacity = size * 2;
+            offsets = Arrays.copyOf(offsets, capacity + 1);
+            hashes = Arrays.copyOf(hashes, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            doc_counts = Arrays.copyOf(doc_counts, capacity);
+            last_document = Arrays.copyOf(last_document, capacity);
+        }
+        int offset = offsets[size];
+        int length = end - start;
+        if (offset + length > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(2 * arena.length, offset + length));
+        }
+        for (int i = 0; i < length; i++) {
+            arena[offset + i] = text.charAt(start + i);
+        }
+        offsets[size + 1] = offset + length;
+        hashes[size] = hash;
+        table[slot] = size;
+        size++;
+        if (2 * size > table.length) {
+            rehash();
+        }
+        return size - 1;
+    }
+
+
+    /**
+     * Returns the index of a whole String term, adding the term if it is not in the dictionary yet.
+     *
+     * @param term The term.
+     * @return The index of the term.
+     */
+    public int add(String term) {
+        return add(term, 0, term.length());
+    }
+
+
+    /**
+     * Counts one occurrence of a term in a document. The document count of the term is increased only by the
+     * first occurrence in each document; documents must be numbered from 0 and counted one after another.
+     *
+     * @param index    The index of the term.
+     * @param document The number of the current document.
+     * @return True if this is the first occurrence of the term in the document.
+     */
+    public boolean count(int index, int document) {
+        counts[index]++;
+        if (last_document[index] == document + 1) {
+            return false;
+        }
+        last_document[index] = document + 1;
+        doc_counts[index]++;
+        return true;
+    }
+
+
+    /**
+     * Sets the counts of a term, for example when copying the terms kept after pruning a dictionary.
+     *
+     * @param index     The index of the term.
+     * @param count     The number of occurrences of the term.
+     * @param doc_count The number of documents containing the term.
+     */
+    public void set_counts(int index, int count, int doc_count) {
+        counts[index] = count;
+        doc_counts[index] = doc_count;
+    }
+
+
+    /**
+     * Returns the number of occurrences of a term.
+     *
+     * @param index The index of the term.
+     * @return The number of occurrences.
+     */
+    public int get_count(int index) {
+        return counts[index];
+    }
+
+
+    /**
+     * Returns the number of documents containing a term.
+     *
+     * @param index The index of the term.
+     * @return The number of documents.
+     */
+    public int get_doc_count(int index) {
+        return doc_counts[index];
+    }
+
+
+    /**
+     * Returns the index of a term, or -1 if the term is not in the dictionary.
+     *
+     * @param text  The text containing the term.
+     * @param start The start of the term (inclusive).
+     * @param end   The end of the term (exclusive).
+     * @return The index of the term or -1.
+     */
+    @Override
+    public int index_of(CharSequence text, int start, int end) {
+        int hash = hash(text, start, end);
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != -1) {
+            int index = table[slot];
+            if (hashes[index] == hash && matches(index, text, start, end)) {
+                return index;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+
+    /**
+     * Returns the number of terms.
+     *
+     * @return The number of terms.
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * Returns the term with the given index as a new String.
+     *
+     * @param index The index of the term.
+     * @return The term.
+     */
+    @Override
+    public String term(int index) {
+        return new String(arena, offsets[index], offsets[index + 1] - offsets[index]);
+    }
+
+
+    /**
+     * Shrinks the arrays to the number of terms. Useful once a dictionary is complete and kept for a long time;
+     * adding terms afterwards is still possible.
+     */
+    public void trim() {
+        arena = Arrays.copyOf(arena, offsets[size]);
+        int capacity = Math.max(size, 1);
+        offsets = Arrays.copyOf(offsets, capacity + 1);
+        hashes = Arrays.copyOf(hashes, capacity);
+        counts = Arrays.copyOf(counts, capacity);
+        doc_counts = Arrays.copyOf(doc_counts, capacity);
+        last_document = Arrays.copyOf(last_document, capacity);
+    }
+
+
+    /**
+     * Computes the hash code of a term; it equals String.hashCode of the term, mixed to spread the bits.
+     *
+     * @param text  The text containing the term.
+     * @param start The start of the term (inclusive).
+     * @param end   The end of the term (exclusive).
+     * @return The hash code.
+     */
+    private static int hash(CharSequence text, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + text.charAt(i);
+        }
+        return h ^ (h >>> 16) ^ (h >>> 7);
+    }
+
+
+    /**
+     * Compares a stored term with a range of characters.
+     *
+     * @param index The index of the stored term.
+     * @param text  The text containing the compared range.
+     * @param start The start of the range (inclusive).
+     * @param end   The end of the range (exclusive).
+     * @return True if the term equals the range.
+     */
+    private boolean matches(int index, CharSequence text, int start, int end) {
+        int offset = offsets[index];
+        if (offsets[index + 1] - offset != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (arena[offset++] != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Doubles the hash table and reinserts all terms.
+     */
+    private void rehash() {
+        table = new int[table.length * 2];
+        Arrays.fill(table, -1);
+        int mask = table.length - 1;
+        for (int index = 0; index < size; index++) {
+            int slot = hashes[index] & mask;
+            while (table[slot] != -1) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = index;
+        }
+    }
+}
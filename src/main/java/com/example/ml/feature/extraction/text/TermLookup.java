@@ -0,0 +1,17 @@
+/**
+ * This package contains the text processing building blocks shared by the feature extraction methods:
+ * tokenization of documents and lookup of terms without creating String objects.
+ */
+package com.example.ml.feature.extraction.text;
+
+
+/**
+ * The TermLookup interface maps terms to their indices in a feature vector.
+ * Terms are given as a range of characters of a CharSequence, so a lookup does not need to create a String.
+ * The term with index i can be retrieved with term(i), for example to save the vocabulary.
+ */
+public interface TermLookup {
+    int index_of(CharSequence text, int start, int end);
+    int size();
+    String term(int index);
+}
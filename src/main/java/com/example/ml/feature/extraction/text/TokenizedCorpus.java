@@ -0,0 +1,171 @@
+/**
+ * This package contains the text processing building blocks shared by the feature extraction methods:
+ * tokenization of documents and lookup of terms without creating String objects.
+ */
+package com.example.ml.feature.extraction.text;
+
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * The TokenizedCorpus class tokenizes a list of documents once and keeps, in compact int arrays,
+ * the distinct terms of every document with their counts and the number of terms of every document.
+ * The terms are numbered by a TermDictionary, which also holds the total count and document count of every term.
+ *
+ * The documents can then be turned into feature vectors for any vocabulary derived from the dictionary
+ * (for example by TfIdf.fit or by cross-validation) without tokenizing them again.
+ * If the corpus is created with a non-empty dictionary, only the terms of that dictionary are recorded.
+ */
+public final class TokenizedCorpus implements Tokenizer.TokenConsumer {
+    // Dictionary of the counted terms
+    private final TermDictionary dictionary;
+    // Whether the dictionary was given in advance and no terms are added to it
+    private final boolean fixed;
+    // Position of each term of the current document in document_terms
+    private int[] position = new int[1024];
+    // Distinct terms of every document and their counts, document d occupies [document_ptr[d], document_ptr[d + 1])
+    private int[] document_terms = new int[1024];
+    private int[] document_term_counts = new int[1024];
+    private final int[] document_ptr;
+    // Number of terms (known or unknown) of every document
+    private final int[] document_lengths;
+    // Number of documents added so far
+    private int num_documents = 0;
+    // Number of (term, count) pairs stored so far
+    private int size = 0;
+
+
+    /**
+     * Tokenizes documents, adding all their terms to a new dictionary.
+     *
+     * @param documents The documents.
+     */
+    public TokenizedCorpus(List<String> documents) {
+        this(documents, new TermDictionary());
+    }
+
+
+    /**
+     * Tokenizes documents.
+     *
+     * @param documents  The documents.
+     * @param dictionary An empty dictionary receiving all terms, or the dictionary of the only terms to record.
+     */
+    public TokenizedCorpus(List<String> documents, TermDictionary dictionary) {
+        this.dictionary = dictionary;
+        this.fixed = dictionary.size() > 0;
+        document_ptr = new int[documents.size() + 1];
+        document_lengths = new int[documents.size()];
+        for (String document : documents) {
+            document_lengths[num_documents] = Tokenizer.tokenize(document, this);
+            num_documents++;
+            document_ptr[num_documents] = size;
+        }
+        position = null;
+    }
+
+
+    /**
+     * Records one occurrence of a term in the current document. Called by the tokenizer.
+     *
+     * @param text  The text containing the term.
+     * @param start The start of the term (inclusive).
+     * @param end   The end of the term (exclusive).
+     */
+    @Override
+    public void accept(CharSequence text, int start, int end) {
+        int term = fixed ? dictionary.index_of(text, start, end) : dictionary.add(text, start, end);
+        if (term < 0) {
+            return;
+        }
+        if (term >= position.length) {
+            position = Arrays.copyOf(position, Math.max(2 * position.length, term + 1));
+        }
+        if (!dictionary.count(term, num_documents)) {
+            document_term_counts[position[term]]++;
+            return;
+        }
+        if (size == document_terms.length) {
+            document_terms = Arrays.copyOf(document_terms, 2 * size);
+            document_term_counts = Arrays.copyOf(document_term_counts, 2 * size);
+        }
+        position[term] = size;
+        document_terms[size] = term;
+        document_term_counts[size] = 1;
+        size++;
+    }
+
+
+    /**
+     * Returns the dictionary numbering the terms, with the total count and document count of every term.
+     *
+     * @return The dictionary.
+     */
+    public TermDictionary get_dictionary() {
+        return dictionary;
+    }
+
+
+    /**
+     * Returns the number of documents.
+     *
+     * @return The number of documents.
+     */
+    public int num_documents() {
+        return num_documents;
+    }
+
+
+    /**
+     * Returns the position of the first (term, count) pair of a document in get_terms() and get_counts().
+     *
+     * @param document The document.
+     * @return The start position (inclusive).
+     */
+    public int document_start(int document) {
+        return document_ptr[document];
+    }
+
+
+    /**
+     * Returns the position after the last (term, count) pair of a document in get_terms() and get_counts().
+     *
+     * @param document The document.
+     * @return The end position (exclusive).
+     */
+    public int document_end(int document) {
+        return document_ptr[document + 1];
+    }
+
+
+    /**
+     * Returns the distinct terms of all documents, in order of their first occurrence within each document.
+     *
+     * @return The term indices (not a copy).
+     */
+    public int[] get_terms() {
+        return document_terms;
+    }
+
+
+    /**
+     * Returns the number of occurrences of the terms returned by get_terms() in their documents.
+     *
+     * @return The counts (not a copy).
+     */
+    public int[] get_counts() {
+        return document_term_counts;
+    }
+
+
+    /**
+     * Returns the number of terms of a document, including the terms which are not recorded.
+     *
+     * @param document The document.
+     * @return The number of terms.
+     */
+    public int get_length(int document) {
+        return document_lengths[document];
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * This package contains the text processing building blocks shared by the feature extraction methods:
+ * tokenization of documents and lookup of terms without creating String objects.
+ */
+package com.example.ml.feature.extraction.text;
+
+import java.util.Arrays;
+
+
+/**
+ * The Tokenizer class splits documents into terms at the same boundaries as document.split("\\W+"),
+ * but scans the characters directly instead of running the regular expression engine and creating a String per token.
+ *
+ * Terms are runs of word characters [a-zA-Z_0-9]. To stay compatible with String.split, a document starting with
+ * a non-word character produces a leading empty term, a document without any non-word character produces itself
+ * as the only term (also when it is empty), and a document made only of non-word characters produces no terms.
+ *
+ * A Tokenizer instance keeps a reusable buffer of term indices, so encoding a document against a vocabulary
+ * creates no garbage once the buffer has grown to the longest document. Instances are not thread-safe.
+ */
+public class Tokenizer {
+    // Indices of the known terms of the last encoded document
+    private int[] ids = new int[256];
+    // Number of valid entries in "ids"
+    private int num_ids;
+    // Number of terms (known or unknown) of the last encoded document
+    private int token_count;
+    // Vocabulary used by the current call of encode
+    private TermLookup vocabulary;
+    // Consumer also receiving every term during the current call of encode, or null
+    private TokenConsumer observer;
+    // Consumer collecting the indices of known terms, created once per instance
+    private final TokenConsumer collector = this::collect;
+
+
+    /**
+     * Functional interface receiving the terms of a document as ranges of characters.
+     */
+    public interface TokenConsumer {
+        void accept(CharSequence text, int start, int end);
+    }
+
+
+    /**
+     * Splits a document into terms and passes each term to the consumer.
+     *
+     * @param document The input document.
+     * @param consumer The consumer receiving each term as the range [start, end) of the document.
+     * @return The number of terms.
+     */
+    public static int tokenize(CharSequence document, TokenConsumer consumer) {
+        int length = document.length();
+        int count = 0;
+        int start = 0;
+        // A leading empty term is only produced if some non-empty term follows it
+        boolean leading_empty = false;
+        int i = 0;
+
+        while (i < length) {
+            if (is_word_char(document.charAt(i))) {
+                i++;
+                continue;
+            }
+            int separator_start = i;
+            while (i < length && !is_word_char(document.charAt(i))) {
+                i++;
+            }
+            if (separator_start == 0) {
+                leading_empty = true;
+            } else {
+                if (leading_empty) {
+                    consumer.accept(document, 0, 0);
+                    count++;
+                    leading_empty = false;
+                }
+                consumer.accept(document, start, separator_start);
+                count++;
+            }
+            start = i;
+        }
+
+        if (start < length || length == 0) {
+            if (leading_empty) {
+                consumer.accept(document, 0, 0);
+                count++;
+            }
+            consumer.accept(document, start, length);
+            count++;
+        }
+        return count;
+    }
+
+
+    /**
+     * Splits a document into terms and stores the indices of the terms found in the vocabulary into the buffer
+     * returned by ids(). Terms missing from the vocabulary are counted in token_count() but not stored.
+     *
+     * @param document   The input document.
+     * @param vocabulary The vocabulary used to look up the terms.
+     * @return The number of known terms stored in ids().
+     */
+    public int encode(CharSequence document, TermLookup vocabulary) {
+        return encode(document, vocabulary, null);
+    }
+
+
+    /**
+     * Splits a document into terms like encode(document, vocabulary), and in the same pass passes every term
+     * (known or unknown) to an observer, for example a SimHash computing the fingerprint of the document.
+     *
+     * @param document   The input document.
+     * @param vocabulary The vocabulary used to look up the terms.
+     * @param observer   The consumer receiving every term, or null.
+     * @return The number of known terms stored in ids().
+     */
+    public int encode(CharSequence document, TermLookup vocabulary, TokenConsumer observer) {
+        this.vocabulary = vocabulary;
+        this.observer = observer;
+        num_ids = 0;
+        try {
+            token_count = tokenize(document, collector);
+        } finally {
+            this.vocabulary = null;
+            this.observer = null;
+        }
+        return num_ids;
+    }
+
+
+    /**
+     * Returns the buffer holding the indices of the known terms of the last encoded document.
+     * Only the first encode(...) entries are valid, and the buffer is overwritten by the next call of encode.
+     *
+     * @return The buffer of term indices.
+     */
+    public int[] ids() {
+        return ids;
+    }
+
+
+    /**
+     * Returns the number of terms (known or unknown) of the last encoded document.
+     *
+     * @return The number of terms.
+     */
+    public int token_count() {
+        return token_count;
+    }
+
+
+    /**
+     * Checks whether a character is a word character, i.e. matched by \w.
+     *
+     * @param c The character.
+     * @return True for [a-zA-Z_0-9], false otherwise.
+     */
+    public static boolean is_word_char(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+
+    /**
+     * Looks up a term in the current vocabulary and stores its index if it is known,
+     * then passes the term to the observer if there is one.
+     *
+     * @param text  The text containing the term.
+     * @param start The start of the term (inclusive).
+     * @param end   The end of the term (exclusive).
+     */
+    private void collect(CharSequence text, int start, int end) {
+        int index = vocabulary.index_of(text, start, end);
+        if (index >= 0) {
+            if (num_ids == ids.length) {
+                ids = Arrays.copyOf(ids, ids.length * 2);
+            }
+            ids[num_ids++] = index;
+        }
+        if (observer != null) {
+            observer.accept(text, start, end);
+        }
+    }
+}
@@ -4,7 +4,14 @@
  */
 package com.example.ml.feature.extraction.tfidf;
 
+import com.example.ml.data.matrix.RowBuilder;
+import com.example.ml.data.matrix.SparseMatrix;
 import com.example.ml.feature.extraction.Extractor;
+import com.example.ml.feature.extraction.text.TermLookup;
+import com.example.ml.feature.extraction.text.TokenizedCorpus;
+import com.example.ml.feature.extraction.text.HeavyHitters;
+import com.example.ml.feature.extraction.text.TermDictionary;
+import com.example.ml.feature.extraction.text.Tokenizer;
 import java.util.*;
 
 
@@ -16,35 +23,131 @@ import java.util.*;
  *
  * This class implements the Extractor interface and provides the fit and transform methods for fitting the TF-IDF model
  * on a collection of documents and transforming the documents into their TF-IDF feature representations.
+ *
+ * A TfIdf object must not be fitted while another thread transforms documents with it. To score while training,
+ * take an immutable ModelSnapshot of the fitted model (see com.example.ml.serving).
  */
 public class TfIdf implements Extractor{
-    // Place to save the created feature vectors
-    public double[][] data;
+    // Tokenizer of every thread transforming single documents or small batches, reused for all of them
+    private static final ThreadLocal<Tokenizer> TOKENIZERS = ThreadLocal.withInitial(Tokenizer::new);
+
+    // Dense copy of the created feature vectors, built lazily by transform()
+    private double[][] data;
+    // Place to save the created feature vectors (only non-zero values are stored)
+    private SparseMatrix sparse_data;
     // Vocabulary of all used tokens in training data with corresponding index in feature vector
-    public HashMap<String, Integer> vocabulary;
+    private TermLookup term_index;
     // IDF vector
-    public double[] idf_vector;
-    // Pointer to "data"
-    private int pointer = 0;
+    private double[] idf_vector;
+    // Minimum number of documents containing a term for the term to be kept
+    private int min_df = 2;
+    // Maximum fraction of documents containing a term for the term to be kept
+    private double max_df = 1.0;
+    // Maximum number of terms kept, the most frequent ones
+    private int max_features = Integer.MAX_VALUE;
+    // Number of candidate terms found approximately before counting, 0 counts all terms exactly
+    private int approximate_capacity = 0;
+
+
+    /**
+     * Creates an unfitted TF-IDF transformer.
+     */
+    public TfIdf() {
+    }
+
+
+    /**
+     * Creates a fitted TF-IDF transformer from a vocabulary and an IDF vector, for example loaded from a model file.
+     * Such a transformer can transform new documents.
+     *
+     * @param vocabulary The vocabulary of terms and their indices in the feature vector.
+     * @param idf_vector The IDF vector, with one entry per term of the vocabulary.
+     */
+    public TfIdf(TermLookup vocabulary, double[] idf_vector) {
+        if (vocabulary.size() != idf_vector.length) {
+            throw new IllegalArgumentException("The vocabulary has " + vocabulary.size()
+                    + " terms but the IDF vector has " + idf_vector.length + " entries");
+        }
+        this.term_index = vocabulary;
+        this.idf_vector = idf_vector;
+    }
+
+
+    /**
+     * Sets the minimum number of training documents a term must occur in to be kept in the vocabulary (default 2).
+     *
+     * @param min_df The minimum document count.
+     */
+    public void set_min_df(int min_df) {
+        if (min_df < 1) {
+            throw new IllegalArgumentException("min_df must be at least 1, got " + min_df);
+        }
+        this.min_df = min_df;
+    }
+
+
+    /**
+     * Sets the maximum fraction of training documents a term may occur in to be kept in the vocabulary (default 1.0).
+     * Terms occurring in almost every document carry little information and can be dropped with a smaller value.
+     *
+     * @param max_df The maximum document frequency, between 0 and 1.
+     */
+    public void set_max_df(double max_df) {
+        if (!(max_df > 0 && max_df <= 1)) {
+            throw new IllegalArgumentException("max_df must be in (0, 1], got " + max_df);
+        }
+        this.max_df = max_df;
+    }
+
+
+    /**
+     * Limits the vocabulary to the given number of terms with the largest number of occurrences in the training
+     * documents, among the terms allowed by min_df and max_df (default unlimited).
+     *
+     * @param max_features The maximum vocabulary size.
+     */
+    public void set_max_features(int max_features) {
+        if (max_features < 1) {
+            throw new IllegalArgumentException("max_features must be positive, got " + max_features);
+        }
+        this.max_features = max_features;
+    }
+
+
+    /**
+     * Switches fit to approximate counting in fixed memory. A first pass over the training documents finds the
+     * given number of most frequent terms with a count-min sketch and a heap of heavy hitters; only these candidates
+     * are counted exactly in the second pass and pruned by min_df, max_df and max_features. The memory used for
+     * counting then depends on the number of candidates, not on the number of distinct terms of the corpus.
+     * The number of candidates should be well above max_features; 0 switches back to exact counting of all terms.
+     *
+     * @param num_candidates The number of candidate terms, or 0.
+     */
+    public void set_approximate(int num_candidates) {
+        if (num_candidates < 0) {
+            throw new IllegalArgumentException("The number of candidates must not be negative, got " + num_candidates);
+        }
+        this.approximate_capacity = num_candidates;
+    }
 
 
     /**
      * Calculates the Term Frequency (TF) feature vector for a given document based on a dictionary.
      *
      * @param document   The input document as a String.
-     * @param dictionary A HashMap representing the dictionary of terms and their corresponding indices.
+     * @param dictionary The dictionary of terms and their corresponding indices.
+     * @param tokenizer  The tokenizer used to split the document.
      * @return A double array representing the TF feature vector for the document.
      */
-    private double[] TF(String document, HashMap<String, Integer> dictionary) {
+    private static double[] TF(String document, TermLookup dictionary, Tokenizer tokenizer) {
         // Create feature vector of zeros
         double[] new_sample = new double[dictionary.size()];
-        int term_count = 0;
-        for (String term : document.split("\\W+")) {
-            if (dictionary.containsKey(term)) {
-                new_sample[dictionary.get(term)] += 1;
-            }
-            term_count++;
+        int num_ids = tokenizer.encode(document, dictionary);
+        int[] ids = tokenizer.ids();
+        for (int k = 0; k < num_ids; k++) {
+            new_sample[ids[k]] += 1;
         }
+        int term_count = tokenizer.token_count();
         // divide all counts of terms from document with the term_count
         for (int i = 0; i < dictionary.size(); i++) {
             new_sample[i] = new_sample[i]/term_count;
@@ -54,26 +157,39 @@ public class TfIdf implements Extractor{
 
 
     /**
-     * Computes the Inverse Document Frequency (IDF) feature vector using the document count and dictionary.
+     * Computes the Inverse Document Frequency (IDF) feature vector using the document count of every term.
      *
      * @param documents_count      The total number of documents.
-     * @param dictionary_doc_count A map representing the document count for each term in the dictionary.
-     * @param dictionary           A map representing the dictionary of terms and their corresponding indices.
+     * @param dictionary_doc_count The number of documents containing each term, indexed by the term index.
+     * @param size                 The number of terms.
      * @return A double array representing the IDF feature vector.
      */
-    private static double[] IDF(int documents_count, Map<String, Integer> dictionary_doc_count, Map<String, Integer> dictionary) {
+    private static double[] IDF(int documents_count, int[] dictionary_doc_count, int size) {
         // Create feature vector of zeros
-        double[] new_sample = new double[dictionary.size()];
+        double[] new_sample = new double[size];
 
-        // Go through all terms and for each compute inverse document frequency(IDF) and save it to "correct place" in resulting vector
-        for (String term: dictionary.keySet()) {
-            int term_doc_count = dictionary_doc_count.getOrDefault(term, 0);
-            new_sample[dictionary.get(term)] = Math.log((double) documents_count / (term_doc_count + 1));
+        // Go through all terms and for each compute inverse document frequency(IDF)
+        for (int i = 0; i < size; i++) {
+            new_sample[i] = idf(documents_count, dictionary_doc_count[i]);
         }
         return new_sample;
     }
 
 
+    /**
+     * Computes the inverse document frequency of one term, log(num_documents / (doc_count + 1)).
+     * This is the formula of fit; it is public so that other components (for example cross-validation)
+     * derive the same IDF vector from their own counts.
+     *
+     * @param num_documents The number of training documents.
+     * @param doc_count     The number of training documents containing the term.
+     * @return The inverse document frequency.
+     */
+    public static double idf(long num_documents, long doc_count) {
+        return Math.log((double) num_documents / (doc_count + 1));
+    }
+
+
     /**
      * Performs element-wise multiplication between two double arrays and returns the result.
      *
@@ -97,92 +213,445 @@ public class TfIdf implements Extractor{
      * @return A double array representing the transformed test data.
      */
     public double[][] fit_transform_testdata(ArrayList<String> X) {
-        double[][] test_data = new double[X.size()][vocabulary.size()];
+        double[][] test_data = new double[X.size()][term_index.size()];
+        Tokenizer tokenizer = new Tokenizer();
         int i = 0;
         for (String document: X) {
-            test_data[i] = multiply(TF(document, vocabulary), idf_vector);
+            test_data[i] = multiply(TF(document, term_index, tokenizer), idf_vector);
             i++;
         }
         return test_data;
     }
 
 
+    /**
+     * Transforms the provided list of test documents with the fitted model into a sparse matrix.
+     * Unlike fit_transform_testdata, no dense row is ever allocated.
+     *
+     * @param X An ArrayList of strings representing the input test documents.
+     * @return A sparse matrix representing the transformed test data.
+     */
+    public SparseMatrix fit_transform_testdata_sparse(ArrayList<String> X) {
+        SparseMatrix.Builder builder = new SparseMatrix.Builder(term_index.size());
+        transform_rows(X, builder);
+        return builder.build();
+    }
+
+
+    /**
+     * Transforms documents with the fitted model and appends their TF-IDF vectors as rows to a builder,
+     * one document at a time. With an OffHeapSparseMatrix.Builder and a streaming source of documents,
+     * neither the documents nor the feature vectors need to fit in the heap.
+     *
+     * @param X       The input documents.
+     * @param builder The builder receiving one row per document, with one column per vocabulary term.
+     */
+    public void transform_rows(Iterable<? extends CharSequence> X, RowBuilder builder) {
+        RowEncoder encoder = new RowEncoder(term_index.size());
+        Tokenizer tokenizer = new Tokenizer();
+        for (CharSequence document: X) {
+            int num_ids = tokenizer.encode(document, term_index);
+            int[] ids = tokenizer.ids();
+            for (int k = 0; k < num_ids; k++) {
+                encoder.add(ids[k], 1);
+            }
+            encoder.finish_row(tokenizer.token_count(), idf_vector, builder);
+        }
+    }
+
+
     /**
      * Fits the feature extraction model on the provided list of documents.
+     * Every document is tokenized only once: the first pass records the term counts of each document,
+     * which are then re-indexed to the final vocabulary to build the feature vectors.
+     * In approximate mode (see set_approximate) the documents are tokenized once more beforehand
+     * to find the candidate terms.
      *
      * @param X An ArrayList of strings representing the input documents.
      */
     @Override
     public void fit(ArrayList<String> X) {
-        // Dictionary where key = term t, value = number of occurrences of the term t in all documents
-        HashMap<String, Integer> dictionary = new HashMap<>();
-        // Dictionary where key = term t, value = number of documents containing t
-        HashMap<String, Integer> dictionary_doc_count = new HashMap<>();
-        // Set of terms in document d
-        HashSet<String> used_terms = new HashSet<>();
-
-        // Place to store already created feature vectors
-        data = new double[X.size()][];
-
-        for (String document : X) {
-            used_terms.clear();
-            for (String term : document.split("\\W+")) {
-                if (dictionary.containsKey(term)) {
-                    dictionary.put(term, dictionary.get(term) + 1);
-                } else {
-                    dictionary.put(term, 1);
-                    dictionary_doc_count.put(term, 0);
+        // Counts terms of all documents and remembers the (term, count) pairs of each document
+        TokenizedCorpus corpus;
+        if (approximate_capacity > 0) {
+            HeavyHitters hitters = new HeavyHitters(approximate_capacity, 8 * approximate_capacity, 4);
+            for (String document : X) {
+                Tokenizer.tokenize(document, hitters);
+            }
+            TermDictionary candidates = new TermDictionary();
+            for (String term : hitters.top()) {
+                candidates.add(term);
+            }
+            corpus = new TokenizedCorpus(X, candidates);
+        } else {
+            corpus = new TokenizedCorpus(X);
+        }
+
+        // Build the vocabulary and the IDF vector, and drop the feature vectors of a previous fit
+        int[] new_index = build_vocabulary(corpus.get_dictionary(), X.size());
+        data = null;
+
+        // compute term frequency for each document and apply idf vector (create sparse feature vector for each document)
+        SparseMatrix.Builder builder = new SparseMatrix.Builder(term_index.size());
+        RowEncoder encoder = new RowEncoder(term_index.size());
+        int[] terms = corpus.get_terms();
+        int[] term_counts = corpus.get_counts();
+        for (int d = 0; d < X.size(); d++) {
+            for (int k = corpus.document_start(d); k < corpus.document_end(d); k++) {
+                int term = new_index[terms[k]];
+                if (term >= 0) {
+                    encoder.add(term, term_counts[k]);
                 }
-                used_terms.add(term);
             }
-            for (String term : used_terms) {
-                dictionary_doc_count.put(term, dictionary_doc_count.get(term) + 1);
+            encoder.finish_row(corpus.get_length(d), idf_vector, builder);
+        }
+        sparse_data = builder.build();
+    }
+
+
+    /**
+     * Fits the vocabulary and the IDF vector from terms counted elsewhere, for example by streaming a corpus that
+     * does not fit in memory, with the same min_df, max_df and max_features rule and IDF formula as fit. No training
+     * feature vectors are stored, so transform and transform_sparse return null until the next fit.
+     *
+     * @param dictionary    The counted terms, with the number of occurrences and of documents of every term,
+     *                      numbered in order of first occurrence.
+     * @param num_documents The number of counted documents.
+     */
+    public void fit_vocabulary(TermDictionary dictionary, int num_documents) {
+        build_vocabulary(dictionary, num_documents);
+        data = null;
+        sparse_data = null;
+    }
+
+
+    /**
+     * Removes the terms not allowed by min_df, max_df and max_features from counted terms, keeping the order of
+     * first occurrence, and sets the vocabulary and the IDF vector of the kept terms.
+     *
+     * @param dictionary    The counted terms.
+     * @param num_documents The number of counted documents.
+     * @return For every counted term, its index in the new vocabulary, or -1 if it was removed.
+     */
+    private int[] build_vocabulary(TermDictionary dictionary, int num_documents) {
+        int[] doc_counts = new int[dictionary.size()];
+        int[] counts = new int[dictionary.size()];
+        for (int term = 0; term < dictionary.size(); term++) {
+            doc_counts[term] = dictionary.get_doc_count(term);
+            counts[term] = dictionary.get_count(term);
+        }
+        boolean[] kept = select_terms(doc_counts, counts, num_documents, min_df, max_df, max_features);
+        int[] new_index = new int[dictionary.size()];
+        TermDictionary term_index = new TermDictionary();
+        int[] dictionary_doc_count = new int[dictionary.size()];
+        for (int term = 0; term < dictionary.size(); term++) {
+            if (!kept[term]) {
+                new_index[term] = -1;
+            } else {
+                new_index[term] = term_index.add(dictionary.term(term));
+                term_index.set_counts(new_index[term], counts[term], doc_counts[term]);
+                dictionary_doc_count[new_index[term]] = doc_counts[term];
             }
         }
+        term_index.trim();
+        this.term_index = term_index;
+        idf_vector = IDF(num_documents, dictionary_doc_count, term_index.size());
+        return new_index;
+    }
 
-        // Remove all terms which occurred only once
-        List<String> delete = new ArrayList<>();
-        for (Map.Entry<String, Integer> entry : dictionary.entrySet()) {
-            if (dictionary_doc_count.get(entry.getKey()) < 2) {
-                delete.add(entry.getKey());
+
+    /**
+     * Decides which counted terms are kept in the vocabulary: the terms whose document count
+     * is between min_df and max_df times the number of documents and, if more than max_features of them remain,
+     * only the max_features terms with the most occurrences (earlier terms first among equal counts).
+     * This is the rule applied by fit; it is public so that other components (for example cross-validation)
+     * derive the same vocabulary from their own counts.
+     *
+     * @param doc_counts    The number of training documents containing each term.
+     * @param counts        The number of occurrences of each term in the training documents.
+     * @param num_documents The number of training documents.
+     * @param min_df        The minimum document count.
+     * @param max_df        The maximum fraction of documents.
+     * @param max_features  The maximum number of kept terms.
+     * @return For every term, whether it is kept.
+     */
+    public static boolean[] select_terms(int[] doc_counts, int[] counts, int num_documents,
+                                         int min_df, double max_df, int max_features) {
+        double max_doc_count = max_df * num_documents;
+        boolean[] kept = new boolean[doc_counts.length];
+        int num_kept = 0;
+        for (int term = 0; term < doc_counts.length; term++) {
+            int doc_count = doc_counts[term];
+            kept[term] = doc_count >= min_df && doc_count <= max_doc_count;
+            if (kept[term]) {
+                num_kept++;
             }
         }
-        for (String key : delete) {
-            dictionary.remove(key);
-            dictionary_doc_count.remove(key);
+        if (num_kept <= max_features) {
+            return kept;
         }
 
-        // We don't need counts of terms from "dictionary". We will recycle "dictionary" for indexing feature vectors
-        int i = 0;
-        for (String key : dictionary.keySet()) {
-            dictionary.put(key, i++);
+        // Sort the kept terms by count, then by reversed index, and drop all but the last max_features
+        long[] keys = new long[num_kept];
+        int k = 0;
+        for (int term = 0; term < doc_counts.length; term++) {
+            if (kept[term]) {
+                keys[k++] = ((long) counts[term] << 32) | (Integer.MAX_VALUE - term);
+            }
+        }
+        Arrays.sort(keys);
+        for (k = 0; k < num_kept - max_features; k++) {
+            kept[Integer.MAX_VALUE - (int) keys[k]] = false;
         }
+        return kept;
+    }
 
-        vocabulary = dictionary;
 
-        // compute term frequency for each document (create feature vector for each document)
-        for (String document: X) {
-            data[pointer] = TF(document, dictionary);
-            pointer++;
+    /**
+     * Reduces the fitted model to a subset of its features, for example the features chosen by a FeatureSelector.
+     * The vocabulary, the IDF vector and the stored training feature vectors keep only the selected terms, numbered
+     * in the given order, so new documents are transformed directly into the reduced feature space and a saved model
+     * only contains the selected terms.
+     *
+     * @param support The indices of the kept features in ascending order.
+     */
+    public void select_features(int[] support) {
+        int[] new_index = new int[term_index.size()];
+        Arrays.fill(new_index, -1);
+        TermDictionary selected = new TermDictionary();
+        double[] selected_idf = new double[support.length];
+        for (int i = 0; i < support.length; i++) {
+            if (i > 0 && support[i] <= support[i - 1]) {
+                throw new IllegalArgumentException("The selected features must be in ascending order");
+            }
+            selected.add(term_index.term(support[i]));
+            if (term_index instanceof TermDictionary) {
+                TermDictionary counted = (TermDictionary) term_index;
+                selected.set_counts(i, counted.get_count(support[i]), counted.get_doc_count(support[i]));
+            }
+            selected_idf[i] = idf_vector[support[i]];
+            new_index[support[i]] = i;
         }
+        selected.trim();
 
-        // compute idf vector
-        idf_vector = IDF(X.size(), dictionary_doc_count, dictionary);
-
-        // apply idf vector to all data
-        for (int j = 0; j < X.size();j++) {
-            data[j] = multiply(data[j],idf_vector);
+        if (sparse_data != null) {
+            sparse_data = sparse_data.select_columns(new_index, support.length);
         }
+        data = null;
+        term_index = selected;
+        idf_vector = selected_idf;
     }
 
 
     /**
      * Transforms the input data using the fitted feature extraction model.
+     * The dense matrix is created from the sparse feature vectors on the first call.
      *
      * @return A double array representing the transformed data.
      */
     @Override
     public double[][] transform() {
+        if (data == null && sparse_data != null) {
+            data = sparse_data.to_dense();
+        }
         return data;
     }
-}
\ No newline at end of file
+
+
+    /**
+     * Returns the input data transformed by the fitted feature extraction model as a sparse matrix.
+     *
+     * @return A sparse matrix representing the transformed data.
+     */
+    @Override
+    public SparseMatrix transform_sparse() {
+        return sparse_data;
+    }
+
+
+    /**
+     * Transforms a single document with the fitted model into a sparse matrix with one row.
+     * Unlike the batch transforms it needs no scratch array of the vocabulary size, and it reuses a tokenizer per
+     * thread, so scoring one message at a time only allocates the returned row. It only reads the fitted model and
+     * can be called from several threads.
+     *
+     * @param document The input document.
+     * @return A sparse matrix with the TF-IDF vector of the document as its only row.
+     */
+    public SparseMatrix transform_document(CharSequence document) {
+        Tokenizer tokenizer = TOKENIZERS.get();
+        return transform_encoded(tokenizer, tokenizer.encode(document, term_index));
+    }
+
+
+    /**
+     * Transforms the document last encoded by a tokenizer against the vocabulary of the fitted model into a sparse
+     * matrix with one row. Together with Tokenizer.encode(document, get_vocabulary(), observer) it lets a caller
+     * inspect the terms of a document (for example to fingerprint it) in the same pass that encodes it.
+     * The ids buffer of the tokenizer is sorted in place.
+     *
+     * @param tokenizer The tokenizer which encoded the document with get_vocabulary().
+     * @param num_ids   The number of known terms returned by encode.
+     * @return A sparse matrix with the TF-IDF vector of the document as its only row.
+     */
+    public SparseMatrix transform_encoded(Tokenizer tokenizer, int num_ids) {
+        int[] columns = new int[num_ids];
+        double[] values = new double[num_ids];
+        int num_columns = encode_row(tokenizer, num_ids, columns, values);
+        return new SparseMatrix(new int[]{0, num_columns}, columns, values, term_index.size());
+    }
+
+
+    /**
+     * Transforms a batch of documents with the fitted model into a sparse matrix with one row per document.
+     * Like transform_document it needs no scratch array of the vocabulary size, so it is cheap for the small batches
+     * of online scoring, and the rows equal the ones of transform_document. It only reads the fitted model and can
+     * be called from several threads.
+     *
+     * @param documents The input documents.
+     * @return A sparse matrix with the TF-IDF vector of every document as a row, in the order of the documents.
+     */
+    public SparseMatrix transform_documents(List<? extends CharSequence> documents) {
+        SparseMatrix.Builder builder = new SparseMatrix.Builder(term_index.size());
+        Tokenizer tokenizer = TOKENIZERS.get();
+        int[] columns = new int[64];
+        double[] values = new double[64];
+        for (CharSequence document : documents) {
+            int num_ids = tokenizer.encode(document, term_index);
+            if (num_ids > columns.length) {
+                columns = new int[num_ids];
+                values = new double[num_ids];
+            }
+            builder.add_row(columns, values, encode_row(tokenizer, num_ids, columns, values));
+        }
+        return builder.build();
+    }
+
+
+    /**
+     * Computes the sparse TF-IDF row of the document last encoded by a tokenizer.
+     * The ids buffer of the tokenizer is sorted in place.
+     *
+     * @param tokenizer The tokenizer which encoded the document with get_vocabulary().
+     * @param num_ids   The number of known terms returned by encode.
+     * @param columns   The array receiving the distinct term indices in ascending order, at least num_ids long.
+     * @param values    The array receiving the TF-IDF values, at least num_ids long.
+     * @return The number of distinct terms stored in columns and values.
+     */
+    private int encode_row(Tokenizer tokenizer, int num_ids, int[] columns, double[] values) {
+        int[] ids = tokenizer.ids();
+        Arrays.sort(ids, 0, num_ids);
+
+        // Count the runs of equal term indices
+        int num_columns = 0;
+        double term_count = tokenizer.token_count();
+        for (int k = 0; k < num_ids; ) {
+            int index = ids[k];
+            int count = 0;
+            for (; k < num_ids && ids[k] == index; k++) {
+                count++;
+            }
+            columns[num_columns] = index;
+            values[num_columns] = (count / term_count) * idf_vector[index];
+            num_columns++;
+        }
+        return num_columns;
+    }
+
+
+    /**
+     * Returns the vocabulary of the fitted model, which maps terms to their indices in the feature vector.
+     *
+     * @return The vocabulary.
+     */
+    public TermLookup get_vocabulary() {
+        return term_index;
+    }
+
+
+    /**
+     * Returns the IDF vector of the fitted model, with one entry per term of the vocabulary.
+     *
+     * @return The IDF vector (not a copy).
+     */
+    public double[] get_idf_vector() {
+        return idf_vector;
+    }
+
+
+    /**
+     * Transforms new documents with the fitted model into a sparse matrix.
+     *
+     * @param X An ArrayList of strings representing the input documents.
+     * @return A sparse matrix representing the transformed documents.
+     */
+    @Override
+    public SparseMatrix transform_sparse(ArrayList<String> X) {
+        return fit_transform_testdata_sparse(X);
+    }
+
+
+    /**
+     * The RowEncoder class turns the term indices of a document into a sparse TF-IDF row.
+     * Its buffers are reused between documents, so encoding a document creates no garbage
+     * apart from the row stored in the builder.
+     */
+    private static class RowEncoder {
+        // Number of occurrences of every term in the current document, all zeros between documents
+        private final int[] counts;
+        // Distinct term indices of the current document
+        private int[] columns = new int[64];
+        // TF-IDF values of the current document
+        private double[] values = new double[64];
+        // Number of distinct terms of the current document
+        private int num_columns = 0;
+
+
+        /**
+         * Creates an encoder for the given vocabulary size.
+         *
+         * @param vocabulary_size The number of terms in the vocabulary.
+         */
+        RowEncoder(int vocabulary_size) {
+            counts = new int[vocabulary_size];
+        }
+
+
+        /**
+         * Adds occurrences of a term to the current document.
+         *
+         * @param index The index of the term.
+         * @param count The number of occurrences.
+         */
+        void add(int index, int count) {
+            if (counts[index] == 0) {
+                if (num_columns == columns.length) {
+                    columns = Arrays.copyOf(columns, num_columns * 2);
+                    values = Arrays.copyOf(values, num_columns * 2);
+                }
+                columns[num_columns++] = index;
+            }
+            counts[index] += count;
+        }
+
+
+        /**
+         * Computes the TF-IDF values of the current document, appends them as a new row to a sparse matrix builder
+         * and starts a new document.
+         *
+         * @param term_count The number of terms (known or unknown) of the document.
+         * @param idf        The IDF vector applied to the term frequencies.
+         * @param builder    The builder receiving the new row.
+         */
+        void finish_row(int term_count, double[] idf, RowBuilder builder) {
+            Arrays.sort(columns, 0, num_columns);
+            for (int k = 0; k < num_columns; k++) {
+                int index = columns[k];
+                values[k] = ((double) counts[index] / term_count) * idf[index];
+                counts[index] = 0;
+            }
+            builder.add_row(columns, values, num_columns);
+            num_columns = 0;
+        }
+    }
+}
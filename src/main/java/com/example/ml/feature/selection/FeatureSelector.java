@@ -0,0 +1,416 @@
+/**
+ * This package contains supervised feature selection, which keeps only the features carrying information
+ * about the labels so that the classifier works with a smaller feature space.
+ */
+package com.example.ml.feature.selection;
+
+import com.example.ml.data.matrix.SparseMatrix;
+import com.example.ml.parallel.WorkerPool;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+
+/**
+ * The FeatureSelector class scores every feature against the binary labels and keeps the K best ones.
+ * It sits between the feature extraction and the classifier: fit it on the extracted training data, transform
+ * the training and test data with it, and apply get_support() to the extractor (for example TfIdf.select_features)
+ * so that new documents are extracted directly into the reduced feature space.
+ *
+ * Two scores are available:
+ * CHI2 compares the sum of the feature values in each class with the sum expected if the feature
+ * were independent of the label; MUTUAL_INFORMATION measures the information (in nats) that the occurrence
+ * of the feature gives about the label.
+ *
+ * The statistics are collected in one pass over the non-zero entries of the data. When created with a thread count
+ * or a ForkJoinPool, blocks of samples are counted in parallel and merged in block order, and the scores are computed
+ * in parallel over blocks of features. The results are deterministic and do not depend on the number of threads
+ * apart from floating-point rounding of the sums. Closing the selector ends the threads of a pool it created from
+ * a thread count; the fitted selection stays usable after that.
+ */
+public class FeatureSelector implements AutoCloseable {
+    // Minimum number of samples per block when the statistics are counted in parallel
+    private static final int MIN_ROW_BLOCK_SIZE = 256;
+    // Minimum number of features per block when the scores are computed in parallel
+    private static final int MIN_COLUMN_BLOCK_SIZE = 1024;
+
+    // Score used to rank the features
+    private final Score score;
+    // Number of features to keep
+    private final int k;
+    // Pool used for parallel fitting
+    private final WorkerPool pool;
+    // Score of every feature of the fitted data
+    private double[] scores;
+    // Indices of the kept features in ascending order
+    private int[] support;
+    // New index of every feature, -1 for dropped features
+    private int[] new_index;
+
+
+    /**
+     * The scores by which the features are ranked.
+     */
+    public enum Score {
+        CHI2,
+        MUTUAL_INFORMATION
+    }
+
+
+    /**
+     * Functional interface for work done on the block [from, to) of rows or columns.
+     */
+    private interface BlockTask {
+        void run(int from, int to);
+    }
+
+
+    /**
+     * Creates a selector which fits in serial mode.
+     *
+     * @param score The score used to rank the features.
+     * @param k     The number of features to keep.
+     */
+    public FeatureSelector(Score score, int k) {
+        this(score, k, WorkerPool.of(null));
+    }
+
+
+    /**
+     * Creates a selector which fits using the given number of threads, on a pool of its own
+     * which is shut down by close.
+     *
+     * @param score       The score used to rank the features.
+     * @param k           The number of features to keep.
+     * @param num_threads The number of threads, 1 means serial mode.
+     */
+    public FeatureSelector(Score score, int k, int num_threads) {
+        this(score, k, WorkerPool.of_threads(num_threads));
+    }
+
+
+    /**
+     * Creates a selector which fits in parallel on the given pool.
+     * The pool belongs to the caller and is not shut down by close.
+     *
+     * @param score The score used to rank the features.
+     * @param k     The number of features to keep.
+     * @param pool  The pool running the parallel work, or null for serial mode.
+     */
+    public FeatureSelector(Score score, int k, ForkJoinPool pool) {
+        this(score, k, WorkerPool.of(pool));
+    }
+
+
+    /**
+     * Creates a selector.
+     *
+     * @param score The score used to rank the features.
+     * @param k     The number of features to keep.
+     * @param pool  The pool running the parallel work, closed if k is invalid.
+     */
+    private FeatureSelector(Score score, int k, WorkerPool pool) {
+        if (k < 1) {
+            pool.close();
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        this.score = score;
+        this.k = k;
+        this.pool = pool;
+    }
+
+
+    /**
+     * Shuts down the pool created by the FeatureSelector(score, k, num_threads) constructor, so its threads end.
+     * A pool given by the caller is left running. The fitted selection stays usable, but the selector must not
+     * be fitted again after it is closed.
+     */
+    @Override
+    public void close() {
+        pool.close();
+    }
+
+
+    /**
+     * Scores the features of the training data and selects the k best ones.
+     * If the data has k or fewer features, all of them are kept.
+     *
+     * @param X The training data as a sparse matrix with shape [num_samples, num_features].
+     * @param y The binary labels of the samples, 0 = ham, 1 = spam.
+     */
+    public void fit(SparseMatrix X, int[] y) {
+        if (X.rows() != y.length) {
+            throw new IllegalArgumentException("X has " + X.rows() + " rows but y has " + y.length + " labels");
+        }
+
+        // Count the statistics of blocks of samples and merge them in block order
+        int row_block_size = block_size(X.rows(), MIN_ROW_BLOCK_SIZE);
+        ClassStatistics[] blocks = new ClassStatistics[(X.rows() + row_block_size - 1) / row_block_size];
+        run_blocks(X.rows(), row_block_size, (from, to) -> {
+            ClassStatistics block = new ClassStatistics(X.cols());
+            block.add(X, y, from, to);
+            blocks[from / row_block_size] = block;
+        });
+        ClassStatistics statistics = new ClassStatistics(X.cols());
+        for (ClassStatistics block : blocks) {
+            statistics.merge(block);
+        }
+
+        // Score the features
+        double[] scores = new double[X.cols()];
+        run_blocks(X.cols(), block_size(X.cols(), MIN_COLUMN_BLOCK_SIZE), (from, to) -> {
+            for (int j = from; j < to; j++) {
+                scores[j] = score == Score.CHI2 ? statistics.chi2(j) : statistics.mutual_information(j);
+            }
+        });
+        this.scores = scores;
+        select(scores);
+    }
+
+
+    /**
+     * Keeps only the selected features of a matrix with the number of features of the fitted data.
+     *
+     * @param X The data as a sparse matrix with shape [num_samples, num_features].
+     * @return The data with shape [num_samples, number of selected features].
+     */
+    public SparseMatrix transform(SparseMatrix X) {
+        if (new_index == null) {
+            throw new IllegalStateException("The feature selector is not fitted");
+        }
+        return X.select_columns(new_index, support.length);
+    }
+
+
+    /**
+     * Fits the selector and returns the training data with only the selected features.
+     *
+     * @param X The training data as a sparse matrix with shape [num_samples, num_features].
+     * @param y The binary labels of the samples, 0 = ham, 1 = spam.
+     * @return The training data with shape [num_samples, number of selected features].
+     */
+    public SparseMatrix fit_transform(SparseMatrix X, int[] y) {
+        fit(X, y);
+        return transform(X);
+    }
+
+
+    /**
+     * Returns the score of every feature of the fitted data; larger scores mean more information about the label.
+     *
+     * @return The scores indexed by the original feature index.
+     */
+    public double[] get_scores() {
+        return scores;
+    }
+
+
+    /**
+     * Returns the original indices of the selected features in ascending order.
+     * The i-th selected feature becomes feature i of the transformed data.
+     *
+     * @return The indices of the selected features.
+     */
+    public int[] get_support() {
+        return support;
+    }
+
+
+    /**
+     * Returns the new index of every feature of the fitted data, or -1 for the dropped features.
+     *
+     * @return The mapping from original to new feature indices.
+     */
+    public int[] get_new_index() {
+        return new_index;
+    }
+
+
+    /**
+     * Selects the k features with the largest scores (the smaller index first among equal scores)
+     * and numbers them in the order of their original indices.
+     *
+     * @param scores The scores of all features.
+     */
+    private void select(double[] scores) {
+        int num_features = scores.length;
+        Integer[] order = new Integer[num_features];
+        for (int j = 0; j < num_features; j++) {
+            order[j] = j;
+        }
+        Arrays.sort(order, (a, b) -> scores[a] != scores[b] ? Double.compare(scores[b], scores[a]) : a - b);
+
+        support = new int[Math.min(k, num_features)];
+        for (int i = 0; i < support.length; i++) {
+            support[i] = order[i];
+        }
+        Arrays.sort(support);
+        new_index = new int[num_features];
+        Arrays.fill(new_index, -1);
+        for (int i = 0; i < support.length; i++) {
+            new_index[support[i]] = i;
+        }
+    }
+
+
+    /**
+     * Returns the block size used to split [0, size). In serial mode the whole range is a single block, in parallel
+     * mode the range is split into about four blocks per thread (but not smaller than min_block_size).
+     *
+     * @param size           The size of the range.
+     * @param min_block_size The minimum number of elements per block.
+     * @return The number of elements per block, at least 1.
+     */
+    private int block_size(int size, int min_block_size) {
+        if (pool.is_serial()) {
+            return Math.max(size, 1);
+        }
+        return Math.max(min_block_size, (size + 4 * pool.parallelism() - 1) / (4 * pool.parallelism()));
+    }
+
+
+    /**
+     * Runs a task over the blocks [0, block_size), [block_size, 2 * block_size), ... of [0, size),
+     * on the pool in parallel mode, and waits until all blocks are finished.
+     *
+     * @param size       The size of the range.
+     * @param block_size The number of elements per block.
+     * @param task       The task run on every block.
+     */
+    private void run_blocks(int size, int block_size, BlockTask task) {
+        if (pool.is_serial()) {
+            for (int from = 0; from < size; from += block_size) {
+                task.run(from, Math.min(size, from + block_size));
+            }
+            return;
+        }
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int from = 0; from < size; from += block_size) {
+            int block_from = from;
+            int block_to = Math.min(size, from + block_size);
+            tasks.add(pool.submit(() -> task.run(block_from, block_to)));
+        }
+        for (ForkJoinTask<?> block : tasks) {
+            block.join();
+        }
+    }
+
+
+    /**
+     * The ClassStatistics class holds, for both classes, the number of samples and, for every feature,
+     * the sum of its values and the number of samples in which it is non-zero.
+     */
+    private static class ClassStatistics {
+        // Sum of the values of every feature, by class
+        final double[][] sums;
+        // Number of samples with a non-zero value of every feature, by class
+        final int[][] doc_counts;
+        // Number of samples of each class
+        final long[] class_counts = new long[2];
+
+
+        /**
+         * Creates empty statistics.
+         *
+         * @param num_features The number of features.
+         */
+        ClassStatistics(int num_features) {
+            sums = new double[2][num_features];
+            doc_counts = new int[2][num_features];
+        }
+
+
+        /**
+         * Counts the samples [from, to) of a matrix.
+         *
+         * @param X    The data.
+         * @param y    The labels of all samples of the data.
+         * @param from The first sample (inclusive).
+         * @param to   The last sample (exclusive).
+         */
+        void add(SparseMatrix X, int[] y, int from, int to) {
+            int[] indices = X.get_indices();
+            double[] values = X.get_values();
+            for (int r = from; r < to; r++) {
+                int label = y[r];
+                double[] class_sums = sums[label];
+                int[] class_doc_counts = doc_counts[label];
+                class_counts[label]++;
+                for (int p = X.row_start(r); p < X.row_end(r); p++) {
+                    class_sums[indices[p]] += values[p];
+                    class_doc_counts[indices[p]]++;
+                }
+            }
+        }
+
+
+        /**
+         * Adds the statistics of another block.
+         *
+         * @param other The statistics to add, it is not modified.
+         */
+        void merge(ClassStatistics other) {
+            for (int c = 0; c < 2; c++) {
+                class_counts[c] += other.class_counts[c];
+                for (int j = 0; j < sums[c].length; j++) {
+                    sums[c][j] += other.sums[c][j];
+                    doc_counts[c][j] += other.doc_counts[c][j];
+                }
+            }
+        }
+
+
+        /**
+         * Computes the chi-square statistic of a feature: the sum over the classes of (observed - expected)^2 / expected,
+         * where observed is the sum of the feature values in the class and expected is the total sum of the feature
+         * values times the fraction of samples in the class.
+         *
+         * @param j The feature.
+         * @return The chi-square statistic, 0 for a feature which is zero everywhere.
+         */
+        double chi2(int j) {
+            double total = sums[0][j] + sums[1][j];
+            long num_samples = class_counts[0] + class_counts[1];
+            if (total == 0 || num_samples == 0) {
+                return 0;
+            }
+            double chi2 = 0;
+            for (int c = 0; c < 2; c++) {
+                double expected = total * class_counts[c] / num_samples;
+                if (expected > 0) {
+                    double difference = sums[c][j] - expected;
+                    chi2 += difference * difference / expected;
+                }
+            }
+            return chi2;
+        }
+
+
+        /**
+         * Computes the mutual information between the occurrence of a feature and the label:
+         * the sum over occurrence t and class c of P(t, c) * log(P(t, c) / (P(t) * P(c))), estimated from the counts.
+         *
+         * @param j The feature.
+         * @return The mutual information in nats.
+         */
+        double mutual_information(int j) {
+            double num_samples = class_counts[0] + class_counts[1];
+            double occurrences = doc_counts[0][j] + doc_counts[1][j];
+            double information = 0;
+            for (int c = 0; c < 2; c++) {
+                double with = doc_counts[c][j];
+                double without = class_counts[c] - with;
+                if (with > 0) {
+                    information += with / num_samples * Math.log(num_samples * with / (occurrences * class_counts[c]));
+                }
+                if (without > 0) {
+                    information += without / num_samples
+                            * Math.log(num_samples * without / ((num_samples - occurrences) * class_counts[c]));
+                }
+            }
+            return information;
+        }
+    }
+}
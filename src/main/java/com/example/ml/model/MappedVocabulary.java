@@ -0,0 +1,161 @@
+/**
+ * Provides the persistent model format: saving a fitted TfIdf transformer together with a fitted
+ * GaussianNaiveBayes classifier, and loading them back by memory-mapping the file.
+ */
+package com.example.ml.model;
+
+import com.example.ml.feature.extraction.text.MurmurHash3;
+import com.example.ml.feature.extraction.text.TermLookup;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+
+
+/**
+ * A vocabulary whose terms and hash table are read directly from the mapped bytes of a model file
+ * (or from a heap copy of them).
+ * Loading it creates no object per term, and lookups compare the characters of the looked-up term
+ * with the mapped characters without creating a String.
+ */
+class MappedVocabulary implements TermLookup {
+    // Seed of the hash function used by the hash table
+    static final int SEED = 0x2545f491;
+    // Largest fraction of used hash table slots accepted when loading; ModelFile.save uses at most half of them
+    static final double MAX_LOAD_FACTOR = 0.75;
+
+    // Offset of every term in "chars", term i occupies [offsets[i], offsets[i + 1])
+    private final IntBuffer offsets;
+    // Open-addressing table of term indices, -1 marks an empty slot. Its length is a power of two.
+    private final IntBuffer table;
+    // Characters of all terms
+    private final CharBuffer chars;
+    // Number of terms
+    private final int size;
+
+
+    /**
+     * Creates a vocabulary over mapped buffers after checking that they form a valid vocabulary: increasing offsets
+     * within the characters, and a power-of-two table holding every term index exactly once with at most
+     * MAX_LOAD_FACTOR of its slots used, so that every lookup reaches an empty slot.
+     *
+     * @param offsets The term offsets, size + 1 entries.
+     * @param table   The hash table.
+     * @param chars   The characters of all terms.
+     * @throws IOException If the buffers do not form a valid vocabulary.
+     */
+    MappedVocabulary(IntBuffer offsets, IntBuffer table, CharBuffer chars) throws IOException {
+        this.offsets = offsets;
+        this.table = table;
+        this.chars = chars;
+        this.size = offsets.limit() - 1;
+
+        if (size < 0 || offsets.get(0) != 0 || offsets.get(size) != chars.limit()) {
+            throw new IOException("Corrupted vocabulary: term offsets do not match the characters");
+        }
+        for (int i = 0; i < size; i++) {
+            if (offsets.get(i + 1) < offsets.get(i)) {
+                throw new IOException("Corrupted vocabulary: decreasing term offsets at term " + i);
+            }
+        }
+        int table_size = table.limit();
+        if (Integer.bitCount(table_size) != 1 || size > table_size * MAX_LOAD_FACTOR) {
+            throw new IOException("Corrupted vocabulary: hash table of " + table_size + " slots for " + size
+                    + " terms");
+        }
+        boolean[] seen = new boolean[size];
+        for (int slot = 0; slot < table_size; slot++) {
+            int index = table.get(slot);
+            if (index == -1) {
+                continue;
+            }
+            if (index < 0 || index >= size || seen[index]) {
+                throw new IOException("Corrupted vocabulary: invalid term index " + index + " in slot " + slot);
+            }
+            seen[index] = true;
+        }
+        for (int i = 0; i < size; i++) {
+            if (!seen[i]) {
+                throw new IOException("Corrupted vocabulary: term " + i + " is missing from the hash table");
+            }
+        }
+    }
+
+
+    /**
+     * Returns the index of a term, or -1 if the term is not in the vocabulary.
+     *
+     * @param text  The text containing the term.
+     * @param start The start of the term (inclusive).
+     * @param end   The end of the term (exclusive).
+     * @return The index of the term or -1.
+     */
+    @Override
+    public int index_of(CharSequence text, int start, int end) {
+        int mask = table.limit() - 1;
+        int slot = MurmurHash3.hash(text, start, end, SEED) & mask;
+        // The table always has an empty slot, the bound only guards against a table changed after loading
+        for (int probes = 0; probes <= mask; probes++) {
+            int index = table.get(slot);
+            if (index == -1) {
+                return -1;
+            }
+            if (matches(index, text, start, end)) {
+                return index;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+
+    /**
+     * Returns the number of terms.
+     *
+     * @return The number of terms.
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * Returns the term with the given index.
+     *
+     * @param index The index of the term.
+     * @return The term.
+     */
+    @Override
+    public String term(int index) {
+        int from = offsets.get(index);
+        int to = offsets.get(index + 1);
+        char[] term = new char[to - from];
+        for (int i = 0; i < term.length; i++) {
+            term[i] = chars.get(from + i);
+        }
+        return new String(term);
+    }
+
+
+    /**
+     * Compares a stored term with a range of characters.
+     *
+     * @param index The index of the stored term.
+     * @param text  The text containing the compared range.
+     * @param start The start of the range (inclusive).
+     * @param end   The end of the range (exclusive).
+     * @return True if the term equals the range.
+     */
+    private boolean matches(int index, CharSequence text, int start, int end) {
+        int from = offsets.get(index);
+        if (offsets.get(index + 1) - from != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (chars.get(from + i - start) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
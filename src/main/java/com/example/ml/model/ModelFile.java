@@ -0,0 +1,424 @@
+/**
+ * Provides the persistent model format: saving a fitted TfIdf transformer together with a fitted
+ * GaussianNaiveBayes classifier, and loading them back by memory-mapping the file.
+ */
+package com.example.ml.model;
+
+import com.example.ml.classifier.naivebayes.GaussianNaiveBayes;
+import com.example.ml.feature.extraction.text.MurmurHash3;
+import com.example.ml.feature.extraction.text.TermLookup;
+import com.example.ml.feature.extraction.tfidf.TfIdf;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+
+/**
+ * The ModelFile class saves and loads a TF-IDF transformer and a Gaussian Naive Bayes classifier
+ * in a versioned little-endian binary format designed to be memory-mapped.
+ *
+ * Layout (V = vocabulary size, T = hash table size, C = total number of term characters):
+ *   header      64 bytes: magic "SPFM", version, V, T, C, reserved
+ *   idf         double[V]
+ *   ham means, ham variances, spam means, spam variances   double[V] each
+ *   priors      double[2] (ham, spam)
+ *   offsets     int[V + 1], term i occupies characters [offsets[i], offsets[i + 1])
+ *   table       int[T], open-addressing hash table of term indices (-1 = empty), T is a power of two
+ *   characters  char[C], UTF-16 code units of all terms
+ *
+ * Loading maps the file with FileChannel.map and looks terms up directly in the mapped bytes (or in a heap copy
+ * of them); only the parameter vectors are copied into double arrays. Saving writes a temporary file in the same
+ * directory and atomically renames it over the target, so an existing file is replaced but never rewritten in place
+ * and mappings of it stay valid. The header, the file size, the term offsets and the hash
+ * table are checked while loading, so a truncated or corrupted file fails with an IOException.
+ */
+public class ModelFile {
+    // "SPFM" read as a little-endian int
+    private static final int MAGIC = 0x4D465053;
+    // Current version of the format
+    private static final int VERSION = 1;
+    // Size of the header in bytes
+    static final int HEADER_SIZE = 64;
+
+
+    /**
+     * The Model class holds a loaded transformer and classifier.
+     */
+    public static class Model {
+        // Fitted TF-IDF transformer
+        private final TfIdf extractor;
+        // Fitted classifier
+        private final GaussianNaiveBayes classifier;
+
+
+        /**
+         * Creates a model.
+         *
+         * @param extractor  The fitted TF-IDF transformer.
+         * @param classifier The fitted classifier.
+         */
+        Model(TfIdf extractor, GaussianNaiveBayes classifier) {
+            this.extractor = extractor;
+            this.classifier = classifier;
+        }
+
+
+        /**
+         * Returns the loaded TF-IDF transformer.
+         *
+         * @return The transformer.
+         */
+        public TfIdf get_extractor() {
+            return extractor;
+        }
+
+
+        /**
+         * Returns the loaded classifier.
+         *
+         * @return The classifier.
+         */
+        public GaussianNaiveBayes get_classifier() {
+            return classifier;
+        }
+    }
+
+
+    /**
+     * Writes the contents of a file.
+     */
+    @FunctionalInterface
+    interface ContentWriter {
+        /**
+         * Writes the contents to a channel.
+         *
+         * @param channel The channel of the new file.
+         * @throws IOException If an I/O error occurs.
+         */
+        void write(FileChannel channel) throws IOException;
+    }
+
+
+    /**
+     * Saves a fitted transformer and classifier to a file.
+     *
+     * @param path       The path of the file.
+     * @param extractor  The fitted TF-IDF transformer.
+     * @param classifier The classifier fitted on the features of the transformer.
+     * @throws IOException If an I/O error occurs while writing the file.
+     */
+    public static void save(Path path, TfIdf extractor, GaussianNaiveBayes classifier) throws IOException {
+        TermLookup vocabulary = extractor.get_vocabulary();
+        int size = vocabulary.size();
+        if (classifier.get_means(0).length != size) {
+            throw new IllegalArgumentException("The classifier has " + classifier.get_means(0).length
+                    + " features but the vocabulary has " + size + " terms");
+        }
+
+        ByteBuffer section = vocabulary_section(vocabulary);
+        int table_size = table_size(size);
+        write_atomically(path, channel -> {
+            ByteBuffer header = little_endian(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(table_size)
+                    .putInt(num_chars(section, size, table_size));
+            header.position(HEADER_SIZE);
+            write(channel, header);
+
+            write_doubles(channel, extractor.get_idf_vector());
+            write_doubles(channel, classifier.get_means(0));
+            write_doubles(channel, classifier.get_variances(0));
+            write_doubles(channel, classifier.get_means(1));
+            write_doubles(channel, classifier.get_variances(1));
+            write_doubles(channel, new double[]{classifier.get_prior(0), classifier.get_prior(1)});
+            write(channel, section);
+        });
+    }
+
+
+    /**
+     * Writes a file into a temporary file next to the target and renames it over the target, so a model loaded from
+     * the previous file (which may still be mapped and scoring) never sees a truncated or partly written file.
+     * The temporary file is created with the default permissions of new files (not the owner-only permissions
+     * of Files.createTempFile), and takes over the POSIX permissions of a target it replaces.
+     *
+     * @param path   The path of the file, absolute or relative to the working directory.
+     * @param writer The writer of the contents.
+     * @throws IOException If an I/O error occurs while writing the file.
+     */
+    static void write_atomically(Path path, ContentWriter writer) throws IOException {
+        // The temporary file must be in the target's directory (even for a bare file name), or the rename fails
+        // across file systems
+        Path target = path.toAbsolutePath();
+        Path directory = target.getParent();
+        if (directory == null) {
+            throw new IOException("Not a file path: " + path);
+        }
+        Path temporary;
+        FileChannel channel;
+        while (true) {
+            temporary = directory.resolve("." + target.getFileName() + "."
+                    + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+            try {
+                channel = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                break;
+            } catch (FileAlreadyExistsException e) {
+                // Another writer picked the same name, try the next one
+            }
+        }
+        try (FileChannel opened = channel) {
+            writer.write(opened);
+            opened.force(true);
+            if (Files.exists(target)
+                    && Files.getFileStore(target).supportsFileAttributeView(PosixFileAttributeView.class)) {
+                Files.setPosixFilePermissions(temporary, Files.getPosixFilePermissions(target));
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        try {
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+    }
+
+
+    /**
+     * Returns the size of the hash table written for a vocabulary: a power of two at least twice the number of terms.
+     *
+     * @param size The number of terms.
+     * @return The number of slots.
+     */
+    static int table_size(int size) {
+        return Integer.highestOneBit(Math.max(1, 2 * size)) * 2;
+    }
+
+
+    /**
+     * Builds the vocabulary section of a file: the term offsets, the hash table and the characters of the terms.
+     *
+     * @param vocabulary The vocabulary.
+     * @return A little-endian buffer holding the section, positioned at its end as write expects.
+     */
+    static ByteBuffer vocabulary_section(TermLookup vocabulary) {
+        int size = vocabulary.size();
+        String[] terms = new String[size];
+        int[] offsets = new int[size + 1];
+        for (int i = 0; i < size; i++) {
+            terms[i] = vocabulary.term(i);
+            offsets[i + 1] = offsets[i] + terms[i].length();
+        }
+        int table_size = table_size(size);
+        int[] table = new int[table_size];
+        Arrays.fill(table, -1);
+        for (int i = 0; i < size; i++) {
+            int slot = MurmurHash3.hash(terms[i], 0, terms[i].length(), MappedVocabulary.SEED) & (table_size - 1);
+            while (table[slot] != -1) {
+                slot = (slot + 1) & (table_size - 1);
+            }
+            table[slot] = i;
+        }
+
+        ByteBuffer section = little_endian(4 * (offsets.length + table.length) + 2 * offsets[size]);
+        section.asIntBuffer().put(offsets).put(table);
+        section.position(4 * (offsets.length + table.length));
+        for (String term : terms) {
+            for (int i = 0; i < term.length(); i++) {
+                section.putChar(term.charAt(i));
+            }
+        }
+        return section;
+    }
+
+
+    /**
+     * Returns the number of term characters of a vocabulary section built by vocabulary_section.
+     *
+     * @param section    The section.
+     * @param size       The number of terms.
+     * @param table_size The number of hash table slots.
+     * @return The number of characters.
+     */
+    static int num_chars(ByteBuffer section, int size, int table_size) {
+        return (section.capacity() - 4 * (size + 1 + table_size)) / 2;
+    }
+
+
+    /**
+     * Reads the vocabulary section of a file.
+     *
+     * @param buffer         The mapped file.
+     * @param position       The byte position of the section.
+     * @param size           The number of terms.
+     * @param table_size     The number of hash table slots.
+     * @param num_chars      The number of term characters.
+     * @param map_vocabulary True to look terms up in the mapped file, false to copy the section to the heap.
+     * @return The vocabulary.
+     * @throws IOException If the section is not a valid vocabulary.
+     */
+    static MappedVocabulary read_vocabulary(ByteBuffer buffer, int position, int size, int table_size, int num_chars,
+                                            boolean map_vocabulary) throws IOException {
+        ByteBuffer section = slice(buffer, position, 4 * (size + 1 + table_size) + 2 * num_chars);
+        if (!map_vocabulary) {
+            section = little_endian(section.capacity()).put(section).flip();
+        }
+        return new MappedVocabulary(
+                slice(section, 0, 4 * (size + 1)).asIntBuffer(),
+                slice(section, 4 * (size + 1), 4 * table_size).asIntBuffer(),
+                slice(section, 4 * (size + 1 + table_size), 2 * num_chars).asCharBuffer());
+    }
+
+
+    /**
+     * Loads a transformer and classifier from a file by memory-mapping it. The vocabulary looks terms up
+     * in the mapped file.
+     *
+     * @param path The path of the file.
+     * @return The loaded model.
+     * @throws IOException If an I/O error occurs while reading the file, or the file is not a valid model file.
+     */
+    public static Model load(Path path) throws IOException {
+        return load(path, true);
+    }
+
+
+    /**
+     * Loads a transformer and classifier from a file by memory-mapping it.
+     *
+     * @param path           The path of the file.
+     * @param map_vocabulary True to look terms up in the mapped file, false to copy the vocabulary section to the
+     *                       heap, so the loaded model does not depend on the file once load returns.
+     * @return The loaded model.
+     * @throws IOException If an I/O error occurs while reading the file, or the file is not a valid model file.
+     */
+    public static Model load(Path path, boolean map_vocabulary) throws IOException {
+        MappedByteBuffer buffer = map(path);
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a model file: " + path);
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported model file version " + buffer.getInt(4) + ": " + path);
+        }
+        int size = buffer.getInt(8);
+        int table_size = buffer.getInt(12);
+        int num_chars = buffer.getInt(16);
+        if (size < 0 || table_size < 1 || num_chars < 0) {
+            throw new IOException("Corrupted model file header: " + path);
+        }
+        long expected = HEADER_SIZE + 8L * (5L * size + 2) + 4L * (size + 1 + table_size) + 2L * num_chars;
+        if (buffer.capacity() != expected) {
+            throw new IOException("Truncated or corrupted model file: " + path);
+        }
+
+        int position = HEADER_SIZE;
+        double[] idf = new double[size];
+        double[][] means = new double[2][size];
+        double[][] variances = new double[2][size];
+        double[] priors = new double[2];
+        position = read_doubles(buffer, position, idf);
+        position = read_doubles(buffer, position, means[0]);
+        position = read_doubles(buffer, position, variances[0]);
+        position = read_doubles(buffer, position, means[1]);
+        position = read_doubles(buffer, position, variances[1]);
+        position = read_doubles(buffer, position, priors);
+
+        MappedVocabulary vocabulary = read_vocabulary(buffer, position, size, table_size, num_chars, map_vocabulary);
+        return new Model(new TfIdf(vocabulary, idf), GaussianNaiveBayes.from_parameters(means, variances, priors));
+    }
+
+
+    /**
+     * Maps a file read-only as a little-endian buffer.
+     *
+     * @param path The path of the file.
+     * @return The mapped buffer.
+     * @throws IOException If an I/O error occurs while mapping the file.
+     */
+    static MappedByteBuffer map(Path path) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+
+    /**
+     * Allocates a little-endian heap buffer.
+     *
+     * @param capacity The capacity in bytes.
+     * @return The buffer.
+     */
+    static ByteBuffer little_endian(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+
+    /**
+     * Writes an array of doubles to a channel.
+     *
+     * @param channel The channel.
+     * @param values  The values.
+     * @throws IOException If an I/O error occurs.
+     */
+    static void write_doubles(FileChannel channel, double[] values) throws IOException {
+        ByteBuffer buffer = little_endian(8 * values.length);
+        buffer.asDoubleBuffer().put(values);
+        write(channel, buffer.position(buffer.capacity()));
+    }
+
+
+    /**
+     * Writes the bytes of a buffer before its position to a channel.
+     *
+     * @param channel The channel.
+     * @param buffer  The buffer.
+     * @throws IOException If an I/O error occurs.
+     */
+    static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+
+    /**
+     * Copies doubles out of a mapped buffer.
+     *
+     * @param buffer   The mapped buffer.
+     * @param position The byte position of the first double.
+     * @param values   The array receiving the values.
+     * @return The byte position after the last double.
+     */
+    static int read_doubles(ByteBuffer buffer, int position, double[] values) {
+        slice(buffer, position, 8 * values.length).asDoubleBuffer().get(values);
+        return position + 8 * values.length;
+    }
+
+
+    /**
+     * Returns a little-endian view of a range of a buffer.
+     *
+     * @param buffer   The buffer.
+     * @param position The start of the range in bytes.
+     * @param length   The length of the range in bytes.
+     * @return The view.
+     */
+    static ByteBuffer slice(ByteBuffer buffer, int position, int length) {
+        return buffer.duplicate().position(position).limit(position + length).slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * Provides the persistent model format: saving a fitted TfIdf transformer together with a fitted
+ * GaussianNaiveBayes classifier, and loading them back by memory-mapping the file.
+ */
+package com.example.ml.model;
+
+import com.example.ml.classifier.naivebayes.GaussianNaiveBayes;
+import com.example.ml.data.reader.RawDataReader;
+import com.example.ml.evaluation.metrics.Evaluator;
+import com.example.ml.evaluation.metrics.Metrics;
+import com.example.ml.feature.extraction.tfidf.TfIdf;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Locale;
+
+
+/**
+ * The QuantizationReport class compares the QuantizedModel of every precision with the double-precision model it was
+ * derived from, on labeled test documents. For every precision it reports the size of the numeric parameters, the
+ * accuracy and F1-score, the fraction of labels equal to the ones of the double-precision model, the largest relative
+ * margin error and the scoring throughput, so the loss of precision can be weighed against the gain in size and speed.
+ *
+ * Usage: QuantizationReport model_path test_dir [precision quantized_model_path]
+ * With a precision (DOUBLE, FLOAT32, INT16 or INT8) and a path, the QuantizedModel of that precision is saved there
+ * after the report, ready to be served by the ScoringServer.
+ */
+public class QuantizationReport {
+    // Number of timed scoring runs per model, the fastest one is reported
+    private static final int TIMED_RUNS = 3;
+
+
+    /**
+     * Scores test documents with the double-precision model and with the QuantizedModel of every precision
+     * and prints a comparison table.
+     *
+     * @param extractor  The fitted TF-IDF transformer.
+     * @param classifier The classifier fitted on the features of the transformer.
+     * @param documents  The test documents.
+     * @param labels     The true labels of the test documents, 0 = ham, 1 = spam.
+     * @param out        The stream receiving the report.
+     */
+    public static void print(TfIdf extractor, GaussianNaiveBayes classifier, ArrayList<String> documents,
+                             int[] labels, PrintStream out) {
+        // Baseline: sparse TF-IDF rows scored by the classifier
+        double[] baseline = null;
+        long baseline_nanos = Long.MAX_VALUE;
+        for (int run = 0; run < TIMED_RUNS; run++) {
+            long start = System.nanoTime();
+            baseline = classifier.decision_function(extractor.fit_transform_testdata_sparse(documents));
+            baseline_nanos = Math.min(baseline_nanos, System.nanoTime() - start);
+        }
+        int[] baseline_labels = labels_of(baseline);
+        long baseline_bytes = 8L * (5L * extractor.get_vocabulary().size() + 2);
+        out.println(String.format(Locale.ROOT, "%-9s %12s %9s %9s %9s %12s %10s",
+                "model", "param_bytes", "accuracy", "f1", "agreement", "max_rel_err", "docs/s"));
+        print_row(out, "baseline", baseline_bytes, Evaluator.compute(labels, baseline_labels), 1, 0,
+                documents.size(), baseline_nanos);
+
+        for (QuantizedModel.Precision precision : QuantizedModel.Precision.values()) {
+            QuantizedModel model = QuantizedModel.of(extractor, classifier, precision);
+            double[] margins = null;
+            long nanos = Long.MAX_VALUE;
+            for (int run = 0; run < TIMED_RUNS; run++) {
+                long start = System.nanoTime();
+                margins = model.decision_function(documents);
+                nanos = Math.min(nanos, System.nanoTime() - start);
+            }
+            int[] predicted = labels_of(margins);
+            int agreeing = 0;
+            double max_error = 0;
+            for (int i = 0; i < margins.length; i++) {
+                if (predicted[i] == baseline_labels[i]) {
+                    agreeing++;
+                }
+                max_error = Math.max(max_error, Math.abs(margins[i] - baseline[i]) / Math.max(1, Math.abs(baseline[i])));
+            }
+            print_row(out, precision.name(), model.get_parameter_bytes(), Evaluator.compute(labels, predicted),
+                    (double) agreeing / margins.length, max_error, documents.size(), nanos);
+        }
+    }
+
+
+    /**
+     * Prints one row of the comparison table.
+     *
+     * @param out           The stream receiving the row.
+     * @param name          The name of the model.
+     * @param bytes         The number of bytes of the numeric parameters.
+     * @param metrics       The metrics against the true labels.
+     * @param agreement     The fraction of labels equal to the ones of the baseline.
+     * @param max_error     The largest margin error relative to the baseline margin (or 1 if it is smaller).
+     * @param num_documents The number of scored documents.
+     * @param nanos         The time taken to score them.
+     */
+    private static void print_row(PrintStream out, String name, long bytes, Metrics metrics, double agreement,
+                                  double max_error, int num_documents, long nanos) {
+        out.println(String.format(Locale.ROOT, "%-9s %12d %9.4f %9.4f %9.4f %12.3e %10.0f",
+                name, bytes, metrics.get_accuracy(), metrics.get_f1(), agreement, max_error,
+                num_documents / (nanos / 1e9)));
+    }
+
+
+    /**
+     * Turns margins into labels.
+     *
+     * @param margins The margins.
+     * @return The labels, 1 (spam) for margins that are not negative.
+     */
+    private static int[] labels_of(double[] margins) {
+        int[] labels = new int[margins.length];
+        for (int i = 0; i < margins.length; i++) {
+            labels[i] = margins[i] < 0 ? 0 : 1;
+        }
+        return labels;
+    }
+
+
+    /**
+     * Prints the report for a saved model and a directory of labeled test documents, and optionally saves the
+     * QuantizedModel of one precision.
+     *
+     * @param args The model file path, the test directory, and optionally a precision and the path of the quantized
+     *             model file.
+     * @throws IOException If an I/O error occurs while reading the model or the documents, or writing the quantized
+     *                     model.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2 && args.length != 4) {
+            System.err.println("Usage: QuantizationReport model_path test_dir [precision quantized_model_path]");
+            System.exit(1);
+        }
+        ModelFile.Model model = ModelFile.load(Paths.get(args[0]));
+        RawDataReader reader = new RawDataReader();
+        reader.load(args[1]);
+        int[] labels = reader.get_labels().stream().mapToInt(Integer::intValue).toArray();
+        print(model.get_extractor(), model.get_classifier(), reader.get_data(), labels, System.out);
+        if (args.length == 4) {
+            QuantizedModel.Precision precision = QuantizedModel.Precision.valueOf(args[2].toUpperCase(Locale.ROOT));
+            Path quantized_path = Paths.get(args[3]);
+            QuantizedModel.of(model.get_extractor(), model.get_classifier(), precision).save(quantized_path);
+            System.out.println("Saved the " + precision + " model to " + quantized_path);
+        }
+    }
+}
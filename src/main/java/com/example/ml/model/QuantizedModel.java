@@ -0,0 +1,370 @@
+/**
+ * Provides the persistent model format: saving a fitted TfIdf transformer together with a fitted
+ * GaussianNaiveBayes classifier, and loading them back by memory-mapping the file.
+ */
+package com.example.ml.model;
+
+import com.example.ml.classifier.naivebayes.GaussianNaiveBayes;
+import com.example.ml.feature.extraction.text.TermLookup;
+import com.example.ml.feature.extraction.text.Tokenizer;
+import com.example.ml.feature.extraction.tfidf.TfIdf;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * The QuantizedModel class scores raw documents with a fitted TF-IDF transformer and Gaussian Naive Bayes classifier
+ * whose parameters are stored with reduced precision, trading a measured amount of accuracy (see QuantizationReport)
+ * for a smaller memory footprint of the scoring loop.
+ *
+ * The classifier is reduced to what sparse scoring needs: the margin of the all-zero sample, kept as a double, and
+ * for every feature the coefficients of its margin term relative to a zero value,
+ *
+ *   c_i(x) = a_i * x^2 + b_i * x   with   a_i = 1 / (2 * ham_variance_i) - 1 / (2 * spam_variance_i)
+ *                                   and   b_i = spam_mean_i / spam_variance_i - ham_mean_i / ham_variance_i,
+ *
+ * so the four mean and variance vectors become two vectors. The IDF vector and both coefficient vectors are stored
+ * as doubles, floats, or 16-bit or 8-bit integers with one scale per block of 2^block_shift features. With DOUBLE the
+ * margins equal the ones of the original model within floating-point tolerance.
+ *
+ * A model is saved in its own versioned little-endian format, so it can be loaded (for example by the ScoringServer)
+ * without the double-precision model. Layout (V = vocabulary size, T = hash table size, C = total number of term
+ * characters):
+ *   header      64 bytes: magic "SPFQ", version, precision (0 = DOUBLE, 1 = FLOAT32, 2 = INT16, 3 = INT8),
+ *               block_shift, V, T, C, reserved, zero_margin (double at byte 32), reserved
+ *   idf, a, b   one QuantizedVector each: V values followed by the block scales of the integer formats,
+ *               padded to a multiple of 8 bytes
+ *   vocabulary  offsets int[V + 1], table int[T] and characters char[C], as in ModelFile
+ *
+ * A QuantizedModel is immutable and can be used from several threads. A model created by of shares the vocabulary
+ * of the transformer; a loaded model has its own heap copy of the vocabulary and does not depend on the file.
+ */
+public final class QuantizedModel {
+    // "SPFQ" read as a little-endian int
+    private static final int MAGIC = 0x51465053;
+    // Current version of the format
+    private static final int VERSION = 1;
+    // Default log2 of the number of features per block of the integer formats
+    private static final int DEFAULT_BLOCK_SHIFT = 6;
+    // Largest log2 of the number of features per block
+    private static final int MAX_BLOCK_SHIFT = 20;
+    // Tokenizer of every scoring thread, reused for all documents it scores
+    private static final ThreadLocal<Tokenizer> TOKENIZERS = ThreadLocal.withInitial(Tokenizer::new);
+
+    // Precision of the stored parameters
+    private final Precision precision;
+    // log2 of the number of features per block of the integer formats
+    private final int block_shift;
+    // Vocabulary of the transformer
+    private final TermLookup vocabulary;
+    // IDF vector
+    private final QuantizedVector idf;
+    // Coefficients a_i and b_i of the margin terms
+    private final QuantizedVector a;
+    private final QuantizedVector b;
+    // Margin of the all-zero sample (log prior ratio and the terms of zero values of all features)
+    private final double zero_margin;
+
+
+    /**
+     * The precisions in which the parameters can be stored.
+     */
+    public enum Precision {
+        DOUBLE,
+        FLOAT32,
+        INT16,
+        INT8
+    }
+
+
+    /**
+     * Creates a model.
+     *
+     * @param precision   The precision of the stored parameters.
+     * @param block_shift log2 of the number of features per block of the integer formats.
+     * @param vocabulary  The vocabulary of the transformer.
+     * @param idf         The IDF vector.
+     * @param a           The coefficients a_i.
+     * @param b           The coefficients b_i.
+     * @param zero_margin The margin of the all-zero sample.
+     */
+    private QuantizedModel(Precision precision, int block_shift, TermLookup vocabulary, QuantizedVector idf,
+                           QuantizedVector a, QuantizedVector b, double zero_margin) {
+        this.precision = precision;
+        this.block_shift = block_shift;
+        this.vocabulary = vocabulary;
+        this.idf = idf;
+        this.a = a;
+        this.b = b;
+        this.zero_margin = zero_margin;
+    }
+
+
+    /**
+     * Creates a model from a fitted transformer and classifier, with blocks of 64 features for the integer formats.
+     *
+     * @param extractor  The fitted TF-IDF transformer.
+     * @param classifier The classifier fitted on the features of the transformer.
+     * @param precision  The precision of the stored parameters.
+     * @return The model.
+     */
+    public static QuantizedModel of(TfIdf extractor, GaussianNaiveBayes classifier, Precision precision) {
+        return of(extractor, classifier, precision, DEFAULT_BLOCK_SHIFT);
+    }
+
+
+    /**
+     * Creates a model from a fitted transformer and classifier.
+     *
+     * @param extractor   The fitted TF-IDF transformer.
+     * @param classifier  The classifier fitted on the features of the transformer.
+     * @param precision   The precision of the stored parameters.
+     * @param block_shift log2 of the number of features sharing one scale in the integer formats, between 0 and 20.
+     * @return The model.
+     */
+    public static QuantizedModel of(TfIdf extractor, GaussianNaiveBayes classifier, Precision precision,
+                                    int block_shift) {
+        if (block_shift < 0 || block_shift > MAX_BLOCK_SHIFT) {
+            throw new IllegalArgumentException("block_shift must be between 0 and 20, got " + block_shift);
+        }
+        TermLookup vocabulary = extractor.get_vocabulary();
+        int size = vocabulary.size();
+        if (classifier.get_means(0).length != size) {
+            throw new IllegalArgumentException("The classifier has " + classifier.get_means(0).length
+                    + " features but the vocabulary has " + size + " terms");
+        }
+        double[] ham_means = classifier.get_means(0);
+        double[] ham_variances = classifier.get_variances(0);
+        double[] spam_means = classifier.get_means(1);
+        double[] spam_variances = classifier.get_variances(1);
+        double[] a = new double[size];
+        double[] b = new double[size];
+        for (int i = 0; i < size; i++) {
+            a[i] = 1 / (2 * ham_variances[i]) - 1 / (2 * spam_variances[i]);
+            b[i] = spam_means[i] / spam_variances[i] - ham_means[i] / ham_variances[i];
+        }
+        double zero_margin = classifier.margin(new int[0], new double[0], 0, 0);
+        return new QuantizedModel(precision, block_shift, vocabulary,
+                QuantizedVector.of(extractor.get_idf_vector(), precision, block_shift),
+                QuantizedVector.of(a, precision, block_shift),
+                QuantizedVector.of(b, precision, block_shift), zero_margin);
+    }
+
+
+    /**
+     * Saves the model to a file. The file is written next to the target and renamed over it, so a server loading
+     * the previous file never sees a partly written one.
+     *
+     * @param path The path of the file.
+     * @throws IOException If an I/O error occurs while writing the file.
+     */
+    public void save(Path path) throws IOException {
+        int size = vocabulary.size();
+        int table_size = ModelFile.table_size(size);
+        ByteBuffer section = ModelFile.vocabulary_section(vocabulary);
+        long vector_bytes = QuantizedVector.file_bytes(size, precision, block_shift);
+        ModelFile.write_atomically(path, channel -> {
+            ByteBuffer parameters = ModelFile.little_endian(ModelFile.HEADER_SIZE + (int) (3 * vector_bytes));
+            parameters.putInt(MAGIC).putInt(VERSION).putInt(precision.ordinal()).putInt(block_shift)
+                    .putInt(size).putInt(table_size).putInt(ModelFile.num_chars(section, size, table_size));
+            parameters.putDouble(32, zero_margin);
+            parameters.position(ModelFile.HEADER_SIZE);
+            idf.write(parameters);
+            a.write(parameters);
+            b.write(parameters);
+            ModelFile.write(channel, parameters);
+            ModelFile.write(channel, section);
+        });
+    }
+
+
+    /**
+     * Loads a model saved by save. The file is mapped, the parameters and the vocabulary are copied to the heap,
+     * so the file can be replaced as soon as load returns.
+     *
+     * @param path The path of the file.
+     * @return The model.
+     * @throws IOException If an I/O error occurs while reading the file, or the file is not a valid quantized model
+     *                     file.
+     */
+    public static QuantizedModel load(Path path) throws IOException {
+        MappedByteBuffer buffer = ModelFile.map(path);
+        if (!is_quantized_model(buffer)) {
+            throw new IOException("Not a quantized model file: " + path);
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported quantized model file version " + buffer.getInt(4) + ": " + path);
+        }
+        int precision_code = buffer.getInt(8);
+        int block_shift = buffer.getInt(12);
+        int size = buffer.getInt(16);
+        int table_size = buffer.getInt(20);
+        int num_chars = buffer.getInt(24);
+        if (precision_code < 0 || precision_code >= Precision.values().length || block_shift < 0
+                || block_shift > MAX_BLOCK_SHIFT || size < 0 || table_size < 1 || num_chars < 0) {
+            throw new IOException("Corrupted quantized model file header: " + path);
+        }
+        Precision precision = Precision.values()[precision_code];
+        long vector_bytes = QuantizedVector.file_bytes(size, precision, block_shift);
+        long expected = ModelFile.HEADER_SIZE + 3 * vector_bytes + 4L * (size + 1 + table_size) + 2L * num_chars;
+        if (buffer.capacity() != expected) {
+            throw new IOException("Truncated or corrupted quantized model file: " + path);
+        }
+
+        ByteBuffer parameters = ModelFile.slice(buffer, ModelFile.HEADER_SIZE, (int) (3 * vector_bytes));
+        QuantizedVector idf = QuantizedVector.read(parameters, size, precision, block_shift);
+        QuantizedVector a = QuantizedVector.read(parameters, size, precision, block_shift);
+        QuantizedVector b = QuantizedVector.read(parameters, size, precision, block_shift);
+        int position = ModelFile.HEADER_SIZE + (int) (3 * vector_bytes);
+        MappedVocabulary vocabulary = ModelFile.read_vocabulary(buffer, position, size, table_size, num_chars, false);
+        return new QuantizedModel(precision, block_shift, vocabulary, idf, a, b, buffer.getDouble(32));
+    }
+
+
+    /**
+     * Tells whether a file is a quantized model file (saved by save) rather than a ModelFile, by its magic number.
+     *
+     * @param path The path of the file.
+     * @return True for a quantized model file.
+     * @throws IOException If an I/O error occurs while reading the file.
+     */
+    public static boolean is_quantized_model(Path path) throws IOException {
+        return is_quantized_model(ModelFile.map(path));
+    }
+
+
+    /**
+     * Tells whether a mapped file starts with the header of a quantized model file.
+     *
+     * @param buffer The mapped file.
+     * @return True for a quantized model file.
+     */
+    private static boolean is_quantized_model(ByteBuffer buffer) {
+        return buffer.capacity() >= ModelFile.HEADER_SIZE && buffer.getInt(0) == MAGIC;
+    }
+
+
+    /**
+     * Computes the log-probability margin log P(spam | x) - log P(ham | x) (up to the shared evidence term)
+     * of a raw document.
+     *
+     * @param document The raw document.
+     * @return The margin, not negative when the document is predicted as spam.
+     */
+    public double margin(CharSequence document) {
+        Tokenizer tokenizer = TOKENIZERS.get();
+        return margin(tokenizer, tokenizer.encode(document, vocabulary));
+    }
+
+
+    /**
+     * Computes the margin of a document already encoded with the vocabulary of the model (see get_vocabulary).
+     *
+     * @param tokenizer The tokenizer which encoded the document; its term indices are sorted in place.
+     * @param num_ids   The number of known terms returned by encode.
+     * @return The margin, not negative when the document is predicted as spam.
+     */
+    public double margin(Tokenizer tokenizer, int num_ids) {
+        int[] ids = tokenizer.ids();
+        Arrays.sort(ids, 0, num_ids);
+
+        double term_count = tokenizer.token_count();
+        double margin = zero_margin;
+        for (int k = 0; k < num_ids; ) {
+            int index = ids[k];
+            int count = 0;
+            for (; k < num_ids && ids[k] == index; k++) {
+                count++;
+            }
+            double x = (count / term_count) * idf.get(index);
+            margin += (a.get(index) * x + b.get(index)) * x;
+        }
+        return margin;
+    }
+
+
+    /**
+     * Predicts the label of a raw document.
+     *
+     * @param document The raw document.
+     * @return The label, 0 = ham, 1 = spam.
+     */
+    public int predict(CharSequence document) {
+        return margin(document) < 0 ? 0 : 1;
+    }
+
+
+    /**
+     * Computes the margins of raw documents.
+     *
+     * @param documents The raw documents.
+     * @return The margin of every document.
+     */
+    public double[] decision_function(List<? extends CharSequence> documents) {
+        double[] margins = new double[documents.size()];
+        for (int i = 0; i < margins.length; i++) {
+            margins[i] = margin(documents.get(i));
+        }
+        return margins;
+    }
+
+
+    /**
+     * Predicts the labels of raw documents.
+     *
+     * @param documents The raw documents.
+     * @return The label of every document, 0 = ham, 1 = spam.
+     */
+    public int[] predict(List<? extends CharSequence> documents) {
+        int[] prediction = new int[documents.size()];
+        for (int i = 0; i < prediction.length; i++) {
+            prediction[i] = predict(documents.get(i));
+        }
+        return prediction;
+    }
+
+
+    /**
+     * Returns the precision of the stored parameters.
+     *
+     * @return The precision.
+     */
+    public Precision get_precision() {
+        return precision;
+    }
+
+
+    /**
+     * Returns the vocabulary the documents are encoded with.
+     *
+     * @return The vocabulary.
+     */
+    public TermLookup get_vocabulary() {
+        return vocabulary;
+    }
+
+
+    /**
+     * Returns the number of bytes of the numeric parameters (IDF vector and margin coefficients, with their scales),
+     * not counting the vocabulary.
+     *
+     * @return The number of bytes.
+     */
+    public long get_parameter_bytes() {
+        return idf.num_bytes() + a.num_bytes() + b.num_bytes() + 8;
+    }
+
+
+    /**
+     * Returns the number of features (vocabulary terms) of the model.
+     *
+     * @return The number of features.
+     */
+    public int num_features() {
+        return vocabulary.size();
+    }
+}
@@ -0,0 +1,454 @@
+/**
+ * Provides the persistent model format: saving a fitted TfIdf transformer together with a fitted
+ * GaussianNaiveBayes classifier, and loading them back by memory-mapping the file.
+ */
+package com.example.ml.model;
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * A read-only vector of model parameters stored with reduced precision: as doubles, as floats, or as 16-bit or
+ * 8-bit integers with one float scale per block of consecutive values. A block's scale maps the largest absolute
+ * value of the block to the largest integer, so values are rounded to a step of max|v| / 32767 or max|v| / 127
+ * of their own block and blocks of small values keep their relative precision.
+ *
+ * Every precision is a subclass reading its own array, so get does not branch on the precision. A model keeps all
+ * its vectors in the same precision, so the calls of its scoring loop see a single subclass.
+ *
+ * In a file, a vector is stored as its values followed by the scales of the integer formats (little-endian),
+ * padded with zeros to a multiple of 8 bytes.
+ */
+abstract class QuantizedVector {
+    /**
+     * Creates a vector; only the nested classes of the precisions extend QuantizedVector.
+     */
+    private QuantizedVector() {
+    }
+
+
+    /**
+     * Stores values with a given precision.
+     *
+     * @param values      The values.
+     * @param precision   The precision.
+     * @param block_shift log2 of the number of values per block of the integer formats.
+     * @return The vector.
+     */
+    static QuantizedVector of(double[] values, QuantizedModel.Precision precision, int block_shift) {
+        int n = values.length;
+        switch (precision) {
+            case DOUBLE:
+                return new DoubleVector(values.clone());
+            case FLOAT32:
+                float[] floats = new float[n];
+                for (int i = 0; i < n; i++) {
+                    floats[i] = (float) values[i];
+                }
+                return new FloatVector(floats);
+            default:
+                int max_int = precision == QuantizedModel.Precision.INT16 ? Short.MAX_VALUE : Byte.MAX_VALUE;
+                int block_size = 1 << block_shift;
+                float[] scales = new float[num_blocks(n, block_shift)];
+                long[] quantized = new long[n];
+                for (int block = 0; block < scales.length; block++) {
+                    int from = block << block_shift;
+                    int to = Math.min(n, from + block_size);
+                    double max_abs = 0;
+                    for (int i = from; i < to; i++) {
+                        max_abs = Math.max(max_abs, Math.abs(values[i]));
+                    }
+                    scales[block] = (float) (max_abs / max_int);
+                    for (int i = from; i < to; i++) {
+                        long q = scales[block] == 0 ? 0 : Math.round(values[i] / scales[block]);
+                        quantized[i] = Math.max(-max_int, Math.min(max_int, q));
+                    }
+                }
+                if (precision == QuantizedModel.Precision.INT16) {
+                    short[] shorts = new short[n];
+                    for (int i = 0; i < n; i++) {
+                        shorts[i] = (short) quantized[i];
+                    }
+                    return new Int16Vector(shorts, scales, block_shift);
+                }
+                byte[] bytes = new byte[n];
+                for (int i = 0; i < n; i++) {
+                    bytes[i] = (byte) quantized[i];
+                }
+                return new Int8Vector(bytes, scales, block_shift);
+        }
+    }
+
+
+    /**
+     * Returns the number of blocks of the integer formats.
+     *
+     * @param n           The number of values.
+     * @param block_shift log2 of the number of values per block.
+     * @return The number of blocks.
+     */
+    private static int num_blocks(int n, int block_shift) {
+        return (int) ((n + (1L << block_shift) - 1) >> block_shift);
+    }
+
+
+    /**
+     * Returns the number of bytes of a vector in a file, including the padding.
+     *
+     * @param n           The number of values.
+     * @param precision   The precision.
+     * @param block_shift log2 of the number of values per block of the integer formats.
+     * @return The number of bytes.
+     */
+    static long file_bytes(int n, QuantizedModel.Precision precision, int block_shift) {
+        long bytes;
+        switch (precision) {
+            case DOUBLE:
+                bytes = 8L * n;
+                break;
+            case FLOAT32:
+                bytes = 4L * n;
+                break;
+            case INT16:
+                bytes = 2L * n + 4L * num_blocks(n, block_shift);
+                break;
+            default:
+                bytes = n + 4L * num_blocks(n, block_shift);
+        }
+        return (bytes + 7) & ~7L;
+    }
+
+
+    /**
+     * Reads a vector written by write.
+     *
+     * @param buffer      A little-endian buffer positioned at the vector; its position is advanced past the vector.
+     * @param n           The number of values.
+     * @param precision   The precision.
+     * @param block_shift log2 of the number of values per block of the integer formats.
+     * @return The vector.
+     */
+    static QuantizedVector read(ByteBuffer buffer, int n, QuantizedModel.Precision precision, int block_shift) {
+        int end = buffer.position() + (int) file_bytes(n, precision, block_shift);
+        QuantizedVector vector;
+        switch (precision) {
+            case DOUBLE:
+                double[] doubles = new double[n];
+                buffer.asDoubleBuffer().get(doubles);
+                vector = new DoubleVector(doubles);
+                break;
+            case FLOAT32:
+                float[] floats = new float[n];
+                buffer.asFloatBuffer().get(floats);
+                vector = new FloatVector(floats);
+                break;
+            case INT16:
+                short[] shorts = new short[n];
+                buffer.asShortBuffer().get(shorts);
+                vector = new Int16Vector(shorts, read_scales(buffer, buffer.position() + 2 * n, n, block_shift),
+                        block_shift);
+                break;
+            default:
+                byte[] bytes = new byte[n];
+                buffer.get(bytes);
+                vector = new Int8Vector(bytes, read_scales(buffer, buffer.position(), n, block_shift), block_shift);
+        }
+        buffer.position(end);
+        return vector;
+    }
+
+
+    /**
+     * Reads the block scales following the values of an integer vector.
+     *
+     * @param buffer      The little-endian buffer.
+     * @param position    The byte position of the scales.
+     * @param n           The number of values.
+     * @param block_shift log2 of the number of values per block.
+     * @return The scales.
+     */
+    private static float[] read_scales(ByteBuffer buffer, int position, int n, int block_shift) {
+        float[] scales = new float[num_blocks(n, block_shift)];
+        ModelFile.slice(buffer, position, 4 * scales.length).asFloatBuffer().get(scales);
+        return scales;
+    }
+
+
+    /**
+     * Writes the vector into a buffer in the file layout.
+     *
+     * @param buffer A little-endian buffer with at least file_bytes remaining bytes; its position is advanced
+     *               past the vector.
+     */
+    abstract void write(ByteBuffer buffer);
+
+
+    /**
+     * Writes block scales and the padding after the values of a vector.
+     *
+     * @param buffer The little-endian buffer, positioned after the values.
+     * @param scales The scales, empty for the floating-point formats.
+     */
+    static void write_scales_and_padding(ByteBuffer buffer, float[] scales) {
+        for (float scale : scales) {
+            buffer.putFloat(scale);
+        }
+        while ((buffer.position() & 7) != 0) {
+            buffer.put((byte) 0);
+        }
+    }
+
+
+    /**
+     * Returns a value, converted back to double.
+     *
+     * @param i The index of the value.
+     * @return The stored value.
+     */
+    abstract double get(int i);
+
+
+    /**
+     * Returns the number of bytes used by the values and the scales.
+     *
+     * @return The number of bytes.
+     */
+    abstract long num_bytes();
+
+
+    /**
+     * A vector of doubles.
+     */
+    private static final class DoubleVector extends QuantizedVector {
+        // Values
+        private final double[] values;
+
+
+        /**
+         * Creates a vector.
+         *
+         * @param values The values, not copied.
+         */
+        DoubleVector(double[] values) {
+            this.values = values;
+        }
+
+
+        /**
+         * Returns a value.
+         *
+         * @param i The index of the value.
+         * @return The stored value.
+         */
+        @Override
+        double get(int i) {
+            return values[i];
+        }
+
+
+        /**
+         * Returns the number of bytes used by the values.
+         *
+         * @return The number of bytes.
+         */
+        @Override
+        long num_bytes() {
+            return 8L * values.length;
+        }
+
+
+        /**
+         * Writes the vector into a buffer in the file layout.
+         *
+         * @param buffer The little-endian buffer.
+         */
+        @Override
+        void write(ByteBuffer buffer) {
+            for (double value : values) {
+                buffer.putDouble(value);
+            }
+        }
+    }
+
+
+    /**
+     * A vector of floats.
+     */
+    private static final class FloatVector extends QuantizedVector {
+        // Values
+        private final float[] values;
+
+
+        /**
+         * Creates a vector.
+         *
+         * @param values The values, not copied.
+         */
+        FloatVector(float[] values) {
+            this.values = values;
+        }
+
+
+        /**
+         * Returns a value, converted back to double.
+         *
+         * @param i The index of the value.
+         * @return The stored value.
+         */
+        @Override
+        double get(int i) {
+            return values[i];
+        }
+
+
+        /**
+         * Returns the number of bytes used by the values.
+         *
+         * @return The number of bytes.
+         */
+        @Override
+        long num_bytes() {
+            return 4L * values.length;
+        }
+
+
+        /**
+         * Writes the vector into a buffer in the file layout.
+         *
+         * @param buffer The little-endian buffer.
+         */
+        @Override
+        void write(ByteBuffer buffer) {
+            for (float value : values) {
+                buffer.putFloat(value);
+            }
+            write_scales_and_padding(buffer, new float[0]);
+        }
+    }
+
+
+    /**
+     * A vector of 16-bit integers with one scale per block.
+     */
+    private static final class Int16Vector extends QuantizedVector {
+        // Quantized values
+        private final short[] values;
+        // Scale of every block
+        private final float[] scales;
+        // log2 of the number of values per block
+        private final int block_shift;
+
+
+        /**
+         * Creates a vector.
+         *
+         * @param values      The quantized values, not copied.
+         * @param scales      The scale of every block, not copied.
+         * @param block_shift log2 of the number of values per block.
+         */
+        Int16Vector(short[] values, float[] scales, int block_shift) {
+            this.values = values;
+            this.scales = scales;
+            this.block_shift = block_shift;
+        }
+
+
+        /**
+         * Returns a value, converted back to double.
+         *
+         * @param i The index of the value.
+         * @return The stored value.
+         */
+        @Override
+        double get(int i) {
+            return values[i] * scales[i >>> block_shift];
+        }
+
+
+        /**
+         * Returns the number of bytes used by the values and the scales.
+         *
+         * @return The number of bytes.
+         */
+        @Override
+        long num_bytes() {
+            return 2L * values.length + 4L * scales.length;
+        }
+
+
+        /**
+         * Writes the vector into a buffer in the file layout.
+         *
+         * @param buffer The little-endian buffer.
+         */
+        @Override
+        void write(ByteBuffer buffer) {
+            for (short value : values) {
+                buffer.putShort(value);
+            }
+            write_scales_and_padding(buffer, scales);
+        }
+    }
+
+
+    /**
+     * A vector of 8-bit integers with one scale per block.
+     */
+    private static final class Int8Vector extends QuantizedVector {
+        // Quantized values
+        private final byte[] values;
+        // Scale of every block
+        private final float[] scales;
+        // log2 of the number of values per block
+        private final int block_shift;
+
+
+        /**
+         * Creates a vector.
+         *
+         * @param values      The quantized values, not copied.
+         * @param scales      The scale of every block, not copied.
+         * @param block_shift log2 of the number of values per block.
+         */
+        Int8Vector(byte[] values, float[] scales, int block_shift) {
+            this.values = values;
+            this.scales = scales;
+            this.block_shift = block_shift;
+        }
+
+
+        /**
+         * Returns a value, converted back to double.
+         *
+         * @param i The index of the value.
+         * @return The stored value.
+         */
+        @Override
+        double get(int i) {
+            return values[i] * scales[i >>> block_shift];
+        }
+
+
+        /**
+         * Returns the number of bytes used by the values and the scales.
+         *
+         * @return The number of bytes.
+         */
+        @Override
+        long num_bytes() {
+            return values.length + 4L * scales.length;
+        }
+
+
+        /**
+         * Writes the vector into a buffer in the file layout.
+         *
+         * @param buffer The little-endian buffer.
+         */
+        @Override
+        void write(ByteBuffer buffer) {
+            buffer.put(values);
+            write_scales_and_padding(buffer, scales);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * The com.example.ml.parallel package contains the support shared by the classes which split their work
+ * over the threads of a ForkJoinPool.
+ */
+package com.example.ml.parallel;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+
+/**
+ * The WorkerPool class is the pool on which a parallel component runs its work, together with who owns it.
+ * A worker pool created from a thread count owns a ForkJoinPool of its own and shuts it down when closed;
+ * a worker pool wrapping a ForkJoinPool given by the caller leaves it running. A thread count of 1 or a null
+ * pool gives a serial worker pool, on which the component does its work in the calling thread.
+ */
+public final class WorkerPool implements AutoCloseable {
+    // Pool running the parallel work, null in serial mode
+    private final ForkJoinPool pool;
+    // Whether the pool was created by this worker pool and is shut down by close
+    private final boolean owned;
+
+
+    /**
+     * Creates a worker pool.
+     *
+     * @param pool  The pool running the parallel work, or null for serial mode.
+     * @param owned Whether the pool is shut down by close.
+     */
+    private WorkerPool(ForkJoinPool pool, boolean owned) {
+        this.pool = pool;
+        this.owned = owned;
+    }
+
+
+    /**
+     * Creates a worker pool with the given number of threads, on a ForkJoinPool of its own which is shut down
+     * by close.
+     *
+     * @param num_threads The number of threads, 1 means serial mode.
+     * @return The worker pool.
+     * @throws IllegalArgumentException If the number of threads is not positive.
+     */
+    public static WorkerPool of_threads(int num_threads) {
+        if (num_threads < 1) {
+            throw new IllegalArgumentException("num_threads must be positive: " + num_threads);
+        }
+        return num_threads == 1 ? new WorkerPool(null, false) : new WorkerPool(new ForkJoinPool(num_threads), true);
+    }
+
+
+    /**
+     * Creates a worker pool running on the given pool, which belongs to the caller and is not shut down by close.
+     *
+     * @param pool The pool running the parallel work, or null for serial mode.
+     * @return The worker pool.
+     */
+    public static WorkerPool of(ForkJoinPool pool) {
+        return new WorkerPool(pool, false);
+    }
+
+
+    /**
+     * Returns whether the work is done in the calling thread.
+     *
+     * @return True in serial mode.
+     */
+    public boolean is_serial() {
+        return pool == null;
+    }
+
+
+    /**
+     * Returns the number of threads of the pool.
+     *
+     * @return The parallelism of the pool, 1 in serial mode.
+     */
+    public int parallelism() {
+        return pool == null ? 1 : pool.getParallelism();
+    }
+
+
+    /**
+     * Submits a task to the pool; must not be called in serial mode.
+     *
+     * @param task The task.
+     * @return The submitted task, to be joined by the caller.
+     */
+    public ForkJoinTask<?> submit(Runnable task) {
+        return pool.submit(task);
+    }
+
+
+    /**
+     * Shuts down the pool if it was created by of_threads, so its threads end. A pool given by the caller
+     * is left running.
+     */
+    @Override
+    public void close() {
+        if (owned) {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * This package composes the feature extraction and the classifier into a pipeline and reports
+ * the time, throughput and memory used by each stage of training and scoring jobs.
+ */
+package com.example.ml.pipeline;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+
+/**
+ * A metrics sink which publishes the measurements as JMX MXBeans, one per stage, named
+ * com.example.ml:type=Pipeline,job=(job),stage=(stage), so they can be watched with jconsole, VisualVM
+ * or any JMX-based monitoring agent. Every bean shows the measurements of the latest run of its stage
+ * together with the number of runs and the total number of documents.
+ */
+public class JmxMetricsSink implements MetricsSink, AutoCloseable {
+    // Domain of the object names
+    private static final String DOMAIN = "com.example.ml";
+
+    // Name of the job, distinguishing pipelines running in the same JVM
+    private final String job;
+    // Server the beans are registered with
+    private final MBeanServer server;
+    // Beans by stage name
+    private final Map<String, Stage> stages = new ConcurrentHashMap<>();
+
+
+    /**
+     * Attributes of a pipeline stage published through JMX. JMX derives the attribute names from
+     * the getter names, so this interface uses the JavaBeans naming convention.
+     */
+    public interface StageMXBean {
+        long getRuns();
+        long getTotalDocuments();
+        double getWallTimeMillis();
+        long getDocuments();
+        double getDocumentsPerSecond();
+        long getBytesRead();
+        long getAllocatedBytes();
+        long getPeakHeapBytes();
+    }
+
+
+    /**
+     * Creates a sink registering its beans with the platform MBean server.
+     *
+     * @param job The name of the job, for example "training" or "scoring".
+     */
+    public JmxMetricsSink(String job) {
+        this.job = job;
+        this.server = ManagementFactory.getPlatformMBeanServer();
+    }
+
+
+    /**
+     * Updates the bean of a stage, registering it on the first report of the stage.
+     *
+     * @param metrics The measurements.
+     */
+    @Override
+    public void report(StageMetrics metrics) {
+        Stage stage = stages.computeIfAbsent(metrics.get_stage(), name -> {
+            Stage bean = new Stage();
+            try {
+                server.registerMBean(bean, object_name(name));
+            } catch (JMException e) {
+                throw new IllegalStateException("Cannot register the metrics of stage " + name, e);
+            }
+            return bean;
+        });
+        stage.update(metrics);
+    }
+
+
+    /**
+     * Unregisters all beans of this sink.
+     */
+    @Override
+    public void close() {
+        for (String name : stages.keySet()) {
+            try {
+                server.unregisterMBean(object_name(name));
+            } catch (JMException e) {
+                // Already unregistered
+            }
+        }
+        stages.clear();
+    }
+
+
+    /**
+     * Returns the object name of the bean of a stage.
+     *
+     * @param stage The name of the stage.
+     * @return The object name.
+     * @throws JMException If the name is not valid.
+     */
+    private ObjectName object_name(String stage) throws JMException {
+        return new ObjectName(DOMAIN + ":type=Pipeline,job=" + ObjectName.quote(job) + ",stage=" + ObjectName.quote(stage));
+    }
+
+
+    /**
+     * The bean of a single stage.
+     */
+    private static class Stage implements StageMXBean {
+        // Measurements of the latest run
+        private volatile StageMetrics latest = new StageMetrics("", 0, 0, 0, -1, -1);
+        // Number of runs
+        private volatile long runs = 0;
+        // Total number of documents of all runs
+        private volatile long total_documents = 0;
+
+
+        /**
+         * Records the measurements of a new run.
+         *
+         * @param metrics The measurements.
+         */
+        synchronized void update(StageMetrics metrics) {
+            latest = metrics;
+            runs++;
+            total_documents += metrics.get_documents();
+        }
+
+
+        /**
+         * Returns the number of runs of the stage.
+         *
+         * @return The number of runs.
+         */
+        @Override
+        public long getRuns() {
+            return runs;
+        }
+
+
+        /**
+         * Returns the total number of documents of all runs.
+         *
+         * @return The number of documents.
+         */
+        @Override
+        public long getTotalDocuments() {
+            return total_documents;
+        }
+
+
+        /**
+         * Returns the wall-clock duration of the latest run.
+         *
+         * @return The duration in milliseconds.
+         */
+        @Override
+        public double getWallTimeMillis() {
+            return latest.get_wall_nanos() / 1e6;
+        }
+
+
+        /**
+         * Returns the number of documents of the latest run.
+         *
+         * @return The number of documents.
+         */
+        @Override
+        public long getDocuments() {
+            return latest.get_documents();
+        }
+
+
+        /**
+         * Returns the throughput of the latest run.
+         *
+         * @return The number of documents per second.
+         */
+        @Override
+        public double getDocumentsPerSecond() {
+            return latest.get_documents_per_second();
+        }
+
+
+        /**
+         * Returns the number of bytes read by the latest run.
+         *
+         * @return The number of bytes.
+         */
+        @Override
+        public long getBytesRead() {
+            return latest.get_bytes_read();
+        }
+
+
+        /**
+         * Returns the number of bytes allocated by the latest run.
+         *
+         * @return The number of bytes, or -1.
+         */
+        @Override
+        public long getAllocatedBytes() {
+            return latest.get_allocated_bytes();
+        }
+
+
+        /**
+         * Returns the peak heap usage during the latest run.
+         *
+         * @return The number of bytes, or -1.
+         */
+        @Override
+        public long getPeakHeapBytes() {
+            return latest.get_peak_heap_bytes();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * This package composes the feature extraction and the classifier into a pipeline and reports
+ * the time, throughput and memory used by each stage of training and scoring jobs.
+ */
+package com.example.ml.pipeline;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * A metrics sink which writes the measurements to a java.util.logging Logger periodically.
+ * Every period, the stages that finished since the last report are logged, one line per stage.
+ * Closing the sink stops the periodic reports and logs the stages not reported yet.
+ */
+public class LoggingMetricsSink implements MetricsSink, AutoCloseable {
+    // Logger receiving the reports
+    private final Logger logger;
+    // Latest measurements of the stages not reported yet, in order of their first report
+    private final Map<String, StageMetrics> pending = new LinkedHashMap<>();
+    // Thread logging the reports
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "pipeline-metrics-logger");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+
+    /**
+     * Creates a sink logging to the given logger, without starting the periodic reports.
+     *
+     * @param logger The logger receiving the reports.
+     */
+    private LoggingMetricsSink(Logger logger) {
+        this.logger = logger;
+    }
+
+
+    /**
+     * Creates a sink logging to the logger of this package and starts its periodic reports.
+     *
+     * @param period The time between two reports.
+     * @return The sink.
+     */
+    public static LoggingMetricsSink start(Duration period) {
+        return start(Logger.getLogger(LoggingMetricsSink.class.getPackageName()), period);
+    }
+
+
+    /**
+     * Creates a sink logging to the given logger and starts its periodic reports. The reports are scheduled
+     * once the sink is fully constructed, so the reporting thread never sees a partly initialized sink.
+     *
+     * @param logger The logger receiving the reports.
+     * @param period The time between two reports.
+     * @return The sink.
+     */
+    public static LoggingMetricsSink start(Logger logger, Duration period) {
+        long millis = period.toMillis();
+        if (millis <= 0) {
+            throw new IllegalArgumentException("The period must be positive: " + period);
+        }
+        LoggingMetricsSink sink = new LoggingMetricsSink(logger);
+        sink.scheduler.scheduleAtFixedRate(sink::flush, millis, millis, TimeUnit.MILLISECONDS);
+        return sink;
+    }
+
+
+    /**
+     * Stores the measurements of a stage until the next report.
+     *
+     * @param metrics The measurements.
+     */
+    @Override
+    public void report(StageMetrics metrics) {
+        synchronized (pending) {
+            pending.put(metrics.get_stage(), metrics);
+        }
+    }
+
+
+    /**
+     * Logs the stages that finished since the last report.
+     */
+    public void flush() {
+        List<StageMetrics> reported;
+        synchronized (pending) {
+            reported = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+        for (StageMetrics metrics : reported) {
+            logger.log(Level.INFO, "Pipeline stage {0}", metrics);
+        }
+    }
+
+
+    /**
+     * Stops the periodic reports and logs the stages not reported yet.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        flush();
+    }
+}
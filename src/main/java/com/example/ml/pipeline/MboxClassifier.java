@@ -0,0 +1,195 @@
+/**
+ * This package composes the feature extraction and the classifier into a pipeline and reports
+ * the time, throughput and memory used by each stage of training and scoring jobs.
+ */
+package com.example.ml.pipeline;
+
+import com.example.ml.classifier.Classifier;
+import com.example.ml.data.matrix.SparseMatrix;
+import com.example.ml.data.reader.MboxMessage;
+import com.example.ml.data.reader.MboxReader;
+import com.example.ml.feature.extraction.Extractor;
+import com.example.ml.model.ModelFile;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * The MboxClassifier class classifies all messages of a mailbox file with a fitted extractor and classifier
+ * in bounded memory.
+ *
+ * A background thread reads the messages with an MboxReader and groups them into batches of a fixed size, which are
+ * put into a queue holding at most max_pending_batches batches; when the classification falls behind, the reader
+ * blocks (backpressure). The calling thread transforms every batch into a sparse matrix, predicts its labels and
+ * writes a line "offset label" per message, flushing the output after every batch. At most
+ * (max_pending_batches + 2) batches are in memory at any time, however large the mailbox file is.
+ */
+public class MboxClassifier {
+    // Marks the end of the messages in the queue of batches
+    private static final List<MboxMessage> END = new ArrayList<>();
+
+    // Fitted feature extractor
+    private final Extractor extractor;
+    // Fitted classifier
+    private final Classifier classifier;
+    // Number of messages per batch
+    private final int batch_size;
+    // Maximum number of batches read but not yet classified
+    private final int max_pending_batches;
+
+
+    /**
+     * Creates a mailbox classifier.
+     *
+     * @param extractor           The fitted feature extractor.
+     * @param classifier          The fitted classifier.
+     * @param batch_size          The number of messages per batch.
+     * @param max_pending_batches The maximum number of batches read but not yet classified.
+     */
+    public MboxClassifier(Extractor extractor, Classifier classifier, int batch_size, int max_pending_batches) {
+        if (batch_size < 1 || max_pending_batches < 1) {
+            throw new IllegalArgumentException("batch_size and max_pending_batches must be positive");
+        }
+        this.extractor = extractor;
+        this.classifier = classifier;
+        this.batch_size = batch_size;
+        this.max_pending_batches = max_pending_batches;
+    }
+
+
+    /**
+     * Classifies all messages of a mailbox file and writes a line "offset label" (0 = ham, 1 = spam) per message,
+     * in file order. An exception or error which stopped the reader thread is rethrown once the batches read
+     * before it are classified.
+     *
+     * @param mbox    The mailbox file.
+     * @param charset The charset used to decode the messages.
+     * @param output  The writer receiving the labels.
+     * @return The number of classified messages.
+     * @throws IOException If an I/O error occurs while reading the mailbox or writing the labels.
+     */
+    public long classify(Path mbox, Charset charset, Writer output) throws IOException {
+        BlockingQueue<List<MboxMessage>> batches = new ArrayBlockingQueue<>(max_pending_batches);
+        AtomicReference<Throwable> read_error = new AtomicReference<>();
+        Thread reader = new Thread(() -> read_batches(mbox, charset, batches, read_error), "mbox-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        long count = 0;
+        try {
+            while (true) {
+                List<MboxMessage> batch = batches.take();
+                if (batch == END) {
+                    break;
+                }
+                ArrayList<String> documents = new ArrayList<>(batch.size());
+                for (MboxMessage message : batch) {
+                    documents.add(message.get_content());
+                }
+                SparseMatrix X = extractor.transform_sparse(documents);
+                int[] labels = classifier.predict(X);
+                for (int i = 0; i < labels.length; i++) {
+                    output.write(batch.get(i).get_offset() + " " + labels[i] + "\n");
+                }
+                output.flush();
+                count += labels.length;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while classifying " + mbox, e);
+        } finally {
+            reader.interrupt();
+        }
+        Throwable error = read_error.get();
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        }
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        }
+        if (error instanceof Error) {
+            throw (Error) error;
+        }
+        return count;
+    }
+
+
+    /**
+     * Reads the messages of a mailbox file into batches and puts them into a queue, ended by END even if reading
+     * fails, so classify never waits for a batch that will not come. Runs on the reader thread.
+     *
+     * @param mbox       The mailbox file.
+     * @param charset    The charset used to decode the messages.
+     * @param batches    The queue receiving the batches.
+     * @param read_error Receives the error which stopped the reader, rethrown by classify.
+     */
+    private void read_batches(Path mbox, Charset charset, BlockingQueue<List<MboxMessage>> batches,
+                              AtomicReference<Throwable> read_error) {
+        try (MboxReader messages = new MboxReader(mbox, charset)) {
+            List<MboxMessage> batch = new ArrayList<>(batch_size);
+            while (messages.hasNext()) {
+                batch.add(messages.next());
+                if (batch.size() == batch_size) {
+                    batches.put(batch);
+                    batch = new ArrayList<>(batch_size);
+                }
+            }
+            if (!batch.isEmpty()) {
+                batches.put(batch);
+            }
+        } catch (UncheckedIOException e) {
+            read_error.set(e.getCause());
+        } catch (InterruptedException e) {
+            // classify has stopped and no longer waits for END
+            Thread.currentThread().interrupt();
+        } catch (Throwable e) {
+            read_error.set(e);
+        } finally {
+            if (!Thread.currentThread().isInterrupted()) {
+                try {
+                    batches.put(END);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Classifies a mailbox file with a saved model.
+     * Usage: MboxClassifier model_path mbox_path output_path [batch_size]
+     *
+     * @param args The command line arguments.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: MboxClassifier model_path mbox_path output_path [batch_size]");
+            System.exit(1);
+        }
+        int batch_size = args.length > 3 ? Integer.parseInt(args[3]) : 256;
+
+        ModelFile.Model model = ModelFile.load(Paths.get(args[0]));
+        MboxClassifier classifier = new MboxClassifier(model.get_extractor(), model.get_classifier(), batch_size, 4);
+        long start = System.nanoTime();
+        long count;
+        try (BufferedWriter output = Files.newBufferedWriter(Paths.get(args[2]), StandardCharsets.UTF_8)) {
+            count = classifier.classify(Paths.get(args[1]), StandardCharsets.UTF_8, output);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Classified %d messages in %.1f s (%.0f messages/s)%n", count, seconds, count / seconds);
+    }
+}
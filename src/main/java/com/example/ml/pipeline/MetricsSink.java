@@ -0,0 +1,14 @@
+/**
+ * This package composes the feature extraction and the classifier into a pipeline and reports
+ * the time, throughput and memory used by each stage of training and scoring jobs.
+ */
+package com.example.ml.pipeline;
+
+
+/**
+ * A MetricsSink receives the measurements of every finished pipeline stage, for example to publish them
+ * to a monitoring system. It is called on the thread running the pipeline, so it should return quickly.
+ */
+public interface MetricsSink {
+    void report(StageMetrics metrics);
+}
@@ -0,0 +1,364 @@
+/**
+ * This package composes the feature extraction and the classifier into a pipeline and reports
+ * the time, throughput and memory used by each stage of training and scoring jobs.
+ */
+package com.example.ml.pipeline;
+
+import com.example.ml.classifier.Classifier;
+import com.example.ml.data.matrix.SparseMatrix;
+import com.example.ml.data.reader.RawDataReader;
+import com.example.ml.evaluation.metrics.Evaluator;
+import com.example.ml.evaluation.metrics.StreamingEvaluator;
+import com.example.ml.feature.extraction.Extractor;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+
+/**
+ * The Pipeline class composes a feature extractor and a classifier into the stages of a text classification job:
+ * reading labeled documents from a directory, fitting the extractor, training the classifier, transforming new
+ * documents and predicting their labels.
+ *
+ * Every stage is measured: wall time, number of documents and documents per second, bytes read from files,
+ * bytes allocated on the heap and peak heap usage. The measurements are kept in get_metrics() and passed to
+ * every registered MetricsSink, for example a JmxMetricsSink or a LoggingMetricsSink.
+ *
+ * Allocated bytes are summed over the threads doing the work of a stage: the threads alive at its end (such as the
+ * calling thread and the ForkJoinPool workers of a parallel classifier) and the reading threads of the read stages,
+ * which terminate before the stage ends and report their allocations through the reader. Other threads which
+ * terminate during a stage are not counted. The peak heap usage is the sum of the peak usages of the heap memory
+ * pools, whose peaks are reset at the start of every stage. Both are approximate when several pipelines run in the
+ * same JVM.
+ */
+public class Pipeline {
+    // Feature extractor turning documents into feature vectors
+    private final Extractor extractor;
+    // Classifier predicting the labels of the feature vectors
+    private final Classifier classifier;
+    // Charset used to decode the files read by the pipeline
+    private final Charset charset;
+    // Sinks receiving the measurements of every stage
+    private final List<MetricsSink> sinks = new CopyOnWriteArrayList<>();
+    // Measurements of all stages run so far
+    private final List<StageMetrics> metrics = Collections.synchronizedList(new ArrayList<>());
+
+
+    /**
+     * Creates a pipeline reading files with the platform default charset.
+     *
+     * @param extractor  The feature extractor, fitted or not.
+     * @param classifier The classifier, fitted or not.
+     */
+    public Pipeline(Extractor extractor, Classifier classifier) {
+        this(extractor, classifier, Charset.defaultCharset());
+    }
+
+
+    /**
+     * Creates a pipeline.
+     *
+     * @param extractor  The feature extractor, fitted or not.
+     * @param classifier The classifier, fitted or not.
+     * @param charset    The charset used to decode the files read by the pipeline.
+     */
+    public Pipeline(Extractor extractor, Classifier classifier, Charset charset) {
+        this.extractor = extractor;
+        this.classifier = classifier;
+        this.charset = charset;
+    }
+
+
+    /**
+     * Registers a sink receiving the measurements of every stage finished from now on.
+     *
+     * @param sink The sink.
+     */
+    public void add_sink(MetricsSink sink) {
+        sinks.add(sink);
+    }
+
+
+    /**
+     * Reads the labeled documents of a directory and fits the extractor and the classifier on them.
+     *
+     * @param directory_path The path to the directory containing the training files.
+     * @throws IOException If an I/O error occurs while reading the files.
+     */
+    public void fit(String directory_path) throws IOException {
+        RawDataReader reader = read("read_train", directory_path);
+        ArrayList<String> documents = reader.get_data();
+        int[] labels = reader.get_labels().stream().mapToInt(i -> i).toArray();
+        reader.clear();
+        fit(documents, labels);
+    }
+
+
+    /**
+     * Fits the extractor on the documents and the classifier on their feature vectors.
+     *
+     * @param documents The training documents.
+     * @param labels    The labels of the documents, 0 = ham, 1 = spam.
+     */
+    public void fit(ArrayList<String> documents, int[] labels) {
+        Measurement extract = start("extract");
+        extractor.fit(documents);
+        SparseMatrix X = extractor.transform_sparse();
+        finish(extract, documents.size(), 0);
+
+        Measurement train = start("train");
+        classifier.fit(X, labels);
+        finish(train, documents.size(), 0);
+    }
+
+
+    /**
+     * Predicts the labels of documents with the fitted extractor and classifier.
+     *
+     * @param documents The documents.
+     * @return The predicted labels, 0 = ham, 1 = spam.
+     */
+    public int[] predict(ArrayList<String> documents) {
+        Measurement transform = start("transform");
+        SparseMatrix X = extractor.transform_sparse(documents);
+        finish(transform, documents.size(), 0);
+
+        Measurement predict = start("predict");
+        int[] predictions = classifier.predict(X);
+        finish(predict, documents.size(), 0);
+        return predictions;
+    }
+
+
+    /**
+     * Computes the scores (for GaussianNaiveBayes the log-probability margins) of documents with the fitted
+     * extractor and classifier; a document is predicted as spam when its score is not negative.
+     *
+     * @param documents The documents.
+     * @return The scores, higher scores favour spam.
+     */
+    public double[] score(ArrayList<String> documents) {
+        Measurement transform = start("transform");
+        SparseMatrix X = extractor.transform_sparse(documents);
+        finish(transform, documents.size(), 0);
+
+        Measurement score = start("score");
+        double[] scores = classifier.decision_function(X);
+        finish(score, documents.size(), 0);
+        return scores;
+    }
+
+
+    /**
+     * Reads the labeled documents of a directory, predicts their labels and prints the performance metrics
+     * of the predictions with the Evaluator.
+     *
+     * @param directory_path The path to the directory containing the test files.
+     * @return The predicted labels, 0 = ham, 1 = spam.
+     * @throws IOException If an I/O error occurs while reading the files.
+     */
+    public int[] evaluate(String directory_path) throws IOException {
+        RawDataReader reader = read("read_test", directory_path);
+        ArrayList<String> documents = reader.get_data();
+        int[] labels = reader.get_labels().stream().mapToInt(i -> i).toArray();
+        reader.clear();
+
+        int[] predictions = predict(documents);
+        Evaluator.evaluate(labels, predictions);
+        return predictions;
+    }
+
+
+    /**
+     * Reads the labeled documents of a directory, scores them and adds the (label, score) pairs to an evaluator,
+     * which gives the metrics at its threshold and the ROC and precision-recall curves.
+     *
+     * @param directory_path The path to the directory containing the test files.
+     * @param evaluator      The evaluator receiving the labels and scores.
+     * @throws IOException If an I/O error occurs while reading the files.
+     */
+    public void evaluate(String directory_path, StreamingEvaluator evaluator) throws IOException {
+        RawDataReader reader = read("read_test", directory_path);
+        ArrayList<String> documents = reader.get_data();
+        int[] labels = reader.get_labels().stream().mapToInt(i -> i).toArray();
+        reader.clear();
+
+        evaluator.add(labels, score(documents));
+    }
+
+
+    /**
+     * Returns the measurements of all stages run so far, in the order they finished.
+     *
+     * @return A copy of the measurements.
+     */
+    public List<StageMetrics> get_metrics() {
+        synchronized (metrics) {
+            return new ArrayList<>(metrics);
+        }
+    }
+
+
+    /**
+     * Returns the feature extractor of the pipeline.
+     *
+     * @return The extractor.
+     */
+    public Extractor get_extractor() {
+        return extractor;
+    }
+
+
+    /**
+     * Returns the classifier of the pipeline.
+     *
+     * @return The classifier.
+     */
+    public Classifier get_classifier() {
+        return classifier;
+    }
+
+
+    /**
+     * Reads the labeled documents of a directory as a measured stage.
+     *
+     * @param stage          The name of the stage.
+     * @param directory_path The path to the directory.
+     * @return The reader holding the documents and labels.
+     * @throws IOException If an I/O error occurs while reading the files.
+     */
+    private RawDataReader read(String stage, String directory_path) throws IOException {
+        Measurement read = start(stage);
+        RawDataReader reader = new RawDataReader();
+        reader.load(directory_path, charset);
+        finish(read, reader.get_data().size(), reader.get_bytes_read(), reader.get_allocated_bytes());
+        return reader;
+    }
+
+
+    /**
+     * Starts measuring a stage.
+     *
+     * @param stage The name of the stage.
+     * @return The measurement.
+     */
+    private static Measurement start(String stage) {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                pool.resetPeakUsage();
+            }
+        }
+        return new Measurement(stage, System.nanoTime(), allocated_bytes_by_thread());
+    }
+
+
+    /**
+     * Finishes measuring a stage whose threads are all alive at its end and reports the measurements to the sinks.
+     *
+     * @param measurement The measurement returned by start.
+     * @param documents   The number of documents processed by the stage.
+     * @param bytes_read  The number of bytes read from files by the stage.
+     */
+    private void finish(Measurement measurement, long documents, long bytes_read) {
+        finish(measurement, documents, bytes_read, 0);
+    }
+
+
+    /**
+     * Finishes measuring a stage and reports the measurements to the sinks.
+     *
+     * @param measurement          The measurement returned by start.
+     * @param documents            The number of documents processed by the stage.
+     * @param bytes_read           The number of bytes read from files by the stage.
+     * @param terminated_allocated The number of bytes allocated by worker threads of the stage which terminated
+     *                             before its end, or -1 if they are unknown.
+     */
+    private void finish(Measurement measurement, long documents, long bytes_read, long terminated_allocated) {
+        long wall_nanos = System.nanoTime() - measurement.start_nanos;
+
+        long allocated_bytes = -1;
+        Map<Long, Long> allocated = allocated_bytes_by_thread();
+        if (allocated != null && measurement.start_allocated != null && terminated_allocated >= 0) {
+            allocated_bytes = terminated_allocated;
+            for (Map.Entry<Long, Long> thread : allocated.entrySet()) {
+                allocated_bytes += thread.getValue() - measurement.start_allocated.getOrDefault(thread.getKey(), 0L);
+            }
+        }
+
+        long peak_heap_bytes = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peak_heap_bytes += pool.getPeakUsage().getUsed();
+            }
+        }
+
+        StageMetrics stage = new StageMetrics(measurement.stage, wall_nanos, documents, bytes_read,
+                allocated_bytes, peak_heap_bytes);
+        metrics.add(stage);
+        for (MetricsSink sink : sinks) {
+            sink.report(stage);
+        }
+    }
+
+
+    /**
+     * Returns the number of bytes allocated so far by every live thread.
+     *
+     * @return The allocated bytes by thread id, or null if the JVM does not measure allocations.
+     */
+    private static Map<Long, Long> allocated_bytes_by_thread() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+        if (!allocation.isThreadAllocatedMemorySupported() || !allocation.isThreadAllocatedMemoryEnabled()) {
+            return null;
+        }
+        long[] ids = allocation.getAllThreadIds();
+        long[] bytes = allocation.getThreadAllocatedBytes(ids);
+        Map<Long, Long> allocated = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            if (bytes[i] >= 0) {
+                allocated.put(ids[i], bytes[i]);
+            }
+        }
+        return allocated;
+    }
+
+
+    /**
+     * The Measurement class holds the state of a stage at its start.
+     */
+    private static class Measurement {
+        // Name of the stage
+        final String stage;
+        // Value of System.nanoTime at the start
+        final long start_nanos;
+        // Allocated bytes by thread id at the start, null if not measured
+        final Map<Long, Long> start_allocated;
+
+
+        /**
+         * Creates the start state of a stage.
+         *
+         * @param stage           The name of the stage.
+         * @param start_nanos     The value of System.nanoTime at the start.
+         * @param start_allocated The allocated bytes by thread id at the start, or null.
+         */
+        Measurement(String stage, long start_nanos, Map<Long, Long> start_allocated) {
+            this.stage = stage;
+            this.start_nanos = start_nanos;
+            this.start_allocated = start_allocated;
+        }
+    }
+}
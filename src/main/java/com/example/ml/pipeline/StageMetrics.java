@@ -0,0 +1,129 @@
+/**
+ * This package composes the feature extraction and the classifier into a pipeline and reports
+ * the time, throughput and memory used by each stage of training and scoring jobs.
+ */
+package com.example.ml.pipeline;
+
+
+/**
+ * The StageMetrics class holds the measurements of one run of a pipeline stage.
+ * Values that could not be measured on the running JVM are -1.
+ */
+public class StageMetrics {
+    // Name of the stage
+    private final String stage;
+    // Wall-clock duration of the stage in nanoseconds
+    private final long wall_nanos;
+    // Number of documents processed by the stage
+    private final long documents;
+    // Number of bytes read from files by the stage
+    private final long bytes_read;
+    // Number of bytes allocated on the heap by the threads running during the stage
+    private final long allocated_bytes;
+    // Peak heap usage during the stage in bytes
+    private final long peak_heap_bytes;
+
+
+    /**
+     * Creates the measurements of a stage run.
+     *
+     * @param stage           The name of the stage.
+     * @param wall_nanos      The wall-clock duration in nanoseconds.
+     * @param documents       The number of documents processed.
+     * @param bytes_read      The number of bytes read from files.
+     * @param allocated_bytes The number of bytes allocated on the heap, or -1.
+     * @param peak_heap_bytes The peak heap usage in bytes, or -1.
+     */
+    public StageMetrics(String stage, long wall_nanos, long documents, long bytes_read,
+                        long allocated_bytes, long peak_heap_bytes) {
+        this.stage = stage;
+        this.wall_nanos = wall_nanos;
+        this.documents = documents;
+        this.bytes_read = bytes_read;
+        this.allocated_bytes = allocated_bytes;
+        this.peak_heap_bytes = peak_heap_bytes;
+    }
+
+
+    /**
+     * Returns the name of the stage.
+     *
+     * @return The name of the stage.
+     */
+    public String get_stage() {
+        return stage;
+    }
+
+
+    /**
+     * Returns the wall-clock duration of the stage.
+     *
+     * @return The duration in nanoseconds.
+     */
+    public long get_wall_nanos() {
+        return wall_nanos;
+    }
+
+
+    /**
+     * Returns the number of documents processed by the stage.
+     *
+     * @return The number of documents.
+     */
+    public long get_documents() {
+        return documents;
+    }
+
+
+    /**
+     * Returns the throughput of the stage.
+     *
+     * @return The number of documents processed per second.
+     */
+    public double get_documents_per_second() {
+        return wall_nanos == 0 ? 0 : documents * 1e9 / wall_nanos;
+    }
+
+
+    /**
+     * Returns the number of bytes read from files by the stage.
+     *
+     * @return The number of bytes read.
+     */
+    public long get_bytes_read() {
+        return bytes_read;
+    }
+
+
+    /**
+     * Returns the number of bytes allocated on the heap by the threads running during the stage.
+     *
+     * @return The number of bytes allocated, or -1 if the JVM does not measure allocations.
+     */
+    public long get_allocated_bytes() {
+        return allocated_bytes;
+    }
+
+
+    /**
+     * Returns the peak heap usage during the stage.
+     *
+     * @return The peak heap usage in bytes, or -1 if it is not available.
+     */
+    public long get_peak_heap_bytes() {
+        return peak_heap_bytes;
+    }
+
+
+    /**
+     * Returns a one-line summary of the measurements.
+     *
+     * @return The summary.
+     */
+    @Override
+    public String toString() {
+        return String.format("%s: %.1f ms, %d documents, %.0f documents/s, %d KB read, %d KB allocated, %d KB peak heap",
+                stage, wall_nanos / 1e6, documents, get_documents_per_second(), bytes_read / 1024,
+                allocated_bytes < 0 ? -1 : allocated_bytes / 1024, peak_heap_bytes < 0 ? -1 : peak_heap_bytes / 1024);
+    }
+}
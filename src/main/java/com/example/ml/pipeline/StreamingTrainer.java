@@ -0,0 +1,246 @@
+/**
+ * This package composes the feature extraction and the classifier into a pipeline and reports
+ * the time, throughput and memory used by each stage of training and scoring jobs.
+ */
+package com.example.ml.pipeline;
+
+import com.example.ml.classifier.naivebayes.GaussianNaiveBayes;
+import com.example.ml.data.matrix.SparseMatrix;
+import com.example.ml.data.reader.StreamingRawDataReader;
+import com.example.ml.feature.extraction.text.TermDictionary;
+import com.example.ml.feature.extraction.text.Tokenizer;
+import com.example.ml.feature.extraction.tfidf.TfIdf;
+import com.example.ml.model.ModelFile;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+
+/**
+ * The StreamingTrainer class trains a TF-IDF transformer and a Gaussian Naive Bayes classifier on a directory of
+ * labeled documents without ever holding the corpus in memory.
+ *
+ * The directory is streamed twice with a StreamingRawDataReader. The first pass tokenizes every document into a
+ * TermDictionary, which counts the occurrences and document frequencies of all terms; the vocabulary and the IDF
+ * vector are then fitted from the counts by TfIdf.fit_vocabulary, with the rule and formula of TfIdf.fit.
+ * The second pass transforms the documents with the fitted transformer in small batches and folds every batch into
+ * the per-class sufficient statistics of the classifier with partial_fit. Apart from the few files read ahead and one batch, the
+ * memory used depends on the number of distinct terms and not on the number or size of the documents.
+ *
+ * The model is the same as the one of Pipeline.fit on the same documents, within floating-point tolerance.
+ */
+public class StreamingTrainer {
+    // Default number of documents transformed and folded into the classifier at once
+    private static final int DEFAULT_BATCH_SIZE = 1024;
+
+    // Reader streaming the documents of the training directory
+    private final StreamingRawDataReader reader;
+    // Feature extractor, configured by the caller and fitted by fit
+    private final TfIdf extractor;
+    // Classifier, configured by the caller and fitted by fit
+    private final GaussianNaiveBayes classifier;
+    // Number of documents transformed and folded into the classifier at once
+    private int batch_size = DEFAULT_BATCH_SIZE;
+    // Number of documents of the last training run
+    private int num_documents;
+
+
+    /**
+     * Creates a trainer with a transformer and a classifier of default parameters.
+     *
+     * @param charset       The charset used to decode the files.
+     * @param num_threads   The number of threads reading files.
+     * @param max_in_flight The maximum number of files read ahead of the training at any time.
+     */
+    public StreamingTrainer(Charset charset, int num_threads, int max_in_flight) {
+        this(charset, num_threads, max_in_flight, new TfIdf(), new GaussianNaiveBayes());
+    }
+
+
+    /**
+     * Creates a trainer fitting a configured transformer and classifier. Their parameters (min_df, max_df and
+     * max_features of the transformer, var_smoothing and the pool of the classifier) are used as set; the
+     * approximate mode of the transformer is not supported and ignored. Both are fitted in place by fit.
+     *
+     * @param charset       The charset used to decode the files.
+     * @param num_threads   The number of threads reading files.
+     * @param max_in_flight The maximum number of files read ahead of the training at any time.
+     * @param extractor     The transformer to fit.
+     * @param classifier    The classifier to fit on the features of the transformer.
+     */
+    public StreamingTrainer(Charset charset, int num_threads, int max_in_flight, TfIdf extractor,
+                            GaussianNaiveBayes classifier) {
+        this.reader = new StreamingRawDataReader(charset, num_threads, max_in_flight);
+        this.extractor = extractor;
+        this.classifier = classifier;
+    }
+
+
+    /**
+     * Sets the number of documents transformed and folded into the classifier at once (default 1024).
+     * Larger batches amortize the scratch array of the vocabulary size used by the transformation.
+     *
+     * @param batch_size The number of documents per batch.
+     */
+    public void set_batch_size(int batch_size) {
+        if (batch_size < 1) {
+            throw new IllegalArgumentException("batch_size must be positive, got " + batch_size);
+        }
+        this.batch_size = batch_size;
+    }
+
+
+    /**
+     * Trains the transformer and the classifier on all labeled documents of a directory,
+     * reading the directory twice.
+     *
+     * @param directory_path The path to the directory containing the training files.
+     * @throws IOException If an I/O error occurs while listing or reading the files.
+     */
+    public void fit(String directory_path) throws IOException {
+        fit_vocabulary(directory_path);
+        fit_classifier(directory_path);
+    }
+
+
+    /**
+     * First pass: counts the terms of all documents and fits the vocabulary and the IDF vector of the transformer
+     * from the counts (see TfIdf.fit_vocabulary).
+     *
+     * @param directory_path The path to the directory containing the training files.
+     * @throws IOException If an I/O error occurs while listing or reading the files.
+     */
+    private void fit_vocabulary(String directory_path) throws IOException {
+        TermDictionary dictionary = new TermDictionary();
+        int[] document = new int[1];
+        Tokenizer.TokenConsumer counter = (text, start, end) ->
+                dictionary.count(dictionary.add(text, start, end), document[0]);
+        reader.read(directory_path, labeled -> {
+            Tokenizer.tokenize(labeled.get_content(), counter);
+            document[0]++;
+        });
+        num_documents = document[0];
+        if (num_documents == 0) {
+            throw new IllegalArgumentException("No training documents in " + directory_path);
+        }
+        extractor.fit_vocabulary(dictionary, num_documents);
+    }
+
+
+    /**
+     * Second pass: transforms the documents in batches and folds every batch into the classifier. The first batch
+     * is fitted with fit, which discards the statistics of a previous training run, and the others with partial_fit.
+     *
+     * @param directory_path The path to the directory containing the training files.
+     * @throws IOException If an I/O error occurs while listing or reading the files.
+     */
+    private void fit_classifier(String directory_path) throws IOException {
+        ArrayList<String> batch = new ArrayList<>(batch_size);
+        int[] labels = new int[batch_size];
+        int[] num_folded = new int[1];
+        reader.read(directory_path, labeled -> {
+            labels[batch.size()] = labeled.get_label();
+            batch.add(labeled.get_content());
+            if (batch.size() == batch_size) {
+                fold_batch(batch, labels, num_folded);
+            }
+        });
+        fold_batch(batch, labels, num_folded);
+    }
+
+
+    /**
+     * Transforms a batch of documents, folds it into the classifier and empties the batch.
+     *
+     * @param batch      The documents of the batch.
+     * @param labels     The labels of the documents, the array may be longer than the batch.
+     * @param num_folded A one-element array counting the documents folded so far in this training run.
+     */
+    private void fold_batch(ArrayList<String> batch, int[] labels, int[] num_folded) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        SparseMatrix.Builder builder = new SparseMatrix.Builder(extractor.get_vocabulary().size());
+        extractor.transform_rows(batch, builder);
+        if (num_folded[0] == 0) {
+            classifier.fit(builder.build(), Arrays.copyOf(labels, batch.size()));
+        } else {
+            classifier.partial_fit(builder.build(), Arrays.copyOf(labels, batch.size()));
+        }
+        num_folded[0] += batch.size();
+        batch.clear();
+    }
+
+
+    /**
+     * Returns the transformer, fitted by the last call of fit.
+     *
+     * @return The transformer.
+     */
+    public TfIdf get_extractor() {
+        return extractor;
+    }
+
+
+    /**
+     * Returns the classifier, fitted by the last call of fit.
+     *
+     * @return The classifier.
+     */
+    public GaussianNaiveBayes get_classifier() {
+        return classifier;
+    }
+
+
+    /**
+     * Returns the number of documents of the last call of fit.
+     *
+     * @return The number of training documents.
+     */
+    public int get_num_documents() {
+        return num_documents;
+    }
+
+
+    /**
+     * Returns the total number of bytes read by both passes of all calls of fit.
+     *
+     * @return The number of bytes read.
+     */
+    public long get_bytes_read() {
+        return reader.get_bytes_read();
+    }
+
+
+    /**
+     * Trains a model on a directory of labeled documents and saves it to a model file.
+     *
+     * @param args The training directory, the model file path and optionally the batch size and the maximum
+     *             vocabulary size.
+     * @throws IOException If an I/O error occurs while reading the documents or writing the model.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: StreamingTrainer train_dir model_path [batch_size] [max_features]");
+            System.exit(1);
+        }
+        TfIdf extractor = new TfIdf();
+        if (args.length > 3) {
+            extractor.set_max_features(Integer.parseInt(args[3]));
+        }
+        StreamingTrainer trainer = new StreamingTrainer(StandardCharsets.UTF_8, 4, 64, extractor,
+                new GaussianNaiveBayes());
+        if (args.length > 2) {
+            trainer.set_batch_size(Integer.parseInt(args[2]));
+        }
+        long start = System.nanoTime();
+        trainer.fit(args[0]);
+        ModelFile.save(Paths.get(args[1]), trainer.get_extractor(), trainer.get_classifier());
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Trained on %d documents (%d terms, %d bytes read) in %.1f s%n", trainer.get_num_documents(),
+                trainer.get_extractor().get_vocabulary().size(), trainer.get_bytes_read(), seconds);
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Provides online scoring of single messages with a fitted model: a scoring API,
+ * a micro-batching front end for concurrent requests and a small local HTTP server.
+ */
+package com.example.ml.serving;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * The LatencyRecorder class records request latencies into a fixed-size log-linear histogram and reports
+ * throughput and latency percentiles. Every power of two of microseconds is split into 16 linear sub-buckets,
+ * so percentiles are accurate to about 6%. Recording is lock-free and can be done from several threads.
+ */
+public class LatencyRecorder {
+    // Number of linear sub-buckets per power of two
+    private static final int SUB_BUCKETS = 16;
+    // Number of groups of SUB_BUCKETS buckets (latencies up to 2^43 microseconds are distinguished)
+    private static final int MAGNITUDES = 40;
+
+    // Number of recorded latencies per bucket
+    private final AtomicLongArray buckets = new AtomicLongArray(SUB_BUCKETS * MAGNITUDES);
+    // Number of recorded latencies
+    private final LongAdder count = new LongAdder();
+    // Time of creation or of the last reset, in nanoseconds
+    private volatile long start = System.nanoTime();
+
+
+    /**
+     * Records one latency.
+     *
+     * @param nanos The latency in nanoseconds.
+     */
+    public void record(long nanos) {
+        buckets.incrementAndGet(bucket_of(Math.max(0, nanos / 1000)));
+        count.increment();
+    }
+
+
+    /**
+     * Returns the number of recorded latencies.
+     *
+     * @return The count.
+     */
+    public long get_count() {
+        return count.sum();
+    }
+
+
+    /**
+     * Returns the average number of recorded latencies per second since creation or the last reset.
+     *
+     * @return The throughput in requests per second.
+     */
+    public double get_throughput() {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return seconds > 0 ? count.sum() / seconds : 0;
+    }
+
+
+    /**
+     * Returns an upper estimate of a latency percentile.
+     *
+     * @param percentile The percentile, between 0 and 100.
+     * @return The latency in microseconds, 0 if nothing was recorded.
+     */
+    public long get_percentile(double percentile) {
+        long[] snapshot = new long[buckets.length()];
+        long total = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100.0 * total);
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= Math.max(1, rank)) {
+                return upper_bound(i);
+            }
+        }
+        return upper_bound(snapshot.length - 1);
+    }
+
+
+    /**
+     * Clears all recorded latencies and restarts the throughput clock.
+     */
+    public void reset() {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        start = System.nanoTime();
+    }
+
+
+    /**
+     * Returns the bucket of a latency. Latencies below 16 microseconds have their own bucket; a latency in
+     * [2^m, 2^(m+1)) with m >= 4 falls into one of 16 equally wide sub-buckets of that power of two.
+     *
+     * @param micros The latency in microseconds.
+     * @return The bucket index.
+     */
+    private static int bucket_of(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(micros);
+        int sub_bucket = (int) (micros >>> (magnitude - 4)) - SUB_BUCKETS;
+        return Math.min(SUB_BUCKETS * MAGNITUDES - 1, SUB_BUCKETS * (magnitude - 3) + sub_bucket);
+    }
+
+
+    /**
+     * Returns the largest latency of a bucket.
+     *
+     * @param bucket The bucket index.
+     * @return The latency in microseconds.
+     */
+    private static long upper_bound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int magnitude = bucket / SUB_BUCKETS + 3;
+        int sub_bucket = bucket % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub_bucket + 1) << (magnitude - 4)) - 1;
+    }
+}
@@ -0,0 +1,218 @@
+/**
+ * Provides online scoring of single messages with a fitted model: a scoring API,
+ * a micro-batching front end for concurrent requests and a small local HTTP server.
+ */
+package com.example.ml.serving;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * The MicroBatcher class gathers concurrently submitted messages into small batches scored together by worker threads.
+ * A batch is closed as soon as it holds max_batch_size messages or its first message has waited for the latency budget,
+ * so batching never delays a request by more than the budget. The latency of every request, from submission
+ * to completion, is recorded in a LatencyRecorder.
+ *
+ * Several workers drain the same queue, each building and scoring its own batches, so scoring uses several cores.
+ * A batch is scored in one pass (one sparse matrix and one decision_function call, see ModelSnapshot.score),
+ * which amortizes the per-message setup over the batch.
+ */
+public class MicroBatcher implements AutoCloseable {
+    // Service scoring the batches
+    private final ScoringService service;
+    // Maximum number of messages per batch
+    private final int max_batch_size;
+    // Longest time the first message of a batch waits for more messages, in nanoseconds
+    private final long latency_budget_nanos;
+    // Submitted requests waiting for a batch
+    private final LinkedBlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    // Latencies of completed requests
+    private final LatencyRecorder latencies = new LatencyRecorder();
+    // Threads building and scoring the batches
+    private final Thread[] workers;
+    // Whether the batcher is shutting down
+    private volatile boolean closed = false;
+
+
+    /**
+     * A submitted message with its submission time and the future receiving its verdict.
+     */
+    private static class Request {
+        final String message;
+        final long submitted = System.nanoTime();
+        final CompletableFuture<Verdict> result = new CompletableFuture<>();
+
+
+        /**
+         * Creates a request.
+         *
+         * @param message The message to score.
+         */
+        Request(String message) {
+            this.message = message;
+        }
+    }
+
+
+    /**
+     * Creates a batcher and starts one worker thread per available processor.
+     *
+     * @param service              The service scoring the batches.
+     * @param max_batch_size       The maximum number of messages per batch.
+     * @param latency_budget_micros The longest time the first message of a batch waits for more messages, in microseconds.
+     */
+    public MicroBatcher(ScoringService service, int max_batch_size, long latency_budget_micros) {
+        this(service, max_batch_size, latency_budget_micros, Runtime.getRuntime().availableProcessors());
+    }
+
+
+    /**
+     * Creates a batcher and starts its worker threads.
+     *
+     * @param service              The service scoring the batches.
+     * @param max_batch_size       The maximum number of messages per batch.
+     * @param latency_budget_micros The longest time the first message of a batch waits for more messages, in microseconds.
+     * @param num_workers          The number of threads building and scoring batches.
+     */
+    public MicroBatcher(ScoringService service, int max_batch_size, long latency_budget_micros, int num_workers) {
+        if (max_batch_size < 1 || latency_budget_micros < 0 || num_workers < 1) {
+            throw new IllegalArgumentException("max_batch_size and num_workers must be positive and the latency budget "
+                    + "not negative");
+        }
+        this.service = service;
+        this.max_batch_size = max_batch_size;
+        this.latency_budget_nanos = TimeUnit.MICROSECONDS.toNanos(latency_budget_micros);
+        this.workers = new Thread[num_workers];
+        for (int i = 0; i < num_workers; i++) {
+            workers[i] = new Thread(this::run, "micro-batcher-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+
+    /**
+     * Submits a message for scoring.
+     *
+     * @param message The raw message.
+     * @return A future completed with the verdict of the message.
+     */
+    public CompletableFuture<Verdict> submit(String message) {
+        Request request = new Request(message);
+        if (closed) {
+            request.result.completeExceptionally(new IllegalStateException("The batcher is closed"));
+            return request.result;
+        }
+        queue.add(request);
+        // close may have drained the queue between the check and the add; a request still in the queue then
+        // belongs to nobody, while one already taken is completed by a worker or by the drain of close
+        if (closed && queue.remove(request)) {
+            request.result.completeExceptionally(new IllegalStateException("The batcher is closed"));
+        }
+        return request.result;
+    }
+
+
+    /**
+     * Returns the service scoring the batches, for example to swap its model.
+     *
+     * @return The scoring service.
+     */
+    public ScoringService get_service() {
+        return service;
+    }
+
+
+    /**
+     * Returns the recorder of request latencies.
+     *
+     * @return The latency recorder.
+     */
+    public LatencyRecorder get_latencies() {
+        return latencies;
+    }
+
+
+    /**
+     * Stops the worker threads. Requests still waiting are completed exceptionally.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        try {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Request request;
+        while ((request = queue.poll()) != null) {
+            request.result.completeExceptionally(new IllegalStateException("The batcher is closed"));
+        }
+    }
+
+
+    /**
+     * Main loop of a worker thread: waits for a first request, gathers more requests until the batch is full or
+     * the latency budget of the first request is used up, then scores the batch.
+     */
+    private void run() {
+        List<Request> batch = new ArrayList<>(max_batch_size);
+        List<String> messages = new ArrayList<>(max_batch_size);
+        try {
+            while (!closed) {
+                Request first = queue.take();
+                batch.add(first);
+                long deadline = first.submitted + latency_budget_nanos;
+                while (batch.size() < max_batch_size) {
+                    long remaining = deadline - System.nanoTime();
+                    Request next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                score(batch, messages);
+                batch.clear();
+                messages.clear();
+            }
+        } catch (InterruptedException e) {
+            for (Request request : batch) {
+                request.result.completeExceptionally(new IllegalStateException("The batcher is closed"));
+            }
+        }
+    }
+
+
+    /**
+     * Scores a batch and completes its requests.
+     *
+     * @param batch    The requests of the batch.
+     * @param messages Reusable list receiving the messages of the batch.
+     */
+    private void score(List<Request> batch, List<String> messages) {
+        for (Request request : batch) {
+            messages.add(request.message);
+        }
+        try {
+            Verdict[] verdicts = service.score(messages);
+            for (int i = 0; i < verdicts.length; i++) {
+                Request request = batch.get(i);
+                request.result.complete(verdicts[i]);
+                latencies.record(System.nanoTime() - request.submitted);
+            }
+        } catch (RuntimeException e) {
+            for (Request request : batch) {
+                request.result.completeExceptionally(e);
+            }
+        }
+    }
+}
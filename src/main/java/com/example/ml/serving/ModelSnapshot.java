@@ -0,0 +1,248 @@
+/**
+ * Provides online scoring of single messages with a fitted model: a scoring API,
+ * a micro-batching front end for concurrent requests and a small local HTTP server.
+ */
+package com.example.ml.serving;
+
+import com.example.ml.classifier.naivebayes.GaussianNaiveBayes;
+import com.example.ml.data.matrix.SparseMatrix;
+import com.example.ml.feature.extraction.text.TermDictionary;
+import com.example.ml.feature.extraction.text.TermLookup;
+import com.example.ml.feature.extraction.text.Tokenizer;
+import com.example.ml.feature.extraction.tfidf.TfIdf;
+import com.example.ml.model.ModelFile;
+import com.example.ml.model.QuantizedModel;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * The ModelSnapshot class is an immutable fitted model: a TF-IDF vocabulary and IDF vector together with
+ * the parameters of a Gaussian Naive Bayes classifier, or a QuantizedModel loaded from a file. A snapshot owns copies
+ * of everything it uses, so the TfIdf and GaussianNaiveBayes it was taken from can be refitted right away while the
+ * snapshot is scoring.
+ *
+ * All fields are final and are never modified after construction, so a snapshot can be shared by any number
+ * of threads without locks and published to them through a plain AtomicReference (see ScoringService).
+ * Every snapshot gets a version number, increasing in the order the snapshots are created.
+ */
+public final class ModelSnapshot {
+    // Source of the version numbers
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    // TF-IDF transformer, only used to transform documents, null for a quantized model
+    private final TfIdf extractor;
+    // Classifier, only used to compute margins, null for a quantized model
+    private final GaussianNaiveBayes classifier;
+    // Quantized model scoring the documents instead of the transformer and the classifier, or null
+    private final QuantizedModel quantized;
+    // Version number of the snapshot
+    private final long version;
+
+
+    /**
+     * Creates a snapshot from objects which nobody else references.
+     *
+     * @param extractor  The fitted TF-IDF transformer.
+     * @param classifier The classifier fitted on the features of the transformer.
+     */
+    private ModelSnapshot(TfIdf extractor, GaussianNaiveBayes classifier) {
+        if (classifier.get_means(0).length != extractor.get_vocabulary().size()) {
+            throw new IllegalArgumentException("The classifier has " + classifier.get_means(0).length
+                    + " features but the vocabulary has " + extractor.get_vocabulary().size() + " terms");
+        }
+        this.extractor = extractor;
+        this.classifier = classifier;
+        this.quantized = null;
+        this.version = VERSIONS.incrementAndGet();
+    }
+
+
+    /**
+     * Creates a snapshot of a quantized model which nobody else references.
+     *
+     * @param quantized The quantized model.
+     */
+    private ModelSnapshot(QuantizedModel quantized) {
+        this.extractor = null;
+        this.classifier = null;
+        this.quantized = quantized;
+        this.version = VERSIONS.incrementAndGet();
+    }
+
+
+    /**
+     * Takes a snapshot of a fitted transformer and classifier by copying their fitted state.
+     * The vocabulary is copied as well, both one which can still be modified (a TermDictionary) and one which is
+     * read from a mapped model file that may be replaced.
+     *
+     * @param extractor  The fitted TF-IDF transformer.
+     * @param classifier The classifier fitted on the features of the transformer.
+     * @return The snapshot.
+     */
+    public static ModelSnapshot of(TfIdf extractor, GaussianNaiveBayes classifier) {
+        TermLookup vocabulary = extractor.get_vocabulary();
+        if (vocabulary == null || classifier.get_means(0) == null) {
+            throw new IllegalStateException("The transformer and the classifier must be fitted");
+        }
+        TermDictionary copy = new TermDictionary();
+        for (int i = 0; i < vocabulary.size(); i++) {
+            copy.add(vocabulary.term(i));
+        }
+        copy.trim();
+        double[][] means = {classifier.get_means(0).clone(), classifier.get_means(1).clone()};
+        double[][] variances = {classifier.get_variances(0).clone(), classifier.get_variances(1).clone()};
+        double[] priors = {classifier.get_prior(0), classifier.get_prior(1)};
+        return new ModelSnapshot(new TfIdf(copy, extractor.get_idf_vector().clone()),
+                GaussianNaiveBayes.from_parameters(means, variances, priors));
+    }
+
+
+    /**
+     * Loads a snapshot from a model file written by ModelFile.save or by QuantizedModel.save, told apart by their
+     * magic numbers. The vocabulary section is copied to the heap, so the snapshot does not depend on the file once
+     * it is loaded and the file can be replaced right away.
+     *
+     * @param path The path of the model file.
+     * @return The snapshot.
+     * @throws IOException If the file cannot be read or is not a valid model file.
+     */
+    public static ModelSnapshot load(Path path) throws IOException {
+        if (QuantizedModel.is_quantized_model(path)) {
+            return new ModelSnapshot(QuantizedModel.load(path));
+        }
+        ModelFile.Model model = ModelFile.load(path, false);
+        return new ModelSnapshot(model.get_extractor(), model.get_classifier());
+    }
+
+
+    /**
+     * Saves the snapshot to a model file.
+     *
+     * @param path The path of the model file.
+     * @throws IOException If an I/O error occurs while writing the file.
+     */
+    public void save(Path path) throws IOException {
+        if (quantized != null) {
+            quantized.save(path);
+        } else {
+            ModelFile.save(path, extractor, classifier);
+        }
+    }
+
+
+    /**
+     * Scores a single raw message.
+     *
+     * @param message The raw message.
+     * @return The verdict.
+     */
+    public Verdict score(CharSequence message) {
+        if (quantized != null) {
+            return verdict_of(quantized.margin(message));
+        }
+        return verdict_of(extractor.transform_document(message));
+    }
+
+
+    /**
+     * Splits a raw message into terms and encodes them with the vocabulary of the snapshot, passing every term
+     * to an observer in the same pass. The message is then scored by score(tokenizer, num_ids).
+     *
+     * @param message   The raw message.
+     * @param tokenizer The tokenizer receiving the encoded terms.
+     * @param observer  The consumer receiving every term, or null.
+     * @return The number of known terms.
+     */
+    public int encode(CharSequence message, Tokenizer tokenizer, Tokenizer.TokenConsumer observer) {
+        return tokenizer.encode(message, vocabulary(), observer);
+    }
+
+
+    /**
+     * Scores the message last encoded by encode(message, tokenizer, observer) of this snapshot.
+     *
+     * @param tokenizer The tokenizer which encoded the message.
+     * @param num_ids   The number of known terms returned by encode.
+     * @return The verdict.
+     */
+    public Verdict score(Tokenizer tokenizer, int num_ids) {
+        if (quantized != null) {
+            return verdict_of(quantized.margin(tokenizer, num_ids));
+        }
+        return verdict_of(extractor.transform_encoded(tokenizer, num_ids));
+    }
+
+
+    /**
+     * Classifies a transformed message.
+     *
+     * @param x The sparse TF-IDF vector of the message, as a matrix with one row.
+     * @return The verdict.
+     */
+    private Verdict verdict_of(SparseMatrix x) {
+        return verdict_of(classifier.margin(x.get_indices(), x.get_values(), x.row_start(0), x.row_end(0)));
+    }
+
+
+    /**
+     * Turns a margin into a verdict.
+     *
+     * @param margin The margin of a message.
+     * @return The verdict.
+     */
+    private static Verdict verdict_of(double margin) {
+        return new Verdict(margin >= 0 ? 1 : 0, margin);
+    }
+
+
+    /**
+     * Scores a batch of raw messages in one pass: the messages are transformed into one sparse matrix with a shared
+     * tokenizer and classified by a single decision_function call. A quantized model scores the messages one by one.
+     * The verdicts equal the ones of scoring every message on its own.
+     *
+     * @param messages The raw messages.
+     * @return The verdicts, in the order of the messages.
+     */
+    public Verdict[] score(List<String> messages) {
+        double[] margins = quantized != null ? quantized.decision_function(messages)
+                : classifier.decision_function(extractor.transform_documents(messages));
+        Verdict[] verdicts = new Verdict[margins.length];
+        for (int i = 0; i < verdicts.length; i++) {
+            verdicts[i] = verdict_of(margins[i]);
+        }
+        return verdicts;
+    }
+
+
+    /**
+     * Returns the number of features (vocabulary terms) of the model.
+     *
+     * @return The number of features.
+     */
+    public int num_features() {
+        return vocabulary().size();
+    }
+
+
+    /**
+     * Returns the vocabulary messages are encoded with.
+     *
+     * @return The vocabulary.
+     */
+    private TermLookup vocabulary() {
+        return quantized != null ? quantized.get_vocabulary() : extractor.get_vocabulary();
+    }
+
+
+    /**
+     * Returns the version number of the snapshot; later snapshots have larger numbers.
+     *
+     * @return The version.
+     */
+    public long get_version() {
+        return version;
+    }
+}
@@ -0,0 +1,221 @@
+/**
+ * Provides online scoring of single messages with a fitted model: a scoring API,
+ * a micro-batching front end for concurrent requests and a small local HTTP server.
+ */
+package com.example.ml.serving;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+
+/**
+ * The ScoringServer class exposes a MicroBatcher over a local HTTP server built on the JDK's com.sun.net.httpserver.
+ *
+ * Endpoints:
+ *   POST /score    the request body is the raw message (UTF-8); responds with {"label": "spam"|"ham", "margin": ...}
+ *   GET  /metrics  responds with the number of scored requests, the throughput, the latency percentiles,
+ *                  the number of requests in flight, the model version and the number and latency of reloads,
+ *                  and the hits, misses and hit rate of the verdict cache if it is enabled
+ *   POST /reload   reloads the model file the server was started with (for example after a training job replaced it)
+ *                  and swaps it in without interrupting scoring; responds with the new model version
+ *
+ * Usage: ScoringServer model_path [port] [max_batch_size] [latency_budget_micros] [num_threads]
+ *                      [cache_capacity] [cache_max_distance]
+ * A positive cache_capacity enables a VerdictCache reusing the verdicts of near-duplicate messages (default 0, off).
+ * The model file is written by ModelFile (for example by running Main with a model path), or is a quantized model
+ * written by QuantizedModel.save (for example by QuantizationReport); both kinds can be reloaded.
+ */
+public class ScoringServer implements AutoCloseable {
+    // HTTP server
+    private final HttpServer server;
+    // Pool running the HTTP handlers
+    private final ExecutorService handlers;
+    // Batcher scoring the messages
+    private final MicroBatcher batcher;
+    // Model file reloaded by POST /reload, null if reloading is disabled
+    private final Path model_path;
+
+
+    /**
+     * Creates and starts a server bound to the loopback address.
+     *
+     * @param batcher     The batcher scoring the messages.
+     * @param port        The port, 0 for any free port.
+     * @param num_threads The number of threads handling HTTP requests.
+     * @throws IOException If the server cannot be started.
+     */
+    public ScoringServer(MicroBatcher batcher, int port, int num_threads) throws IOException {
+        this(batcher, port, num_threads, null);
+    }
+
+
+    /**
+     * Creates and starts a server bound to the loopback address which can reload its model from a file.
+     *
+     * @param batcher     The batcher scoring the messages.
+     * @param port        The port, 0 for any free port.
+     * @param num_threads The number of threads handling HTTP requests.
+     * @param model_path  The model file reloaded by POST /reload, or null to disable reloading.
+     * @throws IOException If the server cannot be started.
+     */
+    public ScoringServer(MicroBatcher batcher, int port, int num_threads, Path model_path) throws IOException {
+        this.batcher = batcher;
+        this.model_path = model_path;
+        this.handlers = Executors.newFixedThreadPool(num_threads);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/score", this::handle_score);
+        server.createContext("/metrics", this::handle_metrics);
+        server.createContext("/reload", this::handle_reload);
+        server.setExecutor(handlers);
+        server.start();
+    }
+
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return The port.
+     */
+    public int get_port() {
+        return server.getAddress().getPort();
+    }
+
+
+    /**
+     * Stops the server and the batcher.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        handlers.shutdown();
+        batcher.close();
+    }
+
+
+    /**
+     * Handles POST /score.
+     *
+     * @param exchange The HTTP exchange.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void handle_score(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            respond(exchange, 405, "{\"error\": \"POST required\"}");
+            return;
+        }
+        String message = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        try {
+            Verdict verdict = batcher.submit(message).get();
+            respond(exchange, 200, String.format(Locale.ROOT, "{\"label\": \"%s\", \"margin\": %.6f}",
+                    verdict.get_label() == 1 ? "spam" : "ham", verdict.get_margin()));
+        } catch (ExecutionException e) {
+            respond(exchange, 500, "{\"error\": \"scoring failed\"}");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, "{\"error\": \"interrupted\"}");
+        }
+    }
+
+
+    /**
+     * Handles GET /metrics.
+     *
+     * @param exchange The HTTP exchange.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void handle_metrics(HttpExchange exchange) throws IOException {
+        LatencyRecorder latencies = batcher.get_latencies();
+        ScoringService service = batcher.get_service();
+        LatencyRecorder reload_latencies = service.get_reload_latencies();
+        VerdictCache cache = service.get_cache();
+        String cache_metrics = cache == null ? "" : String.format(Locale.ROOT,
+                ", \"cache_hits\": %d, \"cache_near_hits\": %d, \"cache_misses\": %d, \"cache_hit_rate\": %.4f, "
+                        + "\"cache_evictions\": %d",
+                cache.get_hits(), cache.get_near_hits(), cache.get_misses(), cache.get_hit_rate(),
+                cache.get_evictions());
+        respond(exchange, 200, String.format(Locale.ROOT,
+                "{\"count\": %d, \"throughput\": %.1f, \"p50_us\": %d, \"p90_us\": %d, \"p99_us\": %d, \"p999_us\": %d, "
+                        + "\"in_flight\": %d, \"model_version\": %d, \"reloads\": %d, \"reload_p50_us\": %d, \"reload_max_us\": %d%s}",
+                latencies.get_count(), latencies.get_throughput(), latencies.get_percentile(50),
+                latencies.get_percentile(90), latencies.get_percentile(99), latencies.get_percentile(99.9),
+                service.get_in_flight(), service.get_model().get_version(), service.get_reload_count(),
+                reload_latencies.get_percentile(50), reload_latencies.get_percentile(100), cache_metrics));
+    }
+
+
+    /**
+     * Handles POST /reload.
+     *
+     * @param exchange The HTTP exchange.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void handle_reload(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            respond(exchange, 405, "{\"error\": \"POST required\"}");
+            return;
+        }
+        if (model_path == null) {
+            respond(exchange, 404, "{\"error\": \"reloading is disabled\"}");
+            return;
+        }
+        ScoringService service = batcher.get_service();
+        try {
+            service.reload(model_path);
+        } catch (IOException e) {
+            respond(exchange, 500, "{\"error\": \"reload failed, the previous model is kept\"}");
+            return;
+        }
+        respond(exchange, 200, "{\"model_version\": " + service.get_model().get_version() + "}");
+    }
+
+
+    /**
+     * Sends a JSON response.
+     *
+     * @param exchange The HTTP exchange.
+     * @param status   The HTTP status code.
+     * @param body     The JSON body.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: ScoringServer model_path [port] [max_batch_size] [latency_budget_micros] [num_threads]"
+                    + " [cache_capacity] [cache_max_distance]");
+            System.exit(1);
+        }
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+        int max_batch_size = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+        long latency_budget_micros = args.length > 3 ? Long.parseLong(args[3]) : 200;
+        int num_threads = args.length > 4 ? Integer.parseInt(args[4]) : 2 * Runtime.getRuntime().availableProcessors();
+        int cache_capacity = args.length > 5 ? Integer.parseInt(args[5]) : 0;
+        int cache_max_distance = args.length > 6 ? Integer.parseInt(args[6]) : 3;
+
+        Path model_path = Paths.get(args[0]);
+        VerdictCache cache = cache_capacity > 0 ? new VerdictCache(cache_capacity, cache_max_distance) : null;
+        ScoringService service = new ScoringService(ModelSnapshot.load(model_path), cache);
+        ScoringServer server = new ScoringServer(new MicroBatcher(service, max_batch_size, latency_budget_micros),
+                port, num_threads, model_path);
+        System.out.println("Scoring server listening on http://127.0.0.1:" + server.get_port());
+    }
+}
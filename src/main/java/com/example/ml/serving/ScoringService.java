@@ -0,0 +1,229 @@
+/**
+ * Provides online scoring of single messages with a fitted model: a scoring API,
+ * a micro-batching front end for concurrent requests and a small local HTTP server.
+ */
+package com.example.ml.serving;
+
+import com.example.ml.classifier.naivebayes.GaussianNaiveBayes;
+import com.example.ml.feature.extraction.text.SimHash;
+import com.example.ml.feature.extraction.text.Tokenizer;
+import com.example.ml.feature.extraction.tfidf.TfIdf;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * The ScoringService class scores raw messages with the current ModelSnapshot. The snapshot is read through an
+ * atomic reference once per request (or per batch), so a new model - freshly trained or loaded from disk - can be
+ * swapped in under full load without locks or pauses: requests started before the swap finish on the old snapshot,
+ * requests started after it use the new one, and no request is dropped or sees a mix of both models.
+ *
+ * The service counts the requests being scored and records the latency of every reload.
+ *
+ * With a VerdictCache, the SimHash fingerprint of every message is computed in the tokenization pass that encodes
+ * it and looked up before the message is transformed and classified, and near-duplicates of recently scored
+ * messages reuse their verdict. The cache is invalidated
+ * whenever a new model is made current.
+ */
+public class ScoringService {
+    // Tokenizer and SimHash of every scoring thread, reused for the messages scored through the cache
+    private static final ThreadLocal<Tokenizer> TOKENIZERS = ThreadLocal.withInitial(Tokenizer::new);
+    private static final ThreadLocal<SimHash> SIMHASHES = ThreadLocal.withInitial(SimHash::new);
+
+    // Snapshot used by new requests
+    private final AtomicReference<ModelSnapshot> model;
+    // Number of single messages and batches being scored
+    private final LongAdder in_flight = new LongAdder();
+    // Number of swaps and reloads
+    private final LongAdder reloads = new LongAdder();
+    // Latencies of the reloads, from the start of loading to the swap
+    private final LatencyRecorder reload_latencies = new LatencyRecorder();
+    // Cache of the verdicts of recently scored messages, null if caching is disabled
+    private final VerdictCache cache;
+
+
+    /**
+     * Creates a scoring service from a snapshot of a fitted transformer and classifier.
+     *
+     * @param extractor  The fitted TF-IDF transformer.
+     * @param classifier The classifier fitted on the features of the transformer.
+     */
+    public ScoringService(TfIdf extractor, GaussianNaiveBayes classifier) {
+        this(ModelSnapshot.of(extractor, classifier));
+    }
+
+
+    /**
+     * Creates a scoring service.
+     *
+     * @param model The initial model.
+     */
+    public ScoringService(ModelSnapshot model) {
+        this(model, null);
+    }
+
+
+    /**
+     * Creates a scoring service answering near-duplicates of recently scored messages from a verdict cache.
+     *
+     * @param model The initial model.
+     * @param cache The verdict cache, or null to score every message.
+     */
+    public ScoringService(ModelSnapshot model, VerdictCache cache) {
+        this.model = new AtomicReference<>(model);
+        this.cache = cache;
+    }
+
+
+    /**
+     * Scores a single raw message.
+     *
+     * @param message The raw message.
+     * @return The verdict.
+     */
+    public Verdict score(String message) {
+        in_flight.increment();
+        try {
+            return score(model.get(), message);
+        } finally {
+            in_flight.decrement();
+        }
+    }
+
+
+    /**
+     * Scores a batch of raw messages, all with the same snapshot.
+     *
+     * @param messages The raw messages.
+     * @return The verdicts, in the order of the messages.
+     */
+    public Verdict[] score(List<String> messages) {
+        in_flight.increment();
+        try {
+            ModelSnapshot snapshot = model.get();
+            if (cache == null) {
+                return snapshot.score(messages);
+            }
+            Verdict[] verdicts = new Verdict[messages.size()];
+            for (int i = 0; i < verdicts.length; i++) {
+                verdicts[i] = score(snapshot, messages.get(i));
+            }
+            return verdicts;
+        } finally {
+            in_flight.decrement();
+        }
+    }
+
+
+    /**
+     * Scores a single raw message with a snapshot, through the verdict cache if there is one.
+     *
+     * @param snapshot The model.
+     * @param message  The raw message.
+     * @return The verdict.
+     */
+    private Verdict score(ModelSnapshot snapshot, String message) {
+        if (cache == null) {
+            return snapshot.score(message);
+        }
+        // One tokenization pass both encodes the message and fingerprints it
+        Tokenizer tokenizer = TOKENIZERS.get();
+        SimHash simhash = SIMHASHES.get();
+        simhash.reset();
+        int num_ids = snapshot.encode(message, tokenizer, simhash);
+        long fingerprint = simhash.get_fingerprint();
+        Verdict verdict = cache.get(fingerprint, snapshot.get_version());
+        if (verdict == null) {
+            verdict = snapshot.score(tokenizer, num_ids);
+            cache.put(fingerprint, snapshot.get_version(), verdict);
+        }
+        return verdict;
+    }
+
+
+    /**
+     * Makes a new model current and invalidates the verdict cache.
+     * Requests already being scored finish with the previous model.
+     *
+     * @param next The new model.
+     * @return The previous model.
+     */
+    public ModelSnapshot swap(ModelSnapshot next) {
+        ModelSnapshot previous = model.getAndSet(next);
+        if (cache != null) {
+            cache.invalidate();
+        }
+        reloads.increment();
+        return previous;
+    }
+
+
+    /**
+     * Loads a model file and makes it current. Scoring continues with the previous model while the file is loaded;
+     * if loading fails, the previous model stays current.
+     *
+     * @param path The path of the model file.
+     * @return The previous model.
+     * @throws IOException If the file cannot be read or is not a valid model file.
+     */
+    public ModelSnapshot reload(Path path) throws IOException {
+        long start = System.nanoTime();
+        ModelSnapshot next = ModelSnapshot.load(path);
+        ModelSnapshot previous = swap(next);
+        reload_latencies.record(System.nanoTime() - start);
+        return previous;
+    }
+
+
+    /**
+     * Returns the current model.
+     *
+     * @return The snapshot used by new requests.
+     */
+    public ModelSnapshot get_model() {
+        return model.get();
+    }
+
+
+    /**
+     * Returns the verdict cache.
+     *
+     * @return The cache, or null if caching is disabled.
+     */
+    public VerdictCache get_cache() {
+        return cache;
+    }
+
+
+    /**
+     * Returns the number of single messages and batches being scored at the moment.
+     *
+     * @return The number of requests in flight.
+     */
+    public long get_in_flight() {
+        return in_flight.sum();
+    }
+
+
+    /**
+     * Returns the number of models made current by swap or reload since the service was created.
+     *
+     * @return The number of reloads.
+     */
+    public long get_reload_count() {
+        return reloads.sum();
+    }
+
+
+    /**
+     * Returns the recorder of reload latencies (loading the file and swapping the model).
+     *
+     * @return The latency recorder.
+     */
+    public LatencyRecorder get_reload_latencies() {
+        return reload_latencies;
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * Provides online scoring of single messages with a fitted model: a scoring API,
+ * a micro-batching front end for concurrent requests and a small local HTTP server.
+ */
+package com.example.ml.serving;
+
+
+/**
+ * The classification of a single message: its label and the log-probability margin behind it.
+ */
+public class Verdict {
+    // Predicted label, 0 = ham, 1 = spam
+    private final int label;
+    // Log-probability margin, log P(spam | x) - log P(ham | x)
+    private final double margin;
+
+
+    /**
+     * Creates a verdict.
+     *
+     * @param label  The predicted label, 0 = ham, 1 = spam.
+     * @param margin The log-probability margin (spam minus ham).
+     */
+    public Verdict(int label, double margin) {
+        this.label = label;
+        this.margin = margin;
+    }
+
+
+    /**
+     * Returns the predicted label.
+     *
+     * @return The label, 0 = ham, 1 = spam.
+     */
+    public int get_label() {
+        return label;
+    }
+
+
+    /**
+     * Returns the log-probability margin; positive values favour spam, negative values favour ham.
+     *
+     * @return The margin.
+     */
+    public double get_margin() {
+        return margin;
+    }
+}
@@ -0,0 +1,397 @@
+/**
+ * Provides online scoring of single messages with a fitted model: a scoring API,
+ * a micro-batching front end for concurrent requests and a small local HTTP server.
+ */
+package com.example.ml.serving;
+
+import com.example.ml.feature.extraction.text.SimHash;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * The VerdictCache class remembers the verdicts of recently scored messages by their SimHash fingerprint and returns
+ * them for messages whose fingerprint differs in at most max_distance bits, so near-duplicate messages (such as the
+ * thousands of copies of a spam campaign) are not transformed and classified again.
+ *
+ * The 64 bits of a fingerprint are split into max_distance + 1 bands. Two fingerprints within max_distance bits agree
+ * on at least one whole band, so every band has a table from band values to the last few fingerprints having them,
+ * and a lookup compares the message only with the fingerprints found in the tables of its own band values.
+ * Every band table is split into lock-striped segments, each an LRU map of bounded size; a segment evicts its least
+ * recently used band value when it is full. A fingerprint stays findable as long as one of its bands is cached, and
+ * the memory used is bounded by (max_distance + 1) * capacity * BUCKET_SIZE entries.
+ *
+ * Every verdict is stored with the version of the model that produced it and only returned for the same version;
+ * invalidate drops all verdicts when a new model is made current. The cache counts exact hits, near-duplicate hits,
+ * misses and evictions.
+ */
+public class VerdictCache {
+    // Maximum number of fingerprints remembered per band value
+    private static final int BUCKET_SIZE = 4;
+    // Default number of segments per band
+    private static final int DEFAULT_STRIPES = 16;
+
+    // Maximum number of differing bits for a cached verdict to be reused
+    private final int max_distance;
+    // Number of bands the fingerprint is split into
+    private final int num_bands;
+    // First bit and mask of every band
+    private final int[] band_shift;
+    private final long[] band_mask;
+    // Number of segments per band, a power of two
+    private final int stripes;
+    // Segments of all band tables, the table of band b is segments[b * stripes, (b + 1) * stripes)
+    private final Segment[] segments;
+    // Number of lookups answered by a verdict of the same fingerprint
+    private final LongAdder hits = new LongAdder();
+    // Number of lookups answered by a verdict of a different fingerprint within max_distance
+    private final LongAdder near_hits = new LongAdder();
+    // Number of lookups without a usable verdict
+    private final LongAdder misses = new LongAdder();
+    // Number of band values evicted from full segments
+    private final LongAdder evictions = new LongAdder();
+
+
+    /**
+     * A cached verdict with the fingerprint of its message and the version of the model that produced it.
+     */
+    private static final class CachedVerdict {
+        // Fingerprint of the scored message
+        final long fingerprint;
+        // Version of the model that scored the message
+        final long version;
+        // Verdict of the message
+        final Verdict verdict;
+
+
+        /**
+         * Creates a cached verdict.
+         *
+         * @param fingerprint The fingerprint of the scored message.
+         * @param version     The version of the model that scored the message.
+         * @param verdict     The verdict of the message.
+         */
+        CachedVerdict(long fingerprint, long version, Verdict verdict) {
+            this.fingerprint = fingerprint;
+            this.version = version;
+            this.verdict = verdict;
+        }
+    }
+
+
+    /**
+     * One segment of a band table: an access-ordered map from band values to the most recent verdicts having them,
+     * evicting its least recently used band value above its capacity. Accessed only while holding its monitor.
+     */
+    private final class Segment {
+        // Band values and their verdicts, least recently used first
+        private final LinkedHashMap<Long, CachedVerdict[]> buckets = new LinkedHashMap<>(16, 0.75f, true);
+        // Maximum number of band values
+        private final int capacity;
+
+
+        /**
+         * Creates an empty segment.
+         *
+         * @param capacity The maximum number of band values.
+         */
+        Segment(int capacity) {
+            this.capacity = capacity;
+        }
+
+
+        /**
+         * Returns the verdicts of a band value and marks it as most recently used.
+         *
+         * @param value The band value.
+         * @return The verdicts, or null if the band value is not cached.
+         */
+        CachedVerdict[] get(long value) {
+            return buckets.get(value);
+        }
+
+
+        /**
+         * Stores the verdicts of a band value, evicting the least recently used band value when the segment
+         * is over capacity.
+         *
+         * @param value  The band value.
+         * @param bucket The verdicts.
+         */
+        void put(long value, CachedVerdict[] bucket) {
+            buckets.put(value, bucket);
+            if (buckets.size() > capacity) {
+                Iterator<Long> eldest = buckets.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+
+
+        /**
+         * Removes all band values.
+         */
+        void clear() {
+            buckets.clear();
+        }
+
+
+        /**
+         * Returns the number of cached band values.
+         *
+         * @return The number of band values.
+         */
+        int size() {
+            return buckets.size();
+        }
+    }
+
+
+    /**
+     * Creates a cache.
+     *
+     * @param capacity     The number of band values kept per band, roughly the number of distinct messages cached.
+     * @param max_distance The maximum number of differing fingerprint bits for a verdict to be reused, 0 for
+     *                     exact fingerprint matches only.
+     */
+    public VerdictCache(int capacity, int max_distance) {
+        this(capacity, max_distance, DEFAULT_STRIPES);
+    }
+
+
+    /**
+     * Creates a cache.
+     *
+     * @param capacity     The number of band values kept per band, roughly the number of distinct messages cached.
+     * @param max_distance The maximum number of differing fingerprint bits for a verdict to be reused, between 0 and 31.
+     * @param stripes      The number of independently locked segments per band, rounded up to a power of two.
+     */
+    public VerdictCache(int capacity, int max_distance, int stripes) {
+        if (capacity < 1 || stripes < 1) {
+            throw new IllegalArgumentException("capacity and stripes must be positive");
+        }
+        if (max_distance < 0 || max_distance > 31) {
+            throw new IllegalArgumentException("max_distance must be between 0 and 31, got " + max_distance);
+        }
+        this.max_distance = max_distance;
+        this.num_bands = max_distance + 1;
+        this.stripes = Integer.highestOneBit(2 * stripes - 1);
+        this.band_shift = new int[num_bands];
+        this.band_mask = new long[num_bands];
+        for (int b = 0; b < num_bands; b++) {
+            int start = 64 * b / num_bands;
+            int end = 64 * (b + 1) / num_bands;
+            band_shift[b] = start;
+            band_mask[b] = end - start == 64 ? -1L : (1L << (end - start)) - 1;
+        }
+        this.segments = new Segment[num_bands * this.stripes];
+        int segment_capacity = (capacity + this.stripes - 1) / this.stripes;
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(segment_capacity);
+        }
+    }
+
+
+    /**
+     * Returns the value of a band of a fingerprint.
+     *
+     * @param fingerprint The fingerprint.
+     * @param band        The band.
+     * @return The bits of the band.
+     */
+    private long band_value(long fingerprint, int band) {
+        return (fingerprint >>> band_shift[band]) & band_mask[band];
+    }
+
+
+    /**
+     * Returns the segment holding a band value.
+     *
+     * @param band  The band.
+     * @param value The band value.
+     * @return The segment.
+     */
+    private Segment segment_of(int band, long value) {
+        long h = value * 0x9e3779b97f4a7c15L;
+        return segments[band * stripes + ((int) (h >>> 32) & (stripes - 1))];
+    }
+
+
+    /**
+     * Returns the cached verdict of a message whose fingerprint is within max_distance bits of the given one,
+     * preferring the closest fingerprint found.
+     *
+     * @param fingerprint The SimHash fingerprint of the message.
+     * @param version     The version of the current model; verdicts of other versions are ignored.
+     * @return The cached verdict, or null.
+     */
+    public Verdict get(long fingerprint, long version) {
+        CachedVerdict best = null;
+        int best_distance = max_distance + 1;
+        for (int b = 0; b < num_bands && best_distance > 0; b++) {
+            long value = band_value(fingerprint, b);
+            Segment segment = segment_of(b, value);
+            CachedVerdict[] bucket;
+            synchronized (segment) {
+                bucket = segment.get(value);
+            }
+            if (bucket == null) {
+                continue;
+            }
+            for (CachedVerdict entry : bucket) {
+                int distance = SimHash.distance(fingerprint, entry.fingerprint);
+                if (entry.version == version && distance < best_distance) {
+                    best = entry;
+                    best_distance = distance;
+                }
+            }
+        }
+        if (best == null) {
+            misses.increment();
+            return null;
+        }
+        if (best_distance == 0) {
+            hits.increment();
+        } else {
+            near_hits.increment();
+        }
+        return best.verdict;
+    }
+
+
+    /**
+     * Caches the verdict of a message under every band value of its fingerprint.
+     *
+     * @param fingerprint The SimHash fingerprint of the message.
+     * @param version     The version of the model that produced the verdict.
+     * @param verdict     The verdict.
+     */
+    public void put(long fingerprint, long version, Verdict verdict) {
+        CachedVerdict entry = new CachedVerdict(fingerprint, version, verdict);
+        for (int b = 0; b < num_bands; b++) {
+            long value = band_value(fingerprint, b);
+            Segment segment = segment_of(b, value);
+            synchronized (segment) {
+                segment.put(value, prepend(segment.get(value), entry));
+            }
+        }
+    }
+
+
+    /**
+     * Returns a bucket with an entry first, followed by the other entries of a bucket without the entry's
+     * fingerprint, at most BUCKET_SIZE entries. Buckets are never modified once published.
+     *
+     * @param bucket The current bucket, or null.
+     * @param entry  The new entry.
+     * @return The new bucket.
+     */
+    private static CachedVerdict[] prepend(CachedVerdict[] bucket, CachedVerdict entry) {
+        if (bucket == null) {
+            return new CachedVerdict[]{entry};
+        }
+        CachedVerdict[] result = new CachedVerdict[Math.min(bucket.length + 1, BUCKET_SIZE)];
+        result[0] = entry;
+        int size = 1;
+        for (int i = 0; i < bucket.length && size < result.length; i++) {
+            if (bucket[i].fingerprint != entry.fingerprint) {
+                result[size++] = bucket[i];
+            }
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+
+    /**
+     * Drops all cached verdicts, for example because a new model was made current.
+     * Verdicts of the previous model put concurrently are never returned for the new model's version.
+     */
+    public void invalidate() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+
+    /**
+     * Returns the number of band values cached in the first band, about the number of distinct fingerprints cached.
+     *
+     * @return The number of cached fingerprints.
+     */
+    public long size() {
+        long size = 0;
+        for (int i = 0; i < stripes; i++) {
+            synchronized (segments[i]) {
+                size += segments[i].size();
+            }
+        }
+        return size;
+    }
+
+
+    /**
+     * Returns the maximum number of differing fingerprint bits for a verdict to be reused.
+     *
+     * @return The maximum distance.
+     */
+    public int get_max_distance() {
+        return max_distance;
+    }
+
+
+    /**
+     * Returns the number of lookups answered by the verdict of an identical fingerprint.
+     *
+     * @return The number of exact hits.
+     */
+    public long get_hits() {
+        return hits.sum();
+    }
+
+
+    /**
+     * Returns the number of lookups answered by the verdict of a different fingerprint within max_distance bits.
+     *
+     * @return The number of near-duplicate hits.
+     */
+    public long get_near_hits() {
+        return near_hits.sum();
+    }
+
+
+    /**
+     * Returns the number of lookups without a usable verdict.
+     *
+     * @return The number of misses.
+     */
+    public long get_misses() {
+        return misses.sum();
+    }
+
+
+    /**
+     * Returns the number of band values evicted from full segments.
+     *
+     * @return The number of evictions.
+     */
+    public long get_evictions() {
+        return evictions.sum();
+    }
+
+
+    /**
+     * Returns the fraction of lookups answered from the cache, exact and near-duplicate hits together.
+     *
+     * @return The hit rate, 0 if there was no lookup.
+     */
+    public double get_hit_rate() {
+        long answered = hits.sum() + near_hits.sum();
+        long total = answered + misses.sum();
+        return total > 0 ? (double) answered / total : 0;
+    }
+}